@@ -0,0 +1,91 @@
+package core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates the transaction id lists and itemsets used by the benchmarks.
+ *
+ * The density of a list is its size relative to the range of transaction ids
+ * it is drawn from, which decides the containers of a {@link TidSet}: sparse
+ * lists end up in array containers, dense ones in bitmaps. The skew decides
+ * how the ids spread over that range: uniform lists are drawn evenly, in
+ * clustered lists consecutive transactions share items, as happens when the
+ * data is ordered by time, which gives runs of ids.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class BenchmarkData {
+
+	public static String UNIFORM_SKEW = "uniform";
+
+	public static String CLUSTERED_SKEW = "clustered";
+
+	/**
+	 * Average length of a run of consecutive ids in clustered lists.
+	 */
+	private static int CLUSTER_LENGTH = 64;
+
+	/**
+	 * Returns about size distinct transaction ids in increasing order, drawn
+	 * from the range [0, size / density).
+	 */
+	public static int[] transactionIds(Random random, int size,
+			double density, String skew) {
+		int range = (int) Math.max(size, size / density);
+		int[] ids = new int[size];
+		int count = 0;
+		if (CLUSTERED_SKEW.equals(skew)) {
+			int clusters = Math.max(1, size / CLUSTER_LENGTH);
+			while (count < size) {
+				int start = random.nextInt(range);
+				int length = Math.min(size - count, 1 + random
+						.nextInt(2 * size / clusters));
+				for (int i = 0; i < length && start + i < range; i++) {
+					ids[count++] = start + i;
+				}
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				ids[count++] = random.nextInt(range);
+			}
+		}
+		Arrays.sort(ids);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+				ids[distinct++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, distinct);
+	}
+
+	public static TidSet tidSet(Random random, int size, double density,
+			String skew) {
+		int[] ids = transactionIds(random, size, density, skew);
+		TidSet tidSet = TidSet.fromSorted(ids, ids.length);
+		tidSet.runOptimize();
+		return tidSet;
+	}
+
+	/**
+	 * Returns an itemset of the given number of distinct items below
+	 * itemCount.
+	 */
+	public static ItemSet itemIds(Random random, int items, int itemCount) {
+		Set<Integer> itemIds = new HashSet<Integer>();
+		while (itemIds.size() < items) {
+			itemIds.add(random.nextInt(itemCount));
+		}
+		int[] ids = new int[items];
+		int i = 0;
+		for (int itemId : itemIds) {
+			ids[i++] = itemId;
+		}
+		return ItemSet.of(ids);
+	}
+
+}
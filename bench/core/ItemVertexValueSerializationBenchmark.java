@@ -0,0 +1,86 @@
+package core;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of the vertex values, done when vertices are moved between
+ * workers, checkpointed or spilled out of core.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemVertexValueSerializationBenchmark {
+
+	/**
+	 * Number of transaction ids of the item.
+	 */
+	@Param({ "1000", "100000" })
+	public int size;
+
+	@Param({ "0.01", "0.5" })
+	public double density;
+
+	@Param({ "uniform", "clustered" })
+	public String skew;
+
+	/**
+	 * Number of frequent itemsets kept in the value when there is no pattern
+	 * sink.
+	 */
+	@Param({ "0", "1000" })
+	public int patterns;
+
+	private ItemVertexValue value;
+
+	private final DataOutputBuffer output = new DataOutputBuffer();
+
+	private final DataInputBuffer input = new DataInputBuffer();
+
+	private final ItemVertexValue readValue = new ItemVertexValue();
+
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		this.value = new ItemVertexValue();
+		value.setTransactionIdList(BenchmarkData.tidSet(random, size, density,
+				skew));
+		for (int i = 0; i < patterns; i++) {
+			value.addFrequentPattern(new FrequentItemset(BenchmarkData
+					.itemIds(random, 1 + random.nextInt(5), 1000), 1 + random
+					.nextInt(size)));
+		}
+		output.reset();
+		value.write(output);
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		output.reset();
+		value.write(output);
+		return output.getLength();
+	}
+
+	@Benchmark
+	public ItemVertexValue readFields() throws IOException {
+		input.reset(output.getData(), output.getLength());
+		readValue.readFields(input);
+		return readValue;
+	}
+
+}
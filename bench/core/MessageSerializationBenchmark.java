@@ -0,0 +1,89 @@
+package core;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of the messages exchanged between the vertices. Reading goes
+ * into a single message object, as Giraph does when iterating over the
+ * messages of a vertex.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageSerializationBenchmark {
+
+	/**
+	 * Number of itemsets in the message.
+	 */
+	@Param({ "10", "100" })
+	public int pairs;
+
+	/**
+	 * Number of transaction ids of each itemset.
+	 */
+	@Param({ "1000", "20000" })
+	public int size;
+
+	@Param({ "0.01", "0.5" })
+	public double density;
+
+	@Param({ "uniform", "clustered" })
+	public String skew;
+
+	private FrequentPatternMessage message;
+
+	private final DataOutputBuffer output = new DataOutputBuffer();
+
+	private final DataInputBuffer input = new DataInputBuffer();
+
+	private final FrequentPatternMessage readMessage = new FrequentPatternMessage();
+
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		this.message = new FrequentPatternMessage();
+		for (int i = 0; i < pairs; i++) {
+			message.addItemAndTransactionPair(new ItemsAndTransactionsPair(
+					BenchmarkData.itemIds(random, 3, 1000), BenchmarkData
+							.tidSet(random, size, density, skew)));
+		}
+		output.reset();
+		message.write(output);
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		output.reset();
+		message.write(output);
+		return output.getLength();
+	}
+
+	@Benchmark
+	public FrequentPatternMessage readFields() throws IOException {
+		input.reset(output.getData(), output.getLength());
+		readMessage.readFields(input);
+		return readMessage;
+	}
+
+	@Benchmark
+	public int serializedSize() {
+		return message.serializedSize();
+	}
+
+}
@@ -0,0 +1,272 @@
+package core;
+
+import io.QuestDataGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Runs {@link MainClass} in Giraph local mode over a grid of dataset sizes
+ * and minimum supports. The datasets are generated by the
+ * {@link QuestDataGenerator}, every run uses its own JVM so that its peak
+ * heap is not inflated by the previous ones.
+ *
+ * Each run records the wall time of the job, the peak used heap of its JVM,
+ * the number of frequent itemsets and the message bytes of every superstep,
+ * read from the metrics files of the workers. The results are printed and
+ * written to report.tsv in the working directory.
+ *
+ * Usage: ScaleTestHarness -o <working directory> -transactions 10000,100000
+ * -minsup 0.01,0.005 [-length 10] [-items 1000] [-zipf 0] [-correlation 0.5]
+ * [-mode all] [-heap 2g] [-seed 1]
+ *
+ * The minimum supports are fractions of the number of transactions.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ScaleTestHarness {
+
+	private static String RESULT_PREFIX = "SCALE_TEST_RESULT";
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption("o", "output", true, "Working directory");
+		options.addOption("transactions", true,
+				"Comma separated numbers of transactions");
+		options.addOption("minsup", true,
+				"Comma separated minimum supports, as fractions of the transactions");
+		options.addOption("length", true, "Average transaction length");
+		options.addOption("items", true, "Number of distinct items");
+		options.addOption("zipf", true, "Zipf exponent of the items");
+		options.addOption("correlation", true, "Correlation of the patterns");
+		options.addOption("mode", true, "Mining mode: all, closed or maximal");
+		options.addOption("heap", true, "Maximum heap of the mining JVMs");
+		options.addOption("seed", true, "Random seed of the data");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		File workDir = new File(cmd.getOptionValue('o'));
+		double averageLength = Double.parseDouble(cmd.getOptionValue("length",
+				"10"));
+		int items = Integer.parseInt(cmd.getOptionValue("items", "1000"));
+		double zipf = Double.parseDouble(cmd.getOptionValue("zipf", "0"));
+		double correlation = Double.parseDouble(cmd.getOptionValue(
+				"correlation", "0.5"));
+		long seed = Long.parseLong(cmd.getOptionValue("seed", "1"));
+		String mode = cmd.getOptionValue("mode",
+				CommonConstants.ALL_MINING_MODE);
+		String heap = cmd.getOptionValue("heap", "2g");
+
+		PrintWriter report = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(workDir, "report.tsv")),
+				"UTF-8"));
+		report.println("transactions\tminimum support\twall ms\tpeak heap MB"
+				+ "\tfrequent itemsets\tmessage bytes per superstep");
+		try {
+			for (String size : cmd.getOptionValue("transactions").split(",")) {
+				int transactions = Integer.parseInt(size.trim());
+				File dataDir = new File(workDir, "data-" + transactions);
+				if (!new File(dataDir, "vertices").isDirectory()) {
+					new QuestDataGenerator(transactions, averageLength, items,
+							2 * items, 4, correlation, zipf, 0.5, seed)
+							.generate(dataDir, 1, Runtime.getRuntime()
+									.availableProcessors());
+				}
+				for (String fraction : cmd.getOptionValue("minsup").split(",")) {
+					int minSupport = (int) Math.max(1,
+							Math.ceil(Double.parseDouble(fraction.trim())
+									* transactions));
+					String row = runJob(workDir, dataDir, transactions,
+							minSupport, mode, heap);
+					System.out.println(row);
+					report.println(row);
+					report.flush();
+				}
+			}
+		} finally {
+			report.close();
+		}
+	}
+
+	/**
+	 * Mines a dataset in a child JVM and returns the report line of the run.
+	 */
+	private static String runJob(File workDir, File dataDir,
+			int transactions, int minSupport, String mode, String heap)
+			throws IOException, InterruptedException {
+		File runDir = new File(workDir, "run-" + transactions + "-"
+				+ minSupport);
+		File patternDir = new File(runDir, "patterns");
+		File metricsDir = new File(runDir, "metrics");
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"),
+				"java").getPath());
+		command.add("-Xmx" + heap);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SingleRun.class.getName());
+		command.addAll(Arrays.asList("-i",
+				new File(dataDir, "vertices").getPath(), "-o", new File(runDir,
+						"output").getPath(), "-l", "true", "-wmin", "1",
+				"-wmax", "1", "-minsup", String.valueOf(minSupport), "-mode",
+				mode, "-patterns", patternDir.getPath(), "-metrics",
+				metricsDir.getPath()));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true)
+				.start();
+		BufferedReader output = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), "UTF-8"));
+		PrintWriter log = new PrintWriter(new File(workDir, "run-"
+				+ transactions + "-" + minSupport + ".log"), "UTF-8");
+		String result = null;
+		try {
+			String line;
+			while ((line = output.readLine()) != null) {
+				log.println(line);
+				if (line.startsWith(RESULT_PREFIX)) {
+					result = line;
+				}
+			}
+		} finally {
+			log.close();
+		}
+		if (process.waitFor() != 0 || result == null) {
+			return transactions + "\t" + minSupport + "\tfailed";
+		}
+		String[] fields = result.split("\t");
+		return transactions + "\t" + minSupport + "\t" + fields[1] + "\t"
+				+ fields[2] + "\t" + countPatterns(patternDir) + "\t"
+				+ messageBytesPerSuperstep(metricsDir);
+	}
+
+	private static long countPatterns(File patternDir) throws IOException {
+		long patterns = 0;
+		File[] levels = patternDir.listFiles();
+		if (levels == null) {
+			return 0;
+		}
+		for (File level : levels) {
+			File[] parts = level.listFiles();
+			if (parts == null) {
+				continue;
+			}
+			for (File part : parts) {
+				if (!part.getName().startsWith("part-")) {
+					continue;
+				}
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(new FileInputStream(part),
+								"UTF-8"));
+				try {
+					while (reader.readLine() != null) {
+						patterns++;
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		return patterns;
+	}
+
+	/**
+	 * Adds up the bytes sent by the workers in every superstep.
+	 */
+	private static String messageBytesPerSuperstep(File metricsDir)
+			throws IOException {
+		TreeMap<Long, Long> bytes = new TreeMap<Long, Long>();
+		File[] files = metricsDir.listFiles();
+		if (files == null) {
+			return "";
+		}
+		for (File file : files) {
+			if (!file.getName().startsWith("worker-")) {
+				continue;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			try {
+				int column = Arrays.asList(reader.readLine().split("\t"))
+						.indexOf("bytes emitted");
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t");
+					long superstep = Long.parseLong(fields[0]);
+					Long previous = bytes.get(superstep);
+					bytes.put(superstep, (previous == null ? 0 : previous)
+							+ Long.parseLong(fields[column]));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		StringBuilder perSuperstep = new StringBuilder();
+		for (Long value : bytes.values()) {
+			if (perSuperstep.length() > 0) {
+				perSuperstep.append(',');
+			}
+			perSuperstep.append(value);
+		}
+		return perSuperstep.toString();
+	}
+
+	/**
+	 * Runs the job in the JVM started for it, printing its wall time and the
+	 * peak used heap sampled while it runs.
+	 */
+	public static class SingleRun {
+
+		private static volatile long peakHeap;
+
+		public static void main(String[] args) throws Exception {
+			final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+			Thread sampler = new Thread() {
+				@Override
+				public void run() {
+					while (true) {
+						peakHeap = Math.max(peakHeap, memory
+								.getHeapMemoryUsage().getUsed());
+						try {
+							Thread.sleep(20);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			};
+			sampler.setDaemon(true);
+			sampler.start();
+
+			long start = System.currentTimeMillis();
+			boolean succeeded = MainClass.run(args);
+			long wallTime = System.currentTimeMillis() - start;
+			sampler.interrupt();
+			sampler.join();
+
+			System.out.println(RESULT_PREFIX + "\t" + wallTime + "\t"
+					+ peakHeap / (1024 * 1024));
+			System.exit(succeeded ? 0 : 1);
+		}
+	}
+
+}
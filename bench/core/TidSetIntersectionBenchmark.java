@@ -0,0 +1,76 @@
+package core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Intersections of the transaction id lists of an itemset and an item, as
+ * done by {@link FrequentPatternComputation#extendWithTidset}: the support
+ * test, which only counts the overlap, and the overlap itself.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TidSetIntersectionBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	@Param({ "0.01", "0.5" })
+	public double density;
+
+	@Param({ "uniform", "clustered" })
+	public String skew;
+
+	private TidSet itemsetTids;
+
+	private TidSet itemTids;
+
+	private int minSupport;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		this.itemsetTids = BenchmarkData.tidSet(random, size, density, skew);
+		this.itemTids = BenchmarkData.tidSet(random, size, density, skew);
+		/**
+		 * A support threshold the overlap just reaches, so that the test
+		 * cannot stop early.
+		 */
+		this.minSupport = Math.max(1, itemsetTids.andCardinality(itemTids));
+	}
+
+	@Benchmark
+	public TidSet overlappingList() {
+		return FrequentPatternComputation.getOverlappingList(itemTids,
+				itemsetTids);
+	}
+
+	@Benchmark
+	public int overlapCardinality() {
+		return itemTids.andCardinality(itemsetTids);
+	}
+
+	@Benchmark
+	public boolean supportTest() {
+		return itemTids.intersectsAtLeast(itemsetTids, minSupport);
+	}
+
+	@Benchmark
+	public TidSet difference() {
+		return itemsetTids.andNot(itemTids);
+	}
+
+}
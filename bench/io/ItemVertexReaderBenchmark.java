@@ -0,0 +1,151 @@
+package io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.giraph.edge.Edge;
+import org.apache.giraph.edge.EdgeFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import core.BenchmarkData;
+import core.ItemVertexValue;
+import core.TidSet;
+import core.Transaction;
+
+/**
+ * Parsing of the input lines of {@link ItemVertexInputFormat}, by the
+ * {@link ItemVertexLineParser} and by the JSON based parsing it replaced.
+ * Both turn every line into a vertex id, an {@link ItemVertexValue} holding
+ * the transaction ids and the neighbor ids. The printing of the old reader
+ * and the copy of the neighbor ids into the out edges, which does not depend
+ * on the parser, are left out. Scores are per line.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemVertexReaderBenchmark {
+
+	private static final int LINES = 100;
+
+	/**
+	 * Number of transaction ids of each vertex.
+	 */
+	@Param({ "100", "10000" })
+	public int transactions;
+
+	@Param({ "0.01", "0.5" })
+	public double density;
+
+	@Param({ "uniform", "clustered" })
+	public String skew;
+
+	/**
+	 * Number of neighbors of each vertex.
+	 */
+	@Param({ "10", "1000" })
+	public int neighbors;
+
+	private final List<Text> lines = new ArrayList<Text>();
+
+	private final ItemVertexLineParser parser = new ItemVertexLineParser();
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		lines.clear();
+		StringBuilder line = new StringBuilder();
+		for (int vertex = 0; vertex < LINES; vertex++) {
+			line.setLength(0);
+			line.append('[').append(vertex).append(", ");
+			appendIds(line, BenchmarkData.transactionIds(random, neighbors,
+					0.1, BenchmarkData.UNIFORM_SKEW));
+			line.append(", ");
+			appendIds(line, BenchmarkData.transactionIds(random, transactions,
+					density, skew));
+			line.append(']');
+			lines.add(new Text(line.toString()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long lineParser() {
+		long checksum = 0;
+		for (Text line : lines) {
+			if (!parser.parse(line.getBytes(), line.getLength())) {
+				throw new IllegalArgumentException(parser.getError());
+			}
+			ItemVertexValue value = new ItemVertexValue();
+			TidSet tidSet = parser.toTidSet();
+			value.setTransactionIdList(tidSet);
+			checksum += parser.getId() + tidSet.cardinality()
+					+ parser.getNeighborCount();
+		}
+		return checksum;
+	}
+
+	/**
+	 * Parses the lines the way the JSON reader did: a JSONArray per line, a
+	 * Transaction per id and a boxed edge per neighbor.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long json() throws JSONException {
+		long checksum = 0;
+		for (Text line : lines) {
+			JSONArray jsonVertex = new JSONArray(line.toString());
+			IntWritable id = new IntWritable(jsonVertex.getInt(0));
+
+			ItemVertexValue value = new ItemVertexValue();
+			JSONArray jsonTransactionArray = jsonVertex.getJSONArray(2);
+			for (int i = 0; i < jsonTransactionArray.length(); i++) {
+				value.addTransaction(new Transaction(jsonTransactionArray
+						.getInt(i)));
+			}
+			value.getTransactionIdList().runOptimize();
+
+			JSONArray jsonEdgeArray = jsonVertex.getJSONArray(1);
+			List<Edge<IntWritable, NullWritable>> edges = new ArrayList<Edge<IntWritable, NullWritable>>(
+					jsonEdgeArray.length());
+			for (int i = 0; i < jsonEdgeArray.length(); ++i) {
+				edges.add(EdgeFactory.create(
+						new IntWritable(jsonEdgeArray.getInt(i)),
+						NullWritable.get()));
+			}
+
+			checksum += id.get() + value.getTransactionIdList().cardinality()
+					+ edges.size();
+		}
+		return checksum;
+	}
+
+	private static void appendIds(StringBuilder line, int[] ids) {
+		line.append('[');
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(ids[i]);
+		}
+		line.append(']');
+	}
+
+}
@@ -0,0 +1,271 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Sparse container storing its values as a sorted char array.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+class ArrayTidContainer extends TidContainer {
+
+	char[] content;
+
+	int cardinality;
+
+	ArrayTidContainer() {
+		this.content = new char[4];
+	}
+
+	ArrayTidContainer(char[] content, int cardinality) {
+		this.content = content;
+		this.cardinality = cardinality;
+	}
+
+	@Override
+	int cardinality() {
+		return cardinality;
+	}
+
+	@Override
+	boolean contains(char value) {
+		return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+	}
+
+	@Override
+	TidContainer add(char value) {
+		/**
+		 * Appending in increasing order is the common case while loading the
+		 * transaction lists.
+		 */
+		int position;
+		if (cardinality == 0 || content[cardinality - 1] < value) {
+			position = cardinality;
+		} else {
+			position = Arrays.binarySearch(content, 0, cardinality, value);
+			if (position >= 0) {
+				return this;
+			}
+			position = -position - 1;
+		}
+		if (cardinality >= ARRAY_MAX_SIZE) {
+			BitmapTidContainer bitmap = toBitmap();
+			bitmap.set(value);
+			return bitmap;
+		}
+		if (cardinality == content.length) {
+			content = Arrays.copyOf(content, Math.min(ARRAY_MAX_SIZE,
+					Math.max(4, content.length * 2)));
+		}
+		System.arraycopy(content, position, content, position + 1,
+				cardinality - position);
+		content[position] = value;
+		cardinality++;
+		return this;
+	}
+
+	@Override
+	TidContainer and(TidContainer other) {
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			char[] result = new char[Math.min(cardinality, array.cardinality)];
+			int count = intersect(content, cardinality, array.content,
+					array.cardinality, result);
+			return new ArrayTidContainer(result, count);
+		}
+		char[] result = new char[cardinality];
+		int count = 0;
+		for (int i = 0; i < cardinality; i++) {
+			if (other.contains(content[i])) {
+				result[count++] = content[i];
+			}
+		}
+		return new ArrayTidContainer(result, count);
+	}
+
+	@Override
+	int andCardinality(TidContainer other) {
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			return intersect(content, cardinality, array.content,
+					array.cardinality, null);
+		}
+		if (other instanceof RunTidContainer) {
+			return other.andCardinality(this);
+		}
+		BitmapTidContainer bitmap = (BitmapTidContainer) other;
+		int count = 0;
+		for (int i = 0; i < cardinality; i++) {
+			if (bitmap.contains(content[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	TidContainer andNot(TidContainer other) {
+		char[] result = new char[cardinality];
+		int count = 0;
+		for (int i = 0; i < cardinality; i++) {
+			if (!other.contains(content[i])) {
+				result[count++] = content[i];
+			}
+		}
+		return new ArrayTidContainer(result, count);
+	}
+
+	@Override
+	TidContainer or(TidContainer other) {
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			char[] result = new char[cardinality + array.cardinality];
+			int i = 0, j = 0, count = 0;
+			while (i < cardinality && j < array.cardinality) {
+				char a = content[i];
+				char b = array.content[j];
+				if (a < b) {
+					result[count++] = a;
+					i++;
+				} else if (a > b) {
+					result[count++] = b;
+					j++;
+				} else {
+					result[count++] = a;
+					i++;
+					j++;
+				}
+			}
+			while (i < cardinality) {
+				result[count++] = content[i++];
+			}
+			while (j < array.cardinality) {
+				result[count++] = array.content[j++];
+			}
+			return fromSorted(result, count);
+		}
+		return other.or(this);
+	}
+
+	@Override
+	int fill(int[] out, int position, int high) {
+		for (int i = 0; i < cardinality; i++) {
+			out[position++] = high | content[i];
+		}
+		return position;
+	}
+
+	@Override
+	TidContainer optimize() {
+		int runs = RunTidContainer.countRuns(content, cardinality);
+		if (runSizeInBytes(runs) < arraySizeInBytes(cardinality)) {
+			return RunTidContainer.fromSorted(content, cardinality, runs);
+		}
+		if (content.length > cardinality) {
+			content = Arrays.copyOf(content, cardinality);
+		}
+		return this;
+	}
+
+	@Override
+	int sizeInBytes() {
+		return arraySizeInBytes(cardinality);
+	}
+
+	@Override
+	TidContainer copy() {
+		return new ArrayTidContainer(Arrays.copyOf(content, cardinality),
+				cardinality);
+	}
+
+	@Override
+	TidContainer toDense() {
+		return this;
+	}
+
+	BitmapTidContainer toBitmap() {
+		BitmapTidContainer bitmap = new BitmapTidContainer();
+		for (int i = 0; i < cardinality; i++) {
+			bitmap.set(content[i]);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Intersects two sorted arrays, galloping through the larger one when the
+	 * sizes are skewed. If the result array is null only the count is
+	 * computed.
+	 */
+	static int intersect(char[] a, int aLength, char[] b, int bLength,
+			char[] result) {
+		if (aLength > bLength) {
+			return intersect(b, bLength, a, aLength, result);
+		}
+		if (aLength == 0) {
+			return 0;
+		}
+		int count = 0;
+		if (bLength > 32 * aLength) {
+			int position = 0;
+			for (int i = 0; i < aLength && position < bLength; i++) {
+				position = gallop(b, position, bLength, a[i]);
+				if (position < bLength && b[position] == a[i]) {
+					if (result != null) {
+						result[count] = a[i];
+					}
+					count++;
+				}
+			}
+			return count;
+		}
+		int i = 0, j = 0;
+		while (i < aLength && j < bLength) {
+			char x = a[i];
+			char y = b[j];
+			if (x < y) {
+				i++;
+			} else if (x > y) {
+				j++;
+			} else {
+				if (result != null) {
+					result[count] = x;
+				}
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the first position at or after the given one whose value is not
+	 * smaller than the key.
+	 */
+	private static int gallop(char[] array, int position, int length, char key) {
+		if (array[position] >= key) {
+			return position;
+		}
+		int step = 1;
+		int low = position;
+		int high = position + step;
+		while (high < length && array[high] < key) {
+			low = high;
+			step <<= 1;
+			high = position + step;
+		}
+		if (high > length) {
+			high = length;
+		}
+		while (low + 1 < high) {
+			int middle = (low + high) >>> 1;
+			if (array[middle] < key) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+}
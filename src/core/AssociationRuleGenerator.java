@@ -0,0 +1,415 @@
+package core;
+
+import io.ItemVertexInputFormat;
+import io.ItemVertexLineParser;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Generates the association rules of the frequent itemsets written to a
+ * pattern directory, level-<size>/part-*, by any of the engines in the all
+ * mining mode. Every itemset Z of two or more items gives the rules X => Y
+ * with X and Y splitting it, of
+ *
+ * confidence = support(Z) / support(X)
+ * lift = confidence / (support(Y) / transactions)
+ * leverage = support(Z) / transactions - support(X) / transactions *
+ * support(Y) / transactions
+ *
+ * the supports of the subsets being read from the itemsets as well.
+ *
+ * The consequents of an itemset are grown an item at a time from the ones of
+ * the rules reaching the minimum confidence, as moving an item from the
+ * antecedent to the consequent can only lower the confidence: once X => Y
+ * falls below it so do the rules with an antecedent inside X. The itemsets
+ * are split in ranges handled by the tasks of a fork join pool.
+ *
+ * The rules reaching the minimum confidence, lift and leverage are written
+ * to <rule dir>/part-0, one per line: the antecedent items, a tab, the
+ * consequent items, then the support, confidence, lift and leverage
+ * separated by tabs.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class AssociationRuleGenerator {
+
+	private static double DEFAULT_MIN_CONFIDENCE = 0.5;
+
+	private static double DEFAULT_MIN_LIFT = 0.0;
+
+	private static double DEFAULT_MIN_LEVERAGE = -1.0;
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	/**
+	 * Number of itemsets a task generates the rules of without splitting
+	 * them further.
+	 */
+	private static int TASK_ITEMSETS = 1024;
+
+	private final Configuration conf;
+
+	private final double minConfidence;
+
+	private final double minLift;
+
+	private final double minLeverage;
+
+	private final int threads;
+
+	/**
+	 * Supports of the itemsets by their sorted items.
+	 */
+	private final Object2IntOpenHashMap<IntArrayList> supports = new Object2IntOpenHashMap<IntArrayList>();
+
+	private double transactions;
+
+	private Writer writer;
+
+	private long rules;
+
+	public AssociationRuleGenerator(Configuration conf) {
+		this.conf = conf;
+		this.minConfidence = conf.getDouble(
+				CommonConstants.MIN_CONFIDENCE_STRING, DEFAULT_MIN_CONFIDENCE);
+		this.minLift = conf.getDouble(CommonConstants.MIN_LIFT_STRING,
+				DEFAULT_MIN_LIFT);
+		this.minLeverage = conf.getDouble(CommonConstants.MIN_LEVERAGE_STRING,
+				DEFAULT_MIN_LEVERAGE);
+		this.threads = conf.getInt(CommonConstants.LOCAL_ENGINE_THREADS_STRING,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	public static void main(String[] args) throws IOException,
+			ParseException {
+		Options options = new Options();
+		options.addOption("patterns", true, "Pattern directory");
+		options.addOption("o", "output", true, "Rule directory");
+		options.addOption("transactions", true, "Number of transactions");
+		options.addOption("minconf", true, "Minimum confidence (default "
+				+ DEFAULT_MIN_CONFIDENCE + ")");
+		options.addOption("minlift", true, "Minimum lift (default "
+				+ DEFAULT_MIN_LIFT + ")");
+		options.addOption("minleverage", true, "Minimum leverage (default "
+				+ DEFAULT_MIN_LEVERAGE + ")");
+		options.addOption("threads", true, "Number of threads");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		Configuration conf = new Configuration();
+		setThresholds(cmd, conf);
+		if (cmd.hasOption("threads")) {
+			conf.setInt(CommonConstants.LOCAL_ENGINE_THREADS_STRING,
+					Integer.parseInt(cmd.getOptionValue("threads")));
+		}
+		new AssociationRuleGenerator(conf).generate(new Path(
+				cmd.getOptionValue("patterns")),
+				new Path(cmd.getOptionValue('o')),
+				Long.parseLong(cmd.getOptionValue("transactions")));
+	}
+
+	/**
+	 * Copies the rule thresholds given on a command line to a configuration.
+	 */
+	public static void setThresholds(CommandLine cmd, Configuration conf) {
+		if (cmd.hasOption("minconf")) {
+			conf.setDouble(CommonConstants.MIN_CONFIDENCE_STRING,
+					Double.parseDouble(cmd.getOptionValue("minconf")));
+		}
+		if (cmd.hasOption("minlift")) {
+			conf.setDouble(CommonConstants.MIN_LIFT_STRING,
+					Double.parseDouble(cmd.getOptionValue("minlift")));
+		}
+		if (cmd.hasOption("minleverage")) {
+			conf.setDouble(CommonConstants.MIN_LEVERAGE_STRING,
+					Double.parseDouble(cmd.getOptionValue("minleverage")));
+		}
+	}
+
+	/**
+	 * Writes the rules of the itemsets of the given pattern directory.
+	 *
+	 * @return the number of rules written.
+	 */
+	public long generate(Path patternDir, Path ruleDir, long transactions)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		this.transactions = transactions;
+		List<int[]> itemsets = readItemsets(patternDir);
+
+		Path ruleFile = new Path(ruleDir, "part-0");
+		FileSystem fs = ruleFile.getFileSystem(conf);
+		this.writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+				ruleFile, true), "UTF-8"), 1 << 20);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new RuleTask(itemsets, 0, itemsets.size()));
+		} finally {
+			pool.shutdown();
+			this.writer.close();
+		}
+		System.out.println("***** Rules: " + rules + " rules of "
+				+ itemsets.size() + " itemsets in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return rules;
+	}
+
+	/**
+	 * Counts the distinct transactions of an item vertex input, or sums up
+	 * their weights.
+	 */
+	public static long countTransactions(Path input, Configuration conf)
+			throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		boolean skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+		ItemVertexLineParser parser = new ItemVertexLineParser();
+		Text line = new Text();
+		TidSet transactions = new TidSet();
+		for (Path file : ItemVertexInputFormat.listVertexFiles(fs, input)) {
+			LineReader reader = new LineReader(fs.open(file), conf);
+			try {
+				while (reader.readLine(line) > 0) {
+					if (parser.parse(line.getBytes(), line.getLength())) {
+						transactions = transactions.or(parser.toTidSet());
+					} else if (!skipMalformedLines) {
+						throw new IllegalArgumentException(
+								"Couldn't get vertex from line " + line + ": "
+										+ parser.getError() + " at byte "
+										+ parser.getErrorPosition());
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return TransactionWeights.support(transactions, TransactionWeights
+				.load(conf.get(CommonConstants.TRANSACTION_WEIGHTS_STRING),
+						conf));
+	}
+
+	/**
+	 * Reads the supports of all the itemsets and returns the ones of two or
+	 * more items.
+	 */
+	private List<int[]> readItemsets(Path patternDir) throws IOException {
+		FileSystem fs = patternDir.getFileSystem(conf);
+		List<int[]> itemsets = new ArrayList<int[]>();
+		for (FileStatus levelDir : fs.listStatus(patternDir)) {
+			if (!levelDir.isDirectory()
+					|| !levelDir.getPath().getName().startsWith("level-")) {
+				continue;
+			}
+			for (Path file : ItemVertexInputFormat.listVertexFiles(fs,
+					levelDir.getPath())) {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(fs.open(file), "UTF-8"));
+				try {
+					String patternLine;
+					while ((patternLine = reader.readLine()) != null) {
+						FrequentItemset itemset = FrequentItemset
+								.fromPatternLine(patternLine);
+						supports.put(new IntArrayList(itemset.getItems()),
+								itemset.getSupport());
+						if (itemset.getItems().length > 1) {
+							itemsets.add(itemset.getItems());
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		return itemsets;
+	}
+
+	/**
+	 * Appends the rules of an itemset reaching the thresholds.
+	 *
+	 * @return the number of rules appended.
+	 */
+	private long appendRules(int[] itemset, StringBuilder out) {
+		int support = getSupport(new IntArrayList(itemset));
+		long count = 0;
+		List<int[]> consequents = new ArrayList<int[]>();
+		for (int item : itemset) {
+			consequents.add(new int[] { item });
+		}
+		while (!consequents.isEmpty()) {
+			List<int[]> kept = new ArrayList<int[]>();
+			for (int[] consequent : consequents) {
+				IntArrayList antecedent = without(itemset, consequent);
+				double confidence = (double) support
+						/ getSupport(antecedent);
+				if (confidence < minConfidence) {
+					continue;
+				}
+				kept.add(consequent);
+				double consequentShare = getSupport(new IntArrayList(
+						consequent)) / transactions;
+				double lift = confidence / consequentShare;
+				double leverage = support / transactions
+						- getSupport(antecedent) / transactions
+						* consequentShare;
+				if (lift < minLift || leverage < minLeverage) {
+					continue;
+				}
+				appendItems(out, antecedent.toIntArray()).append('\t');
+				appendItems(out, consequent).append('\t').append(support)
+						.append('\t').append(confidence).append('\t')
+						.append(lift).append('\t').append(leverage)
+						.append('\n');
+				count++;
+			}
+			/**
+			 * The antecedent keeps at least one item.
+			 */
+			if (kept.isEmpty() || kept.get(0).length + 1 >= itemset.length) {
+				break;
+			}
+			consequents = join(kept);
+		}
+		return count;
+	}
+
+	/**
+	 * Joins the sorted consequents sharing all their items but the last one
+	 * into the consequents one item larger.
+	 */
+	private static List<int[]> join(List<int[]> consequents) {
+		List<int[]> joined = new ArrayList<int[]>();
+		for (int i = 0; i < consequents.size(); i++) {
+			int[] consequent = consequents.get(i);
+			for (int j = i + 1; j < consequents.size(); j++) {
+				int[] other = consequents.get(j);
+				if (!sharesPrefix(consequent, other)) {
+					break;
+				}
+				int[] larger = new int[consequent.length + 1];
+				System.arraycopy(consequent, 0, larger, 0, consequent.length);
+				larger[consequent.length] = other[other.length - 1];
+				joined.add(larger);
+			}
+		}
+		return joined;
+	}
+
+	private static boolean sharesPrefix(int[] consequent, int[] other) {
+		for (int i = 0; i < consequent.length - 1; i++) {
+			if (consequent[i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static IntArrayList without(int[] itemset, int[] consequent) {
+		IntArrayList rest = new IntArrayList(itemset.length
+				- consequent.length);
+		int j = 0;
+		for (int item : itemset) {
+			if (j < consequent.length && consequent[j] == item) {
+				j++;
+			} else {
+				rest.add(item);
+			}
+		}
+		return rest;
+	}
+
+	private int getSupport(IntArrayList items) {
+		if (!supports.containsKey(items)) {
+			throw new IllegalStateException("No support for itemset " + items
+					+ ", rules need all the frequent itemsets");
+		}
+		return supports.getInt(items);
+	}
+
+	private static StringBuilder appendItems(StringBuilder out, int[] items) {
+		for (int i = 0; i < items.length; i++) {
+			if (i > 0) {
+				out.append(' ');
+			}
+			out.append(items[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Writes the rules of a task. Called by the tasks concurrently.
+	 */
+	private synchronized void write(CharSequence text, long count)
+			throws IOException {
+		writer.append(text);
+		rules += count;
+	}
+
+	/**
+	 * Generates the rules of a range of the itemsets, splitting it in two
+	 * tasks while it is large.
+	 */
+	private class RuleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<int[]> itemsets;
+
+		private final int from;
+
+		private final int to;
+
+		RuleTask(List<int[]> itemsets, int from, int to) {
+			this.itemsets = itemsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TASK_ITEMSETS) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RuleTask(itemsets, from, middle), new RuleTask(
+						itemsets, middle, to));
+				return;
+			}
+			StringBuilder out = new StringBuilder();
+			long count = 0;
+			for (int i = from; i < to; i++) {
+				count += appendRules(itemsets.get(i), out);
+			}
+			try {
+				write(out, count);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot write rules", e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,292 @@
+package core;
+
+/**
+ * Dense container storing its values as a 2^16 bit bitmap. Intersections with
+ * other bitmaps are computed a 64 bit word at a time.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+class BitmapTidContainer extends TidContainer {
+
+	final long[] words;
+
+	int cardinality;
+
+	BitmapTidContainer() {
+		this.words = new long[BITMAP_WORDS];
+	}
+
+	BitmapTidContainer(long[] words, int cardinality) {
+		this.words = words;
+		this.cardinality = cardinality;
+	}
+
+	@Override
+	int cardinality() {
+		return cardinality;
+	}
+
+	@Override
+	boolean contains(char value) {
+		return (words[value >>> 6] & (1L << value)) != 0;
+	}
+
+	void set(char value) {
+		long before = words[value >>> 6];
+		long after = before | (1L << value);
+		words[value >>> 6] = after;
+		if (before != after) {
+			cardinality++;
+		}
+	}
+
+	/**
+	 * Sets all the values in the inclusive range.
+	 */
+	void setRange(int start, int end) {
+		int firstWord = start >>> 6;
+		int lastWord = end >>> 6;
+		long firstMask = -1L << start;
+		long lastMask = -1L >>> (63 - (end & 63));
+		for (int i = firstWord; i <= lastWord; i++) {
+			long mask = -1L;
+			if (i == firstWord) {
+				mask &= firstMask;
+			}
+			if (i == lastWord) {
+				mask &= lastMask;
+			}
+			cardinality += Long.bitCount(mask & ~words[i]);
+			words[i] |= mask;
+		}
+	}
+
+	/**
+	 * Counts the set values in the inclusive range.
+	 */
+	int countRange(int start, int end) {
+		int firstWord = start >>> 6;
+		int lastWord = end >>> 6;
+		long firstMask = -1L << start;
+		long lastMask = -1L >>> (63 - (end & 63));
+		int count = 0;
+		for (int i = firstWord; i <= lastWord; i++) {
+			long mask = -1L;
+			if (i == firstWord) {
+				mask &= firstMask;
+			}
+			if (i == lastWord) {
+				mask &= lastMask;
+			}
+			count += Long.bitCount(words[i] & mask);
+		}
+		return count;
+	}
+
+	@Override
+	TidContainer add(char value) {
+		set(value);
+		return this;
+	}
+
+	@Override
+	TidContainer and(TidContainer other) {
+		if (other instanceof BitmapTidContainer) {
+			BitmapTidContainer bitmap = (BitmapTidContainer) other;
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] & bitmap.words[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapTidContainer(result, count).shrink();
+		}
+		return other.and(this);
+	}
+
+	@Override
+	int andCardinality(TidContainer other) {
+		if (other instanceof BitmapTidContainer) {
+			long[] otherWords = ((BitmapTidContainer) other).words;
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				count += Long.bitCount(words[i] & otherWords[i]);
+			}
+			return count;
+		}
+		return other.andCardinality(this);
+	}
+
+	@Override
+	TidContainer andNot(TidContainer other) {
+		long[] result = words.clone();
+		if (other instanceof BitmapTidContainer) {
+			long[] otherWords = ((BitmapTidContainer) other).words;
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] &= ~otherWords[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapTidContainer(result, count).shrink();
+		}
+		BitmapTidContainer difference = new BitmapTidContainer(result,
+				cardinality);
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			for (int i = 0; i < array.cardinality; i++) {
+				difference.clear(array.content[i]);
+			}
+		} else {
+			RunTidContainer run = (RunTidContainer) other;
+			for (int i = 0; i < run.runCount; i++) {
+				difference.clearRange(run.start(i), run.end(i));
+			}
+		}
+		return difference.shrink();
+	}
+
+	@Override
+	TidContainer or(TidContainer other) {
+		long[] result = words.clone();
+		BitmapTidContainer union = new BitmapTidContainer(result, cardinality);
+		if (other instanceof BitmapTidContainer) {
+			long[] otherWords = ((BitmapTidContainer) other).words;
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] |= otherWords[i];
+				count += Long.bitCount(result[i]);
+			}
+			union.cardinality = count;
+		} else if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			for (int i = 0; i < array.cardinality; i++) {
+				union.set(array.content[i]);
+			}
+		} else {
+			RunTidContainer run = (RunTidContainer) other;
+			for (int i = 0; i < run.runCount; i++) {
+				union.setRange(run.start(i), run.end(i));
+			}
+		}
+		return union;
+	}
+
+	private void clear(char value) {
+		long before = words[value >>> 6];
+		long after = before & ~(1L << value);
+		words[value >>> 6] = after;
+		if (before != after) {
+			cardinality--;
+		}
+	}
+
+	private void clearRange(int start, int end) {
+		int firstWord = start >>> 6;
+		int lastWord = end >>> 6;
+		long firstMask = -1L << start;
+		long lastMask = -1L >>> (63 - (end & 63));
+		for (int i = firstWord; i <= lastWord; i++) {
+			long mask = -1L;
+			if (i == firstWord) {
+				mask &= firstMask;
+			}
+			if (i == lastWord) {
+				mask &= lastMask;
+			}
+			cardinality -= Long.bitCount(mask & words[i]);
+			words[i] &= ~mask;
+		}
+	}
+
+	@Override
+	int fill(int[] out, int position, int high) {
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			long word = words[i];
+			while (word != 0) {
+				out[position++] = high
+						| ((i << 6) + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return position;
+	}
+
+	@Override
+	TidContainer optimize() {
+		int runs = countRuns();
+		if (runSizeInBytes(runs) >= Math.min(bitmapSizeInBytes(),
+				arraySizeInBytes(cardinality))) {
+			return shrink();
+		}
+		RunTidContainer run = new RunTidContainer(new char[2 * runs], 0);
+		int start = -1;
+		int previous = -2;
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			long word = words[i];
+			while (word != 0) {
+				int value = (i << 6) + Long.numberOfTrailingZeros(word);
+				if (value != previous + 1) {
+					if (start >= 0) {
+						run.appendRun(start, previous);
+					}
+					start = value;
+				}
+				previous = value;
+				word &= word - 1;
+			}
+		}
+		if (start >= 0) {
+			run.appendRun(start, previous);
+		}
+		return run;
+	}
+
+	private int countRuns() {
+		int runs = 0;
+		for (int i = 0; i < BITMAP_WORDS - 1; i++) {
+			long word = words[i];
+			runs += Long.bitCount((~word) & (word << 1));
+			runs += (int) ((word >>> 63) & ~words[i + 1]);
+		}
+		long last = words[BITMAP_WORDS - 1];
+		runs += Long.bitCount((~last) & (last << 1));
+		runs += (int) (last >>> 63);
+		return runs;
+	}
+
+	/**
+	 * Converts sparse bitmaps back to arrays.
+	 */
+	TidContainer shrink() {
+		if (cardinality > ARRAY_MAX_SIZE) {
+			return this;
+		}
+		char[] content = new char[cardinality];
+		int count = 0;
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			long word = words[i];
+			while (word != 0) {
+				content[count++] = (char) ((i << 6) + Long
+						.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return new ArrayTidContainer(content, count);
+	}
+
+	@Override
+	int sizeInBytes() {
+		return bitmapSizeInBytes();
+	}
+
+	@Override
+	TidContainer copy() {
+		return new BitmapTidContainer(words.clone(), cardinality);
+	}
+
+	@Override
+	TidContainer toDense() {
+		return this;
+	}
+}
@@ -0,0 +1,162 @@
+package core;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Chooses the checkpoint interval of a job from the times measured by the
+ * last run writing to the same metrics directory, Giraph taking a checkpoint
+ * every given number of supersteps for the whole job. The interval is the
+ * smallest one keeping the time spent checkpointing, spread over the
+ * supersteps between two checkpoints, below a fraction of the time of a
+ * superstep.
+ *
+ * The time of a superstep is the one of its slowest worker. The time of a
+ * checkpoint is the time between two supersteps when a checkpoint was taken
+ * less the time between two supersteps when none was, if the last run had
+ * any. A last run without checkpoints to measure keeps its interval, a
+ * directory without metrics gives the default interval.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class CheckpointScheduler {
+
+	/**
+	 * Names of the timings the worker contexts add to the metrics files.
+	 */
+	public static final String[] TIMING_NAMES = { "superstep ms",
+			"barrier ms", "checkpoint interval" };
+
+	private static int DEFAULT_CHECKPOINT_INTERVAL = 1;
+
+	private static float DEFAULT_CHECKPOINT_OVERHEAD = 0.1f;
+
+	private final Configuration conf;
+
+	private final float overhead;
+
+	public CheckpointScheduler(Configuration conf) {
+		this.conf = conf;
+		this.overhead = conf.getFloat(
+				CommonConstants.CHECKPOINT_OVERHEAD_STRING,
+				DEFAULT_CHECKPOINT_OVERHEAD);
+	}
+
+	/**
+	 * Returns the checkpoint interval measured in the given metrics
+	 * directory, or the default interval if it is null or holds no timings.
+	 */
+	public int interval(Path metricsDir) throws IOException {
+		if (metricsDir == null) {
+			return DEFAULT_CHECKPOINT_INTERVAL;
+		}
+		FileSystem fs = metricsDir.getFileSystem(conf);
+		if (!fs.exists(metricsDir)) {
+			return DEFAULT_CHECKPOINT_INTERVAL;
+		}
+
+		/**
+		 * Superstep and barrier times of the slowest worker by superstep.
+		 */
+		Long2ObjectOpenHashMap<long[]> timings = new Long2ObjectOpenHashMap<long[]>();
+		int lastInterval = 0;
+		for (FileStatus status : fs.listStatus(metricsDir)) {
+			if (!status.isFile()
+					|| !status.getPath().getName().startsWith("worker-")) {
+				continue;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					fs.open(status.getPath()), "UTF-8"));
+			try {
+				String line = reader.readLine();
+				if (line == null) {
+					continue;
+				}
+				List<String> names = Arrays.asList(line.split("\t"));
+				int superstepIndex = names.indexOf(TIMING_NAMES[0]);
+				int barrierIndex = names.indexOf(TIMING_NAMES[1]);
+				int intervalIndex = names.indexOf(TIMING_NAMES[2]);
+				if (superstepIndex < 0 || barrierIndex < 0
+						|| intervalIndex < 0) {
+					continue;
+				}
+				while ((line = reader.readLine()) != null) {
+					String[] values = line.split("\t");
+					long superstep = Long.parseLong(values[0]);
+					long[] timing = timings.get(superstep);
+					if (timing == null) {
+						timing = new long[2];
+						timings.put(superstep, timing);
+					}
+					timing[0] = Math.max(timing[0],
+							Long.parseLong(values[superstepIndex]));
+					timing[1] = Math.max(timing[1],
+							Long.parseLong(values[barrierIndex]));
+					lastInterval = Integer.parseInt(values[intervalIndex]);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		if (timings.isEmpty()) {
+			return DEFAULT_CHECKPOINT_INTERVAL;
+		}
+
+		/**
+		 * The first superstep follows the input superstep, its barrier time
+		 * is not measured.
+		 */
+		long superstepMillis = 0;
+		long checkpointBarrierMillis = 0;
+		int checkpoints = 0;
+		long barrierMillis = 0;
+		int barriers = 0;
+		for (Long2ObjectMap.Entry<long[]> entry : timings
+				.long2ObjectEntrySet()) {
+			long superstep = entry.getLongKey();
+			long[] timing = entry.getValue();
+			superstepMillis += timing[0];
+			if (superstep == 0) {
+				continue;
+			}
+			if (lastInterval > 0 && superstep % lastInterval == 0) {
+				checkpointBarrierMillis += timing[1];
+				checkpoints++;
+			} else {
+				barrierMillis += timing[1];
+				barriers++;
+			}
+		}
+		if (checkpoints == 0) {
+			return lastInterval > 0 ? lastInterval
+					: DEFAULT_CHECKPOINT_INTERVAL;
+		}
+		double superstepCost = Math.max(1.0, (double) superstepMillis
+				/ timings.size());
+		double checkpointCost = (double) checkpointBarrierMillis / checkpoints;
+		if (barriers > 0) {
+			checkpointCost -= (double) barrierMillis / barriers;
+		}
+		int interval = (int) Math.max(1,
+				Math.ceil(checkpointCost / (overhead * superstepCost)));
+		System.out.println("***** Checkpoint interval: " + interval
+				+ " supersteps for supersteps of " + (long) superstepCost
+				+ " ms and checkpoints of "
+				+ (long) Math.max(0, checkpointCost) + " ms measured in "
+				+ metricsDir);
+		return interval;
+	}
+
+}
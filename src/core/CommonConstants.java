@@ -4,6 +4,118 @@ public class CommonConstants {
 
 	public static String MINIMUM_CUPPORT_STRING = "min_support";
 
+	public static String DIFFSET_MODE_STRING = "diffset_mode";
+
+	public static String DIFFSET_DENSITY_THRESHOLD_STRING = "diffset_density_threshold";
+
+	public static String ITEM_ORDER_STRING = "item_order";
+
+	public static String ID_ITEM_ORDER = "id";
+
+	public static String FREQUENCY_ITEM_ORDER = "frequency";
+
+	public static String MINING_MODE_STRING = "mining_mode";
+
+	public static String ALL_MINING_MODE = "all";
+
+	public static String CLOSED_MINING_MODE = "closed";
+
+	public static String MAXIMAL_MINING_MODE = "maximal";
+
+	public static String PATTERN_OUTPUT_DIR_STRING = "pattern_output_dir";
+
+	public static String SKIP_MALFORMED_LINES_STRING = "skip_malformed_lines";
+
+	public static String DEBUG_LEVEL_STRING = "debug_level";
+
+	public static String DEBUG_SAMPLE_RATE_STRING = "debug_sample_rate";
+
+	public static String METRICS_OUTPUT_DIR_STRING = "metrics_output_dir";
+
+	public static String LEVEL_COUNTERS_STRING = "level_counters";
+
+	/**
+	 * Largest level given its own counters when they are turned on, jobs
+	 * being limited in the number of counters.
+	 */
+	public static int MAX_COUNTER_LEVEL = 3;
+
+	public static String GIRAPH_ENGINE = "giraph";
+
+	public static String LOCAL_ENGINE = "local";
+
+	public static String AUTO_ENGINE = "auto";
+
+	public static String LOCAL_ENGINE_THRESHOLD_STRING = "local_engine_threshold";
+
+	public static String LOCAL_ENGINE_THREADS_STRING = "local_engine_threads";
+
+	public static String ITEM_DICTIONARY_STRING = "item_dictionary";
+
+	public static String TRANSACTION_DICTIONARY_STRING = "transaction_dictionary";
+
+	public static String TRANSACTION_WEIGHTS_STRING = "transaction_weights";
+
+	public static String HASH_PARTITIONER = "hash";
+
+	public static String COOCCURRENCE_PARTITIONER = "cooccurrence";
+
+	public static String VERTICES_OUTPUT_FORMAT = "vertices";
+
+	public static String PATTERNS_OUTPUT_FORMAT = "patterns";
+
+	public static String BINARY_PATTERNS_OUTPUT_FORMAT = "binary";
+
+	public static String ITEM_GROUPS_STRING = "item_groups";
+
+	public static String SAMPLE_RATE_STRING = "sample_rate";
+
+	public static String SAMPLE_SUPPORT_FACTOR_STRING = "sample_support_factor";
+
+	public static String SAMPLE_ITEMSETS_STRING = "sample_itemsets";
+
+	public static String SAMPLE_MISSES_COUNTER = "Sample border itemsets frequent";
+
+	public static String MIN_CONFIDENCE_STRING = "min_confidence";
+
+	public static String MIN_LIFT_STRING = "min_lift";
+
+	public static String MIN_LEVERAGE_STRING = "min_leverage";
+
+	public static String TIDSET_STORE_DIR_STRING = "tidset_store_dir";
+
+	public static String TIDSET_CACHE_MB_STRING = "tidset_cache_mb";
+
+	public static String CHECKPOINT_OVERHEAD_STRING = "checkpoint_overhead";
+
+	public static String AUTO_CHECKPOINT_INTERVAL = "auto";
+
+	public static String WAVE_MEMORY_BUDGET_STRING = "wave_memory_budget";
+
+	public static String MAX_ITEMSET_SIZE_STRING = "max_itemset_size";
+
+	public static String NEW_TRANSACTIONS_STRING = "new_transactions";
+
+	public static String FREQUENT_ITEMSETS_AGGREGATOR = "frequent_itemsets";
+
+	public static String CANDIDATE_ITEMSETS_AGGREGATOR = "candidate_itemsets";
+
+	public static String MESSAGE_BYTES_AGGREGATOR = "message_bytes";
+
+	public static String ACTIVE_VERTICES_AGGREGATOR = "active_vertices";
+
+	public static String FLUSH_PATTERNS_AGGREGATOR = "flush_patterns";
+
+	public static String WAVE_INDEX_AGGREGATOR = "wave_index";
+
+	public static String WAVE_START_AGGREGATOR = "wave_start";
+
+	public static String WAVE_END_AGGREGATOR = "wave_end";
+
+	public static String WAVE_STEP_AGGREGATOR = "wave_step";
+
+	public static String FP_MINING_COUNTER_GROUP = "Frequent Pattern Mining";
+
 	public static String FP_MINING_ALGOTIHHM_NAME = "Frequent Pattern Mining Algorithm";
 
 }
@@ -0,0 +1,77 @@
+package core;
+
+import io.CooccurrenceClustering;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.IOException;
+
+import org.apache.giraph.conf.ImmutableClassesGiraphConfiguration;
+import org.apache.giraph.partition.SimplePartitionerFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+
+/**
+ * Places the item vertices of a group computed by
+ * {@link CooccurrenceClustering} on the same worker, so the messages between
+ * strongly co-occurring items stay local. Group g goes to worker g modulo the
+ * number of workers, partition p being owned by worker p modulo the number of
+ * workers, and the items of a group are spread over the partitions of its
+ * worker by a hash of their ids. Items missing from the groups are hash
+ * partitioned.
+ *
+ * The groups file is set by {@link CommonConstants#ITEM_GROUPS_STRING} and
+ * read by the master and every worker.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class CooccurrencePartitionerFactory extends
+		SimplePartitionerFactory<IntWritable, ItemVertexValue, NullWritable> {
+
+	private Int2IntOpenHashMap groups;
+
+	@Override
+	public void setConf(
+			ImmutableClassesGiraphConfiguration<IntWritable, ItemVertexValue, NullWritable> conf) {
+		super.setConf(conf);
+		try {
+			this.groups = CooccurrenceClustering.loadGroups(
+					conf.get(CommonConstants.ITEM_GROUPS_STRING), conf);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the item groups", e);
+		}
+		if (this.groups == null) {
+			throw new IllegalStateException("Need to specify "
+					+ CommonConstants.ITEM_GROUPS_STRING + " when using "
+					+ getClass().getSimpleName());
+		}
+	}
+
+	@Override
+	protected int getPartition(IntWritable id, int partitionCount,
+			int workerCount) {
+		int group = groups.get(id.get());
+		int hash = mix(id.get());
+		if (group < 0) {
+			return hash % partitionCount;
+		}
+		int worker = group % workerCount;
+		int partitionsPerWorker = partitionCount / workerCount;
+		if (partitionsPerWorker == 0) {
+			return worker % partitionCount;
+		}
+		return worker + workerCount * (hash % partitionsPerWorker);
+	}
+
+	@Override
+	protected int getWorker(int partition, int partitionCount, int workerCount) {
+		return partition % workerCount;
+	}
+
+	private static int mix(int id) {
+		int hash = id * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return hash & Integer.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,78 @@
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Helpers for writing sorted integer ids as the variable length encoded
+ * differences between consecutive ids. Ids are ordered as unsigned values, the
+ * differences are taken modulo 2^32 so that they can always be added back.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public final class DeltaCoding {
+
+	private DeltaCoding() {
+	}
+
+	/**
+	 * Writes the ids in the given range as differences from the previous one,
+	 * starting from the given previous id.
+	 */
+	public static void writeDeltas(DataOutput dataOut, int[] sortedIds,
+			int from, int to, int previous) throws IOException {
+		for (int i = from; i < to; i++) {
+			WritableUtils.writeVInt(dataOut, sortedIds[i] - previous);
+			previous = sortedIds[i];
+		}
+	}
+
+	/**
+	 * Number of bytes {@link #writeDeltas} takes for the given range.
+	 */
+	public static int deltasSize(int[] sortedIds, int from, int to,
+			int previous) {
+		int size = 0;
+		for (int i = from; i < to; i++) {
+			size += WritableUtils.getVIntSize(sortedIds[i] - previous);
+			previous = sortedIds[i];
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a count followed by the delta encoded ids.
+	 */
+	public static void writeSortedIds(DataOutput dataOut, int[] sortedIds,
+			int length) throws IOException {
+		WritableUtils.writeVInt(dataOut, length);
+		writeDeltas(dataOut, sortedIds, 0, length, 0);
+	}
+
+	/**
+	 * Reads ids written by {@link #writeSortedIds}, reusing the given array
+	 * only when its length is exactly the number of ids read, as callers take
+	 * the number of ids from the length of the array.
+	 */
+	public static int[] readSortedIds(DataInput dataIn, int[] reuse)
+			throws IOException {
+		int length = WritableUtils.readVInt(dataIn);
+		int[] ids = (reuse != null && reuse.length == length) ? reuse
+				: new int[length];
+		int previous = 0;
+		for (int i = 0; i < length; i++) {
+			previous += WritableUtils.readVInt(dataIn);
+			ids[i] = previous;
+		}
+		return ids;
+	}
+
+	public static int sortedIdsSize(int[] sortedIds, int length) {
+		return WritableUtils.getVIntSize(length)
+				+ deltasSize(sortedIds, 0, length, 0);
+	}
+}
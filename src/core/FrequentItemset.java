@@ -0,0 +1,177 @@
+package core;
+
+import io.IdDictionary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * A discovered frequent itemset reduced to what is reported for it, its items
+ * and its support.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class FrequentItemset implements Writable {
+
+	private static int ITEMS_INDEX = 0;
+
+	private static int SUPPORT_INDEX = 1;
+
+	private int[] items = new int[0];
+
+	private int support;
+
+	public FrequentItemset() {
+	}
+
+	public FrequentItemset(ItemSet items, int support) {
+		this.items = items.getItems().clone();
+		this.support = support;
+	}
+
+	public FrequentItemset(int[] sortedItems, int support) {
+		this.items = sortedItems;
+		this.support = support;
+	}
+
+	/**
+	 * Sorted ids of the items.
+	 */
+	public int[] getItems() {
+		return items;
+	}
+
+	public int getSupport() {
+		return support;
+	}
+
+	/**
+	 * Returns the items as an item set, of a copy of the ids as these are
+	 * overwritten when the itemset is read again.
+	 */
+	public ItemSet getItemSet() {
+		return ItemSet.fromSorted(this.items.clone());
+	}
+
+	/**
+	 * Tells whether the items of this itemset are a proper subset of the
+	 * items of the given one.
+	 */
+	public boolean isProperSubsetOf(FrequentItemset other) {
+		if (this.items.length >= other.items.length) {
+			return false;
+		}
+		int j = 0;
+		for (int i = 0; i < this.items.length; i++) {
+			while (j < other.items.length && other.items[j] < this.items[i]) {
+				j++;
+			}
+			if (j == other.items.length || other.items[j] != this.items[i]) {
+				return false;
+			}
+			j++;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns this itemset with its items replaced by their original ids.
+	 */
+	public FrequentItemset translate(IdDictionary dictionary) {
+		FrequentItemset itemset = new FrequentItemset();
+		itemset.items = new int[this.items.length];
+		for (int i = 0; i < this.items.length; i++) {
+			itemset.items[i] = dictionary.getOriginalId(this.items[i]);
+		}
+		Arrays.sort(itemset.items);
+		itemset.support = this.support;
+		return itemset;
+	}
+
+	/**
+	 * Returns the line the itemset is written as to the pattern files, the
+	 * sorted item ids separated by spaces followed by a tab and the support.
+	 */
+	public String toPatternLine() {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < this.items.length; i++) {
+			if (i > 0) {
+				line.append(' ');
+			}
+			line.append(this.items[i]);
+		}
+		return line.append('\t').append(this.support).append('\n')
+				.toString();
+	}
+
+	/**
+	 * Parses a line written by {@link #toPatternLine()}, without its line
+	 * end.
+	 */
+	public static FrequentItemset fromPatternLine(String line) {
+		int tab = line.indexOf('\t');
+		String[] ids = line.substring(0, tab).split(" ");
+		int[] items = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			items[i] = Integer.parseInt(ids[i]);
+		}
+		Arrays.sort(items);
+		return new FrequentItemset(items, Integer.parseInt(line
+				.substring(tab + 1)));
+	}
+
+	@Override
+	public void readFields(DataInput dataInput) throws IOException {
+		this.items = DeltaCoding.readSortedIds(dataInput, this.items);
+		this.support = WritableUtils.readVInt(dataInput);
+	}
+
+	@Override
+	public void write(DataOutput dataOut) throws IOException {
+		DeltaCoding.writeSortedIds(dataOut, this.items, this.items.length);
+		WritableUtils.writeVInt(dataOut, this.support);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FrequentItemset)) {
+			return false;
+		}
+		FrequentItemset other = (FrequentItemset) obj;
+		return this.support == other.support
+				&& Arrays.equals(this.items, other.items);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(this.items) + this.support;
+	}
+
+	@Override
+	public String toString() {
+		JSONArray itemsetJSONArray = new JSONArray();
+		try {
+			JSONArray itemsJSONArray = new JSONArray();
+			for (int item : this.items) {
+				itemsJSONArray.put(item);
+			}
+			itemsetJSONArray.put(ITEMS_INDEX, itemsJSONArray);
+			itemsetJSONArray.put(SUPPORT_INDEX, this.support);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+		return itemsetJSONArray.toString();
+	}
+
+}
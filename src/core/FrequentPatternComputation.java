@@ -1,12 +1,24 @@
 package core;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.giraph.edge.Edge;
 import org.apache.giraph.graph.BasicComputation;
 import org.apache.giraph.graph.Vertex;
+import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 
 /**
@@ -25,6 +37,104 @@ public class FrequentPatternComputation
 
 	private static int DEFAULT_MIN_SUPPORT = 100;
 
+	private static boolean DEFAULT_DIFFSET_MODE = false;
+
+	private static float DEFAULT_DIFFSET_DENSITY_THRESHOLD = 0.5f;
+
+	private static String DEFAULT_ITEM_ORDER = CommonConstants.FREQUENCY_ITEM_ORDER;
+
+	private static String DEFAULT_MINING_MODE = CommonConstants.ALL_MINING_MODE;
+
+	private static int DEFAULT_MAX_ITEMSET_SIZE = Integer.MAX_VALUE;
+
+	private static int DEFAULT_DEBUG_LEVEL = 0;
+
+	private static float DEFAULT_DEBUG_SAMPLE_RATE = 1.0f;
+
+	/**
+	 * Size of the space the first items of the itemsets are hashed into to
+	 * split the levels in waves.
+	 */
+	public static int WAVE_HASH_SPACE = 1 << 24;
+
+	/**
+	 * Work done by the vertices computed by this thread in the current
+	 * superstep, handed to the worker context at its end.
+	 */
+	private final SuperstepMetrics metrics = new SuperstepMetrics();
+
+	/**
+	 * Collections filled while computing a vertex, cleared and reused for
+	 * the next vertices of this thread instead of being allocated for each.
+	 */
+	private final Int2ObjectOpenHashMap<FrequentPatternMessage> feedbackMessages = new Int2ObjectOpenHashMap<FrequentPatternMessage>();
+
+	private final IntOpenHashSet successorIds = new IntOpenHashSet();
+
+	private final IntArrayList infrequentPairIds = new IntArrayList();
+
+	/**
+	 * Itemsets extended in the closed and maximal modes, with their last
+	 * items and their extensions (null if infrequent), kept until all the
+	 * messages of the vertex are read.
+	 */
+	private final List<ItemSet> extendedItemsets = new ArrayList<ItemSet>();
+
+	private final IntArrayList extendedLastItems = new IntArrayList();
+
+	private final List<ItemsAndTransactionsPair> condensedExtensions = new ArrayList<ItemsAndTransactionsPair>();
+
+	/**
+	 * Items found to occur in all the transactions of the itemsets of the
+	 * previous level, keyed by these itemsets.
+	 */
+	private final Map<ItemSet, IntOpenHashSet> absorbedItems = new HashMap<ItemSet, IntOpenHashSet>();
+
+	/**
+	 * Extensions skipped as neither frequent in the sample nor in its
+	 * negative border, and frequent extensions of the border, in the
+	 * current superstep.
+	 */
+	private long sampleSkipped;
+
+	private long sampleMisses;
+
+	/**
+	 * Wave and step of the level-wise mining of the current superstep, set
+	 * by the master.
+	 */
+	private int waveIndex;
+
+	private int waveStart;
+
+	private int waveEnd;
+
+	private int currentStep;
+
+	@Override
+	public void preSuperstep() {
+		metrics.clear();
+		sampleSkipped = 0;
+		sampleMisses = 0;
+		waveIndex = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_INDEX_AGGREGATOR).get();
+		waveStart = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_START_AGGREGATOR).get();
+		waveEnd = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_END_AGGREGATOR).get();
+		currentStep = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_STEP_AGGREGATOR).get();
+	}
+
+	@Override
+	public void postSuperstep() {
+		FrequentPatternWorkerContext workerContext = this.getWorkerContext();
+		workerContext.addMetrics(metrics);
+		if (workerContext.hasSampleItemsets()) {
+			workerContext.addSampleCounts(sampleSkipped, sampleMisses);
+		}
+	}
+
 	@Override
 	public void compute(
 			Vertex<IntWritable, ItemVertexValue, NullWritable> vertex,
@@ -37,16 +147,52 @@ public class FrequentPatternComputation
 				CommonConstants.MINIMUM_CUPPORT_STRING, DEFAULT_MIN_SUPPORT);
 
 		/**
-		 * Messages for debugging purpose.
+		 * Getting whether all the frequent itemsets are mined or only the
+		 * closed or the maximal ones.
+		 */
+		String MINING_MODE = this.getConf().get(
+				CommonConstants.MINING_MODE_STRING, DEFAULT_MINING_MODE);
+		boolean CLOSED_MODE = CommonConstants.CLOSED_MINING_MODE
+				.equals(MINING_MODE);
+		boolean MAXIMAL_MODE = CommonConstants.MAXIMAL_MINING_MODE
+				.equals(MINING_MODE);
+		boolean CONDENSED_MODE = CLOSED_MODE || MAXIMAL_MODE;
+
+		/**
+		 * Getting whether dense levels switch to diffsets and the density
+		 * above which they do. The closed and maximal modes skip extensions
+		 * whose siblings the diffsets would be computed from, they always
+		 * propagate tidsets.
+		 */
+		boolean DIFFSET_MODE = this.getConf().getBoolean(
+				CommonConstants.DIFFSET_MODE_STRING, DEFAULT_DIFFSET_MODE)
+				&& !CONDENSED_MODE;
+		float DIFFSET_DENSITY_THRESHOLD = this.getConf().getFloat(
+				CommonConstants.DIFFSET_DENSITY_THRESHOLD_STRING,
+				DEFAULT_DIFFSET_DENSITY_THRESHOLD);
+
+		/**
+		 * Getting the order in which items extend itemsets, by item id or by
+		 * increasing support.
+		 */
+		boolean FREQUENCY_ORDER = CommonConstants.FREQUENCY_ITEM_ORDER
+				.equals(this.getConf().get(CommonConstants.ITEM_ORDER_STRING,
+						DEFAULT_ITEM_ORDER));
+
+		/**
+		 * Getting the largest number of items of the itemsets mined.
 		 */
-		System.out.println("******************************************");
-		System.out
-				.println("Worker Index: "
-						+ this.getWorkerContext().getMyWorkerIndex()
-						+ " Total Workers: "
-						+ this.getWorkerContext().getWorkerCount());
-		System.out.println("Superstep : " + getSuperstep() + " Vertex : "
-				+ vertex.getId().get());
+		int MAX_ITEMSET_SIZE = this.getConf().getInt(
+				CommonConstants.MAX_ITEMSET_SIZE_STRING,
+				DEFAULT_MAX_ITEMSET_SIZE);
+
+		/**
+		 * Getting the weights of the transactions standing for identical
+		 * baskets, null if they are not weighted.
+		 */
+		TransactionWeights WEIGHTS = this
+				.<FrequentPatternWorkerContext> getWorkerContext()
+				.getTransactionWeights();
 
 		/**
 		 * Getting the vertex id of the vertex for which the compute method is
@@ -54,12 +200,38 @@ public class FrequentPatternComputation
 		 */
 		int vertexId = vertex.getId().get();
 
+		/**
+		 * Debug output is printed for a sample of the vertices only, the
+		 * higher the level the more of their processing is printed: 1 prints
+		 * a summary per vertex, 2 also the vertex states and 3 also the
+		 * incoming messages.
+		 */
+		int DEBUG_LEVEL = this.getConf().getInt(
+				CommonConstants.DEBUG_LEVEL_STRING, DEFAULT_DEBUG_LEVEL);
+		if (DEBUG_LEVEL > 0
+				&& !isSampled(vertexId, this.getConf().getFloat(
+						CommonConstants.DEBUG_SAMPLE_RATE_STRING,
+						DEFAULT_DEBUG_SAMPLE_RATE))) {
+			DEBUG_LEVEL = 0;
+		}
+
 		/**
 		 * Getting the vertex value of the vertex on which the compute method is
 		 * called.
 		 */
 		ItemVertexValue vertexValue = vertex.getValue();
 
+		/**
+		 * A value read back from a checkpoint after the first superstep, or
+		 * from disk after being written out of core by a checkpoint, only
+		 * refers to the transaction list held by the store of the worker.
+		 */
+		if (vertexValue.getTransactionIdList() == null) {
+			vertexValue.setTransactionIdList(this
+					.<FrequentPatternWorkerContext> getWorkerContext()
+					.getStoredTransactionIds(vertexId));
+		}
+
 		/**
 		 * Getting the current superstep number. The supersteps start from 0. In
 		 * the 0th superstep all the vertices are active.
@@ -67,6 +239,26 @@ public class FrequentPatternComputation
 		 */
 		long currentSuperstep = this.getSuperstep();
 
+		/**
+		 * The step of the level-wise mining is the superstep unless the levels
+		 * are split in waves, each wave then starting again from the first
+		 * step. The vertices stay active until the last wave so that they
+		 * take part in the first step of every wave, in the other steps those
+		 * without messages have nothing to do.
+		 */
+		boolean FIRST_WAVE = waveIndex == 0;
+		boolean LAST_WAVE = waveEnd == WAVE_HASH_SPACE;
+
+		/**
+		 * The messages are read once, through this iterator, as the message
+		 * stores deserialize them again on every iteration.
+		 */
+		Iterator<FrequentPatternMessage> incomingMessages = messages
+				.iterator();
+		if (!LAST_WAVE && currentStep > 0 && !incomingMessages.hasNext()) {
+			return;
+		}
+
 		/**
 		 * Creating a frequent pattern message which will be populated during
 		 * the superstep and forwarded to neighbor vertices at the end of this
@@ -74,9 +266,36 @@ public class FrequentPatternComputation
 		 */
 		FrequentPatternMessage messageToPropogate = new FrequentPatternMessage();
 
-		System.out.println("Vertex State Start: " + vertexValue.toString());
+		/**
+		 * Messages telling the vertices of the last items of itemsets that
+		 * these are not closed (or not maximal), keyed by the vertex.
+		 */
+		Int2ObjectOpenHashMap<FrequentPatternMessage> feedbackMessages = this.feedbackMessages;
+		feedbackMessages.clear();
+
+		/**
+		 * Statistics of this vertex for the level, aggregated by the master.
+		 */
+		long candidateItemsets = 0;
+		boolean active = false;
+
+		metrics.vertexComputed();
+		if (DEBUG_LEVEL >= 2) {
+			System.out.println("Superstep " + currentSuperstep + " Vertex "
+					+ vertexId + " State Start: " + vertexValue.toString());
+		}
 
-		if (currentSuperstep == 0) {
+		if (currentStep == 0 && !FIRST_WAVE) {
+			/**
+			 * The items were found frequent in the first wave, those whose
+			 * itemsets form this wave only send themselves again.
+			 */
+			if (vertexValue.shouldPropagate() && isInWave(vertexId)) {
+				active = true;
+				messageToPropogate = createFirstMessage(vertexId,
+						vertexValue.getTransactionIdList(), WEIGHTS);
+			}
+		} else if (currentStep == 0) {
 			/*****************************************************/
 			/* Zeroth Super-Step Processing */
 			/*****************************************************/
@@ -94,32 +313,57 @@ public class FrequentPatternComputation
 			 * message to it's neighboring vertices.
 			 * 
 			 */
-			if (vertexValue.getTransactionList().size() < MIN_SUPPORT) {
+			active = true;
+			candidateItemsets = 1;
+			if (TransactionWeights.support(vertexValue.getTransactionIdList(),
+					WEIGHTS) < MIN_SUPPORT) {
 				vertexValue.setPropagationStatus(false);
 				/**
-				 * Remove this vertex from the graph.
+				 * Remove this vertex from the graph, along with the edges of
+				 * its neighbors pointing to it, so that it is neither kept in
+				 * memory nor checkpointed any more. The edge iterator reuses
+				 * its target id while the mutation requests keep the ids
+				 * they are given, so each request gets its own copy.
 				 */
-				// this.removeVertexRequest(vertex.getId());
+				for (Edge<IntWritable, NullWritable> edge : vertex.getEdges()) {
+					this.removeEdgesRequest(new IntWritable(edge
+							.getTargetVertexId().get()), vertex.getId());
+				}
+				this.removeVertexRequest(vertex.getId());
 			} else {
 
 				/**
 				 * List of transactions this item belongs to.
 				 */
-				Set<Integer> txnIdList = vertexValue.getTransactionIdList();
+				TidSet txnIdList = vertexValue.getTransactionIdList();
+
+				/**
+				 * The transaction list never changes from now on, it is
+				 * stored once instead of being checkpointed every time.
+				 */
+				this.<FrequentPatternWorkerContext> getWorkerContext()
+						.storeTransactionIds(vertexId, vertexValue);
 
 				/**
 				 * Create a message object to propagate further. This message
 				 * will simply contain a single item and transaction list pair
 				 * (itself and it's own transaction list).
 				 */
-				messageToPropogate = createFirstMessage(vertexId, txnIdList);
+				messageToPropogate = createFirstMessage(vertexId, txnIdList,
+						WEIGHTS);
+				if (CONDENSED_MODE) {
+					for (ItemsAndTransactionsPair pair : messageToPropogate
+							.getItemsAndTxns()) {
+						pair.setLastItem(vertexId);
+					}
+				}
 
 				/**
 				 * Updating the item's (vertice's) own frequent pattern list.
 				 * Since this item is frequent on it's own.
 				 */
-				vertexValue.addFrequentPatterns(messageToPropogate
-						.getItemsAndTxns());
+				recordFrequentPatterns(vertexValue, messageToPropogate,
+						CONDENSED_MODE, MAXIMAL_MODE);
 
 				/**
 				 * Sending the new messages to all the outgoing edges of the
@@ -133,35 +377,81 @@ public class FrequentPatternComputation
 			/* Non-Zeroth Super-Step Processing */
 			/*****************************************************/
 			if (vertexValue.shouldPropagate()) {
+				active = true;
+
 				/**
 				 * List of transactions this item belongs to.
 				 */
-				Set<Integer> currentVertexTxnIdList = vertexValue
+				TidSet currentVertexTxnIdList = vertexValue
 						.getTransactionIdList();
 
+				/**
+				 * Diffset itemsets found by this vertex in the last superstep
+				 * and the ones found in this superstep, the latter map being
+				 * created on the first one.
+				 */
+				Map<ItemSet, ItemsAndTransactionsPair> previousDiffsetClasses = vertexValue
+						.getDiffsetClasses();
+				Map<ItemSet, ItemsAndTransactionsPair> diffsetClasses = null;
+
+				int vertexSupport = TransactionWeights.support(
+						currentVertexTxnIdList, WEIGHTS);
+
+				/**
+				 * Neighbors coming after this item in the frequency order,
+				 * learnt from their single item messages.
+				 */
+				IntOpenHashSet successorIds = this.successorIds;
+				successorIds.clear();
+
+				/**
+				 * Neighbors forming an infrequent pair with this item, found in
+				 * the first superstep.
+				 */
+				IntArrayList infrequentPairIds = this.infrequentPairIds;
+				infrequentPairIds.clear();
+
 				/**
 				 * Create a message object to propagate further if required.
 				 */
 				messageToPropogate = new FrequentPatternMessage();
 
+				FrequentPatternWorkerContext workerContext = this
+						.getWorkerContext();
+				boolean SAMPLED = workerContext.hasSampleItemsets();
+
+				/**
+				 * In the closed and maximal modes the items absorbing the
+				 * itemsets of the previous level are collected while the
+				 * messages are read, the extensions waiting for all of them.
+				 */
+				Map<ItemSet, IntOpenHashSet> absorbedItems = this.absorbedItems;
+				absorbedItems.clear();
+				extendedItemsets.clear();
+				extendedLastItems.clear();
+				condensedExtensions.clear();
+
 				/**
 				 * Iterate over each incoming message and find the overlap of
 				 * the transaction list with the current items (vertices)
 				 * transactions.
 				 */
-				for (FrequentPatternMessage currentIncomingMessage : messages) {
+				while (incomingMessages.hasNext()) {
+					FrequentPatternMessage currentIncomingMessage = incomingMessages
+							.next();
 
-					/**
-					 * Message for debugging purpose.
-					 */
-					System.out.println("Incoming Message: "
-							+ currentIncomingMessage);
+					metrics.messageReceived();
+					if (DEBUG_LEVEL >= 3) {
+						System.out.println("Superstep " + currentSuperstep
+								+ " Vertex " + vertexId + " Incoming Message: "
+								+ currentIncomingMessage);
+					}
 
 					/**
 					 * Getting the list of items and transactions pairs which
 					 * are the part of the current incoming message.
 					 */
-					Set<ItemsAndTransactionsPair> list = currentIncomingMessage
+					List<ItemsAndTransactionsPair> list = currentIncomingMessage
 							.getItemsAndTxns();
 
 					/**
@@ -169,45 +459,162 @@ public class FrequentPatternComputation
 					 * extracted.
 					 */
 					for (ItemsAndTransactionsPair pair : list) {
+						metrics.pairExamined();
+
+						if (CONDENSED_MODE && pair.absorbsParent()) {
+							addAbsorbedItem(absorbedItems, pair);
+						}
+
+						/**
+						 * An itemset ending with this item turned out not to
+						 * be closed (or maximal).
+						 */
+						if (pair.isFeedback()) {
+							vertexValue.removePendingPattern(pair
+									.getVertexIds());
+							continue;
+						}
 
 						/**
-						 * Find Overlap between the incoming messages and the
-						 * current vertices transactions.
+						 * Itemsets are only extended with items coming after
+						 * all of their items, so that each itemset is built
+						 * along a single path. Larger itemsets are only sent
+						 * to such items, but with the frequency order the
+						 * single items reach every neighbor as the supports
+						 * of the neighbors are not known yet.
 						 */
-						Set<Integer> currentMessagePairTxnIdList = pair
-								.getTransactionIds();
+						if (FREQUENCY_ORDER && pair.getVertexIds().size() == 1) {
+							int itemId = pair.getVertexIds().first();
+							if (!precedes(itemId, pair.getSupport(), vertexId,
+									vertexSupport, true)) {
+								successorIds.add(itemId);
+								continue;
+							}
+						}
 
 						/**
-						 * Finding the overlap between the current item's
-						 * transaction list and the current items and
-						 * transactions pair's transaction list.
+						 * The itemsets of a wave are the ones starting with
+						 * its items, the items of the other waves only tell
+						 * their successors about themselves.
 						 */
-						Set<Integer> overlappingTxnIdList = getOverlappingList(
-								currentVertexTxnIdList,
-								currentMessagePairTxnIdList);
+						if (pair.getVertexIds().size() == 1
+								&& !isInWave(pair.getVertexIds().first())) {
+							continue;
+						}
 
 						/**
-						 * If the cardinality of the overlapping set between
-						 * them is greater than or equal to the minimum support
-						 * then they are a frequent itemset.
+						 * Only the itemsets of the size of the current level
+						 * which do not already contain this item can be
+						 * extended with it.
 						 */
-						if (overlappingTxnIdList.size() >= MIN_SUPPORT) {
+						if (pair.getVertexIds().size() == currentStep
+								&& !pair.getVertexIds().contains(vertexId)) {
 
-							Set<Integer> msgItemIdList = pair.getVertexIds();
+							/**
+							 * If the parent of the itemset occurs only in
+							 * transactions of another item coming before this
+							 * one, so do the itemset, its extension with this
+							 * item and all the extensions of the latter, none
+							 * of which can contain that item. None of them is
+							 * closed or maximal, the extension is skipped if
+							 * that item was already read, else dropped once
+							 * all the messages are.
+							 */
+							if (CONDENSED_MODE
+									&& isAbsorbedByOtherItem(
+											pair.getParentVertexIds(),
+											pair.getLastItem(), absorbedItems)) {
+								addFeedback(feedbackMessages,
+										pair.getVertexIds(), pair.getLastItem());
+								continue;
+							}
 
 							/**
-							 * Add Vertices and Transaction Pairs to the message
-							 * to forward.
+							 * With a sample only the extensions frequent in
+							 * it or in its negative border can be frequent,
+							 * as long as no itemset of the border is.
 							 */
-							if (msgItemIdList.size() == currentSuperstep) {
+							if (SAMPLED
+									&& !workerContext.isSampleCandidate(
+											pair.getVertexIds(), vertexId)) {
+								sampleSkipped++;
+								continue;
+							}
+
+							ItemsAndTransactionsPair itemsAndTxnsPairToAdd;
+							candidateItemsets++;
+							long intersectionStart = System.nanoTime();
+
+							if (pair.isDiffset() || pair.hasDiffsetChildren()) {
+								/**
+								 * The extension is propagated as a diffset and
+								 * kept for the extensions of its siblings in
+								 * the next superstep.
+								 */
+								itemsAndTxnsPairToAdd = extendWithDiffset(pair,
+										vertexId, currentVertexTxnIdList,
+										previousDiffsetClasses, MIN_SUPPORT,
+										WEIGHTS);
+								metrics.intersectionPerformed(System
+										.nanoTime() - intersectionStart);
+								if (itemsAndTxnsPairToAdd != null) {
+									if (diffsetClasses == null) {
+										diffsetClasses = new HashMap<ItemSet, ItemsAndTransactionsPair>();
+									}
+									diffsetClasses.put(itemsAndTxnsPairToAdd
+											.getParentVertexIds(),
+											itemsAndTxnsPairToAdd);
+								}
+							} else {
+								itemsAndTxnsPairToAdd = extendWithTidset(pair,
+										vertexId, currentVertexTxnIdList,
+										MIN_SUPPORT, WEIGHTS);
+								metrics.intersectionPerformed(System
+										.nanoTime() - intersectionStart);
+								if (itemsAndTxnsPairToAdd == null
+										&& currentStep == 1) {
+									infrequentPairIds.add(pair.getVertexIds()
+											.first());
+								}
 								/**
-								 * adding the vertex id to the list of item ids.
+								 * Once an itemset keeps most of the
+								 * transactions of its parent its diffsets get
+								 * smaller than its tidsets, its extensions are
+								 * then propagated as diffsets.
 								 */
-								msgItemIdList.add(vertexId);
+								if (itemsAndTxnsPairToAdd != null
+										&& DIFFSET_MODE
+										&& itemsAndTxnsPairToAdd.getSupport() >= DIFFSET_DENSITY_THRESHOLD
+												* pair.getSupport()) {
+									itemsAndTxnsPairToAdd
+											.setDiffsetChildren(true);
+								}
+							}
 
-								ItemsAndTransactionsPair itemsAndTxnsPairToAdd = new ItemsAndTransactionsPair(
-										msgItemIdList, overlappingTxnIdList);
+							if (itemsAndTxnsPairToAdd != null
+									&& SAMPLED
+									&& !workerContext.isSampleItemset(
+											pair.getVertexIds(), vertexId)) {
+								sampleMisses++;
+							}
 
+							if (CONDENSED_MODE) {
+								if (itemsAndTxnsPairToAdd != null) {
+									itemsAndTxnsPairToAdd.setLastItem(vertexId);
+									if (itemsAndTxnsPairToAdd.getSupport() == pair
+											.getSupport()) {
+										itemsAndTxnsPairToAdd
+												.setAbsorbsParent(true);
+									}
+								}
+								extendedItemsets.add(pair.getVertexIds());
+								extendedLastItems.add(pair.getLastItem());
+								condensedExtensions.add(itemsAndTxnsPairToAdd);
+							} else if (itemsAndTxnsPairToAdd != null) {
+								/**
+								 * Add Vertices and Transaction Pairs to the
+								 * message to forward.
+								 */
 								messageToPropogate
 										.addItemAndTransactionPair(itemsAndTxnsPairToAdd);
 							}
@@ -215,63 +622,412 @@ public class FrequentPatternComputation
 					}
 				}
 
-				vertexValue.addFrequentPatterns(messageToPropogate
-						.getItemsAndTxns());
+				/**
+				 * With all the absorbing items known, an extension of an
+				 * itemset absorbed by another item is dropped. Otherwise an
+				 * extension with the support of the itemset makes the itemset
+				 * not closed, any frequent extension makes it not maximal.
+				 */
+				for (int i = 0; i < condensedExtensions.size(); i++) {
+					ItemSet itemset = extendedItemsets.get(i);
+					int lastItem = extendedLastItems.getInt(i);
+					ItemsAndTransactionsPair extension = condensedExtensions
+							.get(i);
+					if (isAbsorbedByOtherItem(itemset.without(lastItem),
+							lastItem, absorbedItems)) {
+						addFeedback(feedbackMessages, itemset, lastItem);
+						continue;
+					}
+					if (extension == null) {
+						continue;
+					}
+					if (MAXIMAL_MODE || extension.absorbsParent()) {
+						addFeedback(feedbackMessages, itemset, lastItem);
+					}
+					messageToPropogate.addItemAndTransactionPair(extension);
+				}
+				condensedExtensions.clear();
+
+				/**
+				 * No itemset containing an infrequent pair is frequent, the
+				 * edges between the two items are dropped on both sides so
+				 * that the later levels only go over the viable neighbors.
+				 */
+				for (int i = 0; i < infrequentPairIds.size(); i++) {
+					IntWritable neighborId = new IntWritable(
+							infrequentPairIds.getInt(i));
+					vertex.removeEdges(neighborId);
+					this.removeEdgesRequest(neighborId, vertex.getId());
+				}
+
+				/**
+				 * Without diffset itemsets in this superstep the map of the
+				 * previous one is emptied and kept.
+				 */
+				if (diffsetClasses != null) {
+					vertexValue.setDiffsetClasses(diffsetClasses);
+				} else {
+					previousDiffsetClasses.clear();
+				}
 
-				System.out.println("Vertex State End: "
-						+ vertexValue.toString());
+				if (FREQUENCY_ORDER && currentStep == 1 && FIRST_WAVE) {
+					vertexValue.setSuccessors(toSortedArray(successorIds));
+				}
+
+				recordFrequentPatterns(vertexValue, messageToPropogate,
+						CONDENSED_MODE, MAXIMAL_MODE);
+
+				if (DEBUG_LEVEL >= 2) {
+					System.out.println("Superstep " + currentSuperstep
+							+ " Vertex " + vertexId + " State End: "
+							+ vertexValue.toString());
+				}
 
 			}
 
+			/**
+			 * Once the mining is over the itemsets not found to be non
+			 * closed (or non maximal) are reported.
+			 */
+			if (CONDENSED_MODE
+					&& this.<BooleanWritable> getAggregatedValue(
+							CommonConstants.FLUSH_PATTERNS_AGGREGATOR).get()) {
+				for (FrequentItemset itemset : vertexValue
+						.getPendingPatterns().values()) {
+					reportFrequentPattern(vertexValue, itemset);
+				}
+				vertexValue.getPendingPatterns().clear();
+			}
+
 		}
 
-		System.out.println("******************************************");
+		long messageBytes = 0;
+		long pairsEmitted = 0;
 
 		/**
 		 * Send this message only in case the message is not empty. If the
-		 * message is empty there is no sense in forwarding it.
+		 * message is empty there is no sense in forwarding it. The itemsets
+		 * of the largest size allowed are not extended, so neither are they
+		 * forwarded.
 		 */
-		if (!messageToPropogate.isEmpty()) {
-			this.sendMessageToAllEdges(vertex, messageToPropogate);
+		if (!messageToPropogate.isEmpty() && currentStep + 1 < MAX_ITEMSET_SIZE) {
+			if (currentStep == 0 && FIRST_WAVE && FREQUENCY_ORDER) {
+				this.sendMessageToAllEdges(vertex, messageToPropogate);
+				messageBytes = (long) messageToPropogate.serializedSize()
+						* vertex.getNumEdges();
+				pairsEmitted = (long) messageToPropogate.getItemsAndTxns()
+						.size() * vertex.getNumEdges();
+			} else {
+				int messageSize = messageToPropogate.serializedSize();
+				/**
+				 * The itemsets built by this vertex all end with this item,
+				 * they are only sent to the neighbors coming after it.
+				 */
+				for (Edge<IntWritable, NullWritable> edge : vertex.getEdges()) {
+					int targetId = edge.getTargetVertexId().get();
+					if (FREQUENCY_ORDER ? vertexValue.isSuccessor(targetId)
+							: targetId > vertexId) {
+						this.sendMessage(edge.getTargetVertexId(),
+								messageToPropogate);
+						messageBytes += messageSize;
+						pairsEmitted += messageToPropogate.getItemsAndTxns()
+								.size();
+					}
+				}
+			}
+		}
+
+		for (Int2ObjectMap.Entry<FrequentPatternMessage> feedback : feedbackMessages
+				.int2ObjectEntrySet()) {
+			this.sendMessage(new IntWritable(feedback.getIntKey()),
+					feedback.getValue());
+			messageBytes += feedback.getValue().serializedSize();
+			pairsEmitted += feedback.getValue().getItemsAndTxns().size();
+		}
+		metrics.pairsEmitted(pairsEmitted, messageBytes);
+
+		if (DEBUG_LEVEL >= 1) {
+			System.out.println("Superstep " + currentSuperstep + " Worker "
+					+ this.getWorkerContext().getMyWorkerIndex() + " Vertex "
+					+ vertexId + ": candidate itemsets " + candidateItemsets
+					+ ", frequent itemsets "
+					+ messageToPropogate.getItemsAndTxns().size()
+					+ ", pairs emitted " + pairsEmitted + ", message bytes "
+					+ messageBytes);
+		}
+
+		if (active) {
+			/**
+			 * The items sent again by a wave were counted by the first one.
+			 */
+			long frequentItemsets = currentStep == 0 && !FIRST_WAVE ? 0
+					: messageToPropogate.getItemsAndTxns().size();
+			aggregate(CommonConstants.FREQUENT_ITEMSETS_AGGREGATOR,
+					new LongWritable(frequentItemsets));
+			aggregate(CommonConstants.CANDIDATE_ITEMSETS_AGGREGATOR,
+					new LongWritable(candidateItemsets));
+			aggregate(CommonConstants.MESSAGE_BYTES_AGGREGATOR,
+					new LongWritable(messageBytes));
+			aggregate(CommonConstants.ACTIVE_VERTICES_AGGREGATOR,
+					new LongWritable(1));
 		}
 
 		/**
 		 * Halt the vertex after computation so that it is not active during the
-		 * next super-step.
+		 * next super-step, unless it holds itemsets to report at the end of
+		 * the mining or waves remain.
 		 */
-		vertex.voteToHalt();
+		if (vertexValue.getPendingPatterns().isEmpty() && LAST_WAVE) {
+			vertex.voteToHalt();
+		}
+	}
+
+	/**
+	 * Picks the vertices printing debug output, the same ones in every
+	 * superstep so that their processing can be followed.
+	 */
+	private static boolean isSampled(int vertexId, float sampleRate) {
+		if (sampleRate >= 1.0f) {
+			return true;
+		}
+		return hash(vertexId) < sampleRate * WAVE_HASH_SPACE;
+	}
+
+	/**
+	 * Tells whether the itemsets starting with the given item belong to the
+	 * current wave.
+	 */
+	private boolean isInWave(int itemId) {
+		int hash = hash(itemId);
+		return hash >= waveStart && hash < waveEnd;
+	}
+
+	/**
+	 * Hashes an item id into [0, {@link #WAVE_HASH_SPACE}). Mixing the bits
+	 * of the id keeps runs of consecutive ids from all falling on the same
+	 * side of a bound.
+	 */
+	private static int hash(int itemId) {
+		int hash = itemId * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return hash & (WAVE_HASH_SPACE - 1);
+	}
+
+	/**
+	 * Reports the itemsets found by this vertex, their transaction lists only
+	 * travel in the messages. In the closed and maximal modes they are kept
+	 * pending instead, dropping the pending ones they show not to be closed
+	 * (or maximal): an itemset ending with this item and a subset of a new
+	 * one with the same support (or any support).
+	 */
+	private void recordFrequentPatterns(ItemVertexValue vertexValue,
+			FrequentPatternMessage message, boolean condensedMode,
+			boolean maximalMode) throws IOException {
+		for (ItemsAndTransactionsPair pair : message.getItemsAndTxns()) {
+			FrequentItemset itemset = new FrequentItemset(pair.getVertexIds(),
+					pair.getSupport());
+			if (condensedMode) {
+				vertexValue.removePendingSubsets(itemset, maximalMode);
+				vertexValue.addPendingPattern(itemset);
+			} else {
+				reportFrequentPattern(vertexValue, itemset);
+			}
+		}
+	}
+
+	/**
+	 * Hands an itemset to the pattern sink of the worker, or keeps its items
+	 * and support in the vertex value if there is none.
+	 */
+	private void reportFrequentPattern(ItemVertexValue vertexValue,
+			FrequentItemset itemset) throws IOException {
+		FrequentPatternWorkerContext workerContext = this.getWorkerContext();
+		if (workerContext.isPatternSinkEnabled()) {
+			workerContext.writePattern(itemset);
+		} else {
+			vertexValue.addFrequentPattern(itemset);
+		}
+	}
+
+	/**
+	 * Records that the extension of the parent of the given itemset with its
+	 * last item has the support of the parent.
+	 */
+	private static void addAbsorbedItem(
+			Map<ItemSet, IntOpenHashSet> absorbedItems,
+			ItemsAndTransactionsPair pair) {
+		ItemSet parent = pair.getParentVertexIds();
+		IntOpenHashSet items = absorbedItems.get(parent);
+		if (items == null) {
+			items = new IntOpenHashSet();
+			absorbedItems.put(parent, items);
+		}
+		items.add(pair.getLastItem());
+	}
+
+	/**
+	 * Tells whether the parent of an itemset has the same support as its
+	 * extension with another item than the last one of the itemset. That item
+	 * reached this vertex, so it comes before this item.
+	 */
+	private static boolean isAbsorbedByOtherItem(ItemSet parent,
+			int lastItem, Map<ItemSet, IntOpenHashSet> absorbedItems) {
+		if (absorbedItems.isEmpty()) {
+			return false;
+		}
+		IntOpenHashSet items = absorbedItems.get(parent);
+		return items != null
+				&& (items.size() > 1 || !items.contains(lastItem));
+	}
+
+	/**
+	 * Adds the feedback that the itemset is not closed (or not maximal) for
+	 * the vertex of its last item.
+	 */
+	private static void addFeedback(
+			Int2ObjectOpenHashMap<FrequentPatternMessage> feedbackMessages,
+			ItemSet itemset, int lastItem) {
+		FrequentPatternMessage message = feedbackMessages.get(lastItem);
+		if (message == null) {
+			message = new FrequentPatternMessage();
+			feedbackMessages.put(lastItem, message);
+		}
+		message.addItemAndTransactionPair(ItemsAndTransactionsPair
+				.createFeedbackPair(itemset, lastItem));
+	}
+
+	/**
+	 * Tells whether the first item comes before the second one, either by id
+	 * or by support with the id breaking ties.
+	 */
+	public static boolean precedes(int itemId, int itemSupport,
+			int otherItemId, int otherItemSupport, boolean frequencyOrder) {
+		if (frequencyOrder && itemSupport != otherItemSupport) {
+			return itemSupport < otherItemSupport;
+		}
+		return itemId < otherItemId;
+	}
+
+	private static int[] toSortedArray(IntOpenHashSet ids) {
+		int[] array = ids.toIntArray();
+		Arrays.sort(array);
+		return array;
 	}
 
 	public static FrequentPatternMessage createFirstMessage(int vertexId,
-			Set<Integer> txnIdList) {
+			TidSet txnIdList, TransactionWeights weights) {
 		FrequentPatternMessage firstMessage = new FrequentPatternMessage();
 
-		Set<Integer> selfIdSet = new HashSet<Integer>();
-		selfIdSet.add(vertexId);
-		ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(selfIdSet,
-				txnIdList);
+		ItemSet selfIdSet = ItemSet.of(vertexId);
+		ItemsAndTransactionsPair pair = weights == null ? new ItemsAndTransactionsPair(
+				selfIdSet, txnIdList) : ItemsAndTransactionsPair
+				.createWeightedPair(selfIdSet, txnIdList,
+						weights.support(txnIdList));
 		firstMessage.addItemAndTransactionPair(pair);
 		return firstMessage;
 	}
 
-	public static Set<Integer> getOverlappingList(Set<Integer> list1,
-			Set<Integer> list2) {
-		Set<Integer> overlappingList = new HashSet<Integer>();
-		Set<Integer> toIterate;
-		Set<Integer> toCheck;
-		if (list1.size() < list2.size()) {
-			toIterate = list1;
-			toCheck = list2;
+	/**
+	 * Extends an itemset carrying its tidset with the given item. Returns null
+	 * if the extension is not frequent. With weighted transactions the
+	 * overlap is materialized to sum up its weights.
+	 */
+	public static ItemsAndTransactionsPair extendWithTidset(
+			ItemsAndTransactionsPair pair, int vertexId,
+			TidSet vertexTxnIdList, int minSupport, TransactionWeights weights) {
+		TidSet pairTxnIdList = pair.getTransactionIds();
+		if (weights != null) {
+			TidSet overlappingTxnIdList = getOverlappingList(vertexTxnIdList,
+					pairTxnIdList);
+			int support = weights.support(overlappingTxnIdList);
+			if (support < minSupport) {
+				return null;
+			}
+			return ItemsAndTransactionsPair.createWeightedPair(pair
+					.getVertexIds().with(vertexId), overlappingTxnIdList,
+					support);
+		}
+
+		/**
+		 * The overlap is only counted here, it is materialized for the
+		 * frequent extensions alone.
+		 */
+		if (!vertexTxnIdList.intersectsAtLeast(pairTxnIdList, minSupport)) {
+			return null;
+		}
+		TidSet overlappingTxnIdList = getOverlappingList(vertexTxnIdList,
+				pairTxnIdList);
+
+		/**
+		 * The item set is immutable, the extension gets a new one while the
+		 * incoming pair is reused when the next message is read.
+		 */
+		return new ItemsAndTransactionsPair(pair.getVertexIds().with(vertexId),
+				overlappingTxnIdList);
+	}
+
+	/**
+	 * Extends an itemset with the given item, the extension carrying its
+	 * diffset relative to the itemset. Returns null if the extension is not
+	 * frequent.
+	 * 
+	 * For an itemset P carrying its tidset the diffset is t(P) - t(item). For
+	 * an itemset PX carrying its diffset d(PX) = t(P) - t(PX) it is d(P item) -
+	 * d(PX), where d(P item) was computed by this vertex when P reached it in
+	 * the previous superstep. The support is the support of the itemset minus
+	 * the size of the diffset, or the sum of its weights.
+	 */
+	public static ItemsAndTransactionsPair extendWithDiffset(
+			ItemsAndTransactionsPair pair, int vertexId,
+			TidSet vertexTxnIdList,
+			Map<ItemSet, ItemsAndTransactionsPair> previousDiffsetClasses,
+			int minSupport, TransactionWeights weights) {
+		TidSet minuend;
+		TidSet subtrahend;
+		if (pair.isDiffset()) {
+			ItemsAndTransactionsPair sibling = previousDiffsetClasses.get(pair
+					.getParentVertexIds());
+			/**
+			 * The parent itemset extended with this item was not frequent (or
+			 * never reached this vertex), neither is this extension.
+			 */
+			if (sibling == null) {
+				return null;
+			}
+			minuend = sibling.getTransactionIds();
+			subtrahend = pair.getTransactionIds();
 		} else {
-			toIterate = list2;
-			toCheck = list1;
+			minuend = pair.getTransactionIds();
+			subtrahend = vertexTxnIdList;
 		}
-		for (Integer id : toIterate) {
-			if (toCheck.contains(id)) {
-				overlappingList.add(id);
+
+		/**
+		 * |A - B| = |A| - |A and B|, the support is tested before the diffset
+		 * is materialized. The weights of the diffset are summed up on it.
+		 */
+		TidSet diffset;
+		int support;
+		if (weights != null) {
+			diffset = minuend.andNot(subtrahend);
+			support = pair.getSupport() - weights.support(diffset);
+			if (support < minSupport) {
+				return null;
+			}
+		} else {
+			support = pair.getSupport() - minuend.cardinality()
+					+ minuend.andCardinality(subtrahend);
+			if (support < minSupport) {
+				return null;
 			}
+			diffset = minuend.andNot(subtrahend);
 		}
-		return overlappingList;
+
+		return ItemsAndTransactionsPair.createDiffsetPair(pair.getVertexIds()
+				.with(vertexId), vertexId, diffset, support);
+	}
+
+	public static TidSet getOverlappingList(TidSet list1, TidSet list2) {
+		return list1.and(list2);
 	}
 
 }
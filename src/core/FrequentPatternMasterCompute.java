@@ -0,0 +1,323 @@
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.giraph.aggregators.BooleanOverwriteAggregator;
+import org.apache.giraph.aggregators.IntOverwriteAggregator;
+import org.apache.giraph.aggregators.LongSumAggregator;
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.master.DefaultMasterCompute;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Master computation keeping the statistics of each level of the mining. The
+ * vertices aggregate the number of frequent itemsets found, the candidate
+ * itemsets tested, the message bytes sent and the active vertices of every
+ * superstep. The master publishes their totals as Hadoop counters, and when
+ * asked to the ones of the first {@link CommonConstants#MAX_COUNTER_LEVEL}
+ * levels as jobs are limited in the number of counters. It halts the job
+ * once a level finds no frequent itemsets, as none of larger size can exist.
+ * In the closed and maximal modes the halt is preceded by a superstep in which
+ * the vertices report their pending itemsets.
+ * 
+ * With a wave memory budget the levels are mined in waves, each one taking
+ * the itemsets whose first item hashes into a range of
+ * {@link FrequentPatternComputation#WAVE_HASH_SPACE}. A wave goes through all
+ * the levels of its itemsets before the next one starts, the itemsets of
+ * different waves never meet so the results are the same. The first wave
+ * covers a small share of the hash space, each next one is sized from the
+ * largest message bytes of a superstep of the previous one so that it stays
+ * within the budget. The master publishes the wave and the step of the
+ * level-wise mining within it to the vertices every superstep, without a
+ * budget there is a single wave whose steps are the supersteps. The waves are
+ * only used to mine all the itemsets, the closed and maximal modes compare
+ * itemsets of different prefixes.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class FrequentPatternMasterCompute extends DefaultMasterCompute {
+
+	private static boolean DEFAULT_LEVEL_COUNTERS = false;
+
+	private static long DEFAULT_WAVE_MEMORY_BUDGET = 0;
+
+	private static int DEFAULT_MAX_ITEMSET_SIZE = Integer.MAX_VALUE;
+
+	/**
+	 * Share of the hash space covered by the first wave, whose message bytes
+	 * size the next ones.
+	 */
+	private static int FIRST_WAVE_SHARE = 16;
+
+	/**
+	 * Largest factor by which a wave grows over the previous one, as the
+	 * message bytes of the itemsets of different prefixes vary.
+	 */
+	private static int MAX_WAVE_GROWTH = 4;
+
+	/**
+	 * Whether the vertices were told to report their pending closed (or
+	 * maximal) itemsets in the current superstep.
+	 */
+	private boolean flushing;
+
+	private int waveIndex;
+
+	/**
+	 * Range of the hashes of the first items of the itemsets of the current
+	 * wave.
+	 */
+	private int waveStart;
+
+	private int waveEnd = FrequentPatternComputation.WAVE_HASH_SPACE;
+
+	/**
+	 * Step of the level-wise mining within the current wave, the itemsets
+	 * found in it have one item more.
+	 */
+	private int waveStep;
+
+	/**
+	 * Largest message bytes of a superstep of the current wave.
+	 */
+	private long wavePeakBytes;
+
+	@Override
+	public void initialize() throws InstantiationException,
+			IllegalAccessException {
+		registerAggregator(CommonConstants.FREQUENT_ITEMSETS_AGGREGATOR,
+				LongSumAggregator.class);
+		registerAggregator(CommonConstants.CANDIDATE_ITEMSETS_AGGREGATOR,
+				LongSumAggregator.class);
+		registerAggregator(CommonConstants.MESSAGE_BYTES_AGGREGATOR,
+				LongSumAggregator.class);
+		registerAggregator(CommonConstants.ACTIVE_VERTICES_AGGREGATOR,
+				LongSumAggregator.class);
+		registerAggregator(CommonConstants.FLUSH_PATTERNS_AGGREGATOR,
+				BooleanOverwriteAggregator.class);
+		registerAggregator(CommonConstants.WAVE_INDEX_AGGREGATOR,
+				IntOverwriteAggregator.class);
+		registerAggregator(CommonConstants.WAVE_START_AGGREGATOR,
+				IntOverwriteAggregator.class);
+		registerAggregator(CommonConstants.WAVE_END_AGGREGATOR,
+				IntOverwriteAggregator.class);
+		registerAggregator(CommonConstants.WAVE_STEP_AGGREGATOR,
+				IntOverwriteAggregator.class);
+	}
+
+	@Override
+	public void compute() {
+		/**
+		 * The aggregated values are the ones of the previous superstep, which
+		 * found the itemsets of one item more than its number.
+		 */
+		long superstep = getSuperstep();
+		if (superstep == 0) {
+			if (isWaveMode()) {
+				this.waveEnd = FrequentPatternComputation.WAVE_HASH_SPACE
+						/ FIRST_WAVE_SHARE;
+			}
+			publishWave();
+			return;
+		}
+		long level = this.waveStep + 1;
+
+		long frequentItemsets = this.<LongWritable> getAggregatedValue(
+				CommonConstants.FREQUENT_ITEMSETS_AGGREGATOR).get();
+		long candidateItemsets = this.<LongWritable> getAggregatedValue(
+				CommonConstants.CANDIDATE_ITEMSETS_AGGREGATOR).get();
+		long messageBytes = this.<LongWritable> getAggregatedValue(
+				CommonConstants.MESSAGE_BYTES_AGGREGATOR).get();
+		long activeVertices = this.<LongWritable> getAggregatedValue(
+				CommonConstants.ACTIVE_VERTICES_AGGREGATOR).get();
+
+		if (getConf().getBoolean(CommonConstants.LEVEL_COUNTERS_STRING,
+				DEFAULT_LEVEL_COUNTERS)
+				&& level <= CommonConstants.MAX_COUNTER_LEVEL) {
+			incrementCounter("Level " + level + " frequent itemsets",
+					frequentItemsets);
+			incrementCounter("Level " + level + " candidate itemsets",
+					candidateItemsets);
+			incrementCounter("Level " + level + " message bytes",
+					messageBytes);
+			incrementCounter("Level " + level + " active vertices",
+					activeVertices);
+		}
+		incrementCounter("Total frequent itemsets", frequentItemsets);
+		incrementCounter("Total candidate itemsets", candidateItemsets);
+		incrementCounter("Total message bytes", messageBytes);
+
+		if (this.flushing) {
+			haltComputation();
+			return;
+		}
+
+		if (isWaveMode()) {
+			scheduleWave(frequentItemsets, messageBytes);
+			publishWave();
+			/**
+			 * The maximum number of supersteps bounds the job whatever the
+			 * waves left, the itemsets of the steps not run are missing.
+			 */
+			if (!isHalted() && isPastLastSuperstep()) {
+				System.out.println("***** Superstep limit reached in wave "
+						+ this.waveIndex + " step " + this.waveStep
+						+ ", the itemsets may be incomplete");
+				incrementCounter("Waves cut by the superstep limit", 1);
+			}
+			return;
+		}
+		this.waveStep++;
+		publishWave();
+
+		/**
+		 * Every frequent itemset extends a frequent itemset of the previous
+		 * level, so an empty level ends the mining, as does a level of the
+		 * largest itemset size, whose itemsets the vertices do not extend. In
+		 * the closed and maximal modes the vertices keep the itemsets which
+		 * may still be reported, they are given one more superstep to report
+		 * them, which is also done in the last superstep allowed.
+		 */
+		boolean allMode = CommonConstants.ALL_MINING_MODE.equals(getConf()
+				.get(CommonConstants.MINING_MODE_STRING,
+						CommonConstants.ALL_MINING_MODE));
+		boolean lastLevel = frequentItemsets == 0
+				|| this.waveStep >= getConf().getInt(
+						CommonConstants.MAX_ITEMSET_SIZE_STRING,
+						DEFAULT_MAX_ITEMSET_SIZE);
+		if (allMode) {
+			if (lastLevel) {
+				haltComputation();
+			}
+		} else if (lastLevel || isLastSuperstep()) {
+			this.flushing = true;
+			setAggregatedValue(CommonConstants.FLUSH_PATTERNS_AGGREGATOR,
+					new BooleanWritable(true));
+		}
+	}
+
+	private boolean isWaveMode() {
+		return getConf().getLong(CommonConstants.WAVE_MEMORY_BUDGET_STRING,
+				DEFAULT_WAVE_MEMORY_BUDGET) > 0
+				&& CommonConstants.ALL_MINING_MODE.equals(getConf().get(
+						CommonConstants.MINING_MODE_STRING,
+						CommonConstants.ALL_MINING_MODE));
+	}
+
+	/**
+	 * Moves the mining to the next step of the current wave, or once the
+	 * wave found no itemsets or reached the largest itemset size to the next
+	 * wave, halting after the last one. The first step of the first wave
+	 * finds the frequent items for all the waves, the next waves start with
+	 * their items sending themselves again.
+	 */
+	private void scheduleWave(long frequentItemsets, long messageBytes) {
+		if (this.waveStep > 0 || this.waveIndex > 0) {
+			this.wavePeakBytes = Math.max(this.wavePeakBytes, messageBytes);
+		}
+		/**
+		 * No frequent item, no wave finds anything.
+		 */
+		if (this.waveIndex == 0 && this.waveStep == 0
+				&& frequentItemsets == 0) {
+			haltComputation();
+			return;
+		}
+		int maxItemsetSize = getConf().getInt(
+				CommonConstants.MAX_ITEMSET_SIZE_STRING,
+				DEFAULT_MAX_ITEMSET_SIZE);
+		if ((this.waveStep == 0 || frequentItemsets > 0)
+				&& this.waveStep + 1 < maxItemsetSize) {
+			this.waveStep++;
+			return;
+		}
+		if (this.waveEnd == FrequentPatternComputation.WAVE_HASH_SPACE) {
+			haltComputation();
+			return;
+		}
+
+		long budget = getConf().getLong(
+				CommonConstants.WAVE_MEMORY_BUDGET_STRING,
+				DEFAULT_WAVE_MEMORY_BUDGET);
+		long width = this.waveEnd - this.waveStart;
+		long nextWidth = width * MAX_WAVE_GROWTH;
+		if (this.wavePeakBytes > 0) {
+			nextWidth = Math.min(nextWidth, (long) (width
+					* ((double) budget / this.wavePeakBytes)));
+		}
+		nextWidth = Math.max(1, nextWidth);
+		System.out.println("***** Wave " + this.waveIndex + " of hashes ["
+				+ this.waveStart + ", " + this.waveEnd + ") peak message bytes "
+				+ this.wavePeakBytes + ", next wave width " + nextWidth);
+
+		this.waveIndex++;
+		this.waveStart = this.waveEnd;
+		this.waveEnd = (int) Math.min(
+				FrequentPatternComputation.WAVE_HASH_SPACE, this.waveStart
+						+ nextWidth);
+		this.waveStep = 0;
+		this.wavePeakBytes = 0;
+	}
+
+	private void publishWave() {
+		setAggregatedValue(CommonConstants.WAVE_INDEX_AGGREGATOR,
+				new IntWritable(this.waveIndex));
+		setAggregatedValue(CommonConstants.WAVE_START_AGGREGATOR,
+				new IntWritable(this.waveStart));
+		setAggregatedValue(CommonConstants.WAVE_END_AGGREGATOR,
+				new IntWritable(this.waveEnd));
+		setAggregatedValue(CommonConstants.WAVE_STEP_AGGREGATOR,
+				new IntWritable(this.waveStep));
+	}
+
+	/**
+	 * Tells whether the current superstep is the last one allowed, Giraph
+	 * treats the default maximum as no limit.
+	 */
+	private boolean isLastSuperstep() {
+		int maxSupersteps = getConf().getMaxNumberOfSupersteps();
+		return maxSupersteps != GiraphConstants.MAX_NUMBER_OF_SUPERSTEPS
+				.getDefaultValue() && getSuperstep() >= maxSupersteps - 1;
+	}
+
+	/**
+	 * Tells whether the maximum number of supersteps was run, Giraph then
+	 * halts whatever this computation decides.
+	 */
+	private boolean isPastLastSuperstep() {
+		int maxSupersteps = getConf().getMaxNumberOfSupersteps();
+		return maxSupersteps != GiraphConstants.MAX_NUMBER_OF_SUPERSTEPS
+				.getDefaultValue() && getSuperstep() >= maxSupersteps;
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		this.flushing = in.readBoolean();
+		this.waveIndex = in.readInt();
+		this.waveStart = in.readInt();
+		this.waveEnd = in.readInt();
+		this.waveStep = in.readInt();
+		this.wavePeakBytes = in.readLong();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(this.flushing);
+		out.writeInt(this.waveIndex);
+		out.writeInt(this.waveStart);
+		out.writeInt(this.waveEnd);
+		out.writeInt(this.waveStep);
+		out.writeLong(this.wavePeakBytes);
+	}
+
+	private void incrementCounter(String name, long value) {
+		getContext().getCounter(CommonConstants.FP_MINING_COUNTER_GROUP, name)
+				.increment(value);
+	}
+
+}
@@ -3,24 +3,34 @@ package core;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.json.JSONArray;
-import org.json.JSONException;
 
 /**
  * Message class implemented for sharing messages across supersteps for the
  * given implementation of frequent pattern mining algorithm.
  * 
+ * The pairs are kept in a list, each itemset being built along a single path
+ * a vertex never gets or sends it twice in a superstep. Hashing the pairs
+ * into a set went over their transactions for every pair added, and the
+ * combiner has no duplicates to drop either.
+ * 
  * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
  * 
  */
 
 public class FrequentPatternMessage implements Writable {
 
-	private Set<ItemsAndTransactionsPair> itemsAndTxns = new HashSet<ItemsAndTransactionsPair>();
+	private List<ItemsAndTransactionsPair> itemsAndTxns = new ArrayList<ItemsAndTransactionsPair>();
+
+	/**
+	 * Pair objects of a previous read which can be filled again.
+	 */
+	private List<ItemsAndTransactionsPair> sparePairs = new ArrayList<ItemsAndTransactionsPair>();
 
 	public boolean isEmpty() {
 		return this.itemsAndTxns.isEmpty();
@@ -30,57 +40,66 @@ public class FrequentPatternMessage implements Writable {
 		this.itemsAndTxns.add(pair);
 	}
 
-	public Set<ItemsAndTransactionsPair> getItemsAndTxns() {
+	/**
+	 * Moves the pairs of the given message to this one, leaving the given
+	 * message empty. Giraph reads the next message into the same object, its
+	 * pairs then being new ones instead of the moved ones filled again.
+	 */
+	public void combine(FrequentPatternMessage other) {
+		this.itemsAndTxns.addAll(other.itemsAndTxns);
+		other.itemsAndTxns.clear();
+	}
+
+	public List<ItemsAndTransactionsPair> getItemsAndTxns() {
 		return itemsAndTxns;
 	}
 
-	public void setItemsAndTxns(Set<ItemsAndTransactionsPair> itemsAndTxns) {
+	public void setItemsAndTxns(List<ItemsAndTransactionsPair> itemsAndTxns) {
 		this.itemsAndTxns = itemsAndTxns;
 	}
 
 	private void clear() {
+		this.sparePairs.addAll(this.itemsAndTxns);
 		this.itemsAndTxns.clear();
 	}
 
+	/**
+	 * Reads the pairs into the pair objects of the previously read message
+	 * where possible, Giraph reuses a message object for many messages.
+	 */
 	@Override
 	public void readFields(DataInput dataIn) throws IOException {
 		this.clear();
-		String strData = dataIn.readUTF();
-		try {
-			JSONArray objectArray = new JSONArray(strData);
-			JSONArray itemsAndTxnsArray = objectArray.getJSONArray(0);
-			for (int i = 0; i < itemsAndTxnsArray.length(); i++) {
-				String itemsAndTxnsPairObjectStringFormat = itemsAndTxnsArray
-						.getString(i);
-				JSONArray itemsAndTxnsPairObject = new JSONArray(
-						itemsAndTxnsPairObjectStringFormat);
-				JSONArray vertexArray = itemsAndTxnsPairObject
-						.getJSONArray(ItemsAndTransactionsPair.VERTEX_ID_INDEX);
-				JSONArray transactionArray = itemsAndTxnsPairObject
-						.getJSONArray(ItemsAndTransactionsPair.TRANSACTION_ID_INDEX);
-				Set<Integer> vertexSet = new HashSet<Integer>();
-				for (int j = 0; j < vertexArray.length(); j++) {
-					vertexSet.add(vertexArray.getInt(j));
-				}
-				Set<Integer> transactionSet = new HashSet<Integer>();
-				for (int k = 0; k < transactionArray.length(); k++) {
-					transactionSet.add(transactionArray.getInt(k));
-				}
-				ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(
-						vertexSet, transactionSet);
-				this.itemsAndTxns.add(pair);
-
+		int pairCount = WritableUtils.readVInt(dataIn);
+		for (int i = 0; i < pairCount; i++) {
+			ItemsAndTransactionsPair pair;
+			if (this.sparePairs.isEmpty()) {
+				pair = new ItemsAndTransactionsPair();
+			} else {
+				pair = this.sparePairs.remove(this.sparePairs.size() - 1);
 			}
-		} catch (JSONException e) {
-			e.printStackTrace();
+			pair.readFields(dataIn);
+			this.itemsAndTxns.add(pair);
 		}
 	}
 
 	@Override
 	public void write(DataOutput dataOut) throws IOException {
-		JSONArray itemsAndTxnsArray = new JSONArray();
-		itemsAndTxnsArray.put(this.itemsAndTxns);
-		dataOut.writeUTF(itemsAndTxnsArray.toString());
+		WritableUtils.writeVInt(dataOut, this.itemsAndTxns.size());
+		for (ItemsAndTransactionsPair pair : this.itemsAndTxns) {
+			pair.write(dataOut);
+		}
+	}
+
+	/**
+	 * Number of bytes {@link #write} takes for this message.
+	 */
+	public int serializedSize() {
+		int bytes = WritableUtils.getVIntSize(this.itemsAndTxns.size());
+		for (ItemsAndTransactionsPair pair : this.itemsAndTxns) {
+			bytes += pair.serializedSize();
+		}
+		return bytes;
 	}
 
 	@Override
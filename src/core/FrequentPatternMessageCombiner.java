@@ -0,0 +1,30 @@
+package core;
+
+import org.apache.giraph.combiner.MessageCombiner;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * Combiner merging all the frequent pattern messages bound for a vertex into
+ * a single message, by moving their items and transactions pairs into it.
+ * The message store of the worker then keeps the pairs read as they arrive,
+ * instead of the bytes of every message read again by each iteration.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class FrequentPatternMessageCombiner extends
+		MessageCombiner<IntWritable, FrequentPatternMessage> {
+
+	@Override
+	public void combine(IntWritable vertexIndex,
+			FrequentPatternMessage originalMessage,
+			FrequentPatternMessage messageToCombine) {
+		originalMessage.combine(messageToCombine);
+	}
+
+	@Override
+	public FrequentPatternMessage createInitialMessage() {
+		return new FrequentPatternMessage();
+	}
+
+}
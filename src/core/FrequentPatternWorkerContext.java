@@ -0,0 +1,457 @@
+package core;
+
+import io.IdDictionary;
+import io.IdRenumbering;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.giraph.conf.GiraphConstants;
+import org.apache.giraph.worker.WorkerContext;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * Worker context holding the pattern sink of a worker. When a pattern output
+ * directory is configured the frequent itemsets found by the vertices of the
+ * worker are written out as soon as they are found, one line per itemset with
+ * the sorted item ids separated by spaces followed by a tab and the support.
+ * The vertex values then do not keep them. The items of the input renumbered
+ * by {@link IdRenumbering} are written with their original ids.
+ * 
+ * Each itemset goes to the file of its size, level-<size>/part-<worker
+ * index>, opened when the superstep writes its first itemset of that size
+ * and closed at the end of the superstep. The closed and maximal itemsets,
+ * all reported in the last superstep, thus go to the files of their sizes as
+ * well. When the levels are split in waves the waves after the first one
+ * write to level-<size>/part-<worker index>-<wave>. A superstep restarted
+ * from a checkpoint rewrites the files it writes.
+ * 
+ * The context also adds up the metrics of the compute threads of the worker
+ * for each superstep. They are reported as counters in total, and per level
+ * for the first levels only when asked to as jobs are limited in the number of
+ * counters. When a metrics output directory is configured they are written as
+ * one tab separated line per superstep, with its level, to worker-<worker
+ * index> in it.
+ * 
+ * With a {@link SampleMining} pre-pass the context holds the itemsets found
+ * frequent in the sample, which tell the vertices the extensions worth
+ * intersecting, and counts the extensions skipped and the frequent ones the
+ * sample missed.
+ * 
+ * With weighted transactions it holds their {@link TransactionWeights}.
+ * 
+ * When the job is checkpointed it holds the {@link TidSetStore} of the
+ * transaction lists of its vertices, spilled as they are handed to it and
+ * sorted into its map file once at the end of the first superstep. The
+ * metrics file then also gets the time the worker spent computing each
+ * superstep, the time between the end of the previous superstep and its
+ * start, which includes the barrier and the checkpoint if one was taken, and
+ * the checkpoint interval, from which {@link CheckpointScheduler} chooses the
+ * interval of the next run.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class FrequentPatternWorkerContext extends WorkerContext {
+
+	private static boolean DEFAULT_LEVEL_COUNTERS = false;
+
+	private Path patternOutputDir;
+
+	private IdDictionary itemDictionary;
+
+	/**
+	 * Name of the pattern files written in the current superstep, null if
+	 * the itemsets are not written out.
+	 */
+	private String patternPart;
+
+	/**
+	 * Pattern files of the current superstep by itemset size.
+	 */
+	private final Int2ObjectOpenHashMap<Writer> patternWriters = new Int2ObjectOpenHashMap<Writer>();
+
+	private long patternCount;
+
+	private final SuperstepMetrics superstepMetrics = new SuperstepMetrics();
+
+	/**
+	 * Weights of the transactions, null if they are not weighted.
+	 */
+	private TransactionWeights transactionWeights;
+
+	/**
+	 * Transaction lists of the vertices, null if the job is not checkpointed.
+	 */
+	private TidSetStore tidSetStore;
+
+	/**
+	 * Hashes of the itemsets frequent in the sample, null without a sample.
+	 */
+	private LongOpenHashSet sampleItemsets;
+
+	private long sampleSkipped;
+
+	private long sampleMisses;
+
+	private Writer metricsWriter;
+
+	private long superstepStart;
+
+	private long superstepEnd;
+
+	private long barrierMillis;
+
+	/**
+	 * Size of the itemsets found in the current superstep.
+	 */
+	private int level;
+
+	@Override
+	public void preApplication() throws InstantiationException,
+			IllegalAccessException {
+		String dir = getContext().getConfiguration().get(
+				CommonConstants.PATTERN_OUTPUT_DIR_STRING);
+		if (dir != null && !dir.isEmpty()) {
+			this.patternOutputDir = new Path(dir);
+			try {
+				this.itemDictionary = IdDictionary.load(getContext()
+						.getConfiguration()
+						.get(CommonConstants.ITEM_DICTIONARY_STRING),
+						getContext().getConfiguration());
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Cannot read the item dictionary", e);
+			}
+		}
+		try {
+			this.transactionWeights = TransactionWeights.load(getContext()
+					.getConfiguration()
+					.get(CommonConstants.TRANSACTION_WEIGHTS_STRING),
+					getContext().getConfiguration());
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"Cannot read the transaction weights", e);
+		}
+		try {
+			this.sampleItemsets = SampleMining.loadItemsetHashes(getContext()
+					.getConfiguration()
+					.get(CommonConstants.SAMPLE_ITEMSETS_STRING),
+					getContext().getConfiguration());
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"Cannot read the sample itemsets", e);
+		}
+		this.tidSetStore = TidSetStore.create(getContext().getConfiguration()
+				.get(CommonConstants.TIDSET_STORE_DIR_STRING),
+				getMyWorkerIndex(), getContext().getConfiguration());
+		String metricsDir = getContext().getConfiguration().get(
+				CommonConstants.METRICS_OUTPUT_DIR_STRING);
+		if (metricsDir != null && !metricsDir.isEmpty()) {
+			openMetricsFile(new Path(metricsDir, "worker-"
+					+ getMyWorkerIndex()));
+		}
+	}
+
+	@Override
+	public void postApplication() {
+		if (this.tidSetStore != null) {
+			try {
+				this.tidSetStore.close();
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Cannot close the transaction list store", e);
+			}
+		}
+		if (this.metricsWriter == null) {
+			return;
+		}
+		try {
+			this.metricsWriter.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot close metrics file", e);
+		}
+		this.metricsWriter = null;
+	}
+
+	@Override
+	public void preSuperstep() {
+		this.superstepMetrics.clear();
+		this.superstepStart = System.currentTimeMillis();
+		this.barrierMillis = this.superstepEnd == 0 ? 0 : this.superstepStart
+				- this.superstepEnd;
+		/**
+		 * The itemsets found in a step of the mining have one item more than
+		 * its number. The steps starting the waves after the first one find
+		 * no itemsets.
+		 */
+		int wave = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_INDEX_AGGREGATOR).get();
+		int step = this.<IntWritable> getAggregatedValue(
+				CommonConstants.WAVE_STEP_AGGREGATOR).get();
+		this.level = step + 1;
+		if (this.patternOutputDir == null) {
+			return;
+		}
+		this.patternPart = "part-" + getMyWorkerIndex();
+		if (wave > 0) {
+			this.patternPart += "-" + wave;
+		}
+		this.patternCount = 0;
+	}
+
+	@Override
+	public void postSuperstep() {
+		/**
+		 * The transaction lists of the frequent items are final after the
+		 * first superstep, they are written before the next checkpoint.
+		 */
+		if (this.tidSetStore != null && getSuperstep() == 0) {
+			try {
+				this.tidSetStore.write();
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Cannot write the transaction list store", e);
+			}
+		}
+		reportMetrics();
+		if (this.tidSetStore != null) {
+			reportCheckpointedLists();
+		}
+		if (this.sampleItemsets != null) {
+			incrementCounter("Sample candidates skipped", this.sampleSkipped);
+			incrementCounter(CommonConstants.SAMPLE_MISSES_COUNTER,
+					this.sampleMisses);
+			this.sampleSkipped = 0;
+			this.sampleMisses = 0;
+		}
+		if (this.patternPart == null) {
+			return;
+		}
+		try {
+			for (Writer writer : this.patternWriters.values()) {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot close pattern file", e);
+		}
+		this.patternWriters.clear();
+		incrementCounter("Patterns written", this.patternCount);
+	}
+
+	/**
+	 * Adds the metrics of a compute thread to the ones of the worker for the
+	 * current superstep.
+	 */
+	public synchronized void addMetrics(SuperstepMetrics metrics) {
+		this.superstepMetrics.add(metrics);
+	}
+
+	/**
+	 * Adds the extensions a compute thread skipped as not worth intersecting
+	 * and the frequent ones missing from the sample itemsets.
+	 */
+	public synchronized void addSampleCounts(long skipped, long misses) {
+		this.sampleSkipped += skipped;
+		this.sampleMisses += misses;
+	}
+
+	/**
+	 * Returns the weights of the transactions, or null if they are not
+	 * weighted.
+	 */
+	public TransactionWeights getTransactionWeights() {
+		return transactionWeights;
+	}
+
+	/**
+	 * Hands the transaction list of a frequent item to the store, the vertex
+	 * value then only refers to it. Does nothing if the job is not
+	 * checkpointed.
+	 */
+	public void storeTransactionIds(int itemId, ItemVertexValue value) {
+		if (this.tidSetStore == null) {
+			return;
+		}
+		try {
+			this.tidSetStore.put(itemId, value.getTransactionIdList());
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"Cannot store the transaction list of item " + itemId, e);
+		}
+		value.setTransactionsStored(true);
+	}
+
+	/**
+	 * Returns the stored transaction list of an item.
+	 */
+	public TidSet getStoredTransactionIds(int itemId) throws IOException {
+		return this.tidSetStore.get(itemId);
+	}
+
+	/**
+	 * Tells whether a sample restricts the extensions intersected.
+	 */
+	public boolean hasSampleItemsets() {
+		return this.sampleItemsets != null;
+	}
+
+	/**
+	 * Tells whether the extension of an itemset with an item was found
+	 * frequent in the sample or is in its negative border, all its subsets
+	 * one item smaller, the itemset included, having been.
+	 */
+	public boolean isSampleCandidate(ItemSet itemset, int item) {
+		long hash = SampleMining.itemsetHash(itemset);
+		long extensionHash = hash + SampleMining.itemHash(item);
+		if (this.sampleItemsets.contains(extensionHash)) {
+			return true;
+		}
+		if (!this.sampleItemsets.contains(hash)) {
+			return false;
+		}
+		for (int other : itemset.getItems()) {
+			if (!this.sampleItemsets.contains(extensionHash
+					- SampleMining.itemHash(other))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether the extension of an itemset with an item was found
+	 * frequent in the sample.
+	 */
+	public boolean isSampleItemset(ItemSet itemset, int item) {
+		return this.sampleItemsets.contains(SampleMining
+				.itemsetHash(itemset) + SampleMining.itemHash(item));
+	}
+
+	/**
+	 * Tells whether the frequent itemsets are written out by this context
+	 * rather than kept in the vertex values.
+	 */
+	public boolean isPatternSinkEnabled() {
+		return this.patternOutputDir != null;
+	}
+
+	/**
+	 * Writes a frequent itemset to the file of its size, opening it on its
+	 * first itemset. Called by the compute threads of the worker
+	 * concurrently.
+	 */
+	public synchronized void writePattern(FrequentItemset itemset)
+			throws IOException {
+		int size = itemset.getItems().length;
+		Writer writer = this.patternWriters.get(size);
+		if (writer == null) {
+			Path levelFile = new Path(new Path(this.patternOutputDir,
+					"level-" + size), this.patternPart);
+			FileSystem fs = levelFile.getFileSystem(getContext()
+					.getConfiguration());
+			writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+					levelFile, true), "UTF-8"));
+			this.patternWriters.put(size, writer);
+		}
+		if (this.itemDictionary != null) {
+			itemset = itemset.translate(this.itemDictionary);
+		}
+		writer.write(itemset.toPatternLine());
+		this.patternCount++;
+	}
+
+	private void openMetricsFile(Path metricsFile) {
+		try {
+			FileSystem fs = metricsFile.getFileSystem(getContext()
+					.getConfiguration());
+			this.metricsWriter = new BufferedWriter(new OutputStreamWriter(
+					fs.create(metricsFile, true), "UTF-8"));
+			StringBuilder header = new StringBuilder("superstep\tlevel");
+			for (String name : SuperstepMetrics.NAMES) {
+				header.append('\t').append(name);
+			}
+			for (String name : CheckpointScheduler.TIMING_NAMES) {
+				header.append('\t').append(name);
+			}
+			this.metricsWriter.write(header.append('\n').toString());
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot create metrics file "
+					+ metricsFile, e);
+		}
+	}
+
+	/**
+	 * Reports the metrics of the superstep as counters, the per level ones
+	 * only if turned on and up to {@link CommonConstants#MAX_COUNTER_LEVEL}
+	 * so that the job keeps a bounded number of counters, and to the metrics
+	 * file with the level and the timings of the superstep.
+	 */
+	private void reportMetrics() {
+		boolean levelCounters = getContext().getConfiguration().getBoolean(
+				CommonConstants.LEVEL_COUNTERS_STRING, DEFAULT_LEVEL_COUNTERS)
+				&& this.level <= CommonConstants.MAX_COUNTER_LEVEL;
+		long[] values = this.superstepMetrics.toArray();
+		StringBuilder line = new StringBuilder().append(getSuperstep())
+				.append('\t').append(this.level);
+		for (int i = 0; i < values.length; i++) {
+			String name = SuperstepMetrics.NAMES[i];
+			if (levelCounters) {
+				incrementCounter("Level " + this.level + " " + name,
+						values[i]);
+			}
+			incrementCounter("Total " + name, values[i]);
+			line.append('\t').append(values[i]);
+		}
+		this.superstepEnd = System.currentTimeMillis();
+		if (this.metricsWriter == null) {
+			return;
+		}
+		line.append('\t').append(this.superstepEnd - this.superstepStart)
+				.append('\t').append(this.barrierMillis).append('\t')
+				.append(GiraphConstants.CHECKPOINT_FREQUENCY.get(getContext()
+						.getConfiguration()));
+		try {
+			this.metricsWriter.write(line.append('\n').toString());
+			this.metricsWriter.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write metrics file", e);
+		}
+	}
+
+	/**
+	 * Counts the stored transaction lists left out of the checkpoint taken at
+	 * the start of the superstep. The values only tell a checkpoint by the
+	 * names of the threads Giraph writes it with, a checkpoint writing stored
+	 * lists without leaving any out means these names changed and the
+	 * checkpoints hold the lists again.
+	 */
+	private void reportCheckpointedLists() {
+		long written = ItemVertexValue.takeStoredListsWritten();
+		long leftOut = ItemVertexValue.takeListsLeftOutOfCheckpoints();
+		incrementCounter("Transaction lists left out of checkpoints", leftOut);
+		int frequency = GiraphConstants.CHECKPOINT_FREQUENCY
+				.get(getContext().getConfiguration());
+		long superstep = getSuperstep();
+		if (frequency > 0 && superstep >= frequency
+				&& superstep % frequency == 0 && written > 0 && leftOut == 0) {
+			System.out.println("***** Warning: the checkpoint of superstep "
+					+ superstep + " holds the " + written
+					+ " stored transaction lists of worker "
+					+ getMyWorkerIndex() + ", no value was written by a "
+					+ ItemVertexValue.CHECKPOINT_THREAD_PREFIX + "* thread");
+		}
+	}
+
+	private void incrementCounter(String name, long value) {
+		getContext().getCounter(CommonConstants.FP_MINING_COUNTER_GROUP, name)
+				.increment(value);
+	}
+
+}
@@ -0,0 +1,622 @@
+package core;
+
+import io.BasketGraphBuilder;
+import io.ItemVertexInputFormat;
+import io.ItemVertexLineParser;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Updates the frequent itemsets of a previous run with appended transactions
+ * instead of mining the whole data again, in the way of FUP. A run directory
+ * holds the itemsets, as written by the other engines to
+ * level-<size>/part-*, the item vertices of all the transactions mined so far
+ * in state/part-0 and the minimum support, maximum itemset size and number
+ * of transactions of the run in run.properties. The next run reads it with
+ * the item vertices of the new transactions only, numbered from 0 as
+ * {@link BasketGraphBuilder} numbers a day of baskets, and writes a new run
+ * directory. The number of new transactions is read from the _transactions
+ * file written by {@link BasketGraphBuilder} next to the vertices, or else
+ * has to be given with the -newtransactions option of {@link MainClass}, as
+ * trailing transactions without items leave no trace in the tidsets.
+ *
+ * The itemsets are found level by level, the candidates of a level joining
+ * the frequent itemsets of the level below sharing all their items but the
+ * last one. The support of a candidate is its support in the previous
+ * transactions plus its support in the new ones, counted on their tidsets
+ * which are small. A candidate frequent in the previous run takes its
+ * previous support from the previous itemsets, a candidate which was not had
+ * at most the previous minimum support - 1 there, so it can only become
+ * frequent if it occurs in at least the new minimum support - the previous
+ * one + 1 new transactions. Only the few candidates passing that test are
+ * counted on the previous tidsets. Itemsets frequent before and not any more
+ * under a raised minimum support are dropped.
+ *
+ * The previous tidsets are read once, merged with the new ones into the new
+ * state as they are read, and only those of the items frequent in all the
+ * transactions are kept. The state has to hold every item, infrequent ones
+ * included: an item missing from it is counted as never occurring before.
+ * Only the all mining mode is supported, the closed and maximal itemsets of a
+ * run do not give the supports of the others.
+ *
+ * A run directory which does not exist is an empty previous run, so the
+ * first run mines all the transactions as new ones. One made from a full
+ * mining run needs the item vertices of all its items in state/part-0 and
+ * its run.properties written by hand.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class IncrementalMiningEngine {
+
+	public static String STATE_DIR = "state";
+
+	public static String RUN_PROPERTIES_FILE = "run.properties";
+
+	public static String MINIMUM_SUPPORT_PROPERTY = "minimum_support";
+
+	public static String MAX_ITEMSET_SIZE_PROPERTY = "max_itemset_size";
+
+	public static String TRANSACTIONS_PROPERTY = "transactions";
+
+	private static int DEFAULT_MIN_SUPPORT = 100;
+
+	private static String DEFAULT_MINING_MODE = CommonConstants.ALL_MINING_MODE;
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private static int DEFAULT_MAX_ITEMSET_SIZE = Integer.MAX_VALUE;
+
+	private final Configuration conf;
+
+	private final int minSupport;
+
+	private final int maxItemsetSize;
+
+	private final boolean skipMalformedLines;
+
+	private final ItemVertexLineParser parser = new ItemVertexLineParser();
+
+	private final Text line = new Text();
+
+	/**
+	 * Itemsets of the previous run by their sorted items, with their
+	 * supports.
+	 */
+	private final Object2IntOpenHashMap<IntArrayList> previousItemsets = new Object2IntOpenHashMap<IntArrayList>();
+
+	/**
+	 * Previous tidsets of the items frequent in all the transactions.
+	 */
+	private final Int2ObjectOpenHashMap<TidSet> previousTids = new Int2ObjectOpenHashMap<TidSet>();
+
+	private int previousMinSupport;
+
+	private int previousMaxItemsetSize;
+
+	private int previousTransactions;
+
+	public IncrementalMiningEngine(Configuration conf) {
+		this.conf = conf;
+		this.minSupport = conf.getInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+				DEFAULT_MIN_SUPPORT);
+		this.maxItemsetSize = conf.getInt(
+				CommonConstants.MAX_ITEMSET_SIZE_STRING, DEFAULT_MAX_ITEMSET_SIZE);
+		this.skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+		if (!CommonConstants.ALL_MINING_MODE.equals(conf.get(
+				CommonConstants.MINING_MODE_STRING, DEFAULT_MINING_MODE))) {
+			throw new IllegalArgumentException(
+					"Incremental mining needs the all mining mode");
+		}
+	}
+
+	/**
+	 * Mines the new transactions of the given item vertex input on top of the
+	 * previous run directory and writes the new run directory.
+	 *
+	 * @return the number of itemsets written.
+	 */
+	public long mine(Path newInput, Path previousRunDir, Path runDir)
+			throws IOException {
+		long start = System.currentTimeMillis();
+		FileSystem fs = previousRunDir.getFileSystem(conf);
+		boolean hasPreviousRun = fs.exists(previousRunDir);
+		if (hasPreviousRun) {
+			readRunProperties(fs, new Path(previousRunDir, RUN_PROPERTIES_FILE));
+			readPreviousItemsets(fs, previousRunDir);
+		} else {
+			System.out.println("***** Incremental engine: no previous run at "
+					+ previousRunDir + ", mining all the transactions");
+			this.previousMinSupport = 1;
+			this.previousMaxItemsetSize = Integer.MAX_VALUE;
+			this.previousTransactions = 0;
+		}
+
+		/**
+		 * The new transactions are numbered after the previous ones, all of
+		 * them must keep non-negative int ids.
+		 */
+		FileSystem inputFs = newInput.getFileSystem(conf);
+		int newTransactions = readNewTransactions(inputFs, newInput);
+		if ((long) previousTransactions + newTransactions > Integer.MAX_VALUE) {
+			throw new IOException("Too many transactions: "
+					+ previousTransactions + " previous and " + newTransactions
+					+ " new ones, transaction ids are non-negative ints so at most "
+					+ Integer.MAX_VALUE + " transactions can be mined");
+		}
+
+		/**
+		 * The new tidsets are kept as read for the state, numbered after the
+		 * previous transactions there.
+		 */
+		Int2ObjectOpenHashMap<int[]> newTids = new Int2ObjectOpenHashMap<int[]>();
+		Int2ObjectOpenHashMap<int[]> newNeighbors = new Int2ObjectOpenHashMap<int[]>();
+		for (Path file : ItemVertexInputFormat.listVertexFiles(inputFs,
+				newInput)) {
+			LineReader reader = new LineReader(inputFs.open(file), conf);
+			try {
+				while (nextVertex(reader)) {
+					int count = parser.getTransactionIdCount();
+					newTids.put(parser.getId(),
+							Arrays.copyOf(parser.getTransactionIds(), count));
+					newNeighbors.put(parser.getId(), Arrays.copyOf(
+							parser.getNeighbors(), parser.getNeighborCount()));
+					if (count > 0
+							&& parser.getTransactionIds()[count - 1] >= newTransactions) {
+						throw new IOException("Transaction id "
+								+ parser.getTransactionIds()[count - 1]
+								+ " of item " + parser.getId() + " in " + file
+								+ " is past the " + newTransactions
+								+ " new transactions");
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		List<Candidate> level = readPreviousState(fs, previousRunDir,
+				hasPreviousRun, newTids, newNeighbors, runDir);
+		newNeighbors = null;
+
+		long itemsets = 0;
+		int size = 1;
+		while (!level.isEmpty()) {
+			Writer writer = createLevelWriter(runDir, size);
+			try {
+				for (Candidate candidate : level) {
+					writer.write(new FrequentItemset(candidate.items
+							.toIntArray(), candidate.support).toPatternLine());
+				}
+			} finally {
+				writer.close();
+			}
+			int promoted = 0;
+			Set<IntArrayList> frequent = new HashSet<IntArrayList>();
+			for (Candidate candidate : level) {
+				frequent.add(candidate.items);
+				if (!previousItemsets.containsKey(candidate.items)) {
+					promoted++;
+				}
+			}
+			System.out.println("***** Level " + size + ": " + level.size()
+					+ " itemsets, " + promoted + " newly frequent, "
+					+ countDropped(size, frequent) + " no longer frequent");
+			itemsets += level.size();
+			if (size == maxItemsetSize) {
+				break;
+			}
+			level = nextLevel(level, frequent, size + 1);
+			size++;
+		}
+
+		writeRunProperties(fs, new Path(runDir, RUN_PROPERTIES_FILE),
+				previousTransactions + newTransactions);
+		System.out.println("***** Incremental engine: " + itemsets
+				+ " itemsets in " + (System.currentTimeMillis() - start)
+				+ " ms");
+		return itemsets;
+	}
+
+	/**
+	 * Reads the previous state, writing the new one with the new
+	 * transactions, and returns the frequent single item itemsets. The
+	 * previous tidsets of the frequent items are kept.
+	 */
+	private List<Candidate> readPreviousState(FileSystem fs,
+			Path previousRunDir, boolean hasPreviousRun,
+			Int2ObjectOpenHashMap<int[]> newTids,
+			Int2ObjectOpenHashMap<int[]> newNeighbors, Path runDir)
+			throws IOException {
+		List<Candidate> items = new ArrayList<Candidate>();
+		IntOpenHashSet seen = new IntOpenHashSet();
+		StringBuilder vertexLine = new StringBuilder();
+		Writer state = new BufferedWriter(new OutputStreamWriter(fs.create(
+				new Path(new Path(runDir, STATE_DIR), "part-0"), true),
+				"UTF-8"), 1 << 20);
+		try {
+			if (hasPreviousRun) {
+				for (Path file : ItemVertexInputFormat.listVertexFiles(fs,
+						new Path(previousRunDir, STATE_DIR))) {
+					LineReader reader = new LineReader(fs.open(file), conf);
+					try {
+						while (nextVertex(reader)) {
+							int item = parser.getId();
+							seen.add(item);
+							int[] tids = newTids.get(item);
+							int newSupport = tids == null ? 0 : tids.length;
+							int support = parser.getTransactionIdCount()
+									+ newSupport;
+							if (support >= minSupport) {
+								previousTids.put(item, parser.toTidSet());
+								items.add(new Candidate(item, newTidSet(tids),
+										support));
+							}
+							appendStateLine(vertexLine, item,
+									parser.getNeighbors(),
+									parser.getNeighborCount(),
+									newNeighbors.get(item),
+									parser.getTransactionIds(),
+									parser.getTransactionIdCount(), tids);
+							state.write(vertexLine.toString());
+						}
+					} finally {
+						reader.close();
+					}
+				}
+			}
+			for (int item : newTids.keySet()) {
+				if (seen.contains(item)) {
+					continue;
+				}
+				int[] tids = newTids.get(item);
+				if (tids.length >= minSupport) {
+					previousTids.put(item, new TidSet());
+					items.add(new Candidate(item, newTidSet(tids), tids.length));
+				}
+				appendStateLine(vertexLine, item, new int[0], 0,
+						newNeighbors.get(item), new int[0], 0, tids);
+				state.write(vertexLine.toString());
+			}
+		} finally {
+			state.close();
+		}
+		Collections.sort(items);
+		return items;
+	}
+
+	/**
+	 * Writes the vertex line of an item of the new state, with the union of
+	 * its previous and new neighbors and its new transactions numbered after
+	 * the previous ones.
+	 */
+	private void appendStateLine(StringBuilder vertexLine, int item,
+			int[] neighbors, int neighborCount, int[] newNeighbors,
+			int[] tids, int tidCount, int[] newTids) {
+		IntOpenHashSet neighborSet = new IntOpenHashSet();
+		for (int i = 0; i < neighborCount; i++) {
+			neighborSet.add(neighbors[i]);
+		}
+		if (newNeighbors != null) {
+			for (int neighbor : newNeighbors) {
+				neighborSet.add(neighbor);
+			}
+		}
+		int[] allNeighbors = neighborSet.toIntArray();
+		Arrays.sort(allNeighbors);
+
+		int newCount = newTids == null ? 0 : newTids.length;
+		int[] allTids = Arrays.copyOf(tids, tidCount + newCount);
+		for (int i = 0; i < newCount; i++) {
+			allTids[tidCount + i] = previousTransactions + newTids[i];
+		}
+
+		vertexLine.setLength(0);
+		BasketGraphBuilder.appendVertexLine(vertexLine, item, allNeighbors,
+				allTids, allTids.length);
+	}
+
+	/**
+	 * Joins the frequent itemsets of a level sharing all their items but the
+	 * last one into the candidates of the next level, keeping the frequent
+	 * ones.
+	 */
+	private List<Candidate> nextLevel(List<Candidate> level,
+			Set<IntArrayList> frequent, int size) {
+		/**
+		 * Above the largest itemsets of the previous run nothing bounds the
+		 * previous support of a candidate.
+		 */
+		int minNewSupport = size <= previousMaxItemsetSize ? minSupport
+				- previousMinSupport + 1 : 0;
+		List<Candidate> next = new ArrayList<Candidate>();
+		int classStart = 0;
+		while (classStart < level.size()) {
+			int classEnd = classStart + 1;
+			while (classEnd < level.size()
+					&& level.get(classEnd).sharesPrefix(level.get(classStart))) {
+				classEnd++;
+			}
+			for (int i = classStart; i < classEnd; i++) {
+				Candidate itemset = level.get(i);
+				for (int j = i + 1; j < classEnd; j++) {
+					Candidate sibling = level.get(j);
+					IntArrayList items = new IntArrayList(itemset.items);
+					items.add(sibling.lastItem());
+					if (!allSubsetsFrequent(items, frequent)) {
+						continue;
+					}
+					TidSet newTransactionIds = itemset.newTransactionIds
+							.and(sibling.newTransactionIds);
+					int newSupport = newTransactionIds.cardinality();
+					int support;
+					if (previousItemsets.containsKey(items)) {
+						support = previousItemsets.getInt(items) + newSupport;
+					} else if (newSupport >= minNewSupport) {
+						support = newSupport
+								+ previousTransactionIds(itemset, sibling)
+										.cardinality();
+					} else {
+						continue;
+					}
+					if (support >= minSupport) {
+						next.add(new Candidate(items, newTransactionIds,
+								support));
+					}
+				}
+			}
+			classStart = classEnd;
+		}
+		return next;
+	}
+
+	/**
+	 * Previous tidset of the join of two itemsets, kept on the first one for
+	 * the joins after it.
+	 */
+	private TidSet previousTransactionIds(Candidate itemset, Candidate sibling) {
+		if (itemset.previousTransactionIds == null) {
+			TidSet tids = previousTids.get(itemset.items.getInt(0));
+			for (int i = 1; i < itemset.items.size(); i++) {
+				tids = tids.and(previousTids.get(itemset.items.getInt(i)));
+			}
+			itemset.previousTransactionIds = tids;
+		}
+		return itemset.previousTransactionIds.and(previousTids.get(sibling
+				.lastItem()));
+	}
+
+	private boolean allSubsetsFrequent(IntArrayList items,
+			Set<IntArrayList> frequent) {
+		/**
+		 * The subsets without the last or the one before it are the joined
+		 * itemsets.
+		 */
+		for (int i = 0; i < items.size() - 2; i++) {
+			IntArrayList subset = new IntArrayList(items);
+			subset.removeInt(i);
+			if (!frequent.contains(subset)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int countDropped(int size, Set<IntArrayList> frequent) {
+		int dropped = 0;
+		for (IntArrayList items : previousItemsets.keySet()) {
+			if (items.size() == size && !frequent.contains(items)) {
+				dropped++;
+			}
+		}
+		return dropped;
+	}
+
+	private TidSet newTidSet(int[] tids) {
+		if (tids == null) {
+			return new TidSet();
+		}
+		TidSet tidSet = TidSet.fromSorted(tids, tids.length);
+		tidSet.runOptimize();
+		return tidSet;
+	}
+
+	/**
+	 * Returns the number of new transactions, given in the configuration or
+	 * read from the transactions file of the input directory.
+	 */
+	private int readNewTransactions(FileSystem fs, Path newInput)
+			throws IOException {
+		int transactions = conf.getInt(CommonConstants.NEW_TRANSACTIONS_STRING,
+				-1);
+		if (transactions < 0) {
+			Path file = new Path(newInput, BasketGraphBuilder.TRANSACTIONS_FILE);
+			if (!fs.getFileStatus(newInput).isDirectory() || !fs.exists(file)) {
+				throw new IllegalArgumentException(
+						"The number of new transactions is not known, the input has no "
+								+ BasketGraphBuilder.TRANSACTIONS_FILE
+								+ " file and none was given with -newtransactions");
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					fs.open(file), "UTF-8"));
+			try {
+				transactions = Integer.parseInt(reader.readLine().trim());
+			} finally {
+				reader.close();
+			}
+		}
+		if (transactions < 0) {
+			throw new IllegalArgumentException(
+					"The number of new transactions must not be negative: "
+							+ transactions);
+		}
+		return transactions;
+	}
+
+	private void readRunProperties(FileSystem fs, Path file)
+			throws IOException {
+		Properties properties = new Properties();
+		InputStream in = fs.open(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		this.previousMinSupport = Integer.parseInt(properties
+				.getProperty(MINIMUM_SUPPORT_PROPERTY));
+		this.previousMaxItemsetSize = Integer.parseInt(properties.getProperty(
+				MAX_ITEMSET_SIZE_PROPERTY,
+				Integer.toString(Integer.MAX_VALUE)));
+		this.previousTransactions = Integer.parseInt(properties
+				.getProperty(TRANSACTIONS_PROPERTY));
+	}
+
+	private void writeRunProperties(FileSystem fs, Path file, int transactions)
+			throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(MINIMUM_SUPPORT_PROPERTY,
+				Integer.toString(minSupport));
+		properties.setProperty(MAX_ITEMSET_SIZE_PROPERTY,
+				Integer.toString(maxItemsetSize));
+		properties.setProperty(TRANSACTIONS_PROPERTY,
+				Integer.toString(transactions));
+		OutputStream out = fs.create(file, true);
+		try {
+			properties.store(out, "Incremental mining run");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the itemsets of every part file of the level directories of the
+	 * previous run.
+	 */
+	private void readPreviousItemsets(FileSystem fs, Path previousRunDir)
+			throws IOException {
+		for (FileStatus levelDir : fs.listStatus(previousRunDir)) {
+			if (!levelDir.isDirectory()
+					|| !levelDir.getPath().getName().startsWith("level-")) {
+				continue;
+			}
+			for (Path file : ItemVertexInputFormat.listVertexFiles(fs,
+					levelDir.getPath())) {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(fs.open(file), "UTF-8"));
+				try {
+					String patternLine;
+					while ((patternLine = reader.readLine()) != null) {
+						FrequentItemset itemset = FrequentItemset
+								.fromPatternLine(patternLine);
+						previousItemsets.put(
+								new IntArrayList(itemset.getItems()),
+								itemset.getSupport());
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	private Writer createLevelWriter(Path runDir, int size)
+			throws IOException {
+		Path levelFile = new Path(new Path(runDir, "level-" + size), "part-0");
+		FileSystem fs = levelFile.getFileSystem(conf);
+		return new BufferedWriter(new OutputStreamWriter(fs.create(levelFile,
+				true), "UTF-8"));
+	}
+
+	/**
+	 * Parses the next well formed line of the reader.
+	 *
+	 * @return false at the end of the input.
+	 */
+	private boolean nextVertex(LineReader reader) throws IOException {
+		while (reader.readLine(line) > 0) {
+			if (parser.parse(line.getBytes(), line.getLength())) {
+				return true;
+			}
+			if (!skipMalformedLines) {
+				throw new IllegalArgumentException(
+						"Couldn't get vertex from line " + line + ": "
+								+ parser.getError() + " at byte "
+								+ parser.getErrorPosition());
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A frequent itemset of the current level, its items sorted, with its
+	 * tidset in the new transactions.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+
+		private final IntArrayList items;
+
+		private final TidSet newTransactionIds;
+
+		private final int support;
+
+		private TidSet previousTransactionIds;
+
+		Candidate(int item, TidSet newTransactionIds, int support) {
+			this(new IntArrayList(new int[] { item }), newTransactionIds,
+					support);
+		}
+
+		Candidate(IntArrayList items, TidSet newTransactionIds, int support) {
+			this.items = items;
+			this.newTransactionIds = newTransactionIds;
+			this.support = support;
+		}
+
+		int lastItem() {
+			return items.getInt(items.size() - 1);
+		}
+
+		boolean sharesPrefix(Candidate other) {
+			for (int i = 0; i < items.size() - 1; i++) {
+				if (items.getInt(i) != other.items.getInt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return items.compareTo(other.items);
+		}
+
+	}
+
+}
@@ -0,0 +1,151 @@
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+
+/**
+ * Immutable set of item ids held as a sorted int array, with its hash code
+ * computed once. It is the item set of the itemsets travelling in the
+ * messages and the key of the maps of itemsets, where the boxed ids of a
+ * hash set cost an object per item and a rehash of all of them per lookup.
+ *
+ * The hash code mixes the ids in order, as {@link Arrays#hashCode(int[])}
+ * does. The sum of the ids used by {@link java.util.Set} gives the itemsets
+ * of a level, which share most of the keys of a map, only a few distinct
+ * values. An item set is therefore not a {@link java.util.Set}, it only
+ * equals item sets of the same ids. Adding or removing an item returns a new
+ * item set, which can then be shared by the copies of an itemset.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public final class ItemSet {
+
+	public static final ItemSet EMPTY = new ItemSet(new int[0]);
+
+	private final int[] items;
+
+	private final int hash;
+
+	private ItemSet(int[] sortedItems) {
+		this.items = sortedItems;
+		this.hash = Arrays.hashCode(sortedItems);
+	}
+
+	/**
+	 * Creates an item set of the given strictly increasing ids, which it
+	 * takes over.
+	 */
+	public static ItemSet fromSorted(int[] sortedItems) {
+		return new ItemSet(sortedItems);
+	}
+
+	public static ItemSet of(int item) {
+		return new ItemSet(new int[] { item });
+	}
+
+	/**
+	 * Creates an item set of the given distinct ids, in any order.
+	 */
+	public static ItemSet of(int... items) {
+		int[] sortedItems = items.clone();
+		Arrays.sort(sortedItems);
+		return new ItemSet(sortedItems);
+	}
+
+	/**
+	 * Returns this item set with the given item added.
+	 */
+	public ItemSet with(int item) {
+		int index = Arrays.binarySearch(items, item);
+		if (index >= 0) {
+			return this;
+		}
+		index = -index - 1;
+		int[] sortedItems = new int[items.length + 1];
+		System.arraycopy(items, 0, sortedItems, 0, index);
+		sortedItems[index] = item;
+		System.arraycopy(items, index, sortedItems, index + 1, items.length
+				- index);
+		return new ItemSet(sortedItems);
+	}
+
+	/**
+	 * Returns this item set with the given item removed.
+	 */
+	public ItemSet without(int item) {
+		int index = Arrays.binarySearch(items, item);
+		if (index < 0) {
+			return this;
+		}
+		int[] sortedItems = new int[items.length - 1];
+		System.arraycopy(items, 0, sortedItems, 0, index);
+		System.arraycopy(items, index + 1, sortedItems, index, items.length
+				- index - 1);
+		return new ItemSet(sortedItems);
+	}
+
+	/**
+	 * Sorted ids of the items, not to be modified.
+	 */
+	public int[] getItems() {
+		return items;
+	}
+
+	public int first() {
+		return items[0];
+	}
+
+	public boolean contains(int item) {
+		return Arrays.binarySearch(items, item) >= 0;
+	}
+
+	public int size() {
+		return items.length;
+	}
+
+	public void write(DataOutput dataOut) throws IOException {
+		DeltaCoding.writeSortedIds(dataOut, items, items.length);
+	}
+
+	public static ItemSet read(DataInput dataIn) throws IOException {
+		return new ItemSet(DeltaCoding.readSortedIds(dataIn, null));
+	}
+
+	public int serializedSize() {
+		return DeltaCoding.sortedIdsSize(items, items.length);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ItemSet))
+			return false;
+		ItemSet other = (ItemSet) obj;
+		return hash == other.hash && Arrays.equals(items, other.items);
+	}
+
+	public JSONArray toJSONArray() {
+		JSONArray array = new JSONArray();
+		for (int item : items) {
+			array.put(item);
+		}
+		return array;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(items);
+	}
+
+}
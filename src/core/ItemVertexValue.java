@@ -1,16 +1,33 @@
 package core;
 
+import io.IdDictionary;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 
 /**
+ * Value of an item vertex. Giraph reads many vertices into the same value
+ * object, the itemsets and pairs of the previous vertex are then filled
+ * again instead of being allocated for every read.
+ * 
+ * Once the transaction list is held by the {@link TidSetStore} of the worker
+ * it is left out of the checkpoints, a value read back from one then has no
+ * transaction list until the computation sets the stored one again. The
+ * values written out of core keep their list, so that reading them back every
+ * superstep does not look it up in the store.
  * 
  * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
  * 
@@ -23,30 +40,123 @@ public class ItemVertexValue implements Writable {
 
 	private static int FREQUENT_PATTERNS_LIST_INDEX = 2;
 
-	private Set<Transaction> transactionList = new HashSet<Transaction>();
+	private TidSet transactionIdList = new TidSet();
+
+	/**
+	 * Whether the transaction list is held by the store of the worker.
+	 */
+	private boolean transactionsStored;
+
+	/**
+	 * Prefix of the names of the threads Giraph 1.1 writes the checkpoints of
+	 * the vertices with. The partitions these threads push out of core to
+	 * load the next ones to checkpoint lose their stored lists too.
+	 */
+	public static String CHECKPOINT_THREAD_PREFIX = "checkpoint-vertices-";
+
+	/**
+	 * Values written with a stored list, and the ones whose list was left out
+	 * of a checkpoint, since the worker context last took the counts.
+	 */
+	private static final AtomicLong storedListsWritten = new AtomicLong();
+
+	private static final AtomicLong listsLeftOutOfCheckpoints = new AtomicLong();
 
 	private boolean shouldPropagate = true;
 
-	private Set<ItemsAndTransactionsPair> frequentPatters = new HashSet<ItemsAndTransactionsPair>();
+	/**
+	 * Frequent itemsets ending with this item, only kept when they are not
+	 * written out by the pattern sink of the worker.
+	 */
+	private List<FrequentItemset> frequentPatters = new ArrayList<FrequentItemset>();
+
+	/**
+	 * Frequent itemsets ending with this item which may still be closed (or
+	 * maximal), keyed by their items. They are reported once the mining is
+	 * over.
+	 */
+	private Map<ItemSet, FrequentItemset> pendingPatterns = new HashMap<ItemSet, FrequentItemset>();
+
+	/**
+	 * Diffset itemsets ending with this item found in the last superstep,
+	 * keyed by their parent itemset. They are needed to compute the diffsets
+	 * of the extensions of their siblings in the next superstep.
+	 */
+	private Map<ItemSet, ItemsAndTransactionsPair> diffsetClasses = new HashMap<ItemSet, ItemsAndTransactionsPair>();
+
+	/**
+	 * Sorted ids of the neighbors which come after this item in the frequency
+	 * order, the only ones its itemsets are extended with.
+	 */
+	private int[] successors = new int[0];
+
+	/**
+	 * Itemsets and pairs of a previous read which can be filled again.
+	 */
+	private List<FrequentItemset> spareItemsets = new ArrayList<FrequentItemset>();
+
+	private List<ItemsAndTransactionsPair> sparePairs = new ArrayList<ItemsAndTransactionsPair>();
+
+	public int[] getSuccessors() {
+		return successors;
+	}
+
+	public void setSuccessors(int[] successors) {
+		this.successors = successors;
+	}
+
+	public boolean isSuccessor(int itemId) {
+		return Arrays.binarySearch(this.successors, itemId) >= 0;
+	}
+
+	public Map<ItemSet, ItemsAndTransactionsPair> getDiffsetClasses() {
+		return diffsetClasses;
+	}
 
-	public void addFrequentPattern(ItemsAndTransactionsPair pair) {
-		this.frequentPatters.add(pair);
+	public void setDiffsetClasses(
+			Map<ItemSet, ItemsAndTransactionsPair> diffsetClasses) {
+		this.diffsetClasses = diffsetClasses;
 	}
 
-	public void addFrequentPatterns(Set<ItemsAndTransactionsPair> pair) {
-		this.frequentPatters.addAll(pair);
+	public void addFrequentPattern(FrequentItemset itemset) {
+		this.frequentPatters.add(itemset);
 	}
 
-	public Set<ItemsAndTransactionsPair> getFrequentPatters() {
+	public List<FrequentItemset> getFrequentPatters() {
 		return frequentPatters;
 	}
 
-	public void setFrequentPatters(Set<ItemsAndTransactionsPair> frequentPatters) {
+	public void setFrequentPatters(List<FrequentItemset> frequentPatters) {
 		this.frequentPatters = frequentPatters;
 	}
 
-	public Set<Transaction> getTransactionList() {
-		return transactionList;
+	public Map<ItemSet, FrequentItemset> getPendingPatterns() {
+		return pendingPatterns;
+	}
+
+	public void addPendingPattern(FrequentItemset itemset) {
+		this.pendingPatterns.put(itemset.getItemSet(), itemset);
+	}
+
+	public void removePendingPattern(ItemSet items) {
+		this.pendingPatterns.remove(items);
+	}
+
+	/**
+	 * Drops the pending itemsets which are proper subsets of the given one,
+	 * either all of them or only the ones with the same support.
+	 */
+	public void removePendingSubsets(FrequentItemset superset,
+			boolean anySupport) {
+		Iterator<FrequentItemset> pending = this.pendingPatterns.values()
+				.iterator();
+		while (pending.hasNext()) {
+			FrequentItemset itemset = pending.next();
+			if ((anySupport || itemset.getSupport() == superset.getSupport())
+					&& itemset.isProperSubsetOf(superset)) {
+				pending.remove();
+			}
+		}
 	}
 
 	public void setPropagationStatus(boolean ps) {
@@ -57,114 +167,172 @@ public class ItemVertexValue implements Writable {
 		return this.shouldPropagate;
 	}
 
-	public Set<Integer> getTransactionIdList() {
-		Set<Integer> idList = new HashSet<Integer>();
-		for (Transaction txn : this.transactionList) {
-			idList.add(txn.getId());
-		}
-		return idList;
+	public TidSet getTransactionIdList() {
+		return transactionIdList;
+	}
+
+	public void setTransactionIdList(TidSet transactionIdList) {
+		this.transactionIdList = transactionIdList;
 	}
 
-	public void setTransactionList(Set<Transaction> transactionList) {
-		this.transactionList = transactionList;
+	public boolean isTransactionsStored() {
+		return transactionsStored;
+	}
+
+	public void setTransactionsStored(boolean transactionsStored) {
+		this.transactionsStored = transactionsStored;
 	}
 
 	public boolean addTransaction(Transaction txn) {
-		return this.transactionList.add(txn);
+		return this.transactionIdList.add(txn.getId());
 	}
 
 	@Override
 	public void readFields(DataInput dataInput) throws IOException {
-		String inputLine = dataInput.readUTF();
-		try {
-
-			/**
-			 * Reading the input line into a JSONArray object.
-			 */
-			JSONArray itemVertexValueJSONArray = new JSONArray(inputLine);
-
-			/**
-			 * Setting Propagation status from the JSON Array read through the
-			 * input text line.
-			 */
-			this.shouldPropagate = itemVertexValueJSONArray
-					.getBoolean(SHOULD_PROPOGATE_INDEX);
-
-			/**
-			 * Setting the transaction list from the JSON Array read through the
-			 * input text line.
-			 */
-			JSONArray txnListJSONArray = itemVertexValueJSONArray
-					.getJSONArray(TRANSACTION_LIST_INDEX);
-			for (int i = 0; i < txnListJSONArray.length(); i++) {
-				this.transactionList.add(new Transaction(txnListJSONArray
-						.getInt(i)));
+		this.shouldPropagate = dataInput.readBoolean();
+		/**
+		 * A stored transaction list may be shared with the store, it is not
+		 * filled again.
+		 */
+		boolean stored = dataInput.readBoolean();
+		boolean leftOut = dataInput.readBoolean();
+		if (leftOut) {
+			this.transactionIdList = null;
+		} else {
+			if (this.transactionsStored || this.transactionIdList == null) {
+				this.transactionIdList = new TidSet();
 			}
+			this.transactionIdList.readFields(dataInput);
+		}
+		this.transactionsStored = stored;
+		this.spareItemsets.addAll(this.frequentPatters);
+		this.spareItemsets.addAll(this.pendingPatterns.values());
+		this.sparePairs.addAll(this.diffsetClasses.values());
+		this.frequentPatters.clear();
+		int patternCount = WritableUtils.readVInt(dataInput);
+		for (int i = 0; i < patternCount; i++) {
+			FrequentItemset itemset = nextSpareItemset();
+			itemset.readFields(dataInput);
+			this.frequentPatters.add(itemset);
+		}
+		this.pendingPatterns.clear();
+		int pendingCount = WritableUtils.readVInt(dataInput);
+		for (int i = 0; i < pendingCount; i++) {
+			FrequentItemset itemset = nextSpareItemset();
+			itemset.readFields(dataInput);
+			addPendingPattern(itemset);
+		}
+		this.diffsetClasses.clear();
+		int classCount = WritableUtils.readVInt(dataInput);
+		for (int i = 0; i < classCount; i++) {
+			ItemsAndTransactionsPair pair = this.sparePairs.isEmpty() ? new ItemsAndTransactionsPair()
+					: this.sparePairs.remove(this.sparePairs.size() - 1);
+			pair.readFields(dataInput);
+			this.diffsetClasses.put(pair.getParentVertexIds(), pair);
+		}
+		this.successors = DeltaCoding.readSortedIds(dataInput,
+				this.successors);
+	}
 
-			/**
-			 * Setting the frequent pattern list from the JSON Array read
-			 * through the input text line.
-			 */
-
-			String frequentPatternListStringFormat = itemVertexValueJSONArray
-					.getString(FREQUENT_PATTERNS_LIST_INDEX);
-
-			JSONArray frequentPatternListJSONArray = new JSONArray(
-					frequentPatternListStringFormat);
-
-			for (int j = 0; j < frequentPatternListJSONArray.length(); j++) {
-				JSONArray fpJSONObject = frequentPatternListJSONArray
-						.getJSONArray(j);
-				JSONArray vertexArray = fpJSONObject
-						.getJSONArray(ItemsAndTransactionsPair.VERTEX_ID_INDEX);
-				JSONArray transactionArray = fpJSONObject
-						.getJSONArray(ItemsAndTransactionsPair.TRANSACTION_ID_INDEX);
-				Set<Integer> vertexSet = new HashSet<Integer>(
-						vertexArray.length());
-				for (int i = 0; i < vertexArray.length(); i++) {
-					vertexSet.add(vertexArray.getInt(i));
-				}
-				Set<Integer> transactionSet = new HashSet<Integer>(
-						transactionArray.length());
-				for (int k = 0; k < transactionArray.length(); k++) {
-					transactionSet.add(transactionArray.getInt(k));
-				}
-				ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(
-						vertexSet, transactionSet);
-				this.frequentPatters.add(pair);
-			}
-		} catch (JSONException e) {
-			e.printStackTrace();
+	private FrequentItemset nextSpareItemset() {
+		if (this.spareItemsets.isEmpty()) {
+			return new FrequentItemset();
 		}
+		return this.spareItemsets.remove(this.spareItemsets.size() - 1);
+	}
+
+	/**
+	 * Returns the number of values written with a stored list since the
+	 * last call, out of core or into checkpoints.
+	 */
+	public static long takeStoredListsWritten() {
+		return storedListsWritten.getAndSet(0);
+	}
+
+	/**
+	 * Returns the number of stored lists left out of checkpoints since the
+	 * last call.
+	 */
+	public static long takeListsLeftOutOfCheckpoints() {
+		return listsLeftOutOfCheckpoints.getAndSet(0);
 	}
 
 	@Override
 	public void write(DataOutput dataOut) throws IOException {
-		JSONArray itemVertexValueJSONArray = new JSONArray();
-		try {
-			itemVertexValueJSONArray.put(SHOULD_PROPOGATE_INDEX,
-					this.shouldPropagate);
-			itemVertexValueJSONArray.put(TRANSACTION_LIST_INDEX,
-					this.transactionList);
-			itemVertexValueJSONArray.put(FREQUENT_PATTERNS_LIST_INDEX,
-					this.frequentPatters);
-		} catch (JSONException e) {
-			e.printStackTrace();
+		dataOut.writeBoolean(this.shouldPropagate);
+		/**
+		 * A value read without its stored list may be written out of core
+		 * again before the computation sets the list.
+		 */
+		boolean checkpoint = Thread.currentThread().getName()
+				.startsWith(CHECKPOINT_THREAD_PREFIX);
+		boolean leftOut = this.transactionsStored
+				&& (this.transactionIdList == null || checkpoint);
+		if (this.transactionsStored) {
+			storedListsWritten.incrementAndGet();
+			if (checkpoint) {
+				listsLeftOutOfCheckpoints.incrementAndGet();
+			}
+		}
+		dataOut.writeBoolean(this.transactionsStored);
+		dataOut.writeBoolean(leftOut);
+		if (!leftOut) {
+			this.transactionIdList.write(dataOut);
+		}
+		WritableUtils.writeVInt(dataOut, this.frequentPatters.size());
+		for (FrequentItemset itemset : this.frequentPatters) {
+			itemset.write(dataOut);
 		}
-		dataOut.writeUTF(itemVertexValueJSONArray.toString());
+		WritableUtils.writeVInt(dataOut, this.pendingPatterns.size());
+		for (FrequentItemset itemset : this.pendingPatterns.values()) {
+			itemset.write(dataOut);
+		}
+		WritableUtils.writeVInt(dataOut, this.diffsetClasses.size());
+		for (ItemsAndTransactionsPair pair : this.diffsetClasses.values()) {
+			pair.write(dataOut);
+		}
+		DeltaCoding.writeSortedIds(dataOut, this.successors,
+				this.successors.length);
 	}
 
 	@Override
 	public String toString() {
+		return toString(null, null);
+	}
+
+	/**
+	 * Returns the JSON form of this value with the item and transaction ids
+	 * replaced by their original ones, for each dictionary given.
+	 */
+	public String toString(IdDictionary itemDictionary,
+			IdDictionary transactionDictionary) {
 		StringBuffer buf = new StringBuffer();
 		JSONArray itemVertexValueJSONArray = new JSONArray();
 		try {
 			itemVertexValueJSONArray.put(SHOULD_PROPOGATE_INDEX,
 					this.shouldPropagate);
+			JSONArray transactionsJSONArray = this.transactionIdList == null ? new JSONArray()
+					: this.transactionIdList.toJSONArray();
+			if (transactionDictionary != null
+					&& this.transactionIdList != null) {
+				transactionsJSONArray = new JSONArray();
+				for (int transactionId : this.transactionIdList.toArray()) {
+					transactionsJSONArray.put(transactionDictionary
+							.getOriginalId(transactionId));
+				}
+			}
 			itemVertexValueJSONArray.put(TRANSACTION_LIST_INDEX,
-					this.transactionList);
+					transactionsJSONArray);
+			JSONArray frequentPatternsJSONArray = new JSONArray();
+			for (FrequentItemset itemset : this.frequentPatters) {
+				if (itemDictionary != null) {
+					itemset = itemset.translate(itemDictionary);
+				}
+				frequentPatternsJSONArray.put(new JSONArray(itemset
+						.toString()));
+			}
 			itemVertexValueJSONArray.put(FREQUENT_PATTERNS_LIST_INDEX,
-					this.frequentPatters);
+					frequentPatternsJSONArray);
 		} catch (JSONException e) {
 			e.printStackTrace();
 		}
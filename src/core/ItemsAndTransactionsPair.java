@@ -3,14 +3,21 @@ package core;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.json.JSONArray;
-import org.json.JSONException;
 
 /**
+ * An itemset along with the transactions it occurs in. In the diffset mode the
+ * transactions are replaced by the diffset of the itemset, the transactions of
+ * its parent itemset (the itemset without its last item) which do not contain
+ * the itemset, and the support is carried separately. So is the support of
+ * the itemsets of weighted transactions, the sum of their weights.
+ * 
+ * The items are an immutable {@link ItemSet}, shared by the copies of a pair
+ * and replaced when a pair object is read again. The hash code leaves the
+ * transactions out, so that it does not go over them.
  * 
  * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
  */
@@ -20,84 +27,282 @@ public class ItemsAndTransactionsPair implements Writable {
 
 	public static int TRANSACTION_ID_INDEX = 1;
 
-	private Set<Integer> vertexIds = new HashSet<Integer>();
+	private ItemSet vertexIds = ItemSet.EMPTY;
+
+	private TidSet transactionIds = new TidSet();
+
+	private static final int DIFFSET_FLAG = 1;
+
+	private static final int DIFFSET_CHILDREN_FLAG = 2;
+
+	private static final int LAST_ITEM_FLAG = 4;
+
+	private static final int ABSORBS_PARENT_FLAG = 8;
+
+	private static final int FEEDBACK_FLAG = 16;
+
+	private static final int WEIGHTED_FLAG = 32;
+
+	/**
+	 * Whether the transaction ids are the diffset of the itemset.
+	 */
+	private boolean diffset;
+
+	/**
+	 * Whether the extensions of this itemset are to be propagated as
+	 * diffsets.
+	 */
+	private boolean diffsetChildren;
 
-	private Set<Integer> transactionIds = new HashSet<Integer>();
+	/**
+	 * Whether the transactions are weighted, the support then being carried
+	 * with them.
+	 */
+	private boolean weighted;
 
-	public ItemsAndTransactionsPair(Set<Integer> vertexIds,
-			Set<Integer> transactionIds) {
+	/**
+	 * Support of a diffset or weighted itemset.
+	 */
+	private int support;
+
+	/**
+	 * Item added last to a diffset itemset, the remaining items form the
+	 * parent itemset the diffset is relative to.
+	 */
+	private int lastItem;
+
+	/**
+	 * Whether the last item is known, it always is for diffset itemsets.
+	 */
+	private boolean hasLastItem;
+
+	/**
+	 * Whether the itemset occurs in all the transactions of its parent
+	 * itemset, the parent is then neither closed nor maximal.
+	 */
+	private boolean absorbsParent;
+
+	/**
+	 * Whether this pair only tells the vertex of the last item that the
+	 * itemset is not closed (or not maximal), it carries no transactions.
+	 */
+	private boolean feedback;
+
+	public ItemsAndTransactionsPair() {
+		super();
+	}
+
+	public ItemsAndTransactionsPair(ItemSet vertexIds, TidSet transactionIds) {
 		super();
 		this.vertexIds = vertexIds;
 		this.transactionIds = transactionIds;
 	}
 
-	public Set<Integer> getVertexIds() {
+	public ItemSet getVertexIds() {
 		return vertexIds;
 	}
 
-	public void setVertexIds(Set<Integer> vertexIds) {
+	public void setVertexIds(ItemSet vertexIds) {
 		this.vertexIds = vertexIds;
 	}
 
-	public Set<Integer> getTransactionIds() {
+	public TidSet getTransactionIds() {
 		return transactionIds;
 	}
 
-	public void setTransactionIds(Set<Integer> transactionIds) {
+	public void setTransactionIds(TidSet transactionIds) {
 		this.transactionIds = transactionIds;
 	}
 
+	/**
+	 * Creates an itemset carrying its diffset relative to the itemset without
+	 * its last item.
+	 */
+	public static ItemsAndTransactionsPair createDiffsetPair(
+			ItemSet vertexIds, int lastItem, TidSet diffset, int support) {
+		ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(
+				vertexIds, diffset);
+		pair.diffset = true;
+		pair.diffsetChildren = true;
+		pair.setLastItem(lastItem);
+		pair.support = support;
+		return pair;
+	}
+
+	/**
+	 * Creates an itemset carrying its tidset and the sum of the weights of
+	 * its transactions.
+	 */
+	public static ItemsAndTransactionsPair createWeightedPair(
+			ItemSet vertexIds, TidSet transactionIds, int support) {
+		ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(
+				vertexIds, transactionIds);
+		pair.weighted = true;
+		pair.support = support;
+		return pair;
+	}
+
+	/**
+	 * Creates a pair telling the vertex of the last item of an itemset that
+	 * the itemset is not closed (or not maximal).
+	 */
+	public static ItemsAndTransactionsPair createFeedbackPair(
+			ItemSet vertexIds, int lastItem) {
+		ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(
+				vertexIds, new TidSet());
+		pair.setLastItem(lastItem);
+		pair.feedback = true;
+		return pair;
+	}
+
+	public boolean isDiffset() {
+		return diffset;
+	}
+
+	public boolean hasDiffsetChildren() {
+		return diffsetChildren;
+	}
+
+	public void setDiffsetChildren(boolean diffsetChildren) {
+		this.diffsetChildren = diffsetChildren;
+	}
+
+	public int getLastItem() {
+		return lastItem;
+	}
+
+	public void setLastItem(int lastItem) {
+		this.lastItem = lastItem;
+		this.hasLastItem = true;
+	}
+
+	public boolean hasLastItem() {
+		return hasLastItem;
+	}
+
+	public boolean absorbsParent() {
+		return absorbsParent;
+	}
+
+	public void setAbsorbsParent(boolean absorbsParent) {
+		this.absorbsParent = absorbsParent;
+	}
+
+	public boolean isFeedback() {
+		return feedback;
+	}
+
+	/**
+	 * Returns the number of transactions the itemset occurs in, or the sum of
+	 * their weights.
+	 */
+	public int getSupport() {
+		return hasSupport() ? support : transactionIds.cardinality();
+	}
+
+	/**
+	 * Tells whether the support is carried apart from the transactions.
+	 */
+	private boolean hasSupport() {
+		return diffset || weighted;
+	}
+
+	/**
+	 * Returns the items of the itemset the diffset is relative to.
+	 */
+	public ItemSet getParentVertexIds() {
+		return vertexIds.without(lastItem);
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer buf = new StringBuffer();
 		JSONArray itemsandTransactionsArray = new JSONArray();
-		itemsandTransactionsArray.put(this.vertexIds);
-		itemsandTransactionsArray.put(this.transactionIds);
+		itemsandTransactionsArray.put(this.vertexIds.toJSONArray());
+		itemsandTransactionsArray.put(this.transactionIds.toJSONArray());
+		if (hasSupport()) {
+			itemsandTransactionsArray.put(this.support);
+		}
 		buf.append(itemsandTransactionsArray.toString());
 		return buf.toString();
 	}
 
 	@Override
 	public void readFields(DataInput dataIn) throws IOException {
-		String line = dataIn.readUTF();
-		try {
-			JSONArray itemsAndTransactionsArray = new JSONArray(line);
-			JSONArray itemsArray = new JSONArray(
-					itemsAndTransactionsArray.getJSONArray(VERTEX_ID_INDEX));
-			JSONArray transactionsArray = new JSONArray(
-					itemsAndTransactionsArray
-							.getJSONArray(TRANSACTION_ID_INDEX));
-			for (int i = 0; i < itemsArray.length(); i++) {
-				vertexIds.add(itemsArray.getInt(i));
-			}
-			for (int j = 0; j < transactionsArray.length(); j++) {
-				transactionIds.add(transactionsArray.getInt(j));
-			}
-		} catch (JSONException e) {
-			e.printStackTrace();
-		}
-
+		this.vertexIds = ItemSet.read(dataIn);
+		int flags = dataIn.readByte();
+		this.diffset = (flags & DIFFSET_FLAG) != 0;
+		this.diffsetChildren = (flags & DIFFSET_CHILDREN_FLAG) != 0;
+		this.hasLastItem = (flags & LAST_ITEM_FLAG) != 0;
+		this.absorbsParent = (flags & ABSORBS_PARENT_FLAG) != 0;
+		this.feedback = (flags & FEEDBACK_FLAG) != 0;
+		this.weighted = (flags & WEIGHTED_FLAG) != 0;
+		this.support = hasSupport() ? WritableUtils.readVInt(dataIn) : 0;
+		this.lastItem = this.hasLastItem ? WritableUtils.readVInt(dataIn) : 0;
+		this.transactionIds.readFields(dataIn);
 	}
 
 	@Override
 	public void write(DataOutput dataOut) throws IOException {
-		JSONArray itemsandTransactionsArray = new JSONArray();
-		try {
-			itemsandTransactionsArray.put(VERTEX_ID_INDEX, this.vertexIds);
-			itemsandTransactionsArray.put(TRANSACTION_ID_INDEX,
-					this.transactionIds);
-		} catch (JSONException e) {
-			e.printStackTrace();
+		this.vertexIds.write(dataOut);
+		dataOut.writeByte(getFlags());
+		if (hasSupport()) {
+			WritableUtils.writeVInt(dataOut, this.support);
 		}
-		dataOut.writeUTF(itemsandTransactionsArray.toString());
+		if (this.hasLastItem) {
+			WritableUtils.writeVInt(dataOut, this.lastItem);
+		}
+		this.transactionIds.write(dataOut);
+	}
+
+	private int getFlags() {
+		int flags = 0;
+		if (this.diffset) {
+			flags |= DIFFSET_FLAG;
+		}
+		if (this.diffsetChildren) {
+			flags |= DIFFSET_CHILDREN_FLAG;
+		}
+		if (this.hasLastItem) {
+			flags |= LAST_ITEM_FLAG;
+		}
+		if (this.absorbsParent) {
+			flags |= ABSORBS_PARENT_FLAG;
+		}
+		if (this.feedback) {
+			flags |= FEEDBACK_FLAG;
+		}
+		if (this.weighted) {
+			flags |= WEIGHTED_FLAG;
+		}
+		return flags;
+	}
+
+	/**
+	 * Number of bytes {@link #write} takes for this pair.
+	 */
+	public int serializedSize() {
+		int bytes = this.vertexIds.serializedSize() + 1
+				+ this.transactionIds.serializedSize();
+		if (hasSupport()) {
+			bytes += WritableUtils.getVIntSize(this.support);
+		}
+		if (this.hasLastItem) {
+			bytes += WritableUtils.getVIntSize(this.lastItem);
+		}
+		return bytes;
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result
-				+ ((transactionIds == null) ? 0 : transactionIds.hashCode());
+		result = prime * result + (diffset ? 1231 : 1237);
+		result = prime * result + (absorbsParent ? 1231 : 1237);
+		result = prime * result + (feedback ? 1231 : 1237);
+		result = prime * result + (weighted ? 1231 : 1237);
+		result = prime * result + lastItem;
+		result = prime * result + support;
 		result = prime * result
 				+ ((vertexIds == null) ? 0 : vertexIds.hashCode());
 		return result;
@@ -112,6 +317,22 @@ public class ItemsAndTransactionsPair implements Writable {
 		if (getClass() != obj.getClass())
 			return false;
 		ItemsAndTransactionsPair other = (ItemsAndTransactionsPair) obj;
+		if (diffset != other.diffset)
+			return false;
+		if (diffsetChildren != other.diffsetChildren)
+			return false;
+		if (lastItem != other.lastItem)
+			return false;
+		if (hasLastItem != other.hasLastItem)
+			return false;
+		if (absorbsParent != other.absorbsParent)
+			return false;
+		if (feedback != other.feedback)
+			return false;
+		if (weighted != other.weighted)
+			return false;
+		if (support != other.support)
+			return false;
 		if (transactionIds == null) {
 			if (other.transactionIds != null)
 				return false;
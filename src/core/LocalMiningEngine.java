@@ -0,0 +1,525 @@
+package core;
+
+import io.IdDictionary;
+import io.ItemVertexInputFormat;
+import io.ItemVertexLineParser;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Mines the frequent itemsets of an item vertex input in a single JVM, for
+ * inputs small enough that starting a Giraph job costs more than the mining.
+ * It takes the same input and configuration as {@link MainClass} and finds
+ * the same itemsets as {@link FrequentPatternComputation}.
+ *
+ * The itemsets are mined depth first over equivalence classes: the frequent
+ * extensions of an itemset with the items coming after its last item form a
+ * class, and the extensions of each of them with the ones coming after it in
+ * the class form the next classes. Every class is a task of a fork join pool,
+ * so idle threads steal the classes of the large branches. Itemsets are
+ * extended with the same methods and in the same item order as the vertices
+ * do, including the switch to diffsets.
+ *
+ * The itemsets are written as by the pattern sink of
+ * {@link FrequentPatternWorkerContext}, to level-<size>/part-0 and with the
+ * original item ids if the input was renumbered. In the closed
+ * and maximal modes each class task rules out its itemsets as the vertices
+ * do: an itemset with an extension of the same support (or any frequent
+ * one) is not closed (or maximal), and an itemset whose parent has the
+ * support of its extension with another item is not, nor are its extensions
+ * with the items after that one, which are skipped. The other itemsets are
+ * kept pending until the mining is over, dropping the ones an itemset with
+ * the same last item contains.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class LocalMiningEngine {
+
+	private static int DEFAULT_MIN_SUPPORT = 100;
+
+	private static boolean DEFAULT_DIFFSET_MODE = false;
+
+	private static float DEFAULT_DIFFSET_DENSITY_THRESHOLD = 0.5f;
+
+	private static String DEFAULT_ITEM_ORDER = CommonConstants.FREQUENCY_ITEM_ORDER;
+
+	private static String DEFAULT_MINING_MODE = CommonConstants.ALL_MINING_MODE;
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private static int DEFAULT_MAX_ITEMSET_SIZE = Integer.MAX_VALUE;
+
+	private final Configuration conf;
+
+	private final int minSupport;
+
+	private final boolean frequencyOrder;
+
+	private final boolean condensedMode;
+
+	private final boolean maximalMode;
+
+	private final boolean diffsetMode;
+
+	private final float diffsetDensityThreshold;
+
+	/**
+	 * Size of the largest itemsets mined, bounded by the maximum number of
+	 * supersteps given to {@link MainClass}.
+	 */
+	private final int maxItemsetSize;
+
+	private final int threads;
+
+	/**
+	 * Itemsets which may be closed (or maximal), kept until the mining is over
+	 * in the closed and maximal modes as the pending patterns of the vertices
+	 * are. They are grouped by their last item, and by their support in the
+	 * closed mode, as an itemset with no such extension is only contained by
+	 * itemsets of the same last item.
+	 */
+	private final Long2ObjectOpenHashMap<PendingGroup> pendingItemsets = new Long2ObjectOpenHashMap<PendingGroup>();
+
+	private final Map<Integer, Writer> levelWriters = new TreeMap<Integer, Writer>();
+
+	private final Map<Integer, Long> levelCounts = new TreeMap<Integer, Long>();
+
+	private Path patternOutputDir;
+
+	private IdDictionary itemDictionary;
+
+	/**
+	 * Weights of the transactions, null if they are not weighted.
+	 */
+	private TransactionWeights transactionWeights;
+
+	public LocalMiningEngine(Configuration conf) {
+		this.conf = conf;
+		this.minSupport = conf.getInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+				DEFAULT_MIN_SUPPORT);
+		this.frequencyOrder = CommonConstants.FREQUENCY_ITEM_ORDER.equals(conf
+				.get(CommonConstants.ITEM_ORDER_STRING, DEFAULT_ITEM_ORDER));
+		String miningMode = conf.get(CommonConstants.MINING_MODE_STRING,
+				DEFAULT_MINING_MODE);
+		this.maximalMode = CommonConstants.MAXIMAL_MINING_MODE
+				.equals(miningMode);
+		this.condensedMode = this.maximalMode
+				|| CommonConstants.CLOSED_MINING_MODE.equals(miningMode);
+		this.diffsetMode = conf.getBoolean(CommonConstants.DIFFSET_MODE_STRING,
+				DEFAULT_DIFFSET_MODE) && !this.condensedMode;
+		this.diffsetDensityThreshold = conf.getFloat(
+				CommonConstants.DIFFSET_DENSITY_THRESHOLD_STRING,
+				DEFAULT_DIFFSET_DENSITY_THRESHOLD);
+		this.maxItemsetSize = conf.getInt(
+				CommonConstants.MAX_ITEMSET_SIZE_STRING, DEFAULT_MAX_ITEMSET_SIZE);
+		this.threads = conf.getInt(CommonConstants.LOCAL_ENGINE_THREADS_STRING,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Mines the item vertices of the given file, or of the files of the given
+	 * directory, and writes the itemsets under the given directory.
+	 *
+	 * @return the number of itemsets written.
+	 */
+	public long mine(Path input, Path patternOutputDir) throws IOException {
+		this.patternOutputDir = patternOutputDir;
+		this.itemDictionary = IdDictionary.load(
+				conf.get(CommonConstants.ITEM_DICTIONARY_STRING), conf);
+		this.transactionWeights = TransactionWeights.load(
+				conf.get(CommonConstants.TRANSACTION_WEIGHTS_STRING), conf);
+		long start = System.currentTimeMillis();
+
+		List<ItemsAndTransactionsPair> items = readFrequentItems(input);
+		System.out.println("***** Local engine: " + items.size()
+				+ " frequent items, " + threads + " threads");
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			if (items.size() > 1 && maxItemsetSize > 1) {
+				pool.invoke(new EquivalenceClassTask(items));
+			} else {
+				for (ItemsAndTransactionsPair item : items) {
+					report(item);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		if (condensedMode) {
+			writePendingItemsets();
+		}
+		closeWriters();
+
+		long itemsets = 0;
+		for (Map.Entry<Integer, Long> level : levelCounts.entrySet()) {
+			System.out.println("***** Level " + level.getKey() + ": "
+					+ level.getValue() + " itemsets");
+			itemsets += level.getValue();
+		}
+		System.out.println("***** Local engine: " + itemsets
+				+ " itemsets in " + (System.currentTimeMillis() - start)
+				+ " ms");
+		return itemsets;
+	}
+
+	/**
+	 * Reads the items with at least the minimum support as single item
+	 * itemsets, sorted in the order in which they extend itemsets. The
+	 * neighbor lists are not needed, the extensions with items which never
+	 * occur together with an itemset are found infrequent right away.
+	 */
+	private List<ItemsAndTransactionsPair> readFrequentItems(Path input)
+			throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		List<Path> files = ItemVertexInputFormat.listVertexFiles(fs, input);
+
+		boolean skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+		ItemVertexLineParser parser = new ItemVertexLineParser();
+		Text line = new Text();
+		long malformedLines = 0;
+		List<ItemsAndTransactionsPair> items = new ArrayList<ItemsAndTransactionsPair>();
+		for (Path file : files) {
+			FSDataInputStream in = fs.open(file);
+			try {
+				LineReader reader = new LineReader(in, conf);
+				while (reader.readLine(line) > 0) {
+					if (!parser.parse(line.getBytes(), line.getLength())) {
+						if (!skipMalformedLines) {
+							throw new IllegalArgumentException(
+									"Couldn't get vertex from line " + line
+											+ ": " + parser.getError()
+											+ " at byte "
+											+ parser.getErrorPosition());
+						}
+						malformedLines++;
+						continue;
+					}
+					if (parser.getTransactionIdCount() < minSupport
+							&& transactionWeights == null) {
+						continue;
+					}
+					ItemsAndTransactionsPair item = FrequentPatternComputation
+							.createFirstMessage(parser.getId(),
+									parser.toTidSet(), transactionWeights)
+							.getItemsAndTxns().iterator().next();
+					if (item.getSupport() < minSupport) {
+						continue;
+					}
+					item.setLastItem(parser.getId());
+					items.add(item);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		if (malformedLines > 0) {
+			System.out.println("***** Malformed vertex lines skipped: "
+					+ malformedLines);
+		}
+
+		Collections.sort(items, new Comparator<ItemsAndTransactionsPair>() {
+			@Override
+			public int compare(ItemsAndTransactionsPair item,
+					ItemsAndTransactionsPair other) {
+				if (item.getLastItem() == other.getLastItem()) {
+					return 0;
+				}
+				return FrequentPatternComputation.precedes(item.getLastItem(),
+						item.getSupport(), other.getLastItem(),
+						other.getSupport(), frequencyOrder) ? -1 : 1;
+			}
+		});
+		return items;
+	}
+
+	/**
+	 * Extends an itemset with the last item of a sibling, an itemset of the
+	 * same equivalence class coming after it. The sibling carries the
+	 * transactions (or the diffset) of the parent itemset extended with that
+	 * item, which serve as the transactions of the item in the vertex
+	 * computation. Returns null if the extension is not frequent.
+	 */
+	private ItemsAndTransactionsPair extend(ItemsAndTransactionsPair itemset,
+			ItemsAndTransactionsPair sibling) {
+		int item = sibling.getLastItem();
+		if (itemset.isDiffset() || itemset.hasDiffsetChildren()) {
+			Map<ItemSet, ItemsAndTransactionsPair> siblingClass = itemset
+					.isDiffset() ? Collections
+					.<ItemSet, ItemsAndTransactionsPair> singletonMap(
+							itemset.getParentVertexIds(), sibling) : Collections
+					.<ItemSet, ItemsAndTransactionsPair> emptyMap();
+			return FrequentPatternComputation.extendWithDiffset(itemset, item,
+					sibling.getTransactionIds(), siblingClass, minSupport,
+					transactionWeights);
+		}
+		ItemsAndTransactionsPair extension = FrequentPatternComputation
+				.extendWithTidset(itemset, item, sibling.getTransactionIds(),
+						minSupport, transactionWeights);
+		if (extension == null) {
+			return null;
+		}
+		extension.setLastItem(item);
+		if (diffsetMode
+				&& extension.getSupport() >= diffsetDensityThreshold
+						* itemset.getSupport()) {
+			extension.setDiffsetChildren(true);
+		}
+		return extension;
+	}
+
+	/**
+	 * Writes a frequent itemset, or keeps it pending in the closed and maximal
+	 * modes.
+	 */
+	private void report(ItemsAndTransactionsPair pair) throws IOException {
+		FrequentItemset itemset = new FrequentItemset(pair.getVertexIds(),
+				pair.getSupport());
+		if (condensedMode) {
+			addPendingItemset(pair.getLastItem(), itemset);
+		} else {
+			write(itemset);
+		}
+	}
+
+	/**
+	 * Keeps an itemset pending unless a pending one of the same last item
+	 * contains it (with the same support), dropping the pending ones it
+	 * contains. Called by the tasks concurrently, in any order of the
+	 * itemsets.
+	 */
+	private void addPendingItemset(int lastItem, FrequentItemset itemset) {
+		long key = maximalMode ? lastItem : ((long) lastItem << 32)
+				| itemset.getSupport();
+		PendingGroup group;
+		synchronized (pendingItemsets) {
+			group = pendingItemsets.get(key);
+			if (group == null) {
+				group = new PendingGroup();
+				pendingItemsets.put(key, group);
+			}
+		}
+		group.add(itemset);
+	}
+
+	private void writePendingItemsets() throws IOException {
+		for (PendingGroup group : pendingItemsets.values()) {
+			for (FrequentItemset itemset : group.itemsets) {
+				write(itemset);
+			}
+		}
+		pendingItemsets.clear();
+	}
+
+	/**
+	 * Pending itemsets of the same last item (and support), each with a
+	 * signature setting a bit for each of its items modulo 64, which rules out
+	 * most of the itemsets as subsets or supersets of another one without
+	 * comparing their items.
+	 */
+	private static class PendingGroup {
+
+		private final List<FrequentItemset> itemsets = new ArrayList<FrequentItemset>();
+
+		private final LongArrayList signatures = new LongArrayList();
+
+		synchronized void add(FrequentItemset itemset) {
+			long signature = 0;
+			for (int item : itemset.getItems()) {
+				signature |= 1L << item;
+			}
+			for (int i = 0; i < itemsets.size(); i++) {
+				long otherSignature = signatures.getLong(i);
+				if ((signature & ~otherSignature) == 0
+						&& itemset.isProperSubsetOf(itemsets.get(i))) {
+					return;
+				}
+				if ((otherSignature & ~signature) == 0
+						&& itemsets.get(i).isProperSubsetOf(itemset)) {
+					int last = itemsets.size() - 1;
+					itemsets.set(i, itemsets.get(last));
+					itemsets.remove(last);
+					signatures.set(i, signatures.getLong(last));
+					signatures.removeLong(last);
+					i--;
+				}
+			}
+			itemsets.add(itemset);
+			signatures.add(signature);
+		}
+
+	}
+
+	/**
+	 * Writes an itemset to the file of its level. Called by the tasks
+	 * concurrently.
+	 */
+	private synchronized void write(FrequentItemset itemset)
+			throws IOException {
+		int level = itemset.getItems().length;
+		Writer writer = levelWriters.get(level);
+		if (writer == null) {
+			Path levelFile = new Path(new Path(patternOutputDir, "level-"
+					+ level), "part-0");
+			FileSystem fs = levelFile.getFileSystem(conf);
+			writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+					levelFile, true), "UTF-8"));
+			levelWriters.put(level, writer);
+			levelCounts.put(level, 0L);
+		}
+		if (itemDictionary != null) {
+			itemset = itemset.translate(itemDictionary);
+		}
+		writer.write(itemset.toPatternLine());
+		levelCounts.put(level, levelCounts.get(level) + 1);
+	}
+
+	private void closeWriters() throws IOException {
+		for (Writer writer : levelWriters.values()) {
+			writer.close();
+		}
+		levelWriters.clear();
+	}
+
+	/**
+	 * Mines the extensions of the itemsets of an equivalence class, the
+	 * itemsets sharing all their items but the last one, sorted by their last
+	 * item, and reports the itemsets of the class. Each itemset is extended
+	 * with the last items of the ones after it, its frequent extensions
+	 * forming a class handed to a new task.
+	 */
+	private class EquivalenceClassTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<ItemsAndTransactionsPair> itemsets;
+
+		EquivalenceClassTask(List<ItemsAndTransactionsPair> itemsets) {
+			this.itemsets = itemsets;
+		}
+
+		@Override
+		protected void compute() {
+			List<EquivalenceClassTask> subclasses = new ArrayList<EquivalenceClassTask>();
+			int size = itemsets.get(0).getVertexIds().size();
+			int count = itemsets.size();
+
+			/**
+			 * The first two itemsets of the class with the support of their
+			 * parent, found in the closed and maximal modes only.
+			 */
+			int firstAbsorbing = count;
+			int secondAbsorbing = count;
+			if (condensedMode) {
+				for (int i = 0; i < count && secondAbsorbing == count; i++) {
+					if (!itemsets.get(i).absorbsParent()) {
+						continue;
+					}
+					if (firstAbsorbing == count) {
+						firstAbsorbing = i;
+					} else {
+						secondAbsorbing = i;
+					}
+				}
+			}
+
+			try {
+				for (int i = 0; i < count; i++) {
+					ItemsAndTransactionsPair itemset = itemsets.get(i);
+
+					/**
+					 * If the parent occurs only in transactions of the item
+					 * of another itemset of the class, so does this itemset,
+					 * which is not closed (or maximal). If that item comes
+					 * before this one none of the extensions can contain it
+					 * and none is closed (or maximal), they are skipped
+					 * unless the itemset size is bounded, as the largest ones
+					 * are then closed among the mined itemsets. Otherwise the
+					 * extension with that item has the support of the
+					 * itemset and its class skips the extensions with the
+					 * items after it, which it needs as siblings.
+					 */
+					int otherAbsorbing = firstAbsorbing == i ? secondAbsorbing
+							: firstAbsorbing;
+					boolean dominated = otherAbsorbing < count;
+					int lastSibling = otherAbsorbing < i
+							&& maxItemsetSize == Integer.MAX_VALUE ? i
+							: count - 1;
+
+					List<ItemsAndTransactionsPair> extensions = new ArrayList<ItemsAndTransactionsPair>();
+					for (int j = i + 1; j <= lastSibling; j++) {
+						ItemsAndTransactionsPair extension = extend(itemset,
+								itemsets.get(j));
+						if (extension == null) {
+							continue;
+						}
+
+						/**
+						 * An extension with the support of the itemset
+						 * makes the itemset not closed, any frequent
+						 * extension makes it not maximal.
+						 */
+						if (condensedMode) {
+							if (extension.getSupport() == itemset.getSupport()) {
+								extension.setAbsorbsParent(true);
+							}
+							if (maximalMode || extension.absorbsParent()) {
+								dominated = true;
+							}
+						}
+						extensions.add(extension);
+					}
+					if (!dominated) {
+						report(itemset);
+					}
+
+					/**
+					 * A class of a single itemset has nothing to extend it
+					 * with, nor has a class of the largest itemsets, their
+					 * itemsets are reported right away.
+					 */
+					if (extensions.size() > 1 && size + 1 < maxItemsetSize) {
+						EquivalenceClassTask subclass = new EquivalenceClassTask(
+								extensions);
+						subclass.fork();
+						subclasses.add(subclass);
+					} else {
+						for (ItemsAndTransactionsPair extension : extensions) {
+							report(extension);
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot write itemsets", e);
+			}
+			for (EquivalenceClassTask subclass : subclasses) {
+				subclass.join();
+			}
+		}
+
+	}
+
+}
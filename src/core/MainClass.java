@@ -1,8 +1,14 @@
 package core;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import io.CooccurrenceClustering;
+import io.IdRenumbering;
 import io.ItemVertexInputFormat;
+import io.ItemVertexOutputFormat;
+import io.PatternSequenceFileOutputFormat;
+import io.PatternTextOutputFormat;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -10,9 +16,11 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.conf.GiraphConstants;
 import org.apache.giraph.io.formats.GiraphTextInputFormat;
-import org.apache.giraph.io.formats.IdWithValueTextOutputFormat;
 import org.apache.giraph.job.GiraphJob;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
@@ -23,21 +31,118 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
  */
 public class MainClass {
 
+	private static String DEFAULT_ENGINE = CommonConstants.GIRAPH_ENGINE;
+
+	private static String DEFAULT_PARTITIONER = CommonConstants.HASH_PARTITIONER;
+
+	private static String DEFAULT_OUTPUT_FORMAT = CommonConstants.PATTERNS_OUTPUT_FORMAT;
+
+	private static long DEFAULT_LOCAL_ENGINE_THRESHOLD = 64L * 1024 * 1024;
+
 	public static void main(String[] args) throws IOException,
 			ClassNotFoundException, InterruptedException, ParseException {
+		if (!run(args)) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the mining job with the given command line arguments.
+	 * 
+	 * @return whether the job succeeded.
+	 */
+	public static boolean run(String[] args) throws IOException,
+			ClassNotFoundException, InterruptedException, ParseException {
 
 		Options options = new Options();
 		options.addOption("i", "input file", true, "Input data file");
 		options.addOption("o", "output", true, "Output file");
-		options.addOption("wmin", true, "Minimum number of workers");
-		options.addOption("wmax", true, "Maximum number of workers");
+		options.addOption("wmin", true, "Minimum number of workers of the Giraph job");
+		options.addOption("wmax", true, "Maximum number of workers of the Giraph job");
 		options.addOption("l", true, "Local test mode flag");
 		options.addOption("minsup", true, "Minimum support value");
-		options.addOption("maxsupersteps", true, "Maximum number of supersteps");
+		options.addOption("mode", true,
+				"Itemsets to mine: all, closed or maximal");
+		options.addOption("patterns", true,
+				"Directory the frequent itemsets are written to as they are found");
+		options.addOption("maxsupersteps", true,
+				"Maximum number of supersteps of the Giraph job, the itemsets may be incomplete once it is reached (optional)");
+		options.addOption("maxsize", true,
+				"Maximum number of items of the itemsets mined (optional)");
+		options.addOption("diffset", false,
+				"Propagate diffsets instead of tidsets on dense levels");
+		options.addOption("diffsetdensity", true,
+				"Support ratio of an itemset to its parent above which diffsets are used");
+		options.addOption("order", true,
+				"Order of the items extending itemsets: id or frequency");
+		options.addOption("metrics", true,
+				"Directory the per superstep metrics of the workers are written to");
+		options.addOption("debug", true,
+				"Debug output level: 0 none, 1 vertex summaries, 2 vertex states, 3 messages");
+		options.addOption("debugsample", true,
+				"Fraction of the vertices printing debug output");
+		options.addOption("levelcounters", false,
+				"Add counters per level for the first levels, the metrics files have all the levels");
+		options.addOption("skipmalformed", false,
+				"Count and skip malformed input lines instead of failing");
+		options.addOption("wavebudget", true,
+				"Message megabytes per superstep above which levels are mined in waves");
+		options.addOption("engine", true,
+				"Mining engine: giraph, local or auto (local below the threshold)");
+		options.addOption("localthreshold", true,
+				"Input size in bytes up to which the auto engine mines locally");
+		options.addOption("threads", true,
+				"Number of threads of the local engine");
+		options.addOption("renumber", false,
+				"Renumber items by support and transactions densely before mining");
+		options.addOption("previous", true,
+				"Run directory of the previous incremental run, the input then holding the new transactions only");
+		options.addOption("newtransactions", true,
+				"Number of new transactions of an incremental run, needed when the input has no _transactions file written by BasketGraphBuilder");
+		options.addOption("sample", true,
+				"Share of the transactions mined first as a sample, limiting the itemsets counted by the job");
+		options.addOption("samplefactor", true,
+				"Factor lowering the minimum support scaled down to the sample (default 0.8)");
+		options.addOption("partitioner", true,
+				"Vertex partitioner: hash or cooccurrence (items clustered by co-occurrence)");
+		options.addOption("partitiongroups", true,
+				"Number of co-occurrence groups (default the maximum number of workers)");
+		options.addOption("checkpoint", true,
+				"Checkpoint interval in supersteps, 0 for none, or auto (default) to measure it from the last run writing to the metrics directory");
+		options.addOption("checkpointoverhead", true,
+				"Fraction of the superstep time the auto checkpoint interval lets checkpoints take (default 0.1)");
+		options.addOption("outputformat", true,
+				"Output of the job: patterns (default), binary (block compressed patterns) or vertices");
+		options.addOption("minconf", true,
+				"Minimum confidence of the association rules generated after mining");
+		options.addOption("minlift", true,
+				"Minimum lift of the association rules (default none)");
+		options.addOption("minleverage", true,
+				"Minimum leverage of the association rules (default none)");
+		options.addOption("transactions", true,
+				"Number of transactions of the rules (default counted from the input)");
 
 		CommandLineParser parser = new PosixParser();
 		CommandLine cmd = parser.parse(options, args);
 
+		/**
+		 * The engines take an unknown value for the default one, a mistyped
+		 * value is rejected before anything runs.
+		 */
+		checkChoice(cmd, "engine", CommonConstants.GIRAPH_ENGINE,
+				CommonConstants.LOCAL_ENGINE, CommonConstants.AUTO_ENGINE);
+		checkChoice(cmd, "mode", CommonConstants.ALL_MINING_MODE,
+				CommonConstants.CLOSED_MINING_MODE,
+				CommonConstants.MAXIMAL_MINING_MODE);
+		checkChoice(cmd, "order", CommonConstants.ID_ITEM_ORDER,
+				CommonConstants.FREQUENCY_ITEM_ORDER);
+		checkChoice(cmd, "partitioner", CommonConstants.HASH_PARTITIONER,
+				CommonConstants.COOCCURRENCE_PARTITIONER);
+		checkChoice(cmd, "outputformat",
+				CommonConstants.PATTERNS_OUTPUT_FORMAT,
+				CommonConstants.BINARY_PATTERNS_OUTPUT_FORMAT,
+				CommonConstants.VERTICES_OUTPUT_FORMAT);
+
 		GiraphConfiguration fpMiningJobConf = new GiraphConfiguration();
 
 		fpMiningJobConf.setComputationClass(FrequentPatternComputation.class);
@@ -45,22 +150,73 @@ public class MainClass {
 		fpMiningJobConf.setVertexInputFormatClass(ItemVertexInputFormat.class);
 
 		fpMiningJobConf
-				.setVertexOutputFormatClass(IdWithValueTextOutputFormat.class);
+				.setMessageCombinerClass(FrequentPatternMessageCombiner.class);
+
+		/**
+		 * The output holds the frequent itemsets kept by the vertices, the
+		 * vertices themselves with their transactions only when asked for.
+		 */
+		String outputFormat = cmd.getOptionValue("outputformat",
+				DEFAULT_OUTPUT_FORMAT);
+		if (CommonConstants.VERTICES_OUTPUT_FORMAT.equals(outputFormat)) {
+			fpMiningJobConf
+					.setVertexOutputFormatClass(ItemVertexOutputFormat.class);
+		} else if (CommonConstants.BINARY_PATTERNS_OUTPUT_FORMAT
+				.equals(outputFormat)) {
+			fpMiningJobConf
+					.setVertexOutputFormatClass(PatternSequenceFileOutputFormat.class);
+		} else if (CommonConstants.PATTERNS_OUTPUT_FORMAT.equals(outputFormat)) {
+			fpMiningJobConf
+					.setVertexOutputFormatClass(PatternTextOutputFormat.class);
+		} else {
+			throw new IllegalArgumentException("Unknown output format "
+					+ outputFormat);
+		}
 
-		fpMiningJobConf.setMaxNumberOfSupersteps(Integer.parseInt(cmd
-				.getOptionValue("maxsupersteps")));
+		fpMiningJobConf
+				.setMasterComputeClass(FrequentPatternMasterCompute.class);
+
+		fpMiningJobConf
+				.setWorkerContextClass(FrequentPatternWorkerContext.class);
+
+		/**
+		 * The master halts the job once a level finds no frequent itemsets
+		 * or reaches the maximum itemset size. The maximum number of
+		 * supersteps is only a hard bound on the job, whatever the levels or
+		 * waves left.
+		 */
+		if (cmd.hasOption("maxsize")) {
+			int maxSize = Integer.parseInt(cmd.getOptionValue("maxsize"));
+			if (maxSize < 1) {
+				throw new IllegalArgumentException(
+						"The maximum itemset size must be positive: " + maxSize);
+			}
+			fpMiningJobConf.setInt(CommonConstants.MAX_ITEMSET_SIZE_STRING,
+					maxSize);
+		}
+		if (cmd.hasOption("maxsupersteps")) {
+			fpMiningJobConf.setMaxNumberOfSupersteps(Integer.parseInt(cmd
+					.getOptionValue("maxsupersteps")));
+		}
 
 		// fpMiningJobConf.setLocalTestMode(true);
 		fpMiningJobConf.setLocalTestMode(Boolean.parseBoolean(cmd
 				.getOptionValue("l")));
 
-		// fpMiningJobConf.setWorkerConfiguration(1, 1, 10.0f);
-		fpMiningJobConf.setWorkerConfiguration(
-				Integer.parseInt(cmd.getOptionValue("wmin")),
-				Integer.parseInt(cmd.getOptionValue("wmax")), 100.0f);
+		/**
+		 * The local job runner runs a single task, which then hosts both the
+		 * master and the worker.
+		 */
+		fpMiningJobConf.setBoolean("giraph.SplitMasterWorker",
+				!fpMiningJobConf.getLocalTestMode());
 
-		// fpMiningJobConf.setBoolean("giraph.SplitMasterWorker", false);
-		fpMiningJobConf.setBoolean("giraph.SplitMasterWorker", true);
+		/**
+		 * The ZooKeeper server started by Giraph gets JVM options which
+		 * recent JVMs reject, local runs use the JVM of the developer.
+		 */
+		if (fpMiningJobConf.getLocalTestMode()) {
+			fpMiningJobConf.set("giraph.zkJavaOpts", "-Xmx512m");
+		}
 
 		fpMiningJobConf.setBoolean("giraph.useMessageSizeEncoding", true);
 
@@ -68,11 +224,42 @@ public class MainClass {
 
 		fpMiningJobConf.setBoolean("giraph.useOutOfCoreMessage", true);
 
-		fpMiningJobConf.setBoolean("giraph.isStaticGraph", true);
+		/**
+		 * Infrequent items and pairs are removed from the graph, the messages
+		 * still sent to removed items must not bring them back.
+		 */
+		fpMiningJobConf.setBoolean("giraph.isStaticGraph", false);
+
+		fpMiningJobConf.setBoolean("giraph.vertex.resolver.create.on.msgs",
+				false);
 
 		fpMiningJobConf.setInt("giraph.yarn.task.heap.mb", 2048);
 
-		fpMiningJobConf.setCheckpointFrequency(1);
+		/**
+		 * The checkpoint interval is measured from the metrics of the last
+		 * run unless given. The transaction lists of the vertices go next to
+		 * the output once instead of into every checkpoint.
+		 */
+		if (cmd.hasOption("checkpointoverhead")) {
+			fpMiningJobConf.setFloat(
+					CommonConstants.CHECKPOINT_OVERHEAD_STRING,
+					Float.parseFloat(cmd.getOptionValue("checkpointoverhead")));
+		}
+		String checkpointInterval = cmd.getOptionValue("checkpoint",
+				CommonConstants.AUTO_CHECKPOINT_INTERVAL);
+		if (CommonConstants.AUTO_CHECKPOINT_INTERVAL.equals(checkpointInterval)) {
+			Path metricsDir = cmd.hasOption("metrics") ? new Path(
+					cmd.getOptionValue("metrics")) : null;
+			fpMiningJobConf.setCheckpointFrequency(new CheckpointScheduler(
+					fpMiningJobConf).interval(metricsDir));
+		} else {
+			fpMiningJobConf.setCheckpointFrequency(Integer
+					.parseInt(checkpointInterval));
+		}
+		if (fpMiningJobConf.useCheckpointing()) {
+			fpMiningJobConf.set(CommonConstants.TIDSET_STORE_DIR_STRING,
+					cmd.getOptionValue('o') + "-tidsets");
+		}
 
 		fpMiningJobConf.setMaxTaskAttempts(100);
 
@@ -82,15 +269,316 @@ public class MainClass {
 		fpMiningJobConf.setInt(CommonConstants.MINIMUM_CUPPORT_STRING,
 				Integer.parseInt(cmd.getOptionValue("minsup")));
 
-		GiraphJob fpMiningJob = new GiraphJob(fpMiningJobConf,
-				CommonConstants.FP_MINING_ALGOTIHHM_NAME);
+		if (cmd.hasOption("mode")) {
+			fpMiningJobConf.set(CommonConstants.MINING_MODE_STRING,
+					cmd.getOptionValue("mode"));
+		}
+
+		if (cmd.hasOption("patterns")) {
+			fpMiningJobConf.set(CommonConstants.PATTERN_OUTPUT_DIR_STRING,
+					cmd.getOptionValue("patterns"));
+		}
+
+		if (cmd.hasOption("order")) {
+			fpMiningJobConf.set(CommonConstants.ITEM_ORDER_STRING,
+					cmd.getOptionValue("order"));
+		}
+
+		fpMiningJobConf.setBoolean(CommonConstants.DIFFSET_MODE_STRING,
+				cmd.hasOption("diffset"));
+
+		if (cmd.hasOption("diffsetdensity")) {
+			fpMiningJobConf.setFloat(
+					CommonConstants.DIFFSET_DENSITY_THRESHOLD_STRING,
+					Float.parseFloat(cmd.getOptionValue("diffsetdensity")));
+		}
+
+		if (cmd.hasOption("metrics")) {
+			fpMiningJobConf.set(CommonConstants.METRICS_OUTPUT_DIR_STRING,
+					cmd.getOptionValue("metrics"));
+		}
+
+		if (cmd.hasOption("debug")) {
+			fpMiningJobConf.setInt(CommonConstants.DEBUG_LEVEL_STRING,
+					Integer.parseInt(cmd.getOptionValue("debug")));
+		}
+
+		if (cmd.hasOption("debugsample")) {
+			fpMiningJobConf.setFloat(CommonConstants.DEBUG_SAMPLE_RATE_STRING,
+					Float.parseFloat(cmd.getOptionValue("debugsample")));
+		}
+
+		fpMiningJobConf.setBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				cmd.hasOption("skipmalformed"));
 
-		GiraphTextInputFormat.addVertexInputPath(fpMiningJobConf,
-				new Path(cmd.getOptionValue('i')));
+		/**
+		 * Jobs are limited in the number of counters, the supersteps would
+		 * each get their own timer counter. Their times go to the metrics
+		 * files.
+		 */
+		fpMiningJobConf.setBoolean(CommonConstants.LEVEL_COUNTERS_STRING,
+				cmd.hasOption("levelcounters"));
+		fpMiningJobConf.setBoolean("giraph.useSuperstepCounters", false);
 
-		FileOutputFormat.setOutputPath(fpMiningJob.getInternalJob(), new Path(
-				cmd.getOptionValue('o')));
+		if (cmd.hasOption("wavebudget")) {
+			fpMiningJobConf.setLong(CommonConstants.WAVE_MEMORY_BUDGET_STRING,
+					Long.parseLong(cmd.getOptionValue("wavebudget")) * 1024L * 1024);
+		}
+
+		if (cmd.hasOption("localthreshold")) {
+			fpMiningJobConf.setLong(
+					CommonConstants.LOCAL_ENGINE_THRESHOLD_STRING,
+					Long.parseLong(cmd.getOptionValue("localthreshold")));
+		}
+
+		if (cmd.hasOption("threads")) {
+			fpMiningJobConf.setInt(CommonConstants.LOCAL_ENGINE_THREADS_STRING,
+					Integer.parseInt(cmd.getOptionValue("threads")));
+		}
+
+		Path inputPath = new Path(cmd.getOptionValue('i'));
+
+		/**
+		 * Appended transactions update the itemsets of the previous run, the
+		 * output directory becoming the run directory of the next one.
+		 */
+		if (cmd.hasOption("previous")) {
+			if (cmd.hasOption("newtransactions")) {
+				int transactions = Integer.parseInt(cmd
+						.getOptionValue("newtransactions"));
+				if (transactions < 0) {
+					throw new IllegalArgumentException(
+							"The number of new transactions must not be negative: "
+									+ transactions);
+				}
+				fpMiningJobConf.setInt(
+						CommonConstants.NEW_TRANSACTIONS_STRING, transactions);
+			}
+			if (TransactionWeights.find(inputPath, fpMiningJobConf) != null) {
+				throw new IllegalArgumentException(
+						"The incremental engine does not support weighted transactions");
+			}
+			new IncrementalMiningEngine(fpMiningJobConf).mine(inputPath,
+					new Path(cmd.getOptionValue("previous")), new Path(
+							cmd.getOptionValue('o')));
+			return true;
+		}
+
+		/**
+		 * The renumbered input and its dictionaries go next to the output,
+		 * the itemsets and vertices are written with the original ids.
+		 */
+		if (cmd.hasOption("renumber")) {
+			Path renumberedDir = new Path(cmd.getOptionValue('o')
+					+ "-renumbered");
+			new IdRenumbering(fpMiningJobConf).renumber(inputPath,
+					renumberedDir);
+			inputPath = new Path(renumberedDir, IdRenumbering.VERTICES_DIR);
+			fpMiningJobConf.set(CommonConstants.ITEM_DICTIONARY_STRING,
+					new Path(renumberedDir, IdRenumbering.ITEM_DICTIONARY_FILE)
+							.toString());
+			fpMiningJobConf.set(CommonConstants.TRANSACTION_DICTIONARY_STRING,
+					new Path(renumberedDir,
+							IdRenumbering.TRANSACTION_DICTIONARY_FILE)
+							.toString());
+		}
+
+		/**
+		 * Collapsed baskets come with the weights of their transactions,
+		 * which every engine then sums up as supports.
+		 */
+		Path weightsFile = TransactionWeights.find(inputPath, fpMiningJobConf);
+		if (weightsFile != null) {
+			fpMiningJobConf.set(CommonConstants.TRANSACTION_WEIGHTS_STRING,
+					weightsFile.toString());
+		}
+
+		/**
+		 * Inputs fitting on one machine are mined in this JVM, the itemsets
+		 * then go to the pattern directory, or to the output directory if
+		 * none is given.
+		 */
+		if (useLocalEngine(cmd.getOptionValue("engine", DEFAULT_ENGINE),
+				inputPath, fpMiningJobConf)) {
+			String patternDir = cmd.getOptionValue("patterns",
+					cmd.getOptionValue('o'));
+			new LocalMiningEngine(fpMiningJobConf).mine(inputPath, new Path(
+					patternDir));
+			return generateRules(cmd, fpMiningJobConf, inputPath, patternDir);
+		}
+
+		/**
+		 * The number of workers only matters to the Giraph job, the other
+		 * engines run without it.
+		 */
+		// fpMiningJobConf.setWorkerConfiguration(1, 1, 10.0f);
+		fpMiningJobConf.setWorkerConfiguration(
+				Integer.parseInt(cmd.getOptionValue("wmin")),
+				Integer.parseInt(cmd.getOptionValue("wmax")), 100.0f);
+
+		/**
+		 * The item groups go next to the output, like the renumbered input.
+		 */
+		if (CommonConstants.COOCCURRENCE_PARTITIONER.equals(cmd
+				.getOptionValue("partitioner", DEFAULT_PARTITIONER))) {
+			Path groupsDir = new Path(cmd.getOptionValue('o') + "-groups");
+			new CooccurrenceClustering(fpMiningJobConf).cluster(inputPath,
+					groupsDir, Integer.parseInt(cmd.getOptionValue(
+							"partitiongroups", cmd.getOptionValue("wmax"))));
+			fpMiningJobConf.set(CommonConstants.ITEM_GROUPS_STRING, new Path(
+					groupsDir, CooccurrenceClustering.ITEM_GROUPS_FILE)
+					.toString());
+			fpMiningJobConf
+					.setGraphPartitionerFactoryClass(CooccurrencePartitionerFactory.class);
+		}
+
+		/**
+		 * The sample and the itemsets found frequent in it go next to the
+		 * output too.
+		 */
+		if (cmd.hasOption("sample")) {
+			fpMiningJobConf.setFloat(CommonConstants.SAMPLE_RATE_STRING,
+					Float.parseFloat(cmd.getOptionValue("sample")));
+			if (cmd.hasOption("samplefactor")) {
+				fpMiningJobConf.setFloat(
+						CommonConstants.SAMPLE_SUPPORT_FACTOR_STRING,
+						Float.parseFloat(cmd.getOptionValue("samplefactor")));
+			}
+			fpMiningJobConf.set(CommonConstants.SAMPLE_ITEMSETS_STRING,
+					new SampleMining(fpMiningJobConf).mine(inputPath,
+							new Path(cmd.getOptionValue('o') + "-sample"))
+							.toString());
+			GiraphConstants.JOB_OBSERVER_CLASS.set(fpMiningJobConf,
+					SampleMissesObserver.class);
+		}
+
+		GiraphTextInputFormat.addVertexInputPath(fpMiningJobConf, inputPath);
+
+		Path outputPath = new Path(cmd.getOptionValue('o'));
+		if (!runJob(fpMiningJobConf, outputPath)) {
+			return false;
+		}
+
+		/**
+		 * A frequent itemset of the negative border of the sample means
+		 * some of its supersets may have been skipped, the job is run again
+		 * counting every itemset.
+		 */
+		if (cmd.hasOption("sample")) {
+			long misses = SampleMissesObserver.getMisses();
+			if (misses > 0) {
+				System.out.println("***** Sample: " + misses
+						+ " itemsets of the negative border are frequent,"
+						+ " mining again without the sample");
+				fpMiningJobConf.unset(CommonConstants.SAMPLE_ITEMSETS_STRING);
+				FileSystem fs = outputPath.getFileSystem(fpMiningJobConf);
+				fs.delete(outputPath, true);
+				if (cmd.hasOption("patterns")) {
+					fs.delete(new Path(cmd.getOptionValue("patterns")), true);
+				}
+				if (!runJob(fpMiningJobConf, outputPath)) {
+					return false;
+				}
+			}
+		}
+		return generateRules(cmd, fpMiningJobConf, inputPath,
+				cmd.getOptionValue("patterns"));
+	}
+
+	/**
+	 * Fails if the given option has a value other than the allowed ones.
+	 */
+	private static void checkChoice(CommandLine cmd, String option,
+			String... allowed) {
+		String value = cmd.getOptionValue(option);
+		if (value != null && !Arrays.asList(allowed).contains(value)) {
+			throw new IllegalArgumentException("Unknown -" + option + " "
+					+ value + ", expected one of " + Arrays.toString(allowed));
+		}
+	}
+
+	/**
+	 * Generates the association rules of the mined itemsets when a minimum
+	 * confidence is given, the rules going next to the output.
+	 * 
+	 * @return whether the rules were generated or not asked for.
+	 */
+	private static boolean generateRules(CommandLine cmd, Configuration conf,
+			Path inputPath, String patternDir) throws IOException {
+		if (!cmd.hasOption("minconf")) {
+			return true;
+		}
+		if (patternDir == null) {
+			throw new IllegalArgumentException(
+					"Association rules are generated from the pattern directory, -patterns is required");
+		}
+		if (!CommonConstants.ALL_MINING_MODE.equals(conf.get(
+				CommonConstants.MINING_MODE_STRING,
+				CommonConstants.ALL_MINING_MODE))) {
+			throw new IllegalArgumentException(
+					"Association rules need the supports of all the frequent itemsets, -mode must be all");
+		}
+		AssociationRuleGenerator.setThresholds(cmd, conf);
+		long transactions = cmd.hasOption("transactions") ? Long
+				.parseLong(cmd.getOptionValue("transactions"))
+				: AssociationRuleGenerator.countTransactions(inputPath, conf);
+		new AssociationRuleGenerator(conf).generate(new Path(patternDir),
+				new Path(cmd.getOptionValue('o') + "-rules"), transactions);
+		return true;
+	}
+
+	/**
+	 * Runs the job, dropping the transaction lists stored by a previous job
+	 * before it and the ones it stored once it succeeded.
+	 */
+	private static boolean runJob(GiraphConfiguration conf, Path outputPath)
+			throws IOException, InterruptedException, ClassNotFoundException {
+		String tidSetStoreDir = conf
+				.get(CommonConstants.TIDSET_STORE_DIR_STRING);
+		if (tidSetStoreDir != null) {
+			Path storeDir = new Path(tidSetStoreDir);
+			storeDir.getFileSystem(conf).delete(storeDir, true);
+		}
+		if (!createJob(conf, outputPath).run(true)) {
+			return false;
+		}
+		if (tidSetStoreDir != null) {
+			Path storeDir = new Path(tidSetStoreDir);
+			storeDir.getFileSystem(conf).delete(storeDir, true);
+		}
+		return true;
+	}
+
+	private static GiraphJob createJob(GiraphConfiguration conf,
+			Path outputPath) throws IOException {
+		GiraphJob fpMiningJob = new GiraphJob(conf,
+				CommonConstants.FP_MINING_ALGOTIHHM_NAME);
+		FileOutputFormat.setOutputPath(fpMiningJob.getInternalJob(),
+				outputPath);
+		return fpMiningJob;
+	}
 
-		fpMiningJob.run(true);
+	/**
+	 * Tells whether the input is mined by the {@link LocalMiningEngine}, in
+	 * the auto mode when its total size is at most the local engine
+	 * threshold.
+	 */
+	private static boolean useLocalEngine(String engine, Path input,
+			Configuration conf) throws IOException {
+		if (CommonConstants.LOCAL_ENGINE.equals(engine)) {
+			return true;
+		}
+		if (!CommonConstants.AUTO_ENGINE.equals(engine)) {
+			return false;
+		}
+		long inputSize = input.getFileSystem(conf).getContentSummary(input)
+				.getLength();
+		long threshold = conf.getLong(
+				CommonConstants.LOCAL_ENGINE_THRESHOLD_STRING,
+				DEFAULT_LOCAL_ENGINE_THRESHOLD);
+		System.out.println("***** Input size: " + inputSize
+				+ " bytes, local engine threshold: " + threshold + " bytes");
+		return inputSize <= threshold;
 	}
 }
@@ -0,0 +1,283 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Container storing its values as sorted runs of consecutive values. Each run
+ * is kept as a pair of (start, length - 1) so that a full run of 2^16 values
+ * still fits in a char.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+class RunTidContainer extends TidContainer {
+
+	char[] runs;
+
+	int runCount;
+
+	RunTidContainer(char[] runs, int runCount) {
+		this.runs = runs;
+		this.runCount = runCount;
+	}
+
+	int start(int run) {
+		return runs[2 * run];
+	}
+
+	int end(int run) {
+		return runs[2 * run] + runs[2 * run + 1];
+	}
+
+	void appendRun(int start, int end) {
+		if (2 * runCount + 2 > runs.length) {
+			runs = Arrays.copyOf(runs, Math.max(4, runs.length * 2));
+		}
+		runs[2 * runCount] = (char) start;
+		runs[2 * runCount + 1] = (char) (end - start);
+		runCount++;
+	}
+
+	@Override
+	int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < runCount; i++) {
+			cardinality += runs[2 * i + 1] + 1;
+		}
+		return cardinality;
+	}
+
+	@Override
+	boolean contains(char value) {
+		int low = 0;
+		int high = runCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (start(middle) > value) {
+				high = middle - 1;
+			} else if (end(middle) < value) {
+				low = middle + 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	TidContainer add(char value) {
+		if (contains(value)) {
+			return this;
+		}
+		return toDense().add(value);
+	}
+
+	@Override
+	TidContainer and(TidContainer other) {
+		if (other instanceof RunTidContainer) {
+			RunTidContainer run = (RunTidContainer) other;
+			RunTidContainer result = new RunTidContainer(new char[2 * (runCount
+					+ run.runCount)], 0);
+			int i = 0, j = 0;
+			while (i < runCount && j < run.runCount) {
+				int start = Math.max(start(i), run.start(j));
+				int end = Math.min(end(i), run.end(j));
+				if (start <= end) {
+					result.appendRun(start, end);
+				}
+				if (end(i) < run.end(j)) {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			return result.optimize();
+		}
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			char[] result = new char[array.cardinality];
+			int count = 0;
+			int run = 0;
+			for (int i = 0; i < array.cardinality && run < runCount; i++) {
+				char value = array.content[i];
+				while (run < runCount && end(run) < value) {
+					run++;
+				}
+				if (run < runCount && start(run) <= value) {
+					result[count++] = value;
+				}
+			}
+			return new ArrayTidContainer(result, count);
+		}
+		BitmapTidContainer bitmap = (BitmapTidContainer) other;
+		BitmapTidContainer result = new BitmapTidContainer();
+		for (int i = 0; i < runCount; i++) {
+			int firstWord = start(i) >>> 6;
+			int lastWord = end(i) >>> 6;
+			System.arraycopy(bitmap.words, firstWord, result.words, firstWord,
+					lastWord - firstWord + 1);
+		}
+		/**
+		 * The copied boundary words may hold values outside the runs, mask
+		 * them out against the runs themselves.
+		 */
+		BitmapTidContainer mask = new BitmapTidContainer();
+		for (int i = 0; i < runCount; i++) {
+			mask.setRange(start(i), end(i));
+		}
+		int count = 0;
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			result.words[i] &= mask.words[i];
+			count += Long.bitCount(result.words[i]);
+		}
+		result.cardinality = count;
+		return result.shrink();
+	}
+
+	@Override
+	int andCardinality(TidContainer other) {
+		if (other instanceof RunTidContainer) {
+			RunTidContainer run = (RunTidContainer) other;
+			int count = 0;
+			int i = 0, j = 0;
+			while (i < runCount && j < run.runCount) {
+				int start = Math.max(start(i), run.start(j));
+				int end = Math.min(end(i), run.end(j));
+				if (start <= end) {
+					count += end - start + 1;
+				}
+				if (end(i) < run.end(j)) {
+					i++;
+				} else {
+					j++;
+				}
+			}
+			return count;
+		}
+		if (other instanceof ArrayTidContainer) {
+			ArrayTidContainer array = (ArrayTidContainer) other;
+			int count = 0;
+			int run = 0;
+			for (int i = 0; i < array.cardinality && run < runCount; i++) {
+				char value = array.content[i];
+				while (run < runCount && end(run) < value) {
+					run++;
+				}
+				if (run < runCount && start(run) <= value) {
+					count++;
+				}
+			}
+			return count;
+		}
+		BitmapTidContainer bitmap = (BitmapTidContainer) other;
+		int count = 0;
+		for (int i = 0; i < runCount; i++) {
+			count += bitmap.countRange(start(i), end(i));
+		}
+		return count;
+	}
+
+	@Override
+	TidContainer andNot(TidContainer other) {
+		return toDense().andNot(other);
+	}
+
+	@Override
+	TidContainer or(TidContainer other) {
+		return toBitmap().or(other);
+	}
+
+	@Override
+	int fill(int[] out, int position, int high) {
+		for (int i = 0; i < runCount; i++) {
+			int end = end(i);
+			for (int value = start(i); value <= end; value++) {
+				out[position++] = high | value;
+			}
+		}
+		return position;
+	}
+
+	@Override
+	TidContainer optimize() {
+		int cardinality = cardinality();
+		int size = runSizeInBytes(runCount);
+		if (size <= arraySizeInBytes(cardinality)
+				&& size <= bitmapSizeInBytes()) {
+			if (runs.length > 2 * runCount) {
+				runs = Arrays.copyOf(runs, 2 * runCount);
+			}
+			return this;
+		}
+		return toDense();
+	}
+
+	@Override
+	int sizeInBytes() {
+		return runSizeInBytes(runCount);
+	}
+
+	@Override
+	TidContainer copy() {
+		return new RunTidContainer(Arrays.copyOf(runs, 2 * runCount),
+				runCount);
+	}
+
+	@Override
+	TidContainer toDense() {
+		int cardinality = cardinality();
+		if (cardinality > ARRAY_MAX_SIZE) {
+			return toBitmap();
+		}
+		char[] content = new char[Math.max(cardinality, 4)];
+		fillChars(content);
+		return new ArrayTidContainer(content, cardinality);
+	}
+
+	private void fillChars(char[] content) {
+		int count = 0;
+		for (int i = 0; i < runCount; i++) {
+			int end = end(i);
+			for (int value = start(i); value <= end; value++) {
+				content[count++] = (char) value;
+			}
+		}
+	}
+
+	BitmapTidContainer toBitmap() {
+		BitmapTidContainer bitmap = new BitmapTidContainer();
+		for (int i = 0; i < runCount; i++) {
+			bitmap.setRange(start(i), end(i));
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Counts the runs in a sorted array of values.
+	 */
+	static int countRuns(char[] values, int cardinality) {
+		if (cardinality == 0) {
+			return 0;
+		}
+		int runs = 1;
+		for (int i = 1; i < cardinality; i++) {
+			if (values[i] != values[i - 1] + 1) {
+				runs++;
+			}
+		}
+		return runs;
+	}
+
+	static RunTidContainer fromSorted(char[] values, int cardinality, int runs) {
+		RunTidContainer container = new RunTidContainer(new char[2 * runs], 0);
+		int start = values[0];
+		for (int i = 1; i < cardinality; i++) {
+			if (values[i] != values[i - 1] + 1) {
+				container.appendRun(start, values[i - 1]);
+				start = values[i];
+			}
+		}
+		container.appendRun(start, values[cardinality - 1]);
+		return container;
+	}
+}
@@ -0,0 +1,287 @@
+package core;
+
+import io.BasketGraphBuilder;
+import io.ItemVertexInputFormat;
+import io.ItemVertexLineParser;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Mines a random sample of the transactions before the Giraph job, in the way
+ * of Toivonen, so that the job only counts the itemsets which can be
+ * frequent. The sample is mined by the {@link LocalMiningEngine} at a minimum
+ * support scaled down to the sample and lowered further, the itemsets found
+ * frequent in it, with the single items found frequent in all the
+ * transactions, forming the set S. The job then only intersects the itemsets
+ * of S and of its negative border, the itemsets not in S all of whose
+ * subsets one item smaller are.
+ *
+ * If no itemset of the border is frequent every frequent itemset is in S and
+ * the job found them all. Otherwise the supersets of such an itemset may have
+ * been missed, the job counts these misses and {@link MainClass} then runs it
+ * again without the sample.
+ *
+ * A transaction is in the sample when a hash of its id falls below the
+ * sample rate, so every item vertex keeps the same transactions. The sample
+ * goes to <sample dir>/vertices, its itemsets to <sample dir>/level-<size>
+ * and S to <sample dir>/itemsets, in the format of the pattern files.
+ *
+ * The itemsets of S are looked up by the sum of a 64 bit hash of their items,
+ * so the hash of an extension or of a subset one item smaller is the hash of
+ * the itemset plus or minus the hash of the item.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class SampleMining {
+
+	public static String VERTICES_DIR = "vertices";
+
+	public static String ITEMSETS_FILE = "itemsets";
+
+	private static int DEFAULT_MIN_SUPPORT = 100;
+
+	private static float DEFAULT_SAMPLE_RATE = 0.1f;
+
+	private static float DEFAULT_SAMPLE_SUPPORT_FACTOR = 0.8f;
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private final Configuration conf;
+
+	private final int minSupport;
+
+	private final float sampleRate;
+
+	private final float sampleSupportFactor;
+
+	public SampleMining(Configuration conf) {
+		this.conf = conf;
+		this.minSupport = conf.getInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+				DEFAULT_MIN_SUPPORT);
+		this.sampleRate = conf.getFloat(CommonConstants.SAMPLE_RATE_STRING,
+				DEFAULT_SAMPLE_RATE);
+		this.sampleSupportFactor = conf.getFloat(
+				CommonConstants.SAMPLE_SUPPORT_FACTOR_STRING,
+				DEFAULT_SAMPLE_SUPPORT_FACTOR);
+	}
+
+	/**
+	 * Samples the given item vertex input, mines the sample and writes S.
+	 *
+	 * @return the path of the file holding S.
+	 */
+	public Path mine(Path input, Path sampleDir) throws IOException {
+		long start = System.currentTimeMillis();
+		FileSystem fs = sampleDir.getFileSystem(conf);
+		Path itemsetsFile = new Path(sampleDir, ITEMSETS_FILE);
+		Writer itemsets = new BufferedWriter(new OutputStreamWriter(
+				fs.create(itemsetsFile, true), "UTF-8"), 1 << 20);
+		try {
+			long frequentItems = writeSample(input, new Path(new Path(
+					sampleDir, VERTICES_DIR), "part-0"), itemsets);
+
+			/**
+			 * The sample is mined with the configuration of the job, its
+			 * itemsets keeping the ids of the job.
+			 */
+			int sampleMinSupport = Math.max(1, (int) (minSupport * sampleRate
+					* sampleSupportFactor));
+			Configuration sampleConf = new Configuration(conf);
+			sampleConf.setInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+					sampleMinSupport);
+			sampleConf.set(CommonConstants.MINING_MODE_STRING,
+					CommonConstants.ALL_MINING_MODE);
+			sampleConf.unset(CommonConstants.ITEM_DICTIONARY_STRING);
+			new LocalMiningEngine(sampleConf).mine(new Path(sampleDir,
+					VERTICES_DIR), sampleDir);
+
+			long sampleItemsets = copySampleItemsets(fs, sampleDir, itemsets);
+			System.out.println("***** Sample: " + frequentItems
+					+ " frequent items and " + sampleItemsets
+					+ " larger itemsets at support " + sampleMinSupport
+					+ " in " + (System.currentTimeMillis() - start) + " ms");
+		} finally {
+			itemsets.close();
+		}
+		return itemsetsFile;
+	}
+
+	/**
+	 * Writes the sampled transactions of the frequent items, and these items
+	 * as the single item itemsets of S.
+	 *
+	 * @return the number of frequent items.
+	 */
+	private long writeSample(Path input, Path sampleFile, Writer itemsets)
+			throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		boolean skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+		TransactionWeights weights = TransactionWeights.load(
+				conf.get(CommonConstants.TRANSACTION_WEIGHTS_STRING), conf);
+		int sampleBound = (int) (sampleRate * Integer.MAX_VALUE);
+		ItemVertexLineParser parser = new ItemVertexLineParser();
+		Text line = new Text();
+		StringBuilder vertexLine = new StringBuilder();
+		int[] sampledTids = new int[16];
+		long frequentItems = 0;
+		Writer sample = new BufferedWriter(new OutputStreamWriter(fs.create(
+				sampleFile, true), "UTF-8"), 1 << 20);
+		try {
+			for (Path file : ItemVertexInputFormat.listVertexFiles(fs, input)) {
+				LineReader reader = new LineReader(fs.open(file), conf);
+				try {
+					while (reader.readLine(line) > 0) {
+						if (!parser.parse(line.getBytes(), line.getLength())) {
+							if (!skipMalformedLines) {
+								throw new IllegalArgumentException(
+										"Couldn't get vertex from line " + line
+												+ ": " + parser.getError()
+												+ " at byte "
+												+ parser.getErrorPosition());
+							}
+							continue;
+						}
+						int tidCount = parser.getTransactionIdCount();
+						int support = weights == null ? tidCount : weights
+								.support(parser.toTidSet());
+						if (support < minSupport) {
+							continue;
+						}
+						frequentItems++;
+						itemsets.write(new FrequentItemset(new int[] { parser
+								.getId() }, support).toPatternLine());
+
+						if (sampledTids.length < tidCount) {
+							sampledTids = new int[tidCount];
+						}
+						int sampled = 0;
+						int[] tids = parser.getTransactionIds();
+						for (int i = 0; i < tidCount; i++) {
+							if (mix(tids[i]) < sampleBound) {
+								sampledTids[sampled++] = tids[i];
+							}
+						}
+						if (sampled == 0) {
+							continue;
+						}
+						vertexLine.setLength(0);
+						BasketGraphBuilder.appendVertexLine(vertexLine,
+								parser.getId(), new int[0], sampledTids,
+								sampled);
+						sample.write(vertexLine.toString());
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			sample.close();
+		}
+		return frequentItems;
+	}
+
+	/**
+	 * Adds the itemsets of two or more items frequent in the sample to S.
+	 */
+	private long copySampleItemsets(FileSystem fs, Path sampleDir,
+			Writer itemsets) throws IOException {
+		long count = 0;
+		for (FileStatus levelDir : fs.listStatus(sampleDir)) {
+			if (!levelDir.isDirectory()
+					|| !levelDir.getPath().getName().startsWith("level-")
+					|| levelDir.getPath().getName().equals("level-1")) {
+				continue;
+			}
+			for (Path file : ItemVertexInputFormat.listVertexFiles(fs,
+					levelDir.getPath())) {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(fs.open(file), "UTF-8"));
+				try {
+					String patternLine;
+					while ((patternLine = reader.readLine()) != null) {
+						itemsets.write(patternLine);
+						itemsets.write('\n');
+						count++;
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the hashes of the itemsets of S, or returns null if the path is
+	 * not set.
+	 */
+	public static LongOpenHashSet loadItemsetHashes(String path,
+			Configuration conf) throws IOException {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		Path file = new Path(path);
+		FileSystem fs = file.getFileSystem(conf);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				fs.open(file), "UTF-8"));
+		LongOpenHashSet hashes = new LongOpenHashSet();
+		try {
+			String patternLine;
+			while ((patternLine = reader.readLine()) != null) {
+				long hash = 0;
+				for (int item : FrequentItemset.fromPatternLine(patternLine)
+						.getItems()) {
+					hash += itemHash(item);
+				}
+				hashes.add(hash);
+			}
+		} finally {
+			reader.close();
+		}
+		return hashes;
+	}
+
+	/**
+	 * Hash of an itemset, the sum of the hashes of its items.
+	 */
+	public static long itemsetHash(ItemSet items) {
+		long hash = 0;
+		for (int item : items.getItems()) {
+			hash += itemHash(item);
+		}
+		return hash;
+	}
+
+	public static long itemHash(int item) {
+		long hash = (item + 1) * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		hash *= 0xD6E8FEB86659FD93L;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	private static int mix(int tid) {
+		int hash = tid * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash & Integer.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,43 @@
+package core;
+
+import java.io.IOException;
+
+import org.apache.giraph.job.DefaultJobObserver;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * Keeps the number of frequent itemsets of the negative border of the sample
+ * counted by the last job run in this JVM. GiraphJob submits a job of
+ * its own whose counters are only seen by the job observer, so
+ * {@link MainClass} reads them from here to tell whether the job has to run
+ * again without the sample.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class SampleMissesObserver extends DefaultJobObserver {
+
+	private static volatile long misses;
+
+	public static long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public void launchingJob(Job jobToSubmit) {
+		misses = 0;
+	}
+
+	@Override
+	public void jobFinished(Job submittedJob, boolean passed) {
+		try {
+			misses = submittedJob
+					.getCounters()
+					.findCounter(CommonConstants.FP_MINING_COUNTER_GROUP,
+							CommonConstants.SAMPLE_MISSES_COUNTER).getValue();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the job counters", e);
+		}
+	}
+
+}
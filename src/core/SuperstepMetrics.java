@@ -0,0 +1,85 @@
+package core;
+
+/**
+ * Work done by the vertices computed by one thread in a superstep. Each
+ * computation collects its own metrics which the worker context adds up at
+ * the end of the superstep, so the hot path does not synchronize.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class SuperstepMetrics {
+
+	/**
+	 * Names of the metrics, in the order of {@link #toArray()}.
+	 */
+	public static final String[] NAMES = { "vertices computed",
+			"messages received", "pairs examined", "intersections performed",
+			"intersection time ms", "pairs emitted", "bytes emitted" };
+
+	private long verticesComputed;
+
+	private long messagesReceived;
+
+	private long pairsExamined;
+
+	private long intersections;
+
+	private long intersectionNanos;
+
+	private long pairsEmitted;
+
+	private long bytesEmitted;
+
+	public void vertexComputed() {
+		this.verticesComputed++;
+	}
+
+	public void messageReceived() {
+		this.messagesReceived++;
+	}
+
+	public void pairExamined() {
+		this.pairsExamined++;
+	}
+
+	public void intersectionPerformed(long nanos) {
+		this.intersections++;
+		this.intersectionNanos += nanos;
+	}
+
+	public void pairsEmitted(long pairs, long bytes) {
+		this.pairsEmitted += pairs;
+		this.bytesEmitted += bytes;
+	}
+
+	public void add(SuperstepMetrics other) {
+		this.verticesComputed += other.verticesComputed;
+		this.messagesReceived += other.messagesReceived;
+		this.pairsExamined += other.pairsExamined;
+		this.intersections += other.intersections;
+		this.intersectionNanos += other.intersectionNanos;
+		this.pairsEmitted += other.pairsEmitted;
+		this.bytesEmitted += other.bytesEmitted;
+	}
+
+	public void clear() {
+		this.verticesComputed = 0;
+		this.messagesReceived = 0;
+		this.pairsExamined = 0;
+		this.intersections = 0;
+		this.intersectionNanos = 0;
+		this.pairsEmitted = 0;
+		this.bytesEmitted = 0;
+	}
+
+	/**
+	 * Returns the values of the metrics named by {@link #NAMES}.
+	 */
+	public long[] toArray() {
+		return new long[] { verticesComputed, messagesReceived, pairsExamined,
+				intersections, intersectionNanos / 1000000, pairsEmitted,
+				bytesEmitted };
+	}
+
+}
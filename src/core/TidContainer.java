@@ -0,0 +1,118 @@
+package core;
+
+/**
+ * A container holding the low 16 bits of the transaction ids which share the
+ * same high 16 bits inside a {@link TidSet}. Values are stored as unsigned
+ * chars. Depending on its contents a container is either a sorted array, a
+ * 2^16 bit bitmap or a list of runs, the operations return whichever
+ * representation suits the result best.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+abstract class TidContainer {
+
+	/**
+	 * Maximum cardinality of an array container, above this a bitmap is
+	 * smaller.
+	 */
+	static final int ARRAY_MAX_SIZE = 4096;
+
+	/**
+	 * Number of 64 bit words in a bitmap container.
+	 */
+	static final int BITMAP_WORDS = 1024;
+
+	abstract int cardinality();
+
+	abstract boolean contains(char value);
+
+	/**
+	 * Adds a value to the container. The returned container must be used in
+	 * place of this one as the representation may change.
+	 */
+	abstract TidContainer add(char value);
+
+	abstract TidContainer and(TidContainer other);
+
+	abstract int andCardinality(TidContainer other);
+
+	abstract TidContainer andNot(TidContainer other);
+
+	abstract TidContainer or(TidContainer other);
+
+	/**
+	 * Writes the values of this container, combined with the given high bits,
+	 * into the array starting at the given position.
+	 *
+	 * @return the position after the last written value.
+	 */
+	abstract int fill(int[] out, int position, int high);
+
+	/**
+	 * Returns the smallest representation of the values of this container.
+	 */
+	abstract TidContainer optimize();
+
+	abstract int sizeInBytes();
+
+	abstract TidContainer copy();
+
+	/**
+	 * Converts this container to an array or a bitmap container, whichever
+	 * is smaller.
+	 */
+	abstract TidContainer toDense();
+
+	static TidContainer empty() {
+		return new ArrayTidContainer();
+	}
+
+	/**
+	 * Builds a bitmap container for the given sorted values if there are
+	 * more than {@link #ARRAY_MAX_SIZE} of them, else an array container
+	 * holding the given array, which the caller must not reuse. Runs are only
+	 * considered by {@link #copyOfSorted}.
+	 */
+	static TidContainer fromSorted(char[] values, int cardinality) {
+		if (cardinality > ARRAY_MAX_SIZE) {
+			BitmapTidContainer bitmap = new BitmapTidContainer();
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.set(values[i]);
+			}
+			return bitmap;
+		}
+		return new ArrayTidContainer(values, cardinality);
+	}
+
+	/**
+	 * Builds the smallest container for the given sorted values, copying them
+	 * so that the given array can be reused by the caller.
+	 */
+	static TidContainer copyOfSorted(char[] values, int cardinality) {
+		int runs = RunTidContainer.countRuns(values, cardinality);
+		int runSize = runSizeInBytes(runs);
+		if (runSize < bitmapSizeInBytes()
+				&& runSize < arraySizeInBytes(cardinality)) {
+			return RunTidContainer.fromSorted(values, cardinality, runs);
+		}
+		if (cardinality > ARRAY_MAX_SIZE) {
+			return fromSorted(values, cardinality);
+		}
+		char[] content = new char[cardinality];
+		System.arraycopy(values, 0, content, 0, cardinality);
+		return new ArrayTidContainer(content, cardinality);
+	}
+
+	static int runSizeInBytes(int runs) {
+		return 2 + 4 * runs;
+	}
+
+	static int arraySizeInBytes(int cardinality) {
+		return 2 * cardinality;
+	}
+
+	static int bitmapSizeInBytes() {
+		return 8 * BITMAP_WORDS;
+	}
+}
@@ -0,0 +1,527 @@
+package core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.json.JSONArray;
+
+/**
+ * Compressed set of transaction ids. The ids are split on their high 16 bits
+ * into containers holding the low 16 bits, each container being a sorted
+ * array, a bitmap or a list of runs depending on its density (the layout used
+ * by Roaring bitmaps).
+ *
+ * Intersections work container by container, bitmaps being intersected a 64
+ * bit word at a time, and the support of an intersection can be counted (or
+ * tested against a threshold) without materializing the result.
+ *
+ * On the wire the ids are written in increasing order as variable length
+ * encoded differences. Small sets are written as a single run of differences,
+ * larger ones as one length prefixed block per container so that a reader can
+ * skip a whole set or rebuild each container directly from its block.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class TidSet implements Writable {
+
+	private static final int PLAIN_LAYOUT = 0;
+
+	private static final int BLOCK_LAYOUT = 1;
+
+	/**
+	 * Sets with at least this many ids are written in the block layout.
+	 */
+	private static final int BLOCK_LAYOUT_THRESHOLD = 1024;
+
+	/**
+	 * Scratch space holding the values of one container while it is written
+	 * or read.
+	 */
+	private static final ThreadLocal<int[]> CONTAINER_IDS = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1 << 16];
+		}
+	};
+
+	private static final ThreadLocal<char[]> CONTAINER_VALUES = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[1 << 16];
+		}
+	};
+
+	private char[] keys;
+
+	private TidContainer[] containers;
+
+	private int size;
+
+	public TidSet() {
+		this.keys = new char[4];
+		this.containers = new TidContainer[4];
+	}
+
+	private TidSet(char[] keys, TidContainer[] containers, int size) {
+		this.keys = keys;
+		this.containers = containers;
+		this.size = size;
+	}
+
+	/**
+	 * Creates a set holding the given transaction ids.
+	 */
+	public static TidSet of(int... ids) {
+		TidSet tidSet = new TidSet();
+		for (int id : ids) {
+			tidSet.add(id);
+		}
+		return tidSet;
+	}
+
+	/**
+	 * Creates a set holding the first length ids of the given array, which
+	 * must be strictly increasing. Containers are built in bulk instead of
+	 * one id at a time.
+	 */
+	public static TidSet fromSorted(int[] ids, int length) {
+		TidSet tidSet = new TidSet();
+		char[] values = CONTAINER_VALUES.get();
+		int start = 0;
+		while (start < length) {
+			char high = (char) (ids[start] >>> 16);
+			int count = 0;
+			int end = start;
+			while (end < length && (char) (ids[end] >>> 16) == high) {
+				values[count++] = (char) ids[end++];
+			}
+			tidSet.appendContainer(high,
+					TidContainer.copyOfSorted(values, count));
+			start = end;
+		}
+		return tidSet;
+	}
+
+	public boolean add(int id) {
+		char high = (char) (id >>> 16);
+		char low = (char) id;
+		int index = indexOf(high);
+		if (index < 0) {
+			index = -index - 1;
+			insertContainer(index, high, TidContainer.empty());
+		}
+		TidContainer container = containers[index];
+		int before = container.cardinality();
+		containers[index] = container.add(low);
+		return containers[index].cardinality() != before;
+	}
+
+	public boolean contains(int id) {
+		int index = indexOf((char) (id >>> 16));
+		return index >= 0 && containers[index].contains((char) id);
+	}
+
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(containers, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Returns the transaction ids present in both the sets.
+	 */
+	public TidSet and(TidSet other) {
+		TidSet result = new TidSet(new char[Math.min(size, other.size)],
+				new TidContainer[Math.min(size, other.size)], 0);
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				TidContainer container = containers[i].and(other.containers[j]);
+				if (container.cardinality() > 0) {
+					result.appendContainer(keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the transaction ids present in both the sets.
+	 */
+	public int andCardinality(TidSet other) {
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				count += containers[i].andCardinality(other.containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Tests whether the intersection of the sets holds at least the given
+	 * number of transaction ids. The containers are counted one by one and the
+	 * test stops as soon as the threshold is reached or can no longer be
+	 * reached with the containers left.
+	 */
+	public boolean intersectsAtLeast(TidSet other, int minimum) {
+		if (minimum <= 0) {
+			return true;
+		}
+		/**
+		 * Upper bound of the intersection, the sum of the smaller of each pair
+		 * of matching containers.
+		 */
+		int remaining = 0;
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				remaining += Math.min(containers[i].cardinality(),
+						other.containers[j].cardinality());
+				i++;
+				j++;
+			}
+		}
+		if (remaining < minimum) {
+			return false;
+		}
+		int count = 0;
+		i = 0;
+		j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				int bound = Math.min(containers[i].cardinality(),
+						other.containers[j].cardinality());
+				count += containers[i].andCardinality(other.containers[j]);
+				remaining -= bound;
+				if (count >= minimum) {
+					return true;
+				}
+				if (count + remaining < minimum) {
+					return false;
+				}
+				i++;
+				j++;
+			}
+		}
+		return count >= minimum;
+	}
+
+	/**
+	 * Returns the transaction ids of this set which are not in the other one.
+	 */
+	public TidSet andNot(TidSet other) {
+		TidSet result = new TidSet(new char[Math.max(size, 1)],
+				new TidContainer[Math.max(size, 1)], 0);
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				j++;
+			}
+			TidContainer container;
+			if (j < other.size && other.keys[j] == keys[i]) {
+				container = containers[i].andNot(other.containers[j]);
+			} else {
+				container = containers[i].copy();
+			}
+			if (container.cardinality() > 0) {
+				result.appendContainer(keys[i], container);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the transaction ids present in either of the sets.
+	 */
+	public TidSet or(TidSet other) {
+		TidSet result = new TidSet(new char[size + other.size + 1],
+				new TidContainer[size + other.size + 1], 0);
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+				result.appendContainer(keys[i], containers[i].copy());
+				i++;
+			} else if (i >= size || keys[i] > other.keys[j]) {
+				result.appendContainer(other.keys[j],
+						other.containers[j].copy());
+				j++;
+			} else {
+				result.appendContainer(keys[i],
+						containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts every container to its smallest representation. Meant to be
+	 * called once a set has been fully built.
+	 */
+	public void runOptimize() {
+		for (int i = 0; i < size; i++) {
+			containers[i] = containers[i].optimize();
+		}
+		if (keys.length > size) {
+			keys = Arrays.copyOf(keys, size);
+			containers = Arrays.copyOf(containers, size);
+		}
+	}
+
+	/**
+	 * Approximate number of bytes held by the containers.
+	 */
+	public int sizeInBytes() {
+		int bytes = 2 * size;
+		for (int i = 0; i < size; i++) {
+			bytes += containers[i].sizeInBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the transaction ids in increasing order.
+	 */
+	public int[] toArray() {
+		int[] ids = new int[cardinality()];
+		int position = 0;
+		for (int i = 0; i < size; i++) {
+			position = containers[i].fill(ids, position, keys[i] << 16);
+		}
+		return ids;
+	}
+
+	public JSONArray toJSONArray() {
+		JSONArray array = new JSONArray();
+		for (int id : toArray()) {
+			array.put(id);
+		}
+		return array;
+	}
+
+	public TidSet copy() {
+		TidContainer[] copies = new TidContainer[size];
+		for (int i = 0; i < size; i++) {
+			copies[i] = containers[i].copy();
+		}
+		return new TidSet(Arrays.copyOf(keys, size), copies, size);
+	}
+
+	private int indexOf(char high) {
+		/**
+		 * Ids are usually added in increasing order, check the last container
+		 * before searching.
+		 */
+		if (size > 0 && keys[size - 1] == high) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(keys, 0, size, high);
+	}
+
+	private void insertContainer(int index, char high, TidContainer container) {
+		ensureCapacity(size + 1);
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size
+				- index);
+		keys[index] = high;
+		containers[index] = container;
+		size++;
+	}
+
+	private void appendContainer(char high, TidContainer container) {
+		ensureCapacity(size + 1);
+		keys[size] = high;
+		containers[size] = container;
+		size++;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (keys.length < capacity) {
+			int newLength = Math.max(capacity, keys.length * 2);
+			keys = Arrays.copyOf(keys, newLength);
+			containers = Arrays.copyOf(containers, newLength);
+		}
+	}
+
+	@Override
+	public void write(DataOutput dataOut) throws IOException {
+		int cardinality = cardinality();
+		WritableUtils.writeVInt(dataOut, cardinality);
+		if (cardinality == 0) {
+			return;
+		}
+		if (cardinality < BLOCK_LAYOUT_THRESHOLD) {
+			dataOut.writeByte(PLAIN_LAYOUT);
+			int[] ids = toArray();
+			DeltaCoding.writeDeltas(dataOut, ids, 0, ids.length, 0);
+			return;
+		}
+		dataOut.writeByte(BLOCK_LAYOUT);
+		WritableUtils.writeVInt(dataOut, size);
+		int[] values = CONTAINER_IDS.get();
+		for (int i = 0; i < size; i++) {
+			/**
+			 * Each block holds the high bits, the number of values and the
+			 * byte length of the differences between the low bits.
+			 */
+			int count = containers[i].fill(values, 0, 0);
+			WritableUtils.writeVInt(dataOut, keys[i]);
+			WritableUtils.writeVInt(dataOut, count);
+			WritableUtils.writeVInt(dataOut,
+					DeltaCoding.deltasSize(values, 0, count, 0));
+			DeltaCoding.writeDeltas(dataOut, values, 0, count, 0);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput dataIn) throws IOException {
+		this.clear();
+		int cardinality = WritableUtils.readVInt(dataIn);
+		if (cardinality == 0) {
+			return;
+		}
+		int layout = dataIn.readByte();
+		if (layout == PLAIN_LAYOUT) {
+			int id = 0;
+			for (int i = 0; i < cardinality; i++) {
+				id += WritableUtils.readVInt(dataIn);
+				add(id);
+			}
+			runOptimize();
+			return;
+		}
+		int blocks = WritableUtils.readVInt(dataIn);
+		ensureCapacity(blocks);
+		char[] values = CONTAINER_VALUES.get();
+		for (int i = 0; i < blocks; i++) {
+			char high = (char) WritableUtils.readVInt(dataIn);
+			int count = WritableUtils.readVInt(dataIn);
+			WritableUtils.readVInt(dataIn);
+			int value = 0;
+			for (int j = 0; j < count; j++) {
+				value += WritableUtils.readVInt(dataIn);
+				values[j] = (char) value;
+			}
+			appendContainer(high, TidContainer.copyOfSorted(values, count));
+		}
+	}
+
+	/**
+	 * Skips over a set written by {@link #write} without decoding its ids
+	 * when it was written in the block layout.
+	 */
+	public static void skip(DataInput dataIn) throws IOException {
+		int cardinality = WritableUtils.readVInt(dataIn);
+		if (cardinality == 0) {
+			return;
+		}
+		int layout = dataIn.readByte();
+		if (layout == PLAIN_LAYOUT) {
+			for (int i = 0; i < cardinality; i++) {
+				WritableUtils.readVInt(dataIn);
+			}
+			return;
+		}
+		int blocks = WritableUtils.readVInt(dataIn);
+		for (int i = 0; i < blocks; i++) {
+			WritableUtils.readVInt(dataIn);
+			WritableUtils.readVInt(dataIn);
+			dataIn.skipBytes(WritableUtils.readVInt(dataIn));
+		}
+	}
+
+	/**
+	 * Number of bytes {@link #write} takes for this set.
+	 */
+	public int serializedSize() {
+		int cardinality = cardinality();
+		int bytes = WritableUtils.getVIntSize(cardinality);
+		if (cardinality == 0) {
+			return bytes;
+		}
+		bytes++;
+		if (cardinality < BLOCK_LAYOUT_THRESHOLD) {
+			int[] ids = toArray();
+			return bytes + DeltaCoding.deltasSize(ids, 0, ids.length, 0);
+		}
+		bytes += WritableUtils.getVIntSize(size);
+		int[] values = CONTAINER_IDS.get();
+		for (int i = 0; i < size; i++) {
+			int count = containers[i].fill(values, 0, 0);
+			int length = DeltaCoding.deltasSize(values, 0, count, 0);
+			bytes += WritableUtils.getVIntSize(keys[i])
+					+ WritableUtils.getVIntSize(count)
+					+ WritableUtils.getVIntSize(length) + length;
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return toJSONArray().toString();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int id : toArray()) {
+			result = 31 * result + id;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TidSet other = (TidSet) obj;
+		int cardinality = cardinality();
+		if (cardinality != other.cardinality())
+			return false;
+		return andCardinality(other) == cardinality;
+	}
+
+}
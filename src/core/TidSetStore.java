@@ -0,0 +1,240 @@
+package core;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+
+/**
+ * Transaction lists of the item vertices of a worker, which never change once
+ * the first superstep has dropped the infrequent items. The worker writes
+ * them once at the end of that superstep, the vertex values then only refer
+ * to them and leave them out of the checkpoints taken after it.
+ *
+ * Each worker writes its lists to the map file worker-<worker index> in the
+ * store directory, keyed by item id. The lists handed to the store are
+ * appended to a spill file as they come, which is sorted on disk into the
+ * map file, so that the store does not hold them in memory when the graph is
+ * kept out of core. The lists are then read when the vertices ask for them,
+ * from the map file of the worker first as it holds the lists of its own
+ * vertices, and from the ones of the other workers for the vertices it was
+ * given on a restart. The most recently read lists are cached up to a number
+ * of megabytes.
+ *
+ * Map file readers cannot be shared between threads, each compute thread
+ * borrows a set of readers for a lookup so that the lookups of different
+ * threads do not wait for each other, only the cache being locked.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class TidSetStore {
+
+	public static String STORE_FILE_PREFIX = "worker-";
+
+	public static String SPILL_FILE_PREFIX = "spill-";
+
+	private static int DEFAULT_CACHE_MB = 64;
+
+	private final Path storeDir;
+
+	private final int workerIndex;
+
+	private final Configuration conf;
+
+	private final long cacheBytes;
+
+	/**
+	 * Lists read from the map files, the least recently used first.
+	 */
+	private final Int2ObjectLinkedOpenHashMap<TidSet> cache = new Int2ObjectLinkedOpenHashMap<TidSet>();
+
+	private long cachedBytes;
+
+	/**
+	 * Spill file the lists handed to the store are appended to, opened on the
+	 * first one.
+	 */
+	private SequenceFile.Writer spillWriter;
+
+	/**
+	 * Sets of readers of the map files of all the workers, the one of this
+	 * worker first, which no thread is using. A set is opened when a thread
+	 * finds none.
+	 */
+	private final List<List<MapFile.Reader>> idleReaders = new ArrayList<List<MapFile.Reader>>();
+
+	/**
+	 * All the readers opened, closed with the store.
+	 */
+	private final List<MapFile.Reader> openedReaders = new ArrayList<MapFile.Reader>();
+
+	public TidSetStore(Path storeDir, int workerIndex, Configuration conf) {
+		this.storeDir = storeDir;
+		this.workerIndex = workerIndex;
+		this.conf = conf;
+		this.cacheBytes = conf.getInt(CommonConstants.TIDSET_CACHE_MB_STRING,
+				DEFAULT_CACHE_MB) * 1024L * 1024;
+	}
+
+	/**
+	 * Returns the store of the given directory, or null if the directory is
+	 * not set.
+	 */
+	public static TidSetStore create(String dir, int workerIndex,
+			Configuration conf) {
+		if (dir == null || dir.isEmpty()) {
+			return null;
+		}
+		return new TidSetStore(new Path(dir), workerIndex, conf);
+	}
+
+	/**
+	 * Appends the transaction list of an item to the spill file, called by
+	 * the compute threads of the worker concurrently.
+	 */
+	public synchronized void put(int itemId, TidSet tids) throws IOException {
+		if (this.spillWriter == null) {
+			this.spillWriter = createSpillWriter();
+		}
+		this.spillWriter.append(new IntWritable(itemId), tids);
+	}
+
+	/**
+	 * Returns the transaction list of an item, from the cache or else from
+	 * the map files.
+	 */
+	public TidSet get(int itemId) throws IOException {
+		synchronized (this.cache) {
+			TidSet tids = this.cache.getAndMoveToLast(itemId);
+			if (tids != null) {
+				return tids;
+			}
+		}
+		IntWritable key = new IntWritable(itemId);
+		TidSet tids = new TidSet();
+		List<MapFile.Reader> readers = borrowReaders();
+		try {
+			for (MapFile.Reader reader : readers) {
+				if (reader.get(key, tids) != null) {
+					cache(itemId, tids);
+					return tids;
+				}
+			}
+		} finally {
+			synchronized (this.idleReaders) {
+				this.idleReaders.add(readers);
+			}
+		}
+		throw new IllegalStateException("No stored transaction list for item "
+				+ itemId + " in " + this.storeDir);
+	}
+
+	private void cache(int itemId, TidSet tids) {
+		synchronized (this.cache) {
+			this.cache.putAndMoveToLast(itemId, tids);
+			this.cachedBytes += tids.sizeInBytes();
+			while (this.cachedBytes > this.cacheBytes
+					&& this.cache.size() > 1) {
+				this.cachedBytes -= this.cache.removeFirst().sizeInBytes();
+			}
+		}
+	}
+
+	private List<MapFile.Reader> borrowReaders() throws IOException {
+		synchronized (this.idleReaders) {
+			if (!this.idleReaders.isEmpty()) {
+				return this.idleReaders.remove(this.idleReaders.size() - 1);
+			}
+		}
+		List<MapFile.Reader> readers = openReaders();
+		synchronized (this.idleReaders) {
+			this.openedReaders.addAll(readers);
+		}
+		return readers;
+	}
+
+	/**
+	 * Sorts the spill file of this worker by item id into its map file.
+	 */
+	public synchronized void write() throws IOException {
+		if (this.spillWriter == null) {
+			this.spillWriter = createSpillWriter();
+		}
+		this.spillWriter.close();
+		this.spillWriter = null;
+		Path spillFile = new Path(this.storeDir, SPILL_FILE_PREFIX
+				+ this.workerIndex);
+		Path mapFile = new Path(this.storeDir, STORE_FILE_PREFIX
+				+ this.workerIndex);
+		FileSystem fs = this.storeDir.getFileSystem(this.conf);
+		fs.delete(mapFile, true);
+		new SequenceFile.Sorter(fs, IntWritable.class, TidSet.class,
+				this.conf).sort(new Path[] { spillFile }, new Path(mapFile,
+				MapFile.DATA_FILE_NAME), true);
+		try {
+			MapFile.fix(fs, mapFile, IntWritable.class, TidSet.class, false,
+					this.conf);
+		} catch (Exception e) {
+			throw new IOException("Cannot index the transaction lists in "
+					+ mapFile, e);
+		}
+	}
+
+	private SequenceFile.Writer createSpillWriter() throws IOException {
+		return SequenceFile.createWriter(this.conf, SequenceFile.Writer
+				.file(new Path(this.storeDir, SPILL_FILE_PREFIX
+						+ this.workerIndex)), SequenceFile.Writer
+				.keyClass(IntWritable.class), SequenceFile.Writer
+				.valueClass(TidSet.class), SequenceFile.Writer
+				.compression(SequenceFile.CompressionType.BLOCK));
+	}
+
+	private List<MapFile.Reader> openReaders() throws IOException {
+		FileSystem fs = this.storeDir.getFileSystem(this.conf);
+		String ownName = STORE_FILE_PREFIX + this.workerIndex;
+		List<MapFile.Reader> readers = new ArrayList<MapFile.Reader>();
+		for (FileStatus status : fs.listStatus(this.storeDir)) {
+			String name = status.getPath().getName();
+			if (!status.isDirectory() || !name.startsWith(STORE_FILE_PREFIX)) {
+				continue;
+			}
+			MapFile.Reader reader = new MapFile.Reader(status.getPath(),
+					this.conf);
+			if (name.equals(ownName)) {
+				readers.add(0, reader);
+			} else {
+				readers.add(reader);
+			}
+		}
+		return readers;
+	}
+
+	public synchronized void close() throws IOException {
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.cachedBytes = 0;
+		}
+		if (this.spillWriter != null) {
+			this.spillWriter.close();
+			this.spillWriter = null;
+		}
+		synchronized (this.idleReaders) {
+			for (MapFile.Reader reader : this.openedReaders) {
+				reader.close();
+			}
+			this.openedReaders.clear();
+			this.idleReaders.clear();
+		}
+	}
+
+}
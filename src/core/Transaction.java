@@ -5,10 +5,12 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
  * 
- * Class representing a transaction in the database.
+ * Class representing a transaction in the database. Identical baskets merged
+ * into one transaction give it their number as its weight, its multiplicity.
  * 
  * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
  *
@@ -17,8 +19,15 @@ public class Transaction implements Writable {
 
 	private int id;
 
+	private int weight;
+
 	public Transaction(int id) {
+		this(id, 1);
+	}
+
+	public Transaction(int id, int weight) {
 		this.id = id;
+		this.weight = weight;
 	}
 
 	public int getId() {
@@ -29,19 +38,30 @@ public class Transaction implements Writable {
 		this.id = id;
 	}
 
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
 	@Override
 	public String toString() {
-		return Integer.toString(this.id);
+		return this.weight == 1 ? Integer.toString(this.id) : this.id + "x"
+				+ this.weight;
 	}
 
 	@Override
 	public void readFields(DataInput dataInput) throws IOException {
 		this.id = dataInput.readInt();
+		this.weight = WritableUtils.readVInt(dataInput);
 	}
 
 	@Override
 	public void write(DataOutput dataOut) throws IOException {
 		dataOut.writeInt(this.id);
+		WritableUtils.writeVInt(dataOut, this.weight);
 	}
 
 	@Override
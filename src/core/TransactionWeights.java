@@ -0,0 +1,135 @@
+package core;
+
+import io.BasketGraphBuilder;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Weights of the transactions standing for several identical baskets, merged
+ * by {@link BasketGraphBuilder}. The support of an itemset is then the sum of
+ * the weights of its transactions instead of their number, while its tidset
+ * only holds one id per distinct basket.
+ *
+ * The weights file holds the transactions of weight above 1, one per line
+ * with the transaction id and the weight separated by a tab, every other
+ * transaction weighing 1. It goes to _weights in the directory of the item
+ * vertices, which the input formats skip.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class TransactionWeights {
+
+	public static String WEIGHTS_FILE = "_weights";
+
+	/**
+	 * Weights above 1 by transaction id.
+	 */
+	private final Int2IntOpenHashMap weights;
+
+	public TransactionWeights(Int2IntOpenHashMap weights) {
+		this.weights = weights;
+		this.weights.defaultReturnValue(1);
+	}
+
+	public int getWeight(int tid) {
+		return weights.get(tid);
+	}
+
+	/**
+	 * Number of transactions weighing more than 1.
+	 */
+	public int size() {
+		return weights.size();
+	}
+
+	/**
+	 * Returns the sum of the weights of the given transactions, going over
+	 * the weights or over the transactions, whichever are fewer.
+	 */
+	public int support(TidSet tids) {
+		int support = tids.cardinality();
+		if (weights.size() < support) {
+			for (Int2IntMap.Entry entry : weights.int2IntEntrySet()) {
+				if (tids.contains(entry.getIntKey())) {
+					support += entry.getIntValue() - 1;
+				}
+			}
+		} else {
+			for (int tid : tids.toArray()) {
+				support += weights.get(tid) - 1;
+			}
+		}
+		return support;
+	}
+
+	/**
+	 * Support of a tidset, its number of transactions without weights.
+	 */
+	public static int support(TidSet tids, TransactionWeights weights) {
+		return weights == null ? tids.cardinality() : weights.support(tids);
+	}
+
+	/**
+	 * Returns the weights file of an item vertex input directory, or null if
+	 * its transactions are not weighted.
+	 */
+	public static Path find(Path input, Configuration conf) throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		if (!fs.getFileStatus(input).isDirectory()) {
+			return null;
+		}
+		Path file = new Path(input, WEIGHTS_FILE);
+		return fs.exists(file) ? file : null;
+	}
+
+	/**
+	 * Reads the weights at the given path, or returns null if the path is not
+	 * set.
+	 */
+	public static TransactionWeights load(String path, Configuration conf)
+			throws IOException {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		Path file = new Path(path);
+		FileSystem fs = file.getFileSystem(conf);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				fs.open(file), "UTF-8"));
+		Int2IntOpenHashMap weights = new Int2IntOpenHashMap();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				weights.put(Integer.parseInt(line.substring(0, tab)),
+						Integer.parseInt(line.substring(tab + 1)));
+			}
+		} finally {
+			reader.close();
+		}
+		return new TransactionWeights(weights);
+	}
+
+	/**
+	 * Writes the transactions weighing more than 1 to a weights file.
+	 */
+	public static void write(Writer writer, Iterable<Transaction> transactions)
+			throws IOException {
+		for (Transaction transaction : transactions) {
+			if (transaction.getWeight() > 1) {
+				writer.write(transaction.getId() + "\t"
+						+ transaction.getWeight() + "\n");
+			}
+		}
+	}
+
+}
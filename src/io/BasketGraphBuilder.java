@@ -0,0 +1,750 @@
+package io;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+import core.Transaction;
+import core.TransactionWeights;
+
+/**
+ * Builds the input of {@link ItemVertexInputFormat} from raw baskets on a
+ * single machine. The baskets file holds one transaction per line, its item
+ * ids separated by spaces, tabs or commas, and the transaction id of a basket
+ * is its line number starting from 0.
+ *
+ * The file is memory mapped in chunks ending at line boundaries which are
+ * parsed in parallel. A first pass counts the lines of every chunk, giving
+ * the transaction id each chunk starts from, and the support of every item.
+ * Items below the minimum support are dropped along with the edges to them.
+ * The frequent items are then inverted into their transaction lists and
+ * neighbors in one or more passes, each pass building the vertices of a share
+ * of the items and writing them to its own part file of the output directory.
+ * More passes bound the memory needed for large inputs.
+ *
+ * The number of baskets goes to the transactions file of the output
+ * directory, as the transaction lists do not tell how many baskets follow
+ * the last one holding a frequent item.
+ *
+ * Identical baskets can be collapsed into one weighted transaction, two
+ * baskets being identical when they hold the same frequent items. The first
+ * of them keeps its transaction id and takes their number as its weight, the
+ * others are left out of the transaction lists. The weights go to the
+ * {@link TransactionWeights} file of the output directory. The distinct
+ * baskets are held in memory while they are found, in one or more collapse
+ * passes each finding those of a share of the basket hashes, so more passes
+ * bound the memory needed when few baskets repeat. The baskets left out are
+ * marked in a bitmap file of the output directory mapped in memory, which is
+ * deleted once the vertices are written.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class BasketGraphBuilder {
+
+	private static int DEFAULT_CHUNK_MB = 64;
+
+	private static int DEFAULT_PASSES = 1;
+
+	private static int DEFAULT_MIN_SUPPORT = 1;
+
+	private static int DEFAULT_COLLAPSE_PASSES = 1;
+
+	/**
+	 * Bitmap file of the transaction ids of the collapsed baskets.
+	 */
+	private static String DUPLICATES_FILE = "_duplicates";
+
+	/**
+	 * File of the output directory holding the number of baskets.
+	 */
+	public static String TRANSACTIONS_FILE = "_transactions";
+
+	private final File input;
+
+	private final File outputDir;
+
+	private final int threads;
+
+	private final int passes;
+
+	private final int minSupport;
+
+	private final long chunkSize;
+
+	private final boolean collapse;
+
+	private final int collapsePasses;
+
+	private FileChannel channel;
+
+	private ExecutorService executor;
+
+	/**
+	 * Number of lines which could not be parsed, they still take a
+	 * transaction id.
+	 */
+	private long malformedLines;
+
+	public BasketGraphBuilder(File input, File outputDir, int threads,
+			int passes, int minSupport, long chunkSize) {
+		this(input, outputDir, threads, passes, minSupport, chunkSize, false,
+				DEFAULT_COLLAPSE_PASSES);
+	}
+
+	public BasketGraphBuilder(File input, File outputDir, int threads,
+			int passes, int minSupport, long chunkSize, boolean collapse,
+			int collapsePasses) {
+		if (collapsePasses < 1) {
+			throw new IllegalArgumentException(
+					"The number of collapse passes must be positive: "
+							+ collapsePasses);
+		}
+		this.input = input;
+		this.outputDir = outputDir;
+		this.threads = threads;
+		this.passes = passes;
+		this.minSupport = minSupport;
+		this.chunkSize = chunkSize;
+		this.collapse = collapse;
+		this.collapsePasses = collapsePasses;
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException, ExecutionException, ParseException {
+
+		Options options = new Options();
+		options.addOption("i", "input file", true, "Baskets file");
+		options.addOption("o", "output", true, "Output directory");
+		options.addOption("threads", true, "Number of parsing threads");
+		options.addOption("passes", true,
+				"Number of inversion passes over the baskets");
+		options.addOption("minsup", true,
+				"Minimum support of the items to keep");
+		options.addOption("chunkmb", true, "Size of the mapped chunks in MB");
+		options.addOption("collapse", false,
+				"Collapse identical baskets into weighted transactions");
+		options.addOption("collapsepasses", true,
+				"Number of passes over the baskets finding the identical ones");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		int threads = cmd.hasOption("threads") ? Integer.parseInt(cmd
+				.getOptionValue("threads")) : Runtime.getRuntime()
+				.availableProcessors();
+		int passes = cmd.hasOption("passes") ? Integer.parseInt(cmd
+				.getOptionValue("passes")) : DEFAULT_PASSES;
+		int minSupport = cmd.hasOption("minsup") ? Integer.parseInt(cmd
+				.getOptionValue("minsup")) : DEFAULT_MIN_SUPPORT;
+		int chunkMb = cmd.hasOption("chunkmb") ? Integer.parseInt(cmd
+				.getOptionValue("chunkmb")) : DEFAULT_CHUNK_MB;
+		int collapsePasses = cmd.hasOption("collapsepasses") ? Integer
+				.parseInt(cmd.getOptionValue("collapsepasses"))
+				: DEFAULT_COLLAPSE_PASSES;
+
+		BasketGraphBuilder builder = new BasketGraphBuilder(new File(
+				cmd.getOptionValue('i')), new File(cmd.getOptionValue('o')),
+				threads, passes, minSupport, chunkMb * 1024L * 1024L,
+				cmd.hasOption("collapse"), collapsePasses);
+		builder.build();
+	}
+
+	public void build() throws IOException, InterruptedException,
+			ExecutionException {
+		if (!this.outputDir.isDirectory() && !this.outputDir.mkdirs()) {
+			throw new IOException("Cannot create output directory "
+					+ this.outputDir);
+		}
+		RandomAccessFile file = new RandomAccessFile(this.input, "r");
+		this.channel = file.getChannel();
+		this.executor = Executors.newFixedThreadPool(this.threads);
+		try {
+			final List<Chunk> chunks = split();
+
+			/**
+			 * First pass, the lines and the item supports.
+			 */
+			final Int2IntOpenHashMap supports = new Int2IntOpenHashMap();
+			final long[] lines = new long[1];
+			List<Callable<ChunkCounts>> countTasks = new ArrayList<Callable<ChunkCounts>>();
+			for (final Chunk chunk : chunks) {
+				countTasks.add(new Callable<ChunkCounts>() {
+					@Override
+					public ChunkCounts call() throws IOException {
+						return count(chunk);
+					}
+				});
+			}
+			runInOrder(countTasks, new ResultHandler<ChunkCounts>() {
+				@Override
+				public void handle(int index, ChunkCounts counts) {
+					chunks.get(index).firstTid = lines[0];
+					lines[0] += counts.lines;
+					malformedLines += counts.malformedLines;
+					for (Int2IntOpenHashMap.Entry entry : counts.supports
+							.int2IntEntrySet()) {
+						supports.addTo(entry.getIntKey(), entry.getIntValue());
+					}
+				}
+			});
+			/**
+			 * The baskets get int transaction ids counted from 0, which must
+			 * not wrap to negative ones.
+			 */
+			if (lines[0] > Integer.MAX_VALUE) {
+				throw new IOException("Too many baskets: " + lines[0]
+						+ ", transaction ids are non-negative ints so at most "
+						+ Integer.MAX_VALUE + " baskets can be mined");
+			}
+
+			Writer transactions = new OutputStreamWriter(new FileOutputStream(
+					new File(this.outputDir, TRANSACTIONS_FILE)), "UTF-8");
+			try {
+				transactions.write(lines[0] + "\n");
+			} finally {
+				transactions.close();
+			}
+
+			/**
+			 * The frequent items in increasing order, an item is identified by
+			 * its position during the inversion.
+			 */
+			int[] frequentItems = getFrequentItems(supports);
+			final Int2IntOpenHashMap itemIndex = new Int2IntOpenHashMap(
+					frequentItems.length);
+			itemIndex.defaultReturnValue(-1);
+			for (int i = 0; i < frequentItems.length; i++) {
+				itemIndex.put(frequentItems[i], i);
+			}
+
+			ByteBuffer duplicates = null;
+			if (this.collapse) {
+				duplicates = collapse(chunks, itemIndex, (int) lines[0]);
+			}
+
+			for (int pass = 0; pass < this.passes; pass++) {
+				invert(chunks, frequentItems, itemIndex, duplicates, pass);
+			}
+
+			System.out.println("Baskets: " + lines[0] + " Malformed: "
+					+ this.malformedLines + " Items: " + supports.size()
+					+ " Frequent items: " + frequentItems.length);
+		} finally {
+			this.executor.shutdown();
+			file.close();
+			new File(this.outputDir, DUPLICATES_FILE).delete();
+		}
+	}
+
+	/**
+	 * Splits the file into chunks of about the chunk size ending right after a
+	 * line break (or at the end of the file).
+	 */
+	private List<Chunk> split() throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long size = this.channel.size();
+		long start = 0;
+		ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+		while (start < size) {
+			long end = Math.min(size, start + this.chunkSize);
+			while (end < size) {
+				probe.clear();
+				int read = this.channel.read(probe, end);
+				int newline = -1;
+				for (int i = 0; i < read; i++) {
+					if (probe.get(i) == '\n') {
+						newline = i;
+						break;
+					}
+				}
+				if (newline >= 0) {
+					end += newline + 1;
+					break;
+				}
+				end += read;
+			}
+			if (end - start > Integer.MAX_VALUE) {
+				throw new IOException("Basket line longer than 2GB at byte "
+						+ start);
+			}
+			chunks.add(new Chunk(start, (int) (end - start)));
+			start = end;
+		}
+		return chunks;
+	}
+
+	private ChunkCounts count(Chunk chunk) throws IOException {
+		ByteBuffer buffer = chunk.map(this.channel);
+		ChunkCounts counts = new ChunkCounts();
+		IntArrayList items = new IntArrayList();
+		int position = 0;
+		while (position < chunk.length) {
+			int lineEnd = lineEnd(buffer, position, chunk.length);
+			if (parseItems(buffer, position, lineEnd, items)) {
+				int[] basket = distinctItems(items);
+				for (int item : basket) {
+					counts.supports.addTo(item, 1);
+				}
+			} else {
+				counts.malformedLines++;
+			}
+			counts.lines++;
+			position = lineEnd + 1;
+		}
+		return counts;
+	}
+
+	/**
+	 * Finds the identical baskets, writes the weights of the first ones and
+	 * returns the bitmap of the transaction ids of the others.
+	 */
+	private ByteBuffer collapse(List<Chunk> chunks,
+			final Int2IntOpenHashMap itemIndex, int baskets)
+			throws IOException, InterruptedException, ExecutionException {
+		RandomAccessFile file = new RandomAccessFile(new File(this.outputDir,
+				DUPLICATES_FILE), "rw");
+		final ByteBuffer duplicates;
+		try {
+			file.setLength(baskets / 8 + 1);
+			duplicates = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					0, file.length());
+		} finally {
+			file.close();
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(this.outputDir,
+						TransactionWeights.WEIGHTS_FILE)), "UTF-8"), 1 << 20);
+		try {
+			long distinct = 0;
+			long collapsed = 0;
+			for (int pass = 0; pass < this.collapsePasses; pass++) {
+				final Map<IntArrayList, Transaction> passBaskets = new HashMap<IntArrayList, Transaction>();
+				final long[] passDuplicates = new long[1];
+				List<Callable<ChunkBaskets>> basketTasks = new ArrayList<Callable<ChunkBaskets>>();
+				for (final Chunk chunk : chunks) {
+					final int collapsePass = pass;
+					basketTasks.add(new Callable<ChunkBaskets>() {
+						@Override
+						public ChunkBaskets call() throws IOException {
+							return collapse(chunk, itemIndex, collapsePass);
+						}
+					});
+				}
+
+				/**
+				 * The chunks are merged in order, the first basket of a kind
+				 * keeps its transaction.
+				 */
+				runInOrder(basketTasks, new ResultHandler<ChunkBaskets>() {
+					@Override
+					public void handle(int index, ChunkBaskets chunkBaskets) {
+						for (Map.Entry<IntArrayList, Transaction> entry : chunkBaskets.baskets
+								.entrySet()) {
+							Transaction transaction = entry.getValue();
+							Transaction first = passBaskets.get(entry.getKey());
+							if (first == null) {
+								passBaskets.put(entry.getKey(), transaction);
+							} else {
+								first.setWeight(first.getWeight()
+										+ transaction.getWeight());
+								setDuplicate(duplicates, transaction.getId());
+								passDuplicates[0]++;
+							}
+						}
+						for (int i = 0; i < chunkBaskets.duplicates.size(); i++) {
+							setDuplicate(duplicates,
+									chunkBaskets.duplicates.getInt(i));
+						}
+						passDuplicates[0] += chunkBaskets.duplicates.size();
+					}
+				});
+
+				TransactionWeights.write(writer, passBaskets.values());
+				System.out.println("Collapse pass " + pass
+						+ " Distinct baskets: " + passBaskets.size()
+						+ " Collapsed duplicates: " + passDuplicates[0]);
+				distinct += passBaskets.size();
+				collapsed += passDuplicates[0];
+			}
+			System.out.println("Distinct baskets: " + distinct
+					+ " Collapsed duplicates: " + collapsed);
+		} finally {
+			writer.close();
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Finds the identical baskets of a chunk whose hash falls in the given
+	 * collapse pass.
+	 */
+	private ChunkBaskets collapse(Chunk chunk, Int2IntOpenHashMap itemIndex,
+			int pass) throws IOException {
+		ByteBuffer buffer = chunk.map(this.channel);
+		ChunkBaskets chunkBaskets = new ChunkBaskets();
+		IntArrayList items = new IntArrayList();
+		IntArrayList frequent = new IntArrayList();
+		int tid = (int) chunk.firstTid;
+		int position = 0;
+		while (position < chunk.length) {
+			int lineEnd = lineEnd(buffer, position, chunk.length);
+			if (parseItems(buffer, position, lineEnd, items)) {
+				frequent.clear();
+				for (int item : distinctItems(items)) {
+					if (itemIndex.get(item) >= 0) {
+						frequent.add(item);
+					}
+				}
+				if (!frequent.isEmpty() && collapsePass(frequent) == pass) {
+					Transaction first = chunkBaskets.baskets.get(frequent);
+					if (first == null) {
+						chunkBaskets.baskets.put(new IntArrayList(frequent),
+								new Transaction(tid));
+					} else {
+						first.setWeight(first.getWeight() + 1);
+						chunkBaskets.duplicates.add(tid);
+					}
+				}
+			}
+			tid++;
+			position = lineEnd + 1;
+		}
+		return chunkBaskets;
+	}
+
+	/**
+	 * Returns the collapse pass finding the baskets holding the given items.
+	 */
+	private int collapsePass(IntArrayList basket) {
+		return (HashCommon.murmurHash3(basket.hashCode()) & Integer.MAX_VALUE)
+				% this.collapsePasses;
+	}
+
+	private static void setDuplicate(ByteBuffer duplicates, int tid) {
+		duplicates.put(tid >>> 3,
+				(byte) (duplicates.get(tid >>> 3) | 1 << (tid & 7)));
+	}
+
+	private static boolean isDuplicate(ByteBuffer duplicates, int tid) {
+		return (duplicates.get(tid >>> 3) & 1 << (tid & 7)) != 0;
+	}
+
+	/**
+	 * Builds and writes the vertices of the frequent items whose position
+	 * falls in the given pass.
+	 */
+	private void invert(List<Chunk> chunks, int[] frequentItems,
+			final Int2IntOpenHashMap itemIndex, final ByteBuffer duplicates,
+			final int pass)
+			throws IOException, InterruptedException, ExecutionException {
+		int passItems = (frequentItems.length - pass + this.passes - 1)
+				/ this.passes;
+		final IntArrayList[] tids = new IntArrayList[Math.max(0, passItems)];
+		final IntOpenHashSet[] neighbors = new IntOpenHashSet[tids.length];
+		for (int i = 0; i < tids.length; i++) {
+			tids[i] = new IntArrayList();
+			neighbors[i] = new IntOpenHashSet();
+		}
+
+		List<Callable<ChunkInversion>> invertTasks = new ArrayList<Callable<ChunkInversion>>();
+		for (final Chunk chunk : chunks) {
+			invertTasks.add(new Callable<ChunkInversion>() {
+				@Override
+				public ChunkInversion call() throws IOException {
+					return invert(chunk, itemIndex, duplicates, pass);
+				}
+			});
+		}
+
+		/**
+		 * The chunks are merged in order, which keeps the transaction lists
+		 * sorted.
+		 */
+		runInOrder(invertTasks, new ResultHandler<ChunkInversion>() {
+			@Override
+			public void handle(int index, ChunkInversion inversion) {
+				for (Int2ObjectOpenHashMap.Entry<IntArrayList> entry : inversion.tids
+						.int2ObjectEntrySet()) {
+					tids[entry.getIntKey()].addAll(entry.getValue());
+				}
+				for (Int2ObjectOpenHashMap.Entry<IntOpenHashSet> entry : inversion.neighbors
+						.int2ObjectEntrySet()) {
+					neighbors[entry.getIntKey()].addAll(entry.getValue());
+				}
+			}
+		});
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(this.outputDir, "part-" + pass)),
+				"UTF-8"), 1 << 20);
+		try {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < tids.length; i++) {
+				int[] neighborIds = neighbors[i].toIntArray();
+				Arrays.sort(neighborIds);
+				line.setLength(0);
+				appendVertexLine(line, frequentItems[i * this.passes + pass],
+						neighborIds, tids[i].elements(), tids[i].size());
+				writer.write(line.toString());
+				tids[i] = null;
+				neighbors[i] = null;
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private ChunkInversion invert(Chunk chunk, Int2IntOpenHashMap itemIndex,
+			ByteBuffer duplicates, int pass) throws IOException {
+		ByteBuffer buffer = chunk.map(this.channel);
+		ChunkInversion inversion = new ChunkInversion();
+		IntArrayList items = new IntArrayList();
+		IntArrayList frequent = new IntArrayList();
+		int tid = (int) chunk.firstTid;
+		int position = 0;
+		while (position < chunk.length) {
+			int lineEnd = lineEnd(buffer, position, chunk.length);
+			if ((duplicates == null || !isDuplicate(duplicates, tid))
+					&& parseItems(buffer, position, lineEnd, items)) {
+				frequent.clear();
+				for (int item : distinctItems(items)) {
+					if (itemIndex.get(item) >= 0) {
+						frequent.add(item);
+					}
+				}
+				for (int i = 0; i < frequent.size(); i++) {
+					int index = itemIndex.get(frequent.getInt(i));
+					if (index % this.passes != pass) {
+						continue;
+					}
+					int slot = index / this.passes;
+					IntArrayList itemTids = inversion.tids.get(slot);
+					if (itemTids == null) {
+						itemTids = new IntArrayList();
+						inversion.tids.put(slot, itemTids);
+						inversion.neighbors.put(slot, new IntOpenHashSet());
+					}
+					itemTids.add(tid);
+					IntOpenHashSet itemNeighbors = inversion.neighbors
+							.get(slot);
+					for (int j = 0; j < frequent.size(); j++) {
+						if (j != i) {
+							itemNeighbors.add(frequent.getInt(j));
+						}
+					}
+				}
+			}
+			tid++;
+			position = lineEnd + 1;
+		}
+		return inversion;
+	}
+
+	private int[] getFrequentItems(Int2IntOpenHashMap supports) {
+		IntArrayList frequent = new IntArrayList();
+		for (Int2IntOpenHashMap.Entry entry : supports.int2IntEntrySet()) {
+			if (entry.getIntValue() >= this.minSupport) {
+				frequent.add(entry.getIntKey());
+			}
+		}
+		int[] items = frequent.toIntArray();
+		Arrays.sort(items);
+		return items;
+	}
+
+	/**
+	 * Runs the tasks on the executor with a bounded number of them in flight,
+	 * handing their results over in the order of the tasks.
+	 */
+	private <T> void runInOrder(List<Callable<T>> tasks,
+			ResultHandler<T> handler)
+			throws InterruptedException, ExecutionException {
+		int window = 2 * this.threads;
+		LinkedList<Future<T>> inFlight = new LinkedList<Future<T>>();
+		int submitted = 0;
+		for (int i = 0; i < tasks.size(); i++) {
+			while (submitted < tasks.size() && submitted < i + window) {
+				inFlight.add(this.executor.submit(tasks.get(submitted++)));
+			}
+			handler.handle(i, inFlight.removeFirst().get());
+		}
+	}
+
+	/**
+	 * Returns the position of the line break ending the line starting at the
+	 * given position, or the end of the chunk.
+	 */
+	private static int lineEnd(ByteBuffer buffer, int position, int limit) {
+		while (position < limit && buffer.get(position) != '\n') {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * Parses the item ids of a basket line, separated by spaces, tabs or
+	 * commas, into the given list. Returns false if the line holds anything
+	 * else, negative ids included as item ids must be non-negative ints.
+	 */
+	static boolean parseItems(ByteBuffer buffer, int from, int to,
+			IntArrayList items) {
+		items.clear();
+		int position = from;
+		while (position < to) {
+			byte b = buffer.get(position);
+			if (b == ' ' || b == '\t' || b == ',' || b == '\r') {
+				position++;
+				continue;
+			}
+			long value = 0;
+			int digits = 0;
+			while (position < to) {
+				b = buffer.get(position);
+				if (b < '0' || b > '9') {
+					break;
+				}
+				value = value * 10 + (b - '0');
+				if (value > Integer.MAX_VALUE) {
+					return false;
+				}
+				digits++;
+				position++;
+			}
+			if (digits == 0) {
+				return false;
+			}
+			items.add((int) value);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the distinct items of a parsed basket in increasing order.
+	 */
+	static int[] distinctItems(IntArrayList items) {
+		int[] basket = items.toIntArray();
+		Arrays.sort(basket);
+		int distinct = 0;
+		for (int i = 0; i < basket.length; i++) {
+			if (i == 0 || basket[i] != basket[i - 1]) {
+				basket[distinct++] = basket[i];
+			}
+		}
+		return distinct == basket.length ? basket : Arrays.copyOf(basket,
+				distinct);
+	}
+
+	/**
+	 * Appends the input line of an item vertex, [id, [neighbors], [tids]].
+	 */
+	public static void appendVertexLine(StringBuilder line, int itemId,
+			int[] neighbors, int[] tids, int tidCount) {
+		line.append('[').append(itemId).append(", [");
+		for (int i = 0; i < neighbors.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(neighbors[i]);
+		}
+		line.append("], [");
+		for (int i = 0; i < tidCount; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(tids[i]);
+		}
+		line.append("]]\n");
+	}
+
+	private interface ResultHandler<T> {
+		void handle(int index, T result);
+	}
+
+	/**
+	 * A range of the baskets file ending at a line boundary.
+	 */
+	private static class Chunk {
+
+		private final long start;
+
+		private final int length;
+
+		/**
+		 * Transaction id of the first basket of the chunk.
+		 */
+		private long firstTid;
+
+		private Chunk(long start, int length) {
+			this.start = start;
+			this.length = length;
+		}
+
+		private ByteBuffer map(FileChannel channel) throws IOException {
+			return channel.map(FileChannel.MapMode.READ_ONLY, this.start,
+					this.length);
+		}
+	}
+
+	private static class ChunkCounts {
+
+		private long lines;
+
+		private long malformedLines;
+
+		private final Int2IntOpenHashMap supports = new Int2IntOpenHashMap();
+	}
+
+	/**
+	 * Distinct baskets found in a chunk, with the transaction of the first
+	 * one of each kind weighing their number, and the transaction ids of the
+	 * others.
+	 */
+	private static class ChunkBaskets {
+
+		private final Map<IntArrayList, Transaction> baskets = new HashMap<IntArrayList, Transaction>();
+
+		private final IntArrayList duplicates = new IntArrayList();
+	}
+
+	/**
+	 * Transaction lists and neighbors of the items of a pass found in a chunk,
+	 * keyed by the position of the item in the pass.
+	 */
+	private static class ChunkInversion {
+
+		private final Int2ObjectOpenHashMap<IntArrayList> tids = new Int2ObjectOpenHashMap<IntArrayList>();
+
+		private final Int2ObjectOpenHashMap<IntOpenHashSet> neighbors = new Int2ObjectOpenHashMap<IntOpenHashSet>();
+	}
+}
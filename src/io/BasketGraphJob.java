@@ -0,0 +1,175 @@
+package io;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+
+import core.CommonConstants;
+
+/**
+ * MapReduce version of {@link BasketGraphBuilder} for inputs spread over a
+ * cluster. As the line numbers of a split are not known to its mapper, every
+ * basket line carries its transaction id, followed by a tab and the item ids
+ * separated by spaces or commas.
+ * 
+ * The mappers send each basket to the reducers of its items, which build the
+ * transaction list and the neighbors of their items. Items below the minimum
+ * support are dropped, but the edges of the other items still point to them,
+ * such items are removed in the first superstep of the mining.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class BasketGraphJob {
+
+	private static int DEFAULT_MIN_SUPPORT = 1;
+
+	public static class BasketMapper extends
+			Mapper<LongWritable, Text, IntWritable, BasketOccurrenceWritable> {
+
+		private final IntArrayList items = new IntArrayList();
+
+		private final IntWritable itemId = new IntWritable();
+
+		private final BasketOccurrenceWritable occurrence = new BasketOccurrenceWritable();
+
+		@Override
+		protected void map(LongWritable offset, Text line, Context context)
+				throws IOException, InterruptedException {
+			ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(), 0,
+					line.getLength());
+			int tab = -1;
+			for (int i = 0; i < line.getLength(); i++) {
+				if (bytes.get(i) == '\t') {
+					tab = i;
+					break;
+				}
+			}
+			if (tab <= 0
+					|| !BasketGraphBuilder.parseItems(bytes, 0, tab, this.items)
+					|| this.items.size() != 1) {
+				context.getCounter(CommonConstants.FP_MINING_COUNTER_GROUP,
+						"Malformed baskets").increment(1);
+				return;
+			}
+			int tid = this.items.getInt(0);
+			if (!BasketGraphBuilder.parseItems(bytes, tab + 1,
+					line.getLength(), this.items)) {
+				context.getCounter(CommonConstants.FP_MINING_COUNTER_GROUP,
+						"Malformed baskets").increment(1);
+				return;
+			}
+			int[] basket = BasketGraphBuilder.distinctItems(this.items);
+			this.occurrence.set(tid, basket);
+			for (int item : basket) {
+				this.itemId.set(item);
+				context.write(this.itemId, this.occurrence);
+			}
+		}
+	}
+
+	public static class ItemVertexReducer extends
+			Reducer<IntWritable, BasketOccurrenceWritable, NullWritable, Text> {
+
+		private final StringBuilder line = new StringBuilder();
+
+		private final Text text = new Text();
+
+		@Override
+		protected void reduce(IntWritable itemId,
+				Iterable<BasketOccurrenceWritable> occurrences, Context context)
+				throws IOException, InterruptedException {
+			int minSupport = context.getConfiguration().getInt(
+					CommonConstants.MINIMUM_CUPPORT_STRING, DEFAULT_MIN_SUPPORT);
+			int item = itemId.get();
+			IntArrayList tids = new IntArrayList();
+			IntOpenHashSet neighbors = new IntOpenHashSet();
+			/**
+			 * The occurrence object is reused by Hadoop, its content is copied
+			 * out.
+			 */
+			for (BasketOccurrenceWritable occurrence : occurrences) {
+				tids.add(occurrence.getTid());
+				for (int neighbor : occurrence.getItems()) {
+					if (neighbor != item) {
+						neighbors.add(neighbor);
+					}
+				}
+			}
+			if (tids.size() < minSupport) {
+				return;
+			}
+			int[] sortedTids = tids.toIntArray();
+			Arrays.sort(sortedTids);
+			int[] sortedNeighbors = neighbors.toIntArray();
+			Arrays.sort(sortedNeighbors);
+			this.line.setLength(0);
+			BasketGraphBuilder.appendVertexLine(this.line, item,
+					sortedNeighbors, sortedTids, sortedTids.length);
+			this.line.setLength(this.line.length() - 1);
+			this.text.set(this.line.toString());
+			context.write(NullWritable.get(), this.text);
+		}
+	}
+
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException, InterruptedException, ParseException {
+
+		Options options = new Options();
+		options.addOption("i", "input file", true, "Baskets with their ids");
+		options.addOption("o", "output", true, "Output directory");
+		options.addOption("minsup", true,
+				"Minimum support of the items to keep");
+		options.addOption("reducers", true, "Number of reducers");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		Configuration conf = new Configuration();
+		if (cmd.hasOption("minsup")) {
+			conf.setInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+					Integer.parseInt(cmd.getOptionValue("minsup")));
+		}
+
+		Job job = Job.getInstance(conf, "Item Vertex Input Builder");
+		job.setJarByClass(BasketGraphJob.class);
+		job.setMapperClass(BasketMapper.class);
+		job.setReducerClass(ItemVertexReducer.class);
+		job.setMapOutputKeyClass(IntWritable.class);
+		job.setMapOutputValueClass(BasketOccurrenceWritable.class);
+		job.setOutputKeyClass(NullWritable.class);
+		job.setOutputValueClass(Text.class);
+		job.setInputFormatClass(TextInputFormat.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+		if (cmd.hasOption("reducers")) {
+			job.setNumReduceTasks(Integer.parseInt(cmd
+					.getOptionValue("reducers")));
+		}
+		FileInputFormat.addInputPath(job, new Path(cmd.getOptionValue('i')));
+		FileOutputFormat.setOutputPath(job, new Path(cmd.getOptionValue('o')));
+
+		System.exit(job.waitForCompletion(true) ? 0 : 1);
+	}
+}
@@ -0,0 +1,54 @@
+package io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import core.DeltaCoding;
+
+/**
+ * Occurrence of an item in a basket, the transaction id of the basket along
+ * with all its items, sent from the mappers to the reducer of the item by
+ * {@link BasketGraphJob}.
+ * 
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ * 
+ */
+public class BasketOccurrenceWritable implements Writable {
+
+	private int tid;
+
+	private int[] items = new int[0];
+
+	public int getTid() {
+		return tid;
+	}
+
+	/**
+	 * Distinct items of the basket in increasing order.
+	 */
+	public int[] getItems() {
+		return items;
+	}
+
+	public void set(int tid, int[] items) {
+		this.tid = tid;
+		this.items = items;
+	}
+
+	@Override
+	public void readFields(DataInput dataInput) throws IOException {
+		this.tid = WritableUtils.readVInt(dataInput);
+		this.items = DeltaCoding.readSortedIds(dataInput, this.items);
+	}
+
+	@Override
+	public void write(DataOutput dataOut) throws IOException {
+		WritableUtils.writeVInt(dataOut, this.tid);
+		DeltaCoding.writeSortedIds(dataOut, this.items, this.items.length);
+	}
+
+}
@@ -0,0 +1,412 @@
+package io;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+import core.CommonConstants;
+
+/**
+ * Clusters the items of an item vertex input into groups which are mined on
+ * the same worker by core.CooccurrencePartitionerFactory. The messages of an
+ * item go to the items it has edges to, the groups keep the strongly
+ * co-occurring items together while balancing the transaction id volume,
+ * the sum of the tidset sizes, of every group.
+ *
+ * The weight of an edge is the number of transactions its items share,
+ * estimated from min-hash signatures of their tidsets so the tidsets are not
+ * kept: with the Jaccard similarity j of the two tidsets estimated by the
+ * share of equal signature slots, they share j * (|A| + |B|) / (1 + j)
+ * transactions.
+ *
+ * The items are assigned by linear deterministic greedy streaming, heaviest
+ * first: an item goes to the group holding the largest edge weight to it,
+ * scaled down by how full the group is, among the groups it fits in. The
+ * stream is replayed a few times, each item then being reassigned knowing
+ * where all the others went.
+ *
+ * The groups are written one item per line, the item id, a tab and its group,
+ * to <output>/item-groups.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class CooccurrenceClustering {
+
+	public static String ITEM_GROUPS_FILE = "item-groups";
+
+	private static int DEFAULT_SIGNATURE_SIZE = 32;
+
+	private static int DEFAULT_PASSES = 3;
+
+	private static float DEFAULT_IMBALANCE = 0.1f;
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private final Configuration conf;
+
+	private final int signatureSize;
+
+	private final int passes;
+
+	private final float imbalance;
+
+	private final boolean skipMalformedLines;
+
+	private final ItemVertexLineParser parser = new ItemVertexLineParser();
+
+	private final Text line = new Text();
+
+	public CooccurrenceClustering(Configuration conf, int signatureSize,
+			int passes, float imbalance) {
+		this.conf = conf;
+		this.signatureSize = signatureSize;
+		this.passes = Math.max(1, passes);
+		this.imbalance = imbalance;
+		this.skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+	}
+
+	public CooccurrenceClustering(Configuration conf) {
+		this(conf, DEFAULT_SIGNATURE_SIZE, DEFAULT_PASSES, DEFAULT_IMBALANCE);
+	}
+
+	public static void main(String[] args) throws IOException,
+			ParseException {
+		Options options = new Options();
+		options.addOption("i", "input file", true, "Item vertex input");
+		options.addOption("o", "output", true, "Output directory");
+		options.addOption("groups", true, "Number of groups, one per worker");
+		options.addOption("signature", true,
+				"Min-hash signature size of the tidsets (default "
+						+ DEFAULT_SIGNATURE_SIZE + ")");
+		options.addOption("passes", true, "Number of streaming passes (default "
+				+ DEFAULT_PASSES + ")");
+		options.addOption("imbalance", true,
+				"Allowed excess volume of a group over the average (default "
+						+ DEFAULT_IMBALANCE + ")");
+		options.addOption("skipmalformed", false,
+				"Skip malformed input lines instead of failing");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		Configuration conf = new Configuration();
+		conf.setBoolean(CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				cmd.hasOption("skipmalformed"));
+		new CooccurrenceClustering(conf, Integer.parseInt(cmd.getOptionValue(
+				"signature", Integer.toString(DEFAULT_SIGNATURE_SIZE))),
+				Integer.parseInt(cmd.getOptionValue("passes",
+						Integer.toString(DEFAULT_PASSES))),
+				Float.parseFloat(cmd.getOptionValue("imbalance",
+						Float.toString(DEFAULT_IMBALANCE)))).cluster(new Path(
+				cmd.getOptionValue('i')), new Path(cmd.getOptionValue('o')),
+				Integer.parseInt(cmd.getOptionValue("groups")));
+	}
+
+	/**
+	 * Clusters the items of the given input into the given number of groups
+	 * and writes them to the output directory.
+	 */
+	public void cluster(Path input, Path outputDir, int groupCount)
+			throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+
+		/**
+		 * The items, their tidset sizes and signatures, and the edges, each
+		 * kept once as the pair of its item indexes.
+		 */
+		Int2IntOpenHashMap indexes = new Int2IntOpenHashMap();
+		indexes.defaultReturnValue(-1);
+		IntArrayList items = new IntArrayList();
+		IntArrayList volumes = new IntArrayList();
+		List<int[]> signatures = new ArrayList<int[]>();
+		List<int[]> neighborLists = new ArrayList<int[]>();
+		for (Path file : ItemVertexInputFormat.listVertexFiles(fs, input)) {
+			LineReader reader = new LineReader(fs.open(file), conf);
+			try {
+				while (nextVertex(reader)) {
+					indexes.put(parser.getId(), items.size());
+					items.add(parser.getId());
+					volumes.add(parser.getTransactionIdCount());
+					signatures.add(signature(parser.getTransactionIds(),
+							parser.getTransactionIdCount()));
+					neighborLists.add(Arrays.copyOf(parser.getNeighbors(),
+							parser.getNeighborCount()));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		int itemCount = items.size();
+		LongOpenHashSet edges = new LongOpenHashSet();
+		int[] degrees = new int[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			for (int neighbor : neighborLists.get(i)) {
+				int j = indexes.get(neighbor);
+				if (j >= 0 && j != i
+						&& edges.add(((long) Math.min(i, j) << 32)
+								| Math.max(i, j))) {
+					degrees[i]++;
+					degrees[j]++;
+				}
+			}
+			neighborLists.set(i, null);
+		}
+
+		/**
+		 * Adjacency of every item with the estimated edge weights.
+		 */
+		int[][] adjacency = new int[itemCount][];
+		float[][] weights = new float[itemCount][];
+		for (int i = 0; i < itemCount; i++) {
+			adjacency[i] = new int[degrees[i]];
+			weights[i] = new float[degrees[i]];
+			degrees[i] = 0;
+		}
+		for (long edge : edges) {
+			int i = (int) (edge >>> 32);
+			int j = (int) edge;
+			float weight = sharedTransactions(signatures.get(i),
+					signatures.get(j), volumes.getInt(i), volumes.getInt(j));
+			adjacency[i][degrees[i]] = j;
+			weights[i][degrees[i]++] = weight;
+			adjacency[j][degrees[j]] = i;
+			weights[j][degrees[j]++] = weight;
+		}
+		edges = null;
+		signatures = null;
+
+		int[] groups = assign(adjacency, weights, volumes.toIntArray(),
+				groupCount);
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+				new Path(outputDir, ITEM_GROUPS_FILE), true), "UTF-8"), 1 << 20);
+		try {
+			for (int i = 0; i < itemCount; i++) {
+				writer.write(items.getInt(i) + "\t" + groups[i] + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+
+		report(adjacency, weights, volumes.toIntArray(), groups, groupCount);
+	}
+
+	/**
+	 * Streams the items heaviest first into the groups, the first pass
+	 * seeing only the items assigned before, the next ones all of them.
+	 */
+	private int[] assign(int[][] adjacency, float[][] weights,
+			final int[] volumes, int groupCount) {
+		int itemCount = volumes.length;
+		Integer[] order = new Integer[itemCount];
+		long totalVolume = 0;
+		for (int i = 0; i < itemCount; i++) {
+			order[i] = i;
+			totalVolume += volumes[i];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer item, Integer other) {
+				return Integer.compare(volumes[other], volumes[item]);
+			}
+		});
+		double capacity = Math.max(1.0, (1.0 + imbalance) * totalVolume
+				/ groupCount);
+
+		int[] groups = new int[itemCount];
+		Arrays.fill(groups, -1);
+		long[] loads = new long[groupCount];
+		double[] groupWeights = new double[groupCount];
+		for (int pass = 0; pass < passes; pass++) {
+			for (Integer boxed : order) {
+				int item = boxed;
+				if (groups[item] >= 0) {
+					loads[groups[item]] -= volumes[item];
+				}
+				Arrays.fill(groupWeights, 0.0);
+				for (int k = 0; k < adjacency[item].length; k++) {
+					int group = groups[adjacency[item][k]];
+					if (group >= 0) {
+						groupWeights[group] += weights[item][k];
+					}
+				}
+
+				/**
+				 * Equal scores, no weight at all included, go to the least
+				 * loaded group, as does an item fitting in no group.
+				 */
+				int best = -1;
+				double bestScore = 0.0;
+				for (int group = 0; group < groupCount; group++) {
+					if (loads[group] + volumes[item] > capacity) {
+						continue;
+					}
+					double score = groupWeights[group]
+							* (1.0 - loads[group] / capacity);
+					if (best < 0 || score > bestScore
+							|| (score == bestScore && loads[group] < loads[best])) {
+						best = group;
+						bestScore = score;
+					}
+				}
+				if (best < 0) {
+					best = 0;
+					for (int group = 1; group < groupCount; group++) {
+						if (loads[group] < loads[best]) {
+							best = group;
+						}
+					}
+				}
+				groups[item] = best;
+				loads[best] += volumes[item];
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * Prints the share of the edge weight cut by the groups and the largest
+	 * group volume against the average.
+	 */
+	private void report(int[][] adjacency, float[][] weights, int[] volumes,
+			int[] groups, int groupCount) {
+		double totalWeight = 0;
+		double cutWeight = 0;
+		long[] loads = new long[groupCount];
+		long totalVolume = 0;
+		for (int i = 0; i < volumes.length; i++) {
+			loads[groups[i]] += volumes[i];
+			totalVolume += volumes[i];
+			for (int k = 0; k < adjacency[i].length; k++) {
+				totalWeight += weights[i][k];
+				if (groups[adjacency[i][k]] != groups[i]) {
+					cutWeight += weights[i][k];
+				}
+			}
+		}
+		long maxLoad = 0;
+		for (long load : loads) {
+			maxLoad = Math.max(maxLoad, load);
+		}
+		System.out.println("Clustered items: " + volumes.length + " Groups: "
+				+ groupCount + " Cut weight: "
+				+ (totalWeight > 0 ? cutWeight / totalWeight : 0.0)
+				+ " Max volume / average: "
+				+ (totalVolume > 0 ? (double) maxLoad * groupCount
+						/ totalVolume : 0.0));
+	}
+
+	/**
+	 * Min-hash signature of a tidset, the smallest hash of its transaction
+	 * ids under every one of the hash functions.
+	 */
+	private int[] signature(int[] tids, int count) {
+		int[] signature = new int[signatureSize];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i++) {
+			for (int k = 0; k < signatureSize; k++) {
+				int hash = mix(tids[i] * 0x9E3779B9 + k * 0x7F4A7C15);
+				if (hash < signature[k]) {
+					signature[k] = hash;
+				}
+			}
+		}
+		return signature;
+	}
+
+	private static int mix(int value) {
+		value ^= value >>> 16;
+		value *= 0x85EBCA6B;
+		value ^= value >>> 13;
+		value *= 0xC2B2AE35;
+		value ^= value >>> 16;
+		return value & Integer.MAX_VALUE;
+	}
+
+	private float sharedTransactions(int[] signature, int[] other,
+			int volume, int otherVolume) {
+		int equal = 0;
+		for (int k = 0; k < signatureSize; k++) {
+			if (signature[k] == other[k]) {
+				equal++;
+			}
+		}
+		float jaccard = (float) equal / signatureSize;
+		return jaccard * (volume + otherVolume) / (1.0f + jaccard);
+	}
+
+	/**
+	 * Reads the groups written by {@link #cluster}, or returns null if the
+	 * path is not set. Items missing from the map get -1.
+	 */
+	public static Int2IntOpenHashMap loadGroups(String path,
+			Configuration conf) throws IOException {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		Path file = new Path(path);
+		FileSystem fs = file.getFileSystem(conf);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				fs.open(file), "UTF-8"));
+		Int2IntOpenHashMap groups = new Int2IntOpenHashMap();
+		groups.defaultReturnValue(-1);
+		try {
+			String groupLine;
+			while ((groupLine = reader.readLine()) != null) {
+				int tab = groupLine.indexOf('\t');
+				groups.put(Integer.parseInt(groupLine.substring(0, tab)),
+						Integer.parseInt(groupLine.substring(tab + 1)));
+			}
+		} finally {
+			reader.close();
+		}
+		return groups;
+	}
+
+	/**
+	 * Parses the next well formed line of the reader.
+	 *
+	 * @return false at the end of the input.
+	 */
+	private boolean nextVertex(LineReader reader) throws IOException {
+		while (reader.readLine(line) > 0) {
+			if (parser.parse(line.getBytes(), line.getLength())) {
+				return true;
+			}
+			if (!skipMalformedLines) {
+				throw new IllegalArgumentException(
+						"Couldn't get vertex from line " + line + ": "
+								+ parser.getError() + " at byte "
+								+ parser.getErrorPosition());
+			}
+		}
+		return false;
+	}
+
+}
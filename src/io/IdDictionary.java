@@ -0,0 +1,83 @@
+package io;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Maps the dense ids given by {@link IdRenumbering} back to the original ids.
+ * The dictionary file holds the original id of every dense id, one per line in
+ * the order of the dense ids.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class IdDictionary {
+
+	private final int[] originalIds;
+
+	public IdDictionary(int[] originalIds) {
+		this.originalIds = originalIds;
+	}
+
+	public int getOriginalId(int id) {
+		return originalIds[id];
+	}
+
+	public int size() {
+		return originalIds.length;
+	}
+
+	/**
+	 * Reads the dictionary at the given path, or returns null if the path is
+	 * not set.
+	 */
+	public static IdDictionary load(String path, Configuration conf)
+			throws IOException {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		Path file = new Path(path);
+		FileSystem fs = file.getFileSystem(conf);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				fs.open(file), "UTF-8"));
+		IntArrayList ids = new IntArrayList();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				ids.add(Integer.parseInt(line));
+			}
+		} finally {
+			reader.close();
+		}
+		return new IdDictionary(ids.toIntArray());
+	}
+
+	/**
+	 * Writes the original ids of the dense ids 0 to length - 1.
+	 */
+	public static void write(Path file, int[] originalIds, int length,
+			Configuration conf) throws IOException {
+		FileSystem fs = file.getFileSystem(conf);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+				file, true), "UTF-8"), 1 << 20);
+		try {
+			for (int i = 0; i < length; i++) {
+				writer.write(Integer.toString(originalIds[i]));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+}
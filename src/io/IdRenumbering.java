@@ -0,0 +1,262 @@
+package io;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+import core.CommonConstants;
+import core.Transaction;
+import core.TransactionWeights;
+
+/**
+ * Renumbers the items and transactions of an item vertex input into dense
+ * ids. The items are numbered by decreasing support, the ones found in most
+ * itemsets, neighbor lists and messages then take the smallest varints, and
+ * the transaction ids used by the items are compacted into 0 to n - 1 keeping
+ * their order, which packs the tidsets into fewer and denser containers.
+ * Neighbors without a vertex of their own are dropped.
+ *
+ * The output directory gets the renumbered vertices, one part file per input
+ * file, and the item and transaction dictionaries mapping the dense ids back
+ * to the original ones:
+ *
+ * <output>/vertices/part-<n>, <output>/item-dictionary and
+ * <output>/transaction-dictionary
+ *
+ * The weights of weighted transactions are renumbered along with them.
+ *
+ * The input is read twice, the first pass collecting the item supports and
+ * the transaction ids used.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class IdRenumbering {
+
+	public static String VERTICES_DIR = "vertices";
+
+	public static String ITEM_DICTIONARY_FILE = "item-dictionary";
+
+	public static String TRANSACTION_DICTIONARY_FILE = "transaction-dictionary";
+
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private final Configuration conf;
+
+	private final ItemVertexLineParser parser = new ItemVertexLineParser();
+
+	private final Text line = new Text();
+
+	private final boolean skipMalformedLines;
+
+	public IdRenumbering(Configuration conf) {
+		this.conf = conf;
+		this.skipMalformedLines = conf.getBoolean(
+				CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				DEFAULT_SKIP_MALFORMED_LINES);
+	}
+
+	public static void main(String[] args) throws IOException,
+			ParseException {
+		Options options = new Options();
+		options.addOption("i", "input file", true, "Item vertex input");
+		options.addOption("o", "output", true, "Output directory");
+		options.addOption("skipmalformed", false,
+				"Skip malformed input lines instead of failing");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		Configuration conf = new Configuration();
+		conf.setBoolean(CommonConstants.SKIP_MALFORMED_LINES_STRING,
+				cmd.hasOption("skipmalformed"));
+		new IdRenumbering(conf).renumber(new Path(cmd.getOptionValue('i')),
+				new Path(cmd.getOptionValue('o')));
+	}
+
+	/**
+	 * Writes the renumbered vertices of the given input and the dictionaries
+	 * to the output directory.
+	 */
+	public void renumber(Path input, Path outputDir) throws IOException {
+		FileSystem fs = input.getFileSystem(conf);
+		List<Path> files = ItemVertexInputFormat.listVertexFiles(fs, input);
+
+		/**
+		 * First pass, the supports of the items and the transaction ids.
+		 */
+		final Int2IntOpenHashMap supports = new Int2IntOpenHashMap();
+		IntOpenHashSet transactionIds = new IntOpenHashSet();
+		for (Path file : files) {
+			LineReader reader = new LineReader(fs.open(file), conf);
+			try {
+				while (nextVertex(reader)) {
+					supports.put(parser.getId(),
+							parser.getTransactionIdCount());
+					int[] tids = parser.getTransactionIds();
+					for (int i = 0; i < parser.getTransactionIdCount(); i++) {
+						transactionIds.add(tids[i]);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		/**
+		 * Items by decreasing support, the id breaking ties, and the
+		 * transaction ids in increasing order. The dense id of an item or a
+		 * transaction is its position.
+		 */
+		Integer[] ranked = new Integer[supports.size()];
+		int i = 0;
+		for (int item : supports.keySet()) {
+			ranked[i++] = item;
+		}
+		Arrays.sort(ranked, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer item, Integer other) {
+				int supportOrder = Integer.compare(supports.get(other),
+						supports.get(item));
+				return supportOrder != 0 ? supportOrder : item.compareTo(other);
+			}
+		});
+		int[] items = new int[ranked.length];
+		Int2IntOpenHashMap itemIds = new Int2IntOpenHashMap(ranked.length);
+		itemIds.defaultReturnValue(-1);
+		for (i = 0; i < ranked.length; i++) {
+			items[i] = ranked[i];
+			itemIds.put(items[i], i);
+		}
+		int[] transactions = transactionIds.toIntArray();
+		transactionIds = null;
+		Arrays.sort(transactions);
+
+		IdDictionary.write(new Path(outputDir, ITEM_DICTIONARY_FILE), items,
+				items.length, conf);
+		IdDictionary.write(new Path(outputDir, TRANSACTION_DICTIONARY_FILE),
+				transactions, transactions.length, conf);
+		renumberWeights(input, new Path(new Path(outputDir, VERTICES_DIR),
+				TransactionWeights.WEIGHTS_FILE), transactions);
+
+		/**
+		 * Second pass, the renumbered vertices. Renumbering keeps the order
+		 * of the transaction ids, their lists stay sorted.
+		 */
+		IntArrayList neighbors = new IntArrayList();
+		int[] tids = new int[16];
+		StringBuilder vertexLine = new StringBuilder();
+		for (int part = 0; part < files.size(); part++) {
+			LineReader reader = new LineReader(fs.open(files.get(part)), conf);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					fs.create(new Path(new Path(outputDir, VERTICES_DIR),
+							"part-" + part), true), "UTF-8"), 1 << 20);
+			try {
+				while (nextVertex(reader)) {
+					neighbors.clear();
+					int[] neighborIds = parser.getNeighbors();
+					for (int j = 0; j < parser.getNeighborCount(); j++) {
+						int neighbor = itemIds.get(neighborIds[j]);
+						if (neighbor >= 0) {
+							neighbors.add(neighbor);
+						}
+					}
+					int[] sortedNeighbors = neighbors.toIntArray();
+					Arrays.sort(sortedNeighbors);
+
+					int tidCount = parser.getTransactionIdCount();
+					if (tids.length < tidCount) {
+						tids = new int[tidCount];
+					}
+					int[] originalTids = parser.getTransactionIds();
+					for (int j = 0; j < tidCount; j++) {
+						tids[j] = Arrays.binarySearch(transactions,
+								originalTids[j]);
+					}
+
+					vertexLine.setLength(0);
+					BasketGraphBuilder.appendVertexLine(vertexLine,
+							itemIds.get(parser.getId()), sortedNeighbors,
+							tids, tidCount);
+					writer.write(vertexLine.toString());
+				}
+			} finally {
+				reader.close();
+				writer.close();
+			}
+		}
+
+		System.out.println("Renumbered items: " + items.length
+				+ " Transactions: " + transactions.length);
+	}
+
+	/**
+	 * Writes the weights of the input transactions, if any, with the dense
+	 * transaction ids.
+	 */
+	private void renumberWeights(Path input, Path weightsFile,
+			int[] transactions) throws IOException {
+		Path inputWeights = TransactionWeights.find(input, conf);
+		if (inputWeights == null) {
+			return;
+		}
+		TransactionWeights weights = TransactionWeights.load(
+				inputWeights.toString(), conf);
+		List<Transaction> weighted = new ArrayList<Transaction>();
+		for (int i = 0; i < transactions.length; i++) {
+			int weight = weights.getWeight(transactions[i]);
+			if (weight > 1) {
+				weighted.add(new Transaction(i, weight));
+			}
+		}
+		FileSystem fs = weightsFile.getFileSystem(conf);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(fs.create(
+				weightsFile, true), "UTF-8"), 1 << 20);
+		try {
+			TransactionWeights.write(writer, weighted);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Parses the next well formed line of the reader.
+	 *
+	 * @return false at the end of the input.
+	 */
+	private boolean nextVertex(LineReader reader) throws IOException {
+		while (reader.readLine(line) > 0) {
+			if (parser.parse(line.getBytes(), line.getLength())) {
+				return true;
+			}
+			if (!skipMalformedLines) {
+				throw new IllegalArgumentException(
+						"Couldn't get vertex from line " + line + ": "
+								+ parser.getError() + " at byte "
+								+ parser.getErrorPosition());
+			}
+		}
+		return false;
+	}
+
+}
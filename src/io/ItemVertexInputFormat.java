@@ -1,24 +1,28 @@
 package io;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
-import org.apache.giraph.edge.Edge;
 import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.edge.OutEdges;
+import org.apache.giraph.edge.ReusableEdge;
+import org.apache.giraph.edge.ReuseObjectsOutEdges;
 import org.apache.giraph.graph.Vertex;
 import org.apache.giraph.io.formats.TextVertexInputFormat;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.json.JSONArray;
-import org.json.JSONException;
-
-import com.google.common.collect.Lists;
 
+import core.CommonConstants;
 import core.ItemVertexValue;
-import core.Transaction;
 
 /**
  * 
@@ -29,83 +33,142 @@ import core.Transaction;
 public class ItemVertexInputFormat extends
 		TextVertexInputFormat<IntWritable, ItemVertexValue, NullWritable> {
 
+	private static boolean DEFAULT_SKIP_MALFORMED_LINES = false;
+
+	private static String MALFORMED_LINES_COUNTER = "Malformed vertex lines";
+
+	/**
+	 * Orders paths as Path.compareTo does, Path being a raw Comparable.
+	 */
+	private static Comparator<Path> PATH_ORDER = new Comparator<Path>() {
+		@Override
+		public int compare(Path path, Path other) {
+			return path.toUri().compareTo(other.toUri());
+		}
+	};
+
+	/**
+	 * Lists the files of the given input, the input itself if it is a file.
+	 * Files whose names start with an underscore or a dot are left out, as by
+	 * the Hadoop input formats.
+	 */
+	public static List<Path> listVertexFiles(FileSystem fs, Path input)
+			throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		if (!fs.getFileStatus(input).isDirectory()) {
+			files.add(input);
+			return files;
+		}
+		for (FileStatus status : fs.listStatus(input)) {
+			String name = status.getPath().getName();
+			if (status.isFile() && !name.startsWith("_")
+					&& !name.startsWith(".")) {
+				files.add(status.getPath());
+			}
+		}
+		Collections.sort(files, PATH_ORDER);
+		return files;
+	}
+
 	@Override
 	public TextVertexReader createVertexReader(InputSplit split,
 			TaskAttemptContext context) {
-		return new JsonItemVertexReader();
+		return new ItemVertexReader();
 	}
 
 	/**
-	 * VertexReader use for the Frequent Pattern Mining GAS Algorithm. The files
-	 * should be in the following JSON format: JSONArray(<vertex id>,
-	 * 
+	 * VertexReader used for the Frequent Pattern Mining GAS Algorithm. Lines
+	 * are in the following JSON format: [<vertex id>, [<neighbor ids>],
+	 * [<transaction ids>]]
 	 * 
 	 * Example line: [1, [2,3,4], [1,3,6]]
 	 * 
 	 * vertex with id = 1 has 2, 3 and 4 as neighbor vertices and is present in
-	 * transactions with id's 1m 3 and 6.
+	 * transactions with id's 1, 3 and 6.
 	 * 
-	 * index 0 - vertex id which is integer. index 1 - neighbor vertex id's
-	 * which is a JSONArray. index 2 - transaction id's which is a JSONArray.
+	 * Lines are parsed from the bytes of the Text by an
+	 * {@link ItemVertexLineParser} which is reused across lines. A malformed
+	 * line fails the job unless skip_malformed_lines is set, in which case it
+	 * is counted and skipped.
 	 */
-	class JsonItemVertexReader
-			extends
-			TextVertexReaderFromEachLineProcessedHandlingExceptions<JSONArray, JSONException> {
+	class ItemVertexReader extends TextVertexReader {
 
-		@Override
-		protected JSONArray preprocessLine(Text line) throws JSONException {
-			return new JSONArray(line.toString());
-		}
+		private final ItemVertexLineParser parser = new ItemVertexLineParser();
+
+		private boolean skipMalformedLines;
+
+		private boolean reuseEdges;
+
+		private ReusableEdge<IntWritable, NullWritable> reusableEdge;
+
+		private Vertex<IntWritable, ItemVertexValue, NullWritable> vertex;
 
 		@Override
-		protected IntWritable getId(JSONArray jsonVertex) throws JSONException,
-				IOException {
-			System.out.println("Reading Vertex Id: " + jsonVertex.getInt(0));
-			return new IntWritable(jsonVertex.getInt(0));
+		public void initialize(InputSplit inputSplit,
+				TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			super.initialize(inputSplit, context);
+			this.skipMalformedLines = this.getConf().getBoolean(
+					CommonConstants.SKIP_MALFORMED_LINES_STRING,
+					DEFAULT_SKIP_MALFORMED_LINES);
+			/**
+			 * Out edges which copy the added edge into their own storage let
+			 * a single edge object be reused for every neighbor.
+			 */
+			this.reuseEdges = ReuseObjectsOutEdges.class.isAssignableFrom(this
+					.getConf().getOutEdgesClass());
+			this.reusableEdge = this.getConf().createReusableEdge();
 		}
 
 		@Override
-		protected ItemVertexValue getValue(JSONArray jsonVertex)
-				throws JSONException, IOException {
-			ItemVertexValue value = new ItemVertexValue();
-			JSONArray jsonTransactionArray = jsonVertex.getJSONArray(2);
-			for (int i = 0; i < jsonTransactionArray.length(); i++) {
-				Transaction currentTransaction = new Transaction(
-						jsonTransactionArray.getInt(i));
-				value.addTransaction(currentTransaction);
+		public boolean nextVertex() throws IOException, InterruptedException {
+			while (getRecordReader().nextKeyValue()) {
+				Text line = getRecordReader().getCurrentValue();
+				if (parser.parse(line.getBytes(), line.getLength())) {
+					vertex = createVertex();
+					return true;
+				}
+				if (!skipMalformedLines) {
+					throw new IllegalArgumentException(
+							"Couldn't get vertex from line " + line + ": "
+									+ parser.getError() + " at byte "
+									+ parser.getErrorPosition());
+				}
+				getContext().getCounter(CommonConstants.FP_MINING_COUNTER_GROUP,
+						MALFORMED_LINES_COUNTER).increment(1);
 			}
-			System.out.println("Reading Vertex Value: " + value.toString());
-			return value;
+			vertex = null;
+			return false;
 		}
 
 		@Override
-		protected Iterable<Edge<IntWritable, NullWritable>> getEdges(
-				JSONArray jsonVertex) throws JSONException, IOException {
-
-			JSONArray jsonEdgeArray = jsonVertex.getJSONArray(1);
-
-			/* get the edges */
-			List<Edge<IntWritable, NullWritable>> edges = Lists
-					.newArrayListWithCapacity(jsonEdgeArray.length());
-
-			NullWritable nullValue = NullWritable.get();
-
-			for (int i = 0; i < jsonEdgeArray.length(); ++i) {
-				IntWritable targetId;
-				targetId = new IntWritable(jsonEdgeArray.getInt(i));
-				edges.add(EdgeFactory.create(targetId, nullValue));
-
-			}
-			System.out.println("Edges: " + edges.toString());
-			return edges;
+		public Vertex<IntWritable, ItemVertexValue, NullWritable> getCurrentVertex()
+				throws IOException, InterruptedException {
+			return vertex;
 		}
 
-		@Override
-		protected Vertex<IntWritable, ItemVertexValue, NullWritable> handleException(
-				Text line, JSONArray jsonVertex, JSONException e) {
+		private Vertex<IntWritable, ItemVertexValue, NullWritable> createVertex() {
+			ItemVertexValue value = new ItemVertexValue();
+			value.setTransactionIdList(parser.toTidSet());
+
+			int[] neighbors = parser.getNeighbors();
+			int neighborCount = parser.getNeighborCount();
+			OutEdges<IntWritable, NullWritable> edges = this.getConf()
+					.createAndInitializeOutEdges(neighborCount);
+			for (int i = 0; i < neighborCount; i++) {
+				if (reuseEdges) {
+					reusableEdge.getTargetVertexId().set(neighbors[i]);
+					edges.add(reusableEdge);
+				} else {
+					edges.add(EdgeFactory.create(
+							new IntWritable(neighbors[i]), NullWritable.get()));
+				}
+			}
 
-			throw new IllegalArgumentException("Couldn't get vertex from line "
-					+ line, e);
+			Vertex<IntWritable, ItemVertexValue, NullWritable> vertex = this
+					.getConf().createVertex();
+			vertex.initialize(new IntWritable(parser.getId()), value, edges);
+			return vertex;
 		}
 
 	}
@@ -0,0 +1,295 @@
+package io;
+
+import java.util.Arrays;
+
+import core.TidSet;
+
+/**
+ * Parses the item vertex lines read by {@link ItemVertexInputFormat} directly
+ * from their UTF-8 bytes. A line has the form
+ *
+ * [<vertex id>, [<neighbor ids>], [<transaction ids>]]
+ *
+ * with optional whitespace around the tokens, e.g. [1, [2,3,4], [1,3,6]].
+ *
+ * The ids of the last parsed line are kept in primitive arrays which are
+ * reused for the next line, so a parser should be created once per reader
+ * and the arrays must not be held on to across lines. A malformed line does
+ * not throw, {@link #parse} returns false and the position and reason of the
+ * error can be queried.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ItemVertexLineParser {
+
+	private byte[] bytes;
+
+	private int length;
+
+	private int position;
+
+	private String error;
+
+	private int errorPosition;
+
+	private int id;
+
+	private int[] neighbors = new int[16];
+
+	private int neighborCount;
+
+	private int[] transactionIds = new int[16];
+
+	private int transactionIdCount;
+
+	/**
+	 * Value of the last integer read.
+	 */
+	private int lastValue;
+
+	/**
+	 * Parses the first length bytes of the given array.
+	 *
+	 * @return true if the bytes held a well formed line.
+	 */
+	public boolean parse(byte[] bytes, int length) {
+		this.bytes = bytes;
+		this.length = length;
+		this.position = 0;
+		this.error = null;
+		this.errorPosition = -1;
+		this.neighborCount = 0;
+		this.transactionIdCount = 0;
+
+		if (!expect('[')) {
+			return false;
+		}
+		skipWhitespace();
+		if (!readInt()) {
+			return false;
+		}
+		this.id = lastValue;
+		if (!expect(',') || !readNeighbors() || !expect(',')
+				|| !readTransactionIds() || !expect(']')) {
+			return false;
+		}
+		skipWhitespace();
+		if (position != length) {
+			return fail("unexpected trailing characters");
+		}
+		sortTransactionIds();
+		return true;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the neighbor ids of the last parsed line, only the first
+	 * {@link #getNeighborCount()} entries are valid.
+	 */
+	public int[] getNeighbors() {
+		return neighbors;
+	}
+
+	public int getNeighborCount() {
+		return neighborCount;
+	}
+
+	/**
+	 * Returns the transaction ids of the last parsed line in increasing order
+	 * without duplicates, only the first {@link #getTransactionIdCount()}
+	 * entries are valid.
+	 */
+	public int[] getTransactionIds() {
+		return transactionIds;
+	}
+
+	public int getTransactionIdCount() {
+		return transactionIdCount;
+	}
+
+	/**
+	 * Builds the transaction id set of the last parsed line.
+	 */
+	public TidSet toTidSet() {
+		TidSet tidSet = TidSet.fromSorted(transactionIds, transactionIdCount);
+		tidSet.runOptimize();
+		return tidSet;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the byte offset at which the last line was found to be
+	 * malformed, or -1 if it was well formed.
+	 */
+	public int getErrorPosition() {
+		return errorPosition;
+	}
+
+	private boolean readNeighbors() {
+		if (!expect('[')) {
+			return false;
+		}
+		skipWhitespace();
+		if (peek() == ']') {
+			position++;
+			return true;
+		}
+		while (true) {
+			skipWhitespace();
+			if (!readInt()) {
+				return false;
+			}
+			if (neighborCount == neighbors.length) {
+				neighbors = Arrays.copyOf(neighbors, neighborCount * 2);
+			}
+			neighbors[neighborCount++] = lastValue;
+			skipWhitespace();
+			int next = peek();
+			position++;
+			if (next == ']') {
+				return true;
+			}
+			if (next != ',') {
+				position--;
+				return fail("expected ',' or ']'");
+			}
+		}
+	}
+
+	private boolean readTransactionIds() {
+		if (!expect('[')) {
+			return false;
+		}
+		skipWhitespace();
+		if (peek() == ']') {
+			position++;
+			return true;
+		}
+		while (true) {
+			skipWhitespace();
+			int start = position;
+			if (!readInt()) {
+				return false;
+			}
+			if (lastValue < 0) {
+				position = start;
+				return fail("negative transaction id");
+			}
+			if (transactionIdCount == transactionIds.length) {
+				transactionIds = Arrays.copyOf(transactionIds,
+						transactionIdCount * 2);
+			}
+			transactionIds[transactionIdCount++] = lastValue;
+			skipWhitespace();
+			int next = peek();
+			position++;
+			if (next == ']') {
+				return true;
+			}
+			if (next != ',') {
+				position--;
+				return fail("expected ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * Transaction ids are normally written in increasing order, they are only
+	 * sorted and deduplicated when they are not.
+	 */
+	private void sortTransactionIds() {
+		boolean sorted = true;
+		for (int i = 1; i < transactionIdCount; i++) {
+			if (transactionIds[i - 1] >= transactionIds[i]) {
+				sorted = false;
+				break;
+			}
+		}
+		if (sorted) {
+			return;
+		}
+		Arrays.sort(transactionIds, 0, transactionIdCount);
+		int distinct = 0;
+		for (int i = 0; i < transactionIdCount; i++) {
+			if (distinct == 0 || transactionIds[distinct - 1] != transactionIds[i]) {
+				transactionIds[distinct++] = transactionIds[i];
+			}
+		}
+		transactionIdCount = distinct;
+	}
+
+	/**
+	 * Reads a decimal int at the current position into lastValue.
+	 */
+	private boolean readInt() {
+		boolean negative = false;
+		if (peek() == '-') {
+			negative = true;
+			position++;
+		}
+		int start = position;
+		long value = 0;
+		while (position < length) {
+			int digit = bytes[position] - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				return fail("integer out of range");
+			}
+			position++;
+		}
+		if (position == start) {
+			return fail("expected an integer");
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			return fail("integer out of range");
+		}
+		lastValue = (int) value;
+		return true;
+	}
+
+	private boolean expect(char expected) {
+		skipWhitespace();
+		if (peek() != expected) {
+			return fail("expected '" + expected + "'");
+		}
+		position++;
+		return true;
+	}
+
+	private void skipWhitespace() {
+		while (position < length) {
+			byte current = bytes[position];
+			if (current != ' ' && current != '\t' && current != '\r'
+					&& current != '\n') {
+				return;
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Returns the byte at the current position, or -1 at the end of the line.
+	 */
+	private int peek() {
+		return position < length ? bytes[position] : -1;
+	}
+
+	private boolean fail(String reason) {
+		this.error = reason;
+		this.errorPosition = position;
+		return false;
+	}
+}
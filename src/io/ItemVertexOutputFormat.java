@@ -0,0 +1,66 @@
+package io;
+
+import java.io.IOException;
+
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.io.formats.TextVertexOutputFormat;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import core.CommonConstants;
+import core.ItemVertexValue;
+
+/**
+ * Writes a vertex as its id, a tab and its value, as IdWithValueTextOutputFormat
+ * does. When the input was renumbered by {@link IdRenumbering} the item and
+ * transaction ids are translated back to the original ones with the
+ * dictionaries set in the configuration.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ItemVertexOutputFormat extends
+		TextVertexOutputFormat<IntWritable, ItemVertexValue, NullWritable> {
+
+	@Override
+	public TextVertexWriter createVertexWriter(TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		return new ItemVertexWriter();
+	}
+
+	class ItemVertexWriter extends TextVertexWriterToEachLine {
+
+		private IdDictionary itemDictionary;
+
+		private IdDictionary transactionDictionary;
+
+		@Override
+		public void initialize(TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			super.initialize(context);
+			this.itemDictionary = IdDictionary.load(
+					getConf().get(CommonConstants.ITEM_DICTIONARY_STRING),
+					getConf());
+			this.transactionDictionary = IdDictionary.load(getConf().get(
+					CommonConstants.TRANSACTION_DICTIONARY_STRING), getConf());
+		}
+
+		@Override
+		protected Text convertVertexToLine(
+				Vertex<IntWritable, ItemVertexValue, NullWritable> vertex)
+				throws IOException {
+			int id = vertex.getId().get();
+			if (itemDictionary != null) {
+				id = itemDictionary.getOriginalId(id);
+			}
+			return new Text(id
+					+ "\t"
+					+ vertex.getValue().toString(itemDictionary,
+							transactionDictionary));
+		}
+
+	}
+
+}
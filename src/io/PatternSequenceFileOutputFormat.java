@@ -0,0 +1,130 @@
+package io;
+
+import java.io.IOException;
+
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.io.VertexOutputFormat;
+import org.apache.giraph.io.VertexWriter;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import core.CommonConstants;
+import core.FrequentItemset;
+import core.ItemVertexValue;
+
+/**
+ * Writes the frequent itemsets kept by the vertices, as
+ * {@link PatternTextOutputFormat} does, to block compressed sequence files
+ * with a {@link FrequentItemset} key and no value per itemset. The items are
+ * delta coded within a record and the records compressed a block at a time
+ * with the codec of the job output, the default codec if none is set.
+ *
+ * A sync marker starts every block, so a reader such as
+ * SequenceFile.Reader or SequenceFileInputFormat can scan the itemsets, split
+ * the files, or seek to any position and resume from the next block.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class PatternSequenceFileOutputFormat extends
+		VertexOutputFormat<IntWritable, ItemVertexValue, NullWritable> {
+
+	private final FileOutputFormat<FrequentItemset, NullWritable> sequenceFileOutputFormat = new FileOutputFormat<FrequentItemset, NullWritable>() {
+		@Override
+		public RecordWriter<FrequentItemset, NullWritable> getRecordWriter(
+				TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			Path file = getDefaultWorkFile(context, "");
+			CompressionCodec codec = ReflectionUtils.newInstance(
+					getOutputCompressorClass(context, DefaultCodec.class),
+					context.getConfiguration());
+			final SequenceFile.Writer writer = SequenceFile.createWriter(
+					context.getConfiguration(), SequenceFile.Writer.file(file),
+					SequenceFile.Writer.keyClass(FrequentItemset.class),
+					SequenceFile.Writer.valueClass(NullWritable.class),
+					SequenceFile.Writer.compression(
+							SequenceFile.CompressionType.BLOCK, codec));
+			return new RecordWriter<FrequentItemset, NullWritable>() {
+				@Override
+				public void write(FrequentItemset itemset, NullWritable value)
+						throws IOException {
+					writer.append(itemset, value);
+				}
+
+				@Override
+				public void close(TaskAttemptContext context)
+						throws IOException {
+					writer.close();
+				}
+			};
+		}
+	};
+
+	@Override
+	public VertexWriter<IntWritable, ItemVertexValue, NullWritable> createVertexWriter(
+			TaskAttemptContext context) throws IOException,
+			InterruptedException {
+		return new PatternSequenceFileWriter();
+	}
+
+	@Override
+	public void checkOutputSpecs(JobContext context) throws IOException,
+			InterruptedException {
+		sequenceFileOutputFormat.checkOutputSpecs(context);
+	}
+
+	@Override
+	public OutputCommitter getOutputCommitter(TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		return sequenceFileOutputFormat.getOutputCommitter(context);
+	}
+
+	class PatternSequenceFileWriter extends
+			VertexWriter<IntWritable, ItemVertexValue, NullWritable> {
+
+		private RecordWriter<FrequentItemset, NullWritable> recordWriter;
+
+		private IdDictionary itemDictionary;
+
+		@Override
+		public void initialize(TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			this.recordWriter = sequenceFileOutputFormat
+					.getRecordWriter(context);
+			this.itemDictionary = IdDictionary.load(
+					getConf().get(CommonConstants.ITEM_DICTIONARY_STRING),
+					getConf());
+		}
+
+		@Override
+		public void writeVertex(
+				Vertex<IntWritable, ItemVertexValue, NullWritable> vertex)
+				throws IOException, InterruptedException {
+			for (FrequentItemset itemset : vertex.getValue()
+					.getFrequentPatters()) {
+				if (itemDictionary != null) {
+					itemset = itemset.translate(itemDictionary);
+				}
+				recordWriter.write(itemset, NullWritable.get());
+			}
+		}
+
+		@Override
+		public void close(TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			recordWriter.close(context);
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package io;
+
+import java.io.IOException;
+
+import org.apache.giraph.graph.Vertex;
+import org.apache.giraph.io.formats.TextVertexOutputFormat;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import core.CommonConstants;
+import core.FrequentItemset;
+import core.ItemVertexValue;
+
+/**
+ * Writes the frequent itemsets kept by the vertices instead of the vertices,
+ * one line per itemset in the format of the pattern files: the sorted item
+ * ids separated by spaces, a tab and the support. The transaction lists are
+ * left out. Items of an input renumbered by {@link IdRenumbering} are written
+ * with their original ids.
+ *
+ * The itemsets written out by the pattern sink of the workers are not kept
+ * by the vertices, the output then holds none.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class PatternTextOutputFormat extends
+		TextVertexOutputFormat<IntWritable, ItemVertexValue, NullWritable> {
+
+	@Override
+	public TextVertexWriter createVertexWriter(TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		return new PatternTextWriter();
+	}
+
+	class PatternTextWriter extends TextVertexWriter {
+
+		private IdDictionary itemDictionary;
+
+		private final Text line = new Text();
+
+		@Override
+		public void initialize(TaskAttemptContext context) throws IOException,
+				InterruptedException {
+			super.initialize(context);
+			this.itemDictionary = IdDictionary.load(
+					getConf().get(CommonConstants.ITEM_DICTIONARY_STRING),
+					getConf());
+		}
+
+		@Override
+		public void writeVertex(
+				Vertex<IntWritable, ItemVertexValue, NullWritable> vertex)
+				throws IOException, InterruptedException {
+			for (FrequentItemset itemset : vertex.getValue()
+					.getFrequentPatters()) {
+				if (itemDictionary != null) {
+					itemset = itemset.translate(itemDictionary);
+				}
+				String patternLine = itemset.toPatternLine();
+				line.set(patternLine.substring(0, patternLine.length() - 1));
+				getRecordWriter().write(line, null);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,372 @@
+package io;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Generates synthetic market basket data in the style of the IBM Quest
+ * generator (Agrawal and Srikant, Fast Algorithms for Mining Association
+ * Rules). A pool of potentially frequent itemsets, the patterns, is built
+ * first, each pattern sharing part of its items with the previous one to
+ * correlate them. Every transaction is then filled with patterns picked by
+ * their weights, each pattern losing items according to its corruption
+ * level. The items of the patterns are drawn from a Zipf distribution so
+ * that a few items are much more frequent than the others.
+ *
+ * The baskets are written to baskets.txt in the output directory, one
+ * transaction per line with its item ids separated by spaces, and turned into
+ * the input of {@link ItemVertexInputFormat} in its vertices directory by the
+ * {@link BasketGraphBuilder}. The same options and seed always generate the
+ * same data.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class QuestDataGenerator {
+
+	private static int DEFAULT_TRANSACTIONS = 100000;
+
+	private static double DEFAULT_AVERAGE_LENGTH = 10;
+
+	private static int DEFAULT_ITEMS = 1000;
+
+	private static int DEFAULT_PATTERNS = 2000;
+
+	private static double DEFAULT_AVERAGE_PATTERN_LENGTH = 4;
+
+	private static double DEFAULT_CORRELATION = 0.5;
+
+	private static double DEFAULT_ZIPF_EXPONENT = 0;
+
+	private static double DEFAULT_CORRUPTION = 0.5;
+
+	private static long DEFAULT_SEED = 1;
+
+	private final int transactions;
+
+	private final double averageLength;
+
+	private final int items;
+
+	private final int patternCount;
+
+	private final double averagePatternLength;
+
+	private final double correlation;
+
+	private final double zipfExponent;
+
+	private final double corruption;
+
+	private final Random random;
+
+	/**
+	 * Cumulative probabilities of the item ranks, the item of a rank is given
+	 * by rankedItems.
+	 */
+	private double[] itemDistribution;
+
+	private int[] rankedItems;
+
+	private int[][] patterns;
+
+	private double[] patternDistribution;
+
+	private double[] corruptionLevels;
+
+	public QuestDataGenerator(int transactions, double averageLength,
+			int items, int patternCount, double averagePatternLength,
+			double correlation, double zipfExponent, double corruption,
+			long seed) {
+		this.transactions = transactions;
+		this.averageLength = averageLength;
+		this.items = items;
+		this.patternCount = patternCount;
+		this.averagePatternLength = averagePatternLength;
+		this.correlation = correlation;
+		this.zipfExponent = zipfExponent;
+		this.corruption = corruption;
+		this.random = new Random(seed);
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException, ExecutionException, ParseException {
+
+		Options options = new Options();
+		options.addOption("o", "output", true, "Output directory");
+		options.addOption("transactions", true, "Number of transactions");
+		options.addOption("length", true, "Average number of items per transaction");
+		options.addOption("items", true, "Number of distinct items");
+		options.addOption("patterns", true,
+				"Number of potentially frequent itemsets");
+		options.addOption("patternlength", true,
+				"Average number of items per potentially frequent itemset");
+		options.addOption("correlation", true,
+				"Average fraction of the items a pattern shares with the previous one");
+		options.addOption("zipf", true,
+				"Zipf exponent of the item distribution, 0 for uniform");
+		options.addOption("corruption", true,
+				"Average fraction of a pattern dropped when it is added to a transaction");
+		options.addOption("seed", true, "Random seed");
+		options.addOption("minsup", true,
+				"Minimum support of the items kept in the vertices");
+		options.addOption("threads", true,
+				"Number of threads building the vertices");
+
+		CommandLineParser parser = new PosixParser();
+		CommandLine cmd = parser.parse(options, args);
+
+		QuestDataGenerator generator = new QuestDataGenerator(
+				cmd.hasOption("transactions") ? Integer.parseInt(cmd
+						.getOptionValue("transactions"))
+						: DEFAULT_TRANSACTIONS,
+				cmd.hasOption("length") ? Double.parseDouble(cmd
+						.getOptionValue("length")) : DEFAULT_AVERAGE_LENGTH,
+				cmd.hasOption("items") ? Integer.parseInt(cmd
+						.getOptionValue("items")) : DEFAULT_ITEMS,
+				cmd.hasOption("patterns") ? Integer.parseInt(cmd
+						.getOptionValue("patterns")) : DEFAULT_PATTERNS,
+				cmd.hasOption("patternlength") ? Double.parseDouble(cmd
+						.getOptionValue("patternlength"))
+						: DEFAULT_AVERAGE_PATTERN_LENGTH,
+				cmd.hasOption("correlation") ? Double.parseDouble(cmd
+						.getOptionValue("correlation")) : DEFAULT_CORRELATION,
+				cmd.hasOption("zipf") ? Double.parseDouble(cmd
+						.getOptionValue("zipf")) : DEFAULT_ZIPF_EXPONENT,
+				cmd.hasOption("corruption") ? Double.parseDouble(cmd
+						.getOptionValue("corruption")) : DEFAULT_CORRUPTION,
+				cmd.hasOption("seed") ? Long.parseLong(cmd
+						.getOptionValue("seed")) : DEFAULT_SEED);
+
+		int minSupport = cmd.hasOption("minsup") ? Integer.parseInt(cmd
+				.getOptionValue("minsup")) : 1;
+		int threads = cmd.hasOption("threads") ? Integer.parseInt(cmd
+				.getOptionValue("threads")) : Runtime.getRuntime()
+				.availableProcessors();
+
+		generator.generate(new File(cmd.getOptionValue('o')), minSupport,
+				threads);
+	}
+
+	/**
+	 * Writes the baskets and the item vertices built from them to the given
+	 * directory.
+	 */
+	public void generate(File outputDir, int minSupport, int threads)
+			throws IOException, InterruptedException, ExecutionException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Cannot create output directory "
+					+ outputDir);
+		}
+		File baskets = new File(outputDir, "baskets.txt");
+		writeBaskets(baskets);
+		new BasketGraphBuilder(baskets, new File(outputDir, "vertices"),
+				threads, 1, minSupport, 64L * 1024L * 1024L).build();
+	}
+
+	public void writeBaskets(File baskets) throws IOException {
+		buildItemDistribution();
+		buildPatterns();
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(baskets), "UTF-8"), 1 << 16);
+		try {
+			IntOpenHashSet basket = new IntOpenHashSet();
+			StringBuilder line = new StringBuilder();
+			/**
+			 * A pattern which did not fit in a transaction starts the next
+			 * one.
+			 */
+			int[] carried = null;
+			long totalItems = 0;
+			for (int tid = 0; tid < transactions; tid++) {
+				int length = Math.max(1, poisson(averageLength));
+				basket.clear();
+				if (carried != null) {
+					addAll(basket, carried);
+					carried = null;
+				}
+				/**
+				 * The number of patterns tried is bounded in case the
+				 * patterns hold fewer distinct items than the length.
+				 */
+				for (int attempt = 0; basket.size() < length
+						&& attempt < 4 * length + 16; attempt++) {
+					int pattern = pick(patternDistribution);
+					int[] pickedItems = corrupt(patterns[pattern],
+							corruptionLevels[pattern]);
+					/**
+					 * A pattern overflowing the transaction is added anyway
+					 * half of the times, it is kept for the next
+					 * transaction otherwise.
+					 */
+					if (!basket.isEmpty()
+							&& basket.size() + pickedItems.length > length
+							&& random.nextBoolean()) {
+						carried = pickedItems;
+						break;
+					}
+					addAll(basket, pickedItems);
+				}
+				int[] sortedItems = basket.toIntArray();
+				Arrays.sort(sortedItems);
+				line.setLength(0);
+				for (int i = 0; i < sortedItems.length; i++) {
+					if (i > 0) {
+						line.append(' ');
+					}
+					line.append(sortedItems[i]);
+				}
+				writer.write(line.append('\n').toString());
+				totalItems += sortedItems.length;
+			}
+			System.out.println("Transactions: " + transactions
+					+ ", average length: " + (double) totalItems
+					/ Math.max(1, transactions));
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Item ranks follow a Zipf distribution, the items are assigned to the
+	 * ranks at random so that the frequent items do not have the lowest ids.
+	 */
+	private void buildItemDistribution() {
+		itemDistribution = new double[items];
+		double total = 0;
+		for (int rank = 0; rank < items; rank++) {
+			total += 1.0 / Math.pow(rank + 1, zipfExponent);
+			itemDistribution[rank] = total;
+		}
+		for (int rank = 0; rank < items; rank++) {
+			itemDistribution[rank] /= total;
+		}
+		rankedItems = new int[items];
+		for (int i = 0; i < items; i++) {
+			rankedItems[i] = i;
+		}
+		for (int i = items - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = rankedItems[i];
+			rankedItems[i] = rankedItems[j];
+			rankedItems[j] = swap;
+		}
+	}
+
+	/**
+	 * Builds the potentially frequent itemsets along with their weights and
+	 * corruption levels.
+	 */
+	private void buildPatterns() {
+		patterns = new int[patternCount][];
+		patternDistribution = new double[patternCount];
+		corruptionLevels = new double[patternCount];
+		double totalWeight = 0;
+		int[] previous = new int[0];
+		for (int p = 0; p < patternCount; p++) {
+			int length = Math.min(items,
+					Math.max(1, poisson(averagePatternLength)));
+			IntOpenHashSet pattern = new IntOpenHashSet();
+
+			/**
+			 * The fraction of the items taken from the previous pattern is
+			 * exponentially distributed around the correlation.
+			 */
+			double shared = Math.min(1.0, exponential(correlation));
+			int sharedCount = Math.min(previous.length,
+					(int) Math.round(shared * length));
+			List<Integer> previousItems = new ArrayList<Integer>();
+			for (int item : previous) {
+				previousItems.add(item);
+			}
+			for (int i = 0; i < sharedCount; i++) {
+				pattern.add(previousItems.remove(random.nextInt(previousItems
+						.size())));
+			}
+			while (pattern.size() < length) {
+				pattern.add(rankedItems[pick(itemDistribution)]);
+			}
+
+			patterns[p] = pattern.toIntArray();
+			previous = patterns[p];
+			totalWeight += exponential(1.0);
+			patternDistribution[p] = totalWeight;
+			corruptionLevels[p] = Math.min(1.0,
+					Math.max(0.0, corruption + 0.1 * random.nextGaussian()));
+		}
+		for (int p = 0; p < patternCount; p++) {
+			patternDistribution[p] /= totalWeight;
+		}
+	}
+
+	/**
+	 * Drops items from the pattern as long as a uniform draw stays below its
+	 * corruption level.
+	 */
+	private int[] corrupt(int[] pattern, double corruptionLevel) {
+		IntArrayList kept = new IntArrayList(pattern);
+		while (kept.size() > 1 && random.nextDouble() < corruptionLevel) {
+			kept.removeInt(random.nextInt(kept.size()));
+		}
+		return kept.toIntArray();
+	}
+
+	private static void addAll(IntOpenHashSet basket, int[] items) {
+		for (int item : items) {
+			basket.add(item);
+		}
+	}
+
+	/**
+	 * Returns the index of the first cumulative probability above a uniform
+	 * draw.
+	 */
+	private int pick(double[] distribution) {
+		int index = Arrays.binarySearch(distribution, random.nextDouble());
+		index = index < 0 ? -index - 1 : index;
+		return Math.min(index, distribution.length - 1);
+	}
+
+	private int poisson(double mean) {
+		/**
+		 * The product of uniform draws is slow and loses precision for large
+		 * means, a normal approximation is used instead.
+		 */
+		if (mean > 30) {
+			return (int) Math.max(0,
+					Math.round(mean + Math.sqrt(mean) * random.nextGaussian()));
+		}
+		double limit = Math.exp(-mean);
+		double product = random.nextDouble();
+		int count = 0;
+		while (product > limit) {
+			product *= random.nextDouble();
+			count++;
+		}
+		return count;
+	}
+
+	private double exponential(double mean) {
+		return -mean * Math.log(1 - random.nextDouble());
+	}
+
+}
@@ -0,0 +1,154 @@
+package core;
+
+import static core.ItemsAndTransactionsPairTest.items;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Round trips of {@link FrequentPatternMessage}.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class FrequentPatternMessageTest {
+
+	private static FrequentPatternMessage message(
+			ItemsAndTransactionsPair... pairs) {
+		FrequentPatternMessage message = new FrequentPatternMessage();
+		for (ItemsAndTransactionsPair pair : pairs) {
+			message.addItemAndTransactionPair(pair);
+		}
+		return message;
+	}
+
+	private static FrequentPatternMessage roundTrip(
+			FrequentPatternMessage message, FrequentPatternMessage into)
+			throws IOException {
+		byte[] bytes = RoundTrip.write(message);
+		assertEquals(message.serializedSize(), bytes.length);
+		FrequentPatternMessage read = RoundTrip.read(bytes, into);
+		assertEquals(message.getItemsAndTxns(), read.getItemsAndTxns());
+		return read;
+	}
+
+	@Test
+	public void emptyMessage() throws IOException {
+		roundTrip(new FrequentPatternMessage(), new FrequentPatternMessage());
+	}
+
+	@Test
+	public void pairsOfEveryKind() throws IOException {
+		roundTrip(message(
+				new ItemsAndTransactionsPair(items(1, 2), TidSet.of(1, 2, 3)),
+				ItemsAndTransactionsPair.createDiffsetPair(items(1, 3), 3,
+						TidSet.of(2), 2),
+				ItemsAndTransactionsPair.createWeightedPair(items(1, 4),
+						TidSet.of(5), 9),
+				ItemsAndTransactionsPair.createFeedbackPair(items(1, 5), 5)),
+				new FrequentPatternMessage());
+	}
+
+	@Test
+	public void payloadOver64KB() throws IOException {
+		FrequentPatternMessage message = message(
+				new ItemsAndTransactionsPair(items(1, 2), TidSetTest
+						.largeSet()), new ItemsAndTransactionsPair(items(1, 3),
+						TidSetTest.mixedContainers()));
+		assertTrue(message.serializedSize() > 1 << 16);
+		roundTrip(message, new FrequentPatternMessage());
+	}
+
+	/**
+	 * Reads messages of fewer and more pairs into the same object, whose
+	 * pairs are filled again.
+	 */
+	@Test
+	public void readIntoFilledMessage() throws IOException {
+		FrequentPatternMessage into = roundTrip(message(
+				new ItemsAndTransactionsPair(items(1, 2), TidSetTest
+						.mixedContainers()), new ItemsAndTransactionsPair(
+						items(1, 3), TidSet.of(4)),
+				new ItemsAndTransactionsPair(items(1, 4), TidSet.of(6))),
+				new FrequentPatternMessage());
+		into = roundTrip(message(new ItemsAndTransactionsPair(items(2, 3),
+				TidSet.of(8))), into);
+		into = roundTrip(message(
+				ItemsAndTransactionsPair.createFeedbackPair(items(2, 5), 5),
+				new ItemsAndTransactionsPair(items(2, 6), TidSet.of(1, 9))),
+				into);
+		roundTrip(new FrequentPatternMessage(), into);
+	}
+
+	/**
+	 * Reads a message of a few small pairs into one read from a message of
+	 * many large pairs of every kind, then the large one again. The spare
+	 * pairs filled again keep none of the kind, flags, items or
+	 * transactions of the pairs they held before.
+	 */
+	@Test
+	public void readSmallMessageIntoLarge() throws IOException {
+		ItemsAndTransactionsPair absorbing = ItemsAndTransactionsPair
+				.createDiffsetPair(items(1, 2, 3, 4, 5, 6), 6,
+						TidSetTest.mixedContainers(), 90000);
+		absorbing.setAbsorbsParent(true);
+		FrequentPatternMessage large = message(absorbing,
+				ItemsAndTransactionsPair.createWeightedPair(
+						items(1, 2, 3, 4, 7), TidSetTest.largeSet(), 400000),
+				ItemsAndTransactionsPair.createFeedbackPair(
+						items(1, 2, 3, 4, 8), 8),
+				new ItemsAndTransactionsPair(items(1, 2, 3, 4, 9), TidSetTest
+						.largeSet()), new ItemsAndTransactionsPair(items(1,
+						2, 3, 4, 10), TidSet.of(2, 70000)));
+		FrequentPatternMessage small = message(
+				new ItemsAndTransactionsPair(items(11, 12), TidSet.of(5)),
+				new ItemsAndTransactionsPair(items(13), TidSet.of(1, 2)));
+
+		FrequentPatternMessage into = roundTrip(large,
+				new FrequentPatternMessage());
+		into = roundTrip(small, into);
+		assertEquals(2, into.getItemsAndTxns().size());
+		for (ItemsAndTransactionsPair pair : into.getItemsAndTxns()) {
+			assertFalse(pair.isDiffset());
+			assertFalse(pair.absorbsParent());
+			assertFalse(pair.hasLastItem());
+			assertTrue(pair.getTransactionIds().cardinality() <= 2);
+		}
+		roundTrip(large, into);
+	}
+
+	/**
+	 * Combining moves the pairs, as Giraph reads the next message into the
+	 * combined one the pairs moved must not be filled again.
+	 */
+	@Test
+	public void combineMovesPairs() throws IOException {
+		FrequentPatternMessage first = message(new ItemsAndTransactionsPair(
+				items(1, 2), TidSet.of(1, 2)));
+		FrequentPatternMessage second = message(
+				new ItemsAndTransactionsPair(items(1, 3), TidSet.of(3)),
+				ItemsAndTransactionsPair.createFeedbackPair(items(1, 4), 4));
+		FrequentPatternMessage expected = message();
+		expected.getItemsAndTxns().addAll(first.getItemsAndTxns());
+		expected.getItemsAndTxns().addAll(second.getItemsAndTxns());
+		byte[] expectedBytes = RoundTrip.write(expected);
+
+		FrequentPatternMessage combined = new FrequentPatternMessage();
+		FrequentPatternMessage read = roundTrip(first,
+				new FrequentPatternMessage());
+		combined.combine(read);
+		assertTrue(read.isEmpty());
+		read = roundTrip(second, read);
+		combined.combine(read);
+		assertTrue(read.isEmpty());
+		roundTrip(message(new ItemsAndTransactionsPair(items(5, 6), TidSet
+				.of(9))), read);
+		assertArrayEquals(expectedBytes, RoundTrip.write(combined));
+	}
+
+}
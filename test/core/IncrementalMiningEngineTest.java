@@ -0,0 +1,238 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+
+import io.BasketGraphBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Splits random baskets into days mined one after the other by
+ * {@link IncrementalMiningEngine}, with the minimum support raised and
+ * lowered and the itemset size bounded and not between the days, and
+ * compares the itemsets of every run with the ones of all the baskets so far
+ * found by going over every subset of the items.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class IncrementalMiningEngineTest {
+
+	private static final int ITEMS = 12;
+
+	private static final int DAYS = 4;
+
+	private static final int DAY_TRANSACTIONS = 60;
+
+	/**
+	 * Baskets without items ending the first day, which leave no trace in
+	 * the tidsets.
+	 */
+	private static final int EMPTY_BASKETS = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static int itemId(int item) {
+		return 5 + 37 * item;
+	}
+
+	/**
+	 * Baskets of a day built from a few overlapping patterns and some noise,
+	 * as bit masks of the items. The patterns shift from day to day so that
+	 * itemsets become frequent and stop being so.
+	 */
+	private static int[] baskets(Random random, int day) {
+		int[] patterns = new int[4];
+		for (int i = 0; i < patterns.length; i++) {
+			for (int j = 0; j < 4; j++) {
+				patterns[i] |= 1 << random.nextInt(ITEMS);
+			}
+		}
+		int[] baskets = new int[DAY_TRANSACTIONS
+				+ (day == 0 ? EMPTY_BASKETS : 0)];
+		for (int t = 0; t < DAY_TRANSACTIONS; t++) {
+			baskets[t] = patterns[random.nextInt(patterns.length)];
+			if (random.nextBoolean()) {
+				baskets[t] |= patterns[random.nextInt(patterns.length)];
+			}
+			baskets[t] |= 1 << random.nextInt(ITEMS);
+		}
+		return baskets;
+	}
+
+	/**
+	 * Writes the item vertices of a day, numbered from 0, with the
+	 * transactions file {@link BasketGraphBuilder} writes next to them.
+	 */
+	private File writeDay(int[] baskets) throws IOException {
+		File input = folder.newFolder();
+		PrintWriter out = new PrintWriter(new File(input, "part-0"), "UTF-8");
+		try {
+			for (int item = 0; item < ITEMS; item++) {
+				StringBuilder tids = new StringBuilder();
+				for (int t = 0; t < baskets.length; t++) {
+					if ((baskets[t] & 1 << item) != 0) {
+						tids.append(tids.length() == 0 ? "" : ",").append(t);
+					}
+				}
+				out.println("[" + itemId(item) + ", [], [" + tids + "]]");
+			}
+		} finally {
+			out.close();
+		}
+		out = new PrintWriter(new File(input,
+				BasketGraphBuilder.TRANSACTIONS_FILE), "UTF-8");
+		try {
+			out.println(baskets.length);
+		} finally {
+			out.close();
+		}
+		return input;
+	}
+
+	private static String key(int mask) {
+		StringBuilder key = new StringBuilder();
+		for (int item = 0; item < ITEMS; item++) {
+			if ((mask & 1 << item) != 0) {
+				key.append(key.length() == 0 ? "" : " ").append(itemId(item));
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Frequent itemsets with at most maxSize items of the given baskets,
+	 * keyed by their pattern line without the support.
+	 */
+	private static Map<String, Integer> bruteForce(int[] baskets,
+			int transactions, int minSupport, int maxSize) {
+		Map<String, Integer> itemsets = new HashMap<String, Integer>();
+		for (int mask = 1; mask < 1 << ITEMS; mask++) {
+			if (Integer.bitCount(mask) > maxSize) {
+				continue;
+			}
+			int support = 0;
+			for (int t = 0; t < transactions; t++) {
+				if ((baskets[t] & mask) == mask) {
+					support++;
+				}
+			}
+			if (support >= minSupport) {
+				itemsets.put(key(mask), support);
+			}
+		}
+		return itemsets;
+	}
+
+	private static Map<String, Integer> readItemsets(File runDir)
+			throws IOException {
+		Map<String, Integer> itemsets = new HashMap<String, Integer>();
+		File[] levels = runDir.listFiles();
+		for (File level : levels == null ? new File[0] : levels) {
+			if (!level.getName().startsWith("level-")) {
+				continue;
+			}
+			for (String line : Files.readAllLines(
+					new File(level, "part-0").toPath(), StandardCharsets.UTF_8)) {
+				FrequentItemset itemset = FrequentItemset.fromPatternLine(line);
+				String key = line.substring(0, line.indexOf('\t'));
+				assertEquals("written twice: " + key, null,
+						itemsets.put(key, itemset.getSupport()));
+			}
+		}
+		return itemsets;
+	}
+
+	private static int readTransactions(File runDir) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(new File(runDir,
+				IncrementalMiningEngine.RUN_PROPERTIES_FILE));
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return Integer.parseInt(properties
+				.getProperty(IncrementalMiningEngine.TRANSACTIONS_PROPERTY));
+	}
+
+	/**
+	 * Mines the days one after the other with the minimum supports and
+	 * maximum itemset sizes of the runs, checking every run.
+	 */
+	private void mineDays(long seed, int[] minSupports, int[] maxSizes)
+			throws IOException {
+		Random random = new Random(seed);
+		int[] all = new int[DAYS * DAY_TRANSACTIONS + EMPTY_BASKETS];
+		int transactions = 0;
+		File previousRunDir = new File(folder.getRoot(), "none-" + seed);
+		for (int day = 0; day < DAYS; day++) {
+			int[] baskets = baskets(random, day);
+			System.arraycopy(baskets, 0, all, transactions, baskets.length);
+			transactions += baskets.length;
+
+			Configuration conf = new Configuration();
+			conf.setInt(CommonConstants.MINIMUM_CUPPORT_STRING,
+					minSupports[day]);
+			conf.setInt(CommonConstants.MAX_ITEMSET_SIZE_STRING,
+					maxSizes[day]);
+			File runDir = new File(folder.getRoot(), "run-" + seed + "-"
+					+ day);
+			long written = new IncrementalMiningEngine(conf).mine(new Path(
+					writeDay(baskets).getPath()),
+					new Path(previousRunDir.getPath()),
+					new Path(runDir.getPath()));
+
+			String run = "seed " + seed + ", day " + day + ", support "
+					+ minSupports[day] + ", size " + maxSizes[day];
+			Map<String, Integer> itemsets = readItemsets(runDir);
+			assertEquals(run, bruteForce(all, transactions, minSupports[day],
+					maxSizes[day]), itemsets);
+			assertEquals(run, written, itemsets.size());
+			assertEquals(run, transactions, readTransactions(runDir));
+			previousRunDir = runDir;
+		}
+	}
+
+	/**
+	 * Raises the minimum support, then lowers it.
+	 */
+	@Test
+	public void raisedAndLoweredSupport() throws IOException {
+		for (long seed = 1; seed <= 3; seed++) {
+			mineDays(seed, new int[] { 6, 15, 9, 20 }, new int[] {
+					Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+					Integer.MAX_VALUE });
+		}
+	}
+
+	/**
+	 * Bounds the itemset size, then mines above the largest itemsets of the
+	 * previous run, whose supports it does not know.
+	 */
+	@Test
+	public void boundedItemsetSize() throws IOException {
+		for (long seed = 1; seed <= 3; seed++) {
+			mineDays(seed, new int[] { 8, 12, 10, 18 }, new int[] { 2, 3,
+					Integer.MAX_VALUE, 2 });
+		}
+	}
+
+}
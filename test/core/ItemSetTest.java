@@ -0,0 +1,67 @@
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+/**
+ * Equality, hashing and round trips of {@link ItemSet}.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ItemSetTest {
+
+	@Test
+	public void equalItemSetsShareTheirHash() {
+		ItemSet built = ItemSet.of(9, 2, 5);
+		ItemSet extended = ItemSet.of(2).with(9).with(5);
+		ItemSet reduced = ItemSet.of(2, 5, 7, 9).without(7);
+		assertArrayEquals(new int[] { 2, 5, 9 }, built.getItems());
+		assertEquals(built, extended);
+		assertEquals(built, reduced);
+		assertEquals(built.hashCode(), extended.hashCode());
+		assertEquals(built.hashCode(), reduced.hashCode());
+		assertFalse(built.equals(ItemSet.of(2, 5)));
+		assertSame(built, built.with(5));
+		assertSame(built, built.without(4));
+	}
+
+	/**
+	 * An item set is not a set of integers, it never equals one holding the
+	 * same ids.
+	 */
+	@Test
+	public void notEqualToIntegerSets() {
+		ItemSet items = ItemSet.of(1, 2, 3);
+		HashSet<Integer> integers = new HashSet<Integer>(Arrays.asList(1, 2, 3));
+		assertFalse(items.equals(integers));
+		assertFalse(integers.equals(items));
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		for (ItemSet items : new ItemSet[] { ItemSet.EMPTY, ItemSet.of(0),
+				ItemSet.of(3, 130, 70000, Integer.MAX_VALUE) }) {
+			DataOutputBuffer out = new DataOutputBuffer();
+			items.write(out);
+			assertEquals(items.serializedSize(), out.getLength());
+			DataInputBuffer in = new DataInputBuffer();
+			in.reset(out.getData(), out.getLength());
+			ItemSet read = ItemSet.read(in);
+			assertEquals(out.getLength(), in.getPosition());
+			assertEquals(items, read);
+			assertEquals(items.hashCode(), read.hashCode());
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package core;
+
+import static core.ItemsAndTransactionsPairTest.items;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Round trips of {@link ItemVertexValue}, with its transaction list held by
+ * the value or by the store of the worker.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ItemVertexValueTest {
+
+	private static ItemVertexValue value(TidSet tids) {
+		ItemVertexValue value = new ItemVertexValue();
+		value.setTransactionIdList(tids);
+		value.setPropagationStatus(false);
+		value.addFrequentPattern(new FrequentItemset(new int[] { 4 }, 12));
+		value.addFrequentPattern(new FrequentItemset(new int[] { 1, 4 }, 7));
+		value.addPendingPattern(new FrequentItemset(new int[] { 2, 4 }, 9));
+		ItemsAndTransactionsPair pair = ItemsAndTransactionsPair
+				.createDiffsetPair(items(1, 3, 4), 4, TidSet.of(6, 8), 5);
+		value.getDiffsetClasses().put(pair.getParentVertexIds(), pair);
+		value.setSuccessors(new int[] { 5, 9, 130, 70000 });
+		return value;
+	}
+
+	/**
+	 * Writes a value the way Giraph writes it into a checkpoint, from one of
+	 * its checkpoint threads.
+	 */
+	private static byte[] writeCheckpoint(final ItemVertexValue value)
+			throws IOException {
+		final byte[][] bytes = new byte[1][];
+		final IOException[] failure = new IOException[1];
+		Thread thread = new Thread(
+				ItemVertexValue.CHECKPOINT_THREAD_PREFIX + "0") {
+			@Override
+			public void run() {
+				try {
+					bytes[0] = RoundTrip.write(value);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return bytes[0];
+	}
+
+	private static ItemVertexValue roundTrip(ItemVertexValue value,
+			ItemVertexValue into) throws IOException {
+		return roundTrip(value, into, true);
+	}
+
+	private static ItemVertexValue roundTrip(ItemVertexValue value,
+			ItemVertexValue into, boolean checkpoint) throws IOException {
+		ItemVertexValue read = RoundTrip.read(checkpoint ? writeCheckpoint(value)
+				: RoundTrip.write(value), into);
+		assertEquals(value.shouldPropagate(), read.shouldPropagate());
+		assertEquals(value.isTransactionsStored(), read.isTransactionsStored());
+		if (value.isTransactionsStored()
+				&& (checkpoint || value.getTransactionIdList() == null)) {
+			assertNull(read.getTransactionIdList());
+		} else {
+			assertArrayEquals(value.getTransactionIdList().toArray(), read
+					.getTransactionIdList().toArray());
+		}
+		assertEquals(value.getFrequentPatters(), read.getFrequentPatters());
+		assertEquals(value.getPendingPatterns(), read.getPendingPatterns());
+		assertEquals(value.getDiffsetClasses(), read.getDiffsetClasses());
+		assertArrayEquals(value.getSuccessors(), read.getSuccessors());
+		return read;
+	}
+
+	@Test
+	public void emptyValue() throws IOException {
+		roundTrip(new ItemVertexValue(), new ItemVertexValue());
+	}
+
+	@Test
+	public void filledValue() throws IOException {
+		roundTrip(value(TidSetTest.mixedContainers()), new ItemVertexValue());
+	}
+
+	@Test
+	public void payloadOver64KB() throws IOException {
+		ItemVertexValue value = value(TidSetTest.largeSet());
+		assertTrue(RoundTrip.write(value).length > 1 << 16);
+		roundTrip(value, new ItemVertexValue());
+	}
+
+	/**
+	 * A stored transaction list is left out of checkpoints, a value read
+	 * after it gets a list of its own instead of filling the stored one.
+	 */
+	@Test
+	public void storedTransactions() throws IOException {
+		TidSet stored = TidSetTest.mixedContainers();
+		int[] storedIds = stored.toArray();
+		ItemVertexValue value = value(stored);
+		value.setTransactionsStored(true);
+		assertTrue(writeCheckpoint(value).length < 100);
+
+		ItemVertexValue into = new ItemVertexValue();
+		into.setTransactionIdList(stored);
+		into.setTransactionsStored(true);
+		into = roundTrip(value(TidSet.of(1, 2)), into);
+		assertNotNull(into.getTransactionIdList());
+		assertArrayEquals(storedIds, stored.toArray());
+
+		into = roundTrip(value, into);
+		into = roundTrip(value(TidSet.of(3)), into);
+		assertFalse(into.isTransactionsStored());
+	}
+
+	/**
+	 * Out of core a stored transaction list is kept in the value, which stays
+	 * marked as stored for the next checkpoint. A value read back from a
+	 * checkpoint is written out of core without its list.
+	 */
+	@Test
+	public void storedTransactionsKeptOutOfCore() throws IOException {
+		TidSet stored = TidSetTest.mixedContainers();
+		ItemVertexValue value = value(stored);
+		value.setTransactionsStored(true);
+		ItemVertexValue into = new ItemVertexValue();
+		into.setTransactionIdList(stored);
+		into.setTransactionsStored(true);
+		into = roundTrip(value, into, false);
+		assertTrue(into.isTransactionsStored());
+		assertTrue(into.getTransactionIdList() != stored);
+
+		into = roundTrip(into, new ItemVertexValue(), true);
+		roundTrip(into, new ItemVertexValue(), false);
+	}
+
+	/**
+	 * Only the stored lists written by a checkpoint thread are counted as
+	 * left out of checkpoints, all the stored ones as written.
+	 */
+	@Test
+	public void countsListsLeftOutOfCheckpoints() throws IOException {
+		ItemVertexValue.takeStoredListsWritten();
+		ItemVertexValue.takeListsLeftOutOfCheckpoints();
+		ItemVertexValue value = value(TidSetTest.mixedContainers());
+		writeCheckpoint(value);
+		RoundTrip.write(value);
+		value.setTransactionsStored(true);
+		writeCheckpoint(value);
+		writeCheckpoint(value);
+		RoundTrip.write(value);
+		assertEquals(3, ItemVertexValue.takeStoredListsWritten());
+		assertEquals(2, ItemVertexValue.takeListsLeftOutOfCheckpoints());
+		assertEquals(0, ItemVertexValue.takeListsLeftOutOfCheckpoints());
+	}
+
+	/**
+	 * Reads values with fewer itemsets into one holding more, as Giraph
+	 * does with vertex values.
+	 */
+	@Test
+	public void readIntoFilledValue() throws IOException {
+		ItemVertexValue into = roundTrip(value(TidSetTest.largeSet()),
+				new ItemVertexValue());
+		roundTrip(new ItemVertexValue(), into);
+	}
+
+	/**
+	 * Reads a value of a few short itemsets into one read from a value of
+	 * many long ones, then the long one again. The spare itemsets and pairs
+	 * filled again keep none of the items, supports or transactions they
+	 * held before, and no previous itemset is left in the maps.
+	 */
+	@Test
+	public void readSmallValueIntoLarge() throws IOException {
+		ItemVertexValue large = value(TidSetTest.largeSet());
+		for (int i = 10; i < 60; i++) {
+			large.addFrequentPattern(new FrequentItemset(new int[] { 1, 2, 3,
+					i }, i));
+			large.addPendingPattern(new FrequentItemset(new int[] { 2, 3, 4,
+					i }, i));
+			ItemsAndTransactionsPair pair = ItemsAndTransactionsPair
+					.createDiffsetPair(items(5, 6, i), i,
+							TidSetTest.mixedContainers(), i);
+			large.getDiffsetClasses().put(pair.getParentVertexIds(), pair);
+		}
+		ItemVertexValue small = new ItemVertexValue();
+		small.setTransactionIdList(TidSet.of(7));
+		small.addFrequentPattern(new FrequentItemset(new int[] { 8 }, 3));
+		small.addPendingPattern(new FrequentItemset(new int[] { 8, 9 }, 2));
+		ItemsAndTransactionsPair pair = ItemsAndTransactionsPair
+				.createDiffsetPair(items(8, 9), 9, TidSet.of(7), 1);
+		small.getDiffsetClasses().put(pair.getParentVertexIds(), pair);
+		small.setSuccessors(new int[] { 9 });
+
+		ItemVertexValue into = roundTrip(large, new ItemVertexValue());
+		into = roundTrip(small, into);
+		assertEquals(1, into.getFrequentPatters().get(0).getItems().length);
+		assertEquals(1, into.getPendingPatterns().size());
+		assertEquals(1, into.getDiffsetClasses().size());
+		assertEquals(1, into.getDiffsetClasses().values().iterator().next()
+				.getTransactionIds().cardinality());
+		roundTrip(large, into);
+	}
+
+}
@@ -0,0 +1,84 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Round trips of {@link ItemsAndTransactionsPair} of every kind.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class ItemsAndTransactionsPairTest {
+
+	static ItemSet items(int... items) {
+		return ItemSet.of(items);
+	}
+
+	private static ItemsAndTransactionsPair roundTrip(
+			ItemsAndTransactionsPair pair, ItemsAndTransactionsPair into)
+			throws IOException {
+		byte[] bytes = RoundTrip.write(pair);
+		assertEquals(pair.serializedSize(), bytes.length);
+		ItemsAndTransactionsPair read = RoundTrip.read(bytes, into);
+		assertEquals(pair, read);
+		assertEquals(pair.getVertexIds(), read.getVertexIds());
+		assertEquals(pair.hasDiffsetChildren(), read.hasDiffsetChildren());
+		assertEquals(pair.getSupport(), read.getSupport());
+		return read;
+	}
+
+	@Test
+	public void tidsetPair() throws IOException {
+		roundTrip(new ItemsAndTransactionsPair(items(3, 17, 400),
+				TidSet.of(1, 5, 9, 100000)), new ItemsAndTransactionsPair());
+	}
+
+	@Test
+	public void diffsetPair() throws IOException {
+		roundTrip(ItemsAndTransactionsPair.createDiffsetPair(items(2, 9),
+				9, TidSet.of(4, 6), 120), new ItemsAndTransactionsPair());
+	}
+
+	@Test
+	public void weightedPair() throws IOException {
+		roundTrip(ItemsAndTransactionsPair.createWeightedPair(items(1),
+				TidSet.of(0, 2), 300000), new ItemsAndTransactionsPair());
+	}
+
+	@Test
+	public void feedbackPair() throws IOException {
+		ItemsAndTransactionsPair pair = ItemsAndTransactionsPair
+				.createFeedbackPair(items(5, 6, 70000), 70000);
+		pair.setAbsorbsParent(true);
+		roundTrip(pair, new ItemsAndTransactionsPair());
+	}
+
+	@Test
+	public void payloadOver64KB() throws IOException {
+		ItemsAndTransactionsPair pair = new ItemsAndTransactionsPair(items(
+				8, 11), TidSetTest.largeSet());
+		assertTrue(pair.serializedSize() > 1 << 16);
+		roundTrip(pair, new ItemsAndTransactionsPair());
+	}
+
+	/**
+	 * Reads pairs of different kinds into the same object, as Giraph does
+	 * with messages.
+	 */
+	@Test
+	public void readIntoFilledPair() throws IOException {
+		ItemsAndTransactionsPair into = roundTrip(
+				ItemsAndTransactionsPair.createWeightedPair(items(1, 2),
+						TidSetTest.mixedContainers(), 50000),
+				new ItemsAndTransactionsPair());
+		into = roundTrip(ItemsAndTransactionsPair.createDiffsetPair(
+				items(4, 7), 7, TidSet.of(3), 2), into);
+		roundTrip(new ItemsAndTransactionsPair(items(9), new TidSet()), into);
+	}
+
+}
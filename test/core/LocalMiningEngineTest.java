@@ -0,0 +1,212 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares the itemsets mined by {@link LocalMiningEngine} in the all, closed
+ * and maximal modes with the ones found by going over every subset of the
+ * items.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class LocalMiningEngineTest {
+
+	private static final int ITEMS = 12;
+
+	private static final int TRANSACTIONS = 80;
+
+	private static final int MIN_SUPPORT = 6;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Item ids are spread past 64 so that the signatures of the pending
+	 * itemsets, a bit per item modulo 64, collide.
+	 */
+	private static int itemId(int item) {
+		return 5 + 37 * item;
+	}
+
+	/**
+	 * Baskets built from a few overlapping patterns and some noise, as bit
+	 * masks of the items, so that there are itemsets of several sizes which
+	 * are not closed.
+	 */
+	private static int[] baskets(long seed) {
+		Random random = new Random(seed);
+		int[] patterns = new int[4];
+		for (int i = 0; i < patterns.length; i++) {
+			for (int j = 0; j < 4; j++) {
+				patterns[i] |= 1 << random.nextInt(ITEMS);
+			}
+		}
+		int[] baskets = new int[TRANSACTIONS];
+		for (int t = 0; t < TRANSACTIONS; t++) {
+			baskets[t] = patterns[random.nextInt(patterns.length)];
+			if (random.nextBoolean()) {
+				baskets[t] |= patterns[random.nextInt(patterns.length)];
+			}
+			baskets[t] |= 1 << random.nextInt(ITEMS);
+			if (random.nextInt(4) == 0) {
+				baskets[t] &= ~(1 << random.nextInt(ITEMS));
+			}
+		}
+		return baskets;
+	}
+
+	/**
+	 * Writes a vertex line per item, the neighbors being left empty as the
+	 * local engine does not read them.
+	 */
+	private File writeVertices(int[] baskets) throws IOException {
+		File input = folder.newFile();
+		PrintWriter out = new PrintWriter(input, "UTF-8");
+		try {
+			for (int item = 0; item < ITEMS; item++) {
+				StringBuilder tids = new StringBuilder();
+				for (int t = 0; t < baskets.length; t++) {
+					if ((baskets[t] & 1 << item) != 0) {
+						tids.append(tids.length() == 0 ? "" : ",").append(t);
+					}
+				}
+				out.println("[" + itemId(item) + ", [], [" + tids + "]]");
+			}
+		} finally {
+			out.close();
+		}
+		return input;
+	}
+
+	private static String key(int mask) {
+		StringBuilder key = new StringBuilder();
+		for (int item = 0; item < ITEMS; item++) {
+			if ((mask & 1 << item) != 0) {
+				key.append(key.length() == 0 ? "" : " ").append(itemId(item));
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Itemsets of the given mode with at most maxSize items, keyed by their
+	 * pattern line without the support. With a bounded size an itemset is
+	 * closed (or maximal) among the itemsets of at most that size.
+	 */
+	private static Map<String, Integer> bruteForce(int[] baskets,
+			String mode, int maxSize) {
+		int[] supports = new int[1 << ITEMS];
+		for (int mask = 1; mask < supports.length; mask++) {
+			for (int basket : baskets) {
+				if ((basket & mask) == mask) {
+					supports[mask]++;
+				}
+			}
+		}
+		Map<String, Integer> itemsets = new HashMap<String, Integer>();
+		for (int mask = 1; mask < supports.length; mask++) {
+			if (supports[mask] < MIN_SUPPORT
+					|| Integer.bitCount(mask) > maxSize) {
+				continue;
+			}
+			boolean kept = true;
+			for (int item = 0; item < ITEMS && kept
+					&& !CommonConstants.ALL_MINING_MODE.equals(mode); item++) {
+				int superset = mask | 1 << item;
+				if (superset == mask || Integer.bitCount(superset) > maxSize) {
+					continue;
+				}
+				if (CommonConstants.MAXIMAL_MINING_MODE.equals(mode)) {
+					kept = supports[superset] < MIN_SUPPORT;
+				} else {
+					kept = supports[superset] != supports[mask];
+				}
+			}
+			if (kept) {
+				itemsets.put(key(mask), supports[mask]);
+			}
+		}
+		return itemsets;
+	}
+
+	private Map<String, Integer> mine(File input, String mode, String order,
+			boolean diffset, int maxSize, int threads) throws IOException {
+		Configuration conf = new Configuration();
+		conf.setInt(CommonConstants.MINIMUM_CUPPORT_STRING, MIN_SUPPORT);
+		conf.set(CommonConstants.MINING_MODE_STRING, mode);
+		conf.set(CommonConstants.ITEM_ORDER_STRING, order);
+		conf.setBoolean(CommonConstants.DIFFSET_MODE_STRING, diffset);
+		conf.setInt(CommonConstants.MAX_ITEMSET_SIZE_STRING, maxSize);
+		conf.setInt(CommonConstants.LOCAL_ENGINE_THREADS_STRING, threads);
+		File output = folder.newFolder();
+		long written = new LocalMiningEngine(conf).mine(
+				new Path(input.getPath()), new Path(output.getPath()));
+
+		Map<String, Integer> itemsets = new HashMap<String, Integer>();
+		File[] levels = output.listFiles();
+		for (File level : levels == null ? new File[0] : levels) {
+			if (!level.getName().startsWith("level-")) {
+				continue;
+			}
+			for (String line : Files.readAllLines(
+					new File(level, "part-0").toPath(), StandardCharsets.UTF_8)) {
+				FrequentItemset itemset = FrequentItemset
+						.fromPatternLine(line);
+				String key = line.substring(0, line.indexOf('\t'));
+				assertEquals("written twice: " + key, null,
+						itemsets.put(key, itemset.getSupport()));
+			}
+		}
+		assertEquals(written, itemsets.size());
+		return itemsets;
+	}
+
+	@Test
+	public void matchesBruteForce() throws IOException {
+		String[] modes = { CommonConstants.ALL_MINING_MODE,
+				CommonConstants.CLOSED_MINING_MODE,
+				CommonConstants.MAXIMAL_MINING_MODE };
+		String[] orders = { CommonConstants.ID_ITEM_ORDER,
+				CommonConstants.FREQUENCY_ITEM_ORDER };
+		int[] maxSizes = { Integer.MAX_VALUE, 3 };
+		for (long seed = 1; seed <= 3; seed++) {
+			int[] baskets = baskets(seed);
+			File input = writeVertices(baskets);
+			for (String mode : modes) {
+				for (int maxSize : maxSizes) {
+					Map<String, Integer> expected = bruteForce(baskets, mode,
+							maxSize);
+					for (String order : orders) {
+						for (boolean diffset : new boolean[] { false, true }) {
+							for (int threads : new int[] { 1, 4 }) {
+								assertEquals("seed " + seed + ", " + mode
+										+ ", " + order + " order, diffset "
+										+ diffset + ", size " + maxSize
+										+ ", " + threads + " threads",
+										expected, mine(input, mode, order,
+												diffset, maxSize, threads));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
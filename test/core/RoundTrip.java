@@ -0,0 +1,45 @@
+package core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Writes writables to bytes and reads them back the way Giraph does, into
+ * objects which may hold a previous value.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class RoundTrip {
+
+	private RoundTrip() {
+	}
+
+	public static byte[] write(Writable writable) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		writable.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * Reads the given bytes into the writable, checking that all of them
+	 * were read.
+	 */
+	public static <T extends Writable> T read(byte[] bytes, T writable)
+			throws IOException {
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		writable.readFields(in);
+		assertEquals("bytes left after the read", bytes.length,
+				in.getPosition());
+		return writable;
+	}
+
+}
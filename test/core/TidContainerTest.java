@@ -0,0 +1,196 @@
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Set operations of every pair of array, bitmap and run containers, checked
+ * against a {@link BitSet} holding the same values.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class TidContainerTest {
+
+	private static final int VALUES = 1 << 16;
+
+	private static BitSet random(Random random, int cardinality) {
+		BitSet values = new BitSet(VALUES);
+		while (values.cardinality() < cardinality) {
+			values.set(random.nextInt(VALUES));
+		}
+		return values;
+	}
+
+	private static BitSet ranges(int... bounds) {
+		BitSet values = new BitSet(VALUES);
+		for (int i = 0; i < bounds.length; i += 2) {
+			values.set(bounds[i], bounds[i + 1]);
+		}
+		return values;
+	}
+
+	/**
+	 * Contents on both sides of the array container limit, from empty to
+	 * full, as sparse values and as runs.
+	 */
+	private static List<BitSet> contents() {
+		Random random = new Random(7);
+		List<BitSet> contents = new ArrayList<BitSet>();
+		contents.add(new BitSet(VALUES));
+		contents.add(random(random, 100));
+		contents.add(random(random, TidContainer.ARRAY_MAX_SIZE));
+		contents.add(random(random, TidContainer.ARRAY_MAX_SIZE + 1));
+		contents.add(random(random, 30000));
+		contents.add(ranges(0, 1000, 5000, 5001, 20000, 40000, 65000, VALUES));
+		contents.add(ranges(500, 6000, 30000, 30010));
+		contents.add(ranges(0, VALUES));
+		return contents;
+	}
+
+	private static char[] chars(BitSet values) {
+		char[] chars = new char[values.cardinality()];
+		int i = 0;
+		for (int value = values.nextSetBit(0); value >= 0; value = values
+				.nextSetBit(value + 1)) {
+			chars[i++] = (char) value;
+		}
+		return chars;
+	}
+
+	/**
+	 * Builds every container the values fit in, an array only holding up to
+	 * {@link TidContainer#ARRAY_MAX_SIZE} of them.
+	 */
+	private static List<TidContainer> containers(BitSet values) {
+		char[] chars = chars(values);
+		List<TidContainer> containers = new ArrayList<TidContainer>();
+		if (chars.length <= TidContainer.ARRAY_MAX_SIZE) {
+			containers.add(new ArrayTidContainer(chars.clone(), chars.length));
+		}
+		BitmapTidContainer bitmap = new BitmapTidContainer();
+		for (char value : chars) {
+			bitmap.set(value);
+		}
+		containers.add(bitmap);
+		containers.add(chars.length == 0 ? new RunTidContainer(new char[0], 0)
+				: RunTidContainer.fromSorted(chars, chars.length,
+						RunTidContainer.countRuns(chars, chars.length)));
+		return containers;
+	}
+
+	private static int[] values(TidContainer container) {
+		int[] values = new int[VALUES];
+		int length = container.fill(values, 0, 0);
+		int[] result = new int[length];
+		System.arraycopy(values, 0, result, 0, length);
+		return result;
+	}
+
+	private static int[] values(BitSet values) {
+		int[] result = new int[values.cardinality()];
+		int i = 0;
+		for (int value = values.nextSetBit(0); value >= 0; value = values
+				.nextSetBit(value + 1)) {
+			result[i++] = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks the values and the cardinality of a container, and that an
+	 * array container holds no more values than it may.
+	 */
+	private static void assertContainer(String message, BitSet expected,
+			TidContainer container) {
+		assertArrayEquals(message, values(expected), values(container));
+		assertEquals(message, expected.cardinality(), container.cardinality());
+		if (container instanceof ArrayTidContainer) {
+			assertTrue(message,
+					container.cardinality() <= TidContainer.ARRAY_MAX_SIZE);
+		}
+	}
+
+	@Test
+	public void operationsOfEveryPair() {
+		List<BitSet> contents = contents();
+		for (BitSet left : contents) {
+			for (BitSet right : contents) {
+				BitSet and = (BitSet) left.clone();
+				and.and(right);
+				BitSet andNot = (BitSet) left.clone();
+				andNot.andNot(right);
+				BitSet or = (BitSet) left.clone();
+				or.or(right);
+				for (TidContainer x : containers(left)) {
+					for (TidContainer y : containers(right)) {
+						String pair = x.getClass().getSimpleName() + "("
+								+ left.cardinality() + ") "
+								+ y.getClass().getSimpleName() + "("
+								+ right.cardinality() + ")";
+						int[] before = values(x);
+						assertContainer("and " + pair, and, x.and(y));
+						assertEquals("andCardinality " + pair,
+								and.cardinality(), x.andCardinality(y));
+						assertContainer("andNot " + pair, andNot, x.andNot(y));
+						assertContainer("or " + pair, or, x.or(y));
+						assertArrayEquals("operand changed " + pair, before,
+								values(x));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void optimizeKeepsValues() {
+		for (BitSet values : contents()) {
+			for (TidContainer container : containers(values)) {
+				TidContainer optimized = container.optimize();
+				assertContainer(container.getClass().getSimpleName() + "("
+						+ values.cardinality() + ")", values, optimized);
+				assertTrue(optimized.sizeInBytes() <= container.sizeInBytes());
+				assertContainer("dense", values, container.toDense());
+			}
+		}
+	}
+
+	/**
+	 * An array container turns into a bitmap once a value is added past
+	 * {@link TidContainer#ARRAY_MAX_SIZE}, and a run container takes values
+	 * inside, next to and away from its runs.
+	 */
+	@Test
+	public void addAcrossArrayLimit() {
+		BitSet expected = new BitSet(VALUES);
+		TidContainer container = TidContainer.empty();
+		for (int i = 0; i < TidContainer.ARRAY_MAX_SIZE; i++) {
+			container = container.add((char) (i * 13));
+			expected.set(i * 13);
+		}
+		assertTrue(container instanceof ArrayTidContainer);
+		container = container.add((char) 13);
+		assertContainer("duplicate", expected, container);
+		container = container.add((char) 1);
+		expected.set(1);
+		assertTrue(container instanceof BitmapTidContainer);
+		assertContainer("bitmap", expected, container);
+
+		BitSet runs = ranges(10, 20, 100, 200);
+		container = containers(runs).get(2);
+		for (int value : new int[] { 15, 20, 9, 300, 99, 0, VALUES - 1 }) {
+			container = container.add((char) value);
+			runs.set(value);
+			assertContainer("run add " + value, runs, container);
+		}
+	}
+
+}
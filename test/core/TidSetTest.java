@@ -0,0 +1,266 @@
+package core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+/**
+ * Round trips of {@link TidSet} through its plain and block layouts, and its
+ * set operations over several containers checked against a {@link BitSet}.
+ *
+ * @author Dhruv Sharma, Metacube Software Pvt. Ltd.
+ *
+ */
+public class TidSetTest {
+
+	/**
+	 * Sparse, dense and run containers, written in the block layout.
+	 */
+	static TidSet mixedContainers() {
+		TidSet tids = new TidSet();
+		for (int i = 0; i < 500; i++) {
+			tids.add(i * 97);
+		}
+		for (int i = 0; i < 1 << 16; i += 2) {
+			tids.add((1 << 16) + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			tids.add((2 << 16) + 100 + i);
+		}
+		tids.add(Integer.MAX_VALUE - 1);
+		tids.add(Integer.MAX_VALUE);
+		tids.runOptimize();
+		return tids;
+	}
+
+	/**
+	 * Ids spread over many containers, written in more than 64KB.
+	 */
+	static TidSet largeSet() {
+		Random random = new Random(42);
+		TidSet tids = new TidSet();
+		while (tids.cardinality() < 100000) {
+			tids.add(random.nextInt(50000000));
+		}
+		return tids;
+	}
+
+	private static TidSet roundTrip(TidSet tids, TidSet into)
+			throws IOException {
+		byte[] bytes = RoundTrip.write(tids);
+		assertEquals(tids.serializedSize(), bytes.length);
+		TidSet read = RoundTrip.read(bytes, into);
+		assertArrayEquals(tids.toArray(), read.toArray());
+		return read;
+	}
+
+	@Test
+	public void emptySet() throws IOException {
+		roundTrip(new TidSet(), new TidSet());
+	}
+
+	@Test
+	public void plainLayout() throws IOException {
+		roundTrip(TidSet.of(0, 1, 2, 127, 128, 16383, 16384, 70000, 1 << 30),
+				new TidSet());
+	}
+
+	@Test
+	public void blockLayout() throws IOException {
+		roundTrip(mixedContainers(), new TidSet());
+	}
+
+	@Test
+	public void payloadOver64KB() throws IOException {
+		TidSet tids = largeSet();
+		assertTrue(tids.serializedSize() > 1 << 16);
+		roundTrip(tids, new TidSet());
+	}
+
+	/**
+	 * Reads into a set holding more ids than the one written.
+	 */
+	@Test
+	public void readIntoFilledSet() throws IOException {
+		TidSet into = roundTrip(largeSet(), new TidSet());
+		into = roundTrip(mixedContainers(), into);
+		into = roundTrip(TidSet.of(3, 5, 8), into);
+		roundTrip(new TidSet(), into);
+	}
+
+	@Test
+	public void skip() throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		largeSet().write(out);
+		mixedContainers().write(out);
+		TidSet.of(1, 2, 3).write(out);
+		new TidSet().write(out);
+		TidSet last = TidSet.of(7, 1 << 20);
+		last.write(out);
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		TidSet.skip(in);
+		TidSet.skip(in);
+		TidSet.skip(in);
+		TidSet.skip(in);
+		TidSet read = new TidSet();
+		read.readFields(in);
+		assertArrayEquals(last.toArray(), read.toArray());
+		assertEquals(out.getLength(), in.getPosition());
+	}
+
+	/**
+	 * Ids spread over four containers, each of the given kind: 'e' empty,
+	 * 's' sparse, 'd' dense or 'r' runs. The containers are optimized, as
+	 * the sets of the vertices are once built.
+	 */
+	private static BitSet ids(Random random, String kinds) {
+		BitSet ids = new BitSet();
+		for (int i = 0; i < kinds.length(); i++) {
+			int base = i << 16;
+			switch (kinds.charAt(i)) {
+			case 's':
+				for (int j = 0; j < 300; j++) {
+					ids.set(base + random.nextInt(1 << 16));
+				}
+				break;
+			case 'd':
+				for (int j = 0; j < 20000; j++) {
+					ids.set(base + random.nextInt(1 << 16));
+				}
+				break;
+			case 'r':
+				int start = random.nextInt(1000);
+				ids.set(base + start, base + start + 3000 + random.nextInt(5000));
+				ids.set(base + 40000, base + 40000 + random.nextInt(10000));
+				break;
+			default:
+			}
+		}
+		return ids;
+	}
+
+	private static TidSet tidSet(BitSet ids) {
+		TidSet tids = new TidSet();
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			tids.add(id);
+		}
+		tids.runOptimize();
+		return tids;
+	}
+
+	private static int[] toArray(BitSet ids) {
+		int[] array = new int[ids.cardinality()];
+		int i = 0;
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			array[i++] = id;
+		}
+		return array;
+	}
+
+	private static void assertSet(String message, BitSet expected, TidSet tids) {
+		assertArrayEquals(message, toArray(expected), tids.toArray());
+		assertEquals(message, expected.cardinality(), tids.cardinality());
+		assertEquals(message, expected.isEmpty(), tids.isEmpty());
+	}
+
+	@Test
+	public void setOperations() {
+		Random random = new Random(11);
+		String[] kinds = { "eeee", "ssss", "dddd", "rrrr", "sdre", "rdse",
+				"edsr", "ssdd", "rrss" };
+		List<BitSet> sets = new ArrayList<BitSet>();
+		for (String kind : kinds) {
+			sets.add(ids(random, kind));
+		}
+		for (int x = 0; x < sets.size(); x++) {
+			for (int y = 0; y < sets.size(); y++) {
+				String pair = kinds[x] + " " + kinds[y];
+				BitSet left = sets.get(x);
+				BitSet right = sets.get(y);
+				TidSet leftTids = tidSet(left);
+				TidSet rightTids = tidSet(right);
+
+				BitSet and = (BitSet) left.clone();
+				and.and(right);
+				BitSet andNot = (BitSet) left.clone();
+				andNot.andNot(right);
+				BitSet or = (BitSet) left.clone();
+				or.or(right);
+				assertSet("and " + pair, and, leftTids.and(rightTids));
+				assertSet("andNot " + pair, andNot, leftTids.andNot(rightTids));
+				assertSet("or " + pair, or, leftTids.or(rightTids));
+				assertEquals("andCardinality " + pair, and.cardinality(),
+						leftTids.andCardinality(rightTids));
+				assertSet("operand " + pair, left, leftTids);
+
+				/**
+				 * Results are sets like any other, operated on again.
+				 */
+				assertSet("or of the and and the difference " + pair, left,
+						leftTids.and(rightTids).or(leftTids.andNot(rightTids)));
+			}
+		}
+	}
+
+	/**
+	 * The support test holds up to the size of the intersection and fails
+	 * right above it, whether it stops on the bound of the containers left or
+	 * on their count.
+	 */
+	@Test
+	public void intersectsAtLeast() {
+		Random random = new Random(13);
+		String[] kinds = { "eeee", "sdre", "rdse", "dddd", "ssrr", "rrrr" };
+		for (String leftKind : kinds) {
+			for (String rightKind : kinds) {
+				TidSet left = tidSet(ids(random, leftKind));
+				TidSet right = tidSet(ids(random, rightKind));
+				int support = left.andCardinality(right);
+				String pair = leftKind + " " + rightKind;
+				assertTrue(pair, left.intersectsAtLeast(right, 0));
+				assertTrue(pair, left.intersectsAtLeast(right, support));
+				assertTrue(pair, left.intersectsAtLeast(right, support / 2));
+				assertFalse(pair, left.intersectsAtLeast(right, support + 1));
+				assertFalse(pair, left.intersectsAtLeast(right,
+						Integer.MAX_VALUE));
+			}
+		}
+		TidSet empty = new TidSet();
+		assertTrue(empty.intersectsAtLeast(empty, 0));
+		assertFalse(empty.intersectsAtLeast(TidSet.of(1), 1));
+	}
+
+	/**
+	 * Adding ids one by one to a container turns it into a bitmap past the
+	 * array limit, the set keeps every id.
+	 */
+	@Test
+	public void addAcrossArrayLimit() {
+		BitSet ids = new BitSet();
+		TidSet tids = new TidSet();
+		for (int i = 0; i <= TidContainer.ARRAY_MAX_SIZE; i++) {
+			int id = (3 << 16) + i * 11;
+			assertTrue(tids.add(id));
+			ids.set(id);
+		}
+		assertFalse(tids.add(3 << 16));
+		assertSet("added", ids, tids);
+		tids.runOptimize();
+		assertSet("optimized", ids, tids);
+		assertSet("copy", ids, tids.copy());
+	}
+
+}